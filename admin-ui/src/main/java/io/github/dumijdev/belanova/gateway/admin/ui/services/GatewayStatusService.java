@@ -0,0 +1,40 @@
+package io.github.dumijdev.belanova.gateway.admin.ui.services;
+
+import io.github.dumijdev.belanova.gateway.common.model.UpstreamRuntimeStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientException;
+
+import java.util.List;
+
+/**
+ * Reads live upstream state (health, outlier ejection, circuit breaker) from a gateway node.
+ */
+@Service
+public class GatewayStatusService {
+    private static final Logger log = LoggerFactory.getLogger(GatewayStatusService.class);
+
+    private final RestClient restClient;
+
+    public GatewayStatusService(RestClient.Builder builder,
+                                @Value("${belanova.admin.gateway-url:http://localhost:8080}") String gatewayUrl) {
+        this.restClient = builder.baseUrl(gatewayUrl).build();
+    }
+
+    public List<UpstreamRuntimeStatus> findUpstreams() {
+        try {
+            List<UpstreamRuntimeStatus> upstreams = restClient.get()
+                    .uri("/api/gateway/status/upstreams")
+                    .retrieve()
+                    .body(new ParameterizedTypeReference<>() {});
+            return upstreams != null ? upstreams : List.of();
+        } catch (RestClientException ex) {
+            log.warn("Could not fetch upstream status from the gateway: {}", ex.getMessage());
+            return List.of();
+        }
+    }
+}
@@ -408,6 +408,12 @@ public class BackendsView extends VerticalLayout {
     Checkbox enabledField = new Checkbox("Enabled");
     Checkbox useServiceDiscoveryField = new Checkbox("Use Service Discovery");
 
+    ComboBox<String> loadBalancingField = new ComboBox<>("Load Balancing");
+    loadBalancingField.setItems("roundRobin", "weightedRoundRobin", "leastConnections",
+        "random", "consistentHash", "peakEwma");
+    loadBalancingField.setPlaceholder("Gateway default");
+    loadBalancingField.setClearButtonVisible(true);
+
     // Bind fields
     Binder<Backend> binder = new Binder<>(Backend.class);
     binder.forField(nameField)
@@ -419,12 +425,13 @@ public class BackendsView extends VerticalLayout {
     binder.bind(generalPathField, Backend::getGeneralPath, Backend::setGeneralPath);
     binder.bind(enabledField, Backend::isEnabled, Backend::setEnabled);
     binder.bind(useServiceDiscoveryField, Backend::isUseServiceDiscovery, Backend::setUseServiceDiscovery);
+    binder.bind(loadBalancingField, Backend::getLoadBalancing, Backend::setLoadBalancing);
 
     binder.readBean(backend);
 
     // Add fields to form
     form.add(nameField, descField, baseUrlField, serviceIdField,
-        generalPathField, enabledField, useServiceDiscoveryField);
+        generalPathField, loadBalancingField, enabledField, useServiceDiscoveryField);
     form.setColspan(descField, 2);
     form.setColspan(baseUrlField, 2);
 
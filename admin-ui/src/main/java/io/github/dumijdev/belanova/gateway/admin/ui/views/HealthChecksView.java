@@ -1,13 +1,17 @@
 package io.github.dumijdev.belanova.gateway.admin.ui.views;
 
 import io.github.dumijdev.belanova.gateway.common.model.Backend;
+import io.github.dumijdev.belanova.gateway.common.model.UpstreamHealthStatus;
+import io.github.dumijdev.belanova.gateway.common.model.UpstreamRuntimeStatus;
 import com.vaadin.flow.component.grid.Grid;
 import com.vaadin.flow.component.html.H1;
+import com.vaadin.flow.component.html.H2;
 import com.vaadin.flow.component.html.Span;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
 import com.vaadin.flow.router.PageTitle;
 import com.vaadin.flow.router.Route;
 import io.github.dumijdev.belanova.gateway.admin.ui.layouts.MainLayout;
+import io.github.dumijdev.belanova.gateway.admin.ui.services.GatewayStatusService;
 
 import java.util.List;
 import java.util.Arrays;
@@ -15,7 +19,7 @@ import java.util.Arrays;
 @PageTitle("Health Checks")
 @Route(value = "health-checks", layout = MainLayout.class)
 public class HealthChecksView extends VerticalLayout {
-    public HealthChecksView() {
+    public HealthChecksView(GatewayStatusService gatewayStatusService) {
         add(new H1("Health Checks"));
         Grid<Backend> grid = new Grid<>(Backend.class, false);
         grid.addColumn(Backend::getId).setHeader("Backend ID");
@@ -23,11 +27,65 @@ public class HealthChecksView extends VerticalLayout {
         grid.addComponentColumn(this::healthStatusIndicator).setHeader("Health Status");
         // Demo data
         List<Backend> demo = Arrays.asList(
-            new Backend("b1", "User Service", "User backend", "http://localhost:9001", "user-service", "/api/v1", "Healthy", true, false, null, null, null),
-            new Backend("b2", "Order Service", "Order backend", "http://localhost:9002", "order-service", "/api/v1", "Unhealthy", false, false, null, null, null)
+            new Backend("b1", "User Service", "User backend", "http://localhost:9001", "user-service", "/api/v1", "Healthy", true, false, null, null, null, null, null, null),
+            new Backend("b2", "Order Service", "Order backend", "http://localhost:9002", "order-service", "/api/v1", "Unhealthy", false, false, null, null, null, null, null, null)
         );
         grid.setItems(demo);
         add(grid);
+
+        add(new H2("Upstreams"));
+        Grid<UpstreamRuntimeStatus> upstreamGrid = new Grid<>(UpstreamRuntimeStatus.class, false);
+        upstreamGrid.addColumn(UpstreamRuntimeStatus::getBackendId).setHeader("Backend ID");
+        upstreamGrid.addColumn(UpstreamRuntimeStatus::getUpstreamId).setHeader("Upstream ID");
+        upstreamGrid.addColumn(u -> u.getHost() + ":" + u.getPort()).setHeader("Address");
+        upstreamGrid.addComponentColumn(this::upstreamHealthIndicator).setHeader("Health Status");
+        upstreamGrid.addComponentColumn(this::circuitStateIndicator).setHeader("Circuit");
+        upstreamGrid.addColumn(UpstreamRuntimeStatus::getCircuitOpenings).setHeader("Circuit Openings");
+        upstreamGrid.addColumn(UpstreamRuntimeStatus::getInFlight).setHeader("In Flight");
+        upstreamGrid.setItems(gatewayStatusService.findUpstreams());
+        add(upstreamGrid);
+    }
+
+    private Span upstreamHealthIndicator(UpstreamRuntimeStatus upstream) {
+        Span status = new Span();
+        if (upstream.isEjected()) {
+            status.setText("Ejected");
+            status.getStyle().set("color", "orange");
+        } else if (upstream.getHealth() == UpstreamHealthStatus.HEALTHY) {
+            status.setText("Healthy");
+            status.getStyle().set("color", "green");
+        } else if (upstream.getHealth() == UpstreamHealthStatus.UNHEALTHY) {
+            status.setText("Unhealthy");
+            status.getStyle().set("color", "red");
+        } else {
+            status.setText(upstream.getHealth() != null ? upstream.getHealth().name() : "Unknown");
+            status.getStyle().set("color", "gray");
+        }
+        return status;
+    }
+
+    private Span circuitStateIndicator(UpstreamRuntimeStatus upstream) {
+        Span state = new Span();
+        String circuitState = upstream.getCircuitState() != null ? upstream.getCircuitState() : "UNKNOWN";
+        switch (circuitState) {
+            case "CLOSED" -> {
+                state.setText("Closed");
+                state.getStyle().set("color", "green");
+            }
+            case "HALF_OPEN" -> {
+                state.setText("Half-open");
+                state.getStyle().set("color", "orange");
+            }
+            case "OPEN" -> {
+                state.setText("Open");
+                state.getStyle().set("color", "red");
+            }
+            default -> {
+                state.setText("Unknown");
+                state.getStyle().set("color", "gray");
+            }
+        }
+        return state;
     }
 
     private Span healthStatusIndicator(Backend backend) {
@@ -372,7 +372,7 @@ public class SettingsView extends VerticalLayout {
 
     IntegerField refreshAheadFactorField = new IntegerField("Refresh Ahead Factor (%)");
     refreshAheadFactorField.setValue(75);
-    refreshAheadFactorField.setHelperText("Refresh cache entry when this % of TTL remains");
+    refreshAheadFactorField.setHelperText("Refresh cache entry once this % of its TTL has elapsed");
 
     form.add(enableCacheMetricsField, evictionBatchSizeField, refreshAheadFactorField);
 
@@ -4,6 +4,7 @@ import jakarta.persistence.*;
 import lombok.*;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 @Entity
@@ -31,6 +32,20 @@ public class Backend {
   @Embedded
   private HealthCheckConfig healthCheck;
 
+  private String loadBalancing;
+
+  @ElementCollection
+  @CollectionTable(name = "backend_load_balancing_parameters", joinColumns = @JoinColumn(name = "backend_id"))
+  @MapKeyColumn(name = "parameter_key")
+  @Column(name = "parameter_value")
+  private Map<String, String> loadBalancingParameters;
+
+  @ElementCollection
+  @CollectionTable(name = "backend_metadata", joinColumns = @JoinColumn(name = "backend_id"))
+  @MapKeyColumn(name = "metadata_key")
+  @Column(name = "metadata_value")
+  private Map<String, String> metadata;
+
   @OneToMany(mappedBy = "backend", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
   @ToString.Exclude
   private List<Service> services;
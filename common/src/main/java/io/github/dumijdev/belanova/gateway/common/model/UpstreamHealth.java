@@ -0,0 +1,23 @@
+package io.github.dumijdev.belanova.gateway.common.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * Health of a single upstream as last decided by the gateway's health checks.
+ * Kept in its own cache, keyed by upstream id, so that a status change does not
+ * rewrite the owning {@link Backend}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UpstreamHealth implements Serializable {
+  private UpstreamHealthStatus status;
+  private int consecutiveSuccesses;
+  private int consecutiveFailures;
+  private long lastLatencyMillis;
+  private long lastChangedAt;
+}
@@ -0,0 +1,24 @@
+package io.github.dumijdev.belanova.gateway.common.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Live state of an upstream as seen by one gateway node, as served by the
+ * gateway's status API.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UpstreamRuntimeStatus {
+  private String backendId;
+  private String upstreamId;
+  private String host;
+  private int port;
+  private UpstreamHealthStatus health;
+  private boolean ejected;
+  private String circuitState;
+  private long circuitOpenings;
+  private int inFlight;
+}
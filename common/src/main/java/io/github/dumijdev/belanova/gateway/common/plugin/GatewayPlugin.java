@@ -1,21 +1,95 @@
 package io.github.dumijdev.belanova.gateway.common.plugin;
 
-import jakarta.servlet.http.HttpServletRequest;
-import jakarta.servlet.http.HttpServletResponse;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
 
+/**
+ * A plugin run by the gateway on the requests of the routes it applies to.
+ * <p>
+ * A plugin declares the {@link PluginPhase}s it takes part in and implements
+ * the matching methods; the others are never called. The two pre-phases may
+ * return a stage that completes later, e.g. after a remote lookup. The
+ * gateway serves requests on virtual threads, so waiting for it does not
+ * hold a platform thread. Plugins that answer synchronously should return
+ * {@link PluginResult#completed()}, which costs nothing.
+ * <p>
+ * Per-route settings come from the metadata of the route's backend and
+ * service, the service's entries overriding the backend's. A plugin parses
+ * them once in {@link #configure} and reads the result back with
+ * {@link PluginContext#config(Class)}, so nothing is parsed per request.
+ */
 public interface GatewayPlugin {
     String getName();
     int getOrder();
     boolean isEnabled();
 
     /**
-     * Processa a requisição no contexto do Spring MVC
-     * @param request HttpServletRequest
-     * @param response HttpServletResponse
-     * @return true se o processamento deve continuar, false para interromper
+     * @return the phases the plugin runs in
      */
-    boolean apply(HttpServletRequest request, HttpServletResponse response);
+    Set<PluginPhase> phases();
+
+    /**
+     * Whether the plugin has anything to do on a route, decided once when the
+     * route's plugin chain is compiled.
+     * @param metadata metadata of the route's backend and service, may be null
+     */
+    default boolean appliesTo(Map<String, String> metadata) {
+        return true;
+    }
+
+    /**
+     * Whether the route's settings explicitly ask for the plugin, which then
+     * runs on the route even if its {@code plugins} metadata leaves it out.
+     * Guard plugins enabled by a setting of their own return {@code true}
+     * for it, so an unrelated plugin list cannot switch them off.
+     * @param metadata metadata of the route's backend and service, never null
+     */
+    default boolean requiredBy(Map<String, String> metadata) {
+        return false;
+    }
+
+    /**
+     * Turns the route's settings into the plugin's typed configuration. Called
+     * when the route's plugin chain is compiled, i.e. on startup and whenever
+     * the metadata of the route changes, never while serving a request.
+     * @param metadata metadata of the route's backend and service, never null
+     * @return the configuration handed to the plugin on the route's requests, may be null
+     * @throws IllegalArgumentException if the settings are invalid; the route
+     *     then answers {@code 503} until they are fixed
+     */
+    default Object configure(String routeId, Map<String, String> metadata) {
+        return null;
+    }
+
+    /**
+     * Runs before an upstream is chosen.
+     * @return {@link PluginResult#STOP} once the plugin has answered the request itself
+     */
+    default CompletionStage<PluginResult> onPreRoute(PluginContext context) {
+        return PluginResult.CONTINUE.completed();
+    }
+
+    /**
+     * Runs after an upstream was chosen, before the request is sent to it.
+     * @return {@link PluginResult#STOP} once the plugin has answered the request itself
+     */
+    default CompletionStage<PluginResult> onPreUpstream(PluginContext context) {
+        return PluginResult.CONTINUE.completed();
+    }
+
+    /**
+     * Runs once the upstream answered, before its response is written.
+     */
+    default void onPostResponse(PluginContext context) {
+    }
+
+    /**
+     * Runs when a plugin or the upstream call failed; the failure is
+     * {@link PluginContext#error()} and is handled by the gateway afterwards.
+     */
+    default void onError(PluginContext context) {
+    }
 
     Map<String, Object> getConfiguration();
-}
\ No newline at end of file
+}
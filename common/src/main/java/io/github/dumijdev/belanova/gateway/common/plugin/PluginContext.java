@@ -0,0 +1,220 @@
+package io.github.dumijdev.belanova.gateway.common.plugin;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * State of one proxied request shared by the plugins of its route.
+ * <p>
+ * Plugins exchange values through typed {@link Key}s, which index an array
+ * instead of a map of request attributes. Contexts are pooled by the gateway
+ * and reused once the request completes, so plugins must not keep a reference
+ * to one beyond the request, nor to anything they read from it.
+ */
+public final class PluginContext {
+
+    /** Request attribute under which the gateway keeps the context of a request. */
+    public static final String ATTRIBUTE = PluginContext.class.getName();
+
+    /** Id of the authenticated consumer, set by authentication plugins. */
+    public static final Key<String> CONSUMER_ID = Key.of("consumer-id", String.class);
+
+    private Object[] values = new Object[Math.max(8, Key.COUNT.get())];
+    private final Map<String, String> upstreamHeaders = new LinkedHashMap<>();
+
+    private HttpServletRequest request;
+    private HttpServletResponse response;
+    private String routeId;
+    private Map<String, String> metadata;
+    private long startNanos;
+    private URI upstream;
+    private int status;
+    private Map<String, List<String>> responseHeaders;
+    private Throwable error;
+    private Object config;
+
+    /**
+     * Binds the context to a new request. Called by the gateway only.
+     */
+    public void start(String routeId, Map<String, String> metadata,
+                      HttpServletRequest request, HttpServletResponse response) {
+        this.routeId = routeId;
+        this.metadata = metadata != null ? metadata : Map.of();
+        this.request = request;
+        this.response = response;
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Clears everything the request left behind. Called by the gateway only.
+     */
+    public void clear() {
+        Arrays.fill(values, null);
+        upstreamHeaders.clear();
+        request = null;
+        response = null;
+        routeId = null;
+        metadata = null;
+        upstream = null;
+        status = 0;
+        responseHeaders = null;
+        error = null;
+        config = null;
+    }
+
+    public HttpServletRequest request() {
+        return request;
+    }
+
+    public HttpServletResponse response() {
+        return response;
+    }
+
+    public String routeId() {
+        return routeId;
+    }
+
+    /**
+     * @return the metadata of the route's backend and service
+     */
+    public Map<String, String> metadata() {
+        return metadata;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} at which the gateway started on the request
+     */
+    public long startNanos() {
+        return startNanos;
+    }
+
+    /**
+     * @return the upstream the request is sent to, from {@link PluginPhase#PRE_UPSTREAM} on
+     */
+    public URI upstream() {
+        return upstream;
+    }
+
+    public void upstream(URI upstream) {
+        this.upstream = upstream;
+    }
+
+    /**
+     * @return the upstream's status in {@link PluginPhase#POST_RESPONSE}, otherwise 0
+     */
+    public int status() {
+        return status;
+    }
+
+    /**
+     * @return the upstream's response headers in {@link PluginPhase#POST_RESPONSE}, which
+     *     may be changed there; otherwise {@code null}
+     */
+    public Map<String, List<String>> responseHeaders() {
+        return responseHeaders;
+    }
+
+    public void response(int status, Map<String, List<String>> responseHeaders) {
+        this.status = status;
+        this.responseHeaders = responseHeaders;
+    }
+
+    /**
+     * @return the failure in {@link PluginPhase#ON_ERROR}, otherwise {@code null}
+     */
+    public Throwable error() {
+        return error;
+    }
+
+    public void error(Throwable error) {
+        this.error = error;
+    }
+
+    /**
+     * @return the configuration {@link GatewayPlugin#configure compiled} for the running
+     *     plugin on this route, or {@code null} if it has none
+     * @throws ClassCastException if it is not of the given type
+     */
+    public <T> T config(Class<T> type) {
+        return type.cast(config);
+    }
+
+    /**
+     * Sets the configuration of the plugin about to run. Called by the gateway only.
+     */
+    public void bindConfig(Object config) {
+        this.config = config;
+    }
+
+    /**
+     * Adds a header to the request sent to the upstream, replacing any header of the same name.
+     */
+    public void addUpstreamHeader(String name, String value) {
+        upstreamHeaders.put(name, value);
+    }
+
+    public Map<String, String> upstreamHeaders() {
+        return upstreamHeaders;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(Key<T> key) {
+        return key.index < values.length ? (T) values[key.index] : null;
+    }
+
+    public <T> void put(Key<T> key, T value) {
+        if (key.index >= values.length) {
+            values = Arrays.copyOf(values, Math.max(key.index + 1, values.length * 2));
+        }
+        values[key.index] = value;
+    }
+
+    public void remove(Key<?> key) {
+        if (key.index < values.length) {
+            values[key.index] = null;
+        }
+    }
+
+    /**
+     * Typed name of a value plugins share through the context. Keys are meant
+     * to be constants; each one takes a slot in every context.
+     */
+    public static final class Key<T> {
+
+        private static final AtomicInteger COUNT = new AtomicInteger();
+
+        private final String name;
+        private final Class<T> type;
+        private final int index;
+
+        private Key(String name, Class<T> type) {
+            this.name = name;
+            this.type = type;
+            this.index = COUNT.getAndIncrement();
+        }
+
+        public static <T> Key<T> of(String name, Class<T> type) {
+            return new Key<>(name, type);
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public Class<T> type() {
+            return type;
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + type.getSimpleName() + ")";
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package io.github.dumijdev.belanova.gateway.common.plugin;
+
+/**
+ * Points of a proxied request at which plugins run, in request order.
+ */
+public enum PluginPhase {
+
+    /**
+     * The route is known but no upstream has been chosen yet. Plugins may stop
+     * the request here, e.g. to reject unauthenticated calls.
+     */
+    PRE_ROUTE,
+
+    /**
+     * An upstream has been chosen and the request is about to be proxied.
+     * Plugins may still stop it, or add headers for the upstream.
+     */
+    PRE_UPSTREAM,
+
+    /**
+     * The upstream answered; status and headers can be read and changed, the
+     * body has not been written yet.
+     */
+    POST_RESPONSE,
+
+    /**
+     * A plugin or the upstream call failed.
+     */
+    ON_ERROR
+}
@@ -0,0 +1,25 @@
+package io.github.dumijdev.belanova.gateway.common.plugin;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Outcome of a plugin in one of the request phases.
+ */
+public enum PluginResult {
+
+    /** Go on with the next plugin and, after the last one, with the request. */
+    CONTINUE,
+
+    /** The plugin has answered the request through the servlet response. */
+    STOP;
+
+    private final CompletableFuture<PluginResult> completed = CompletableFuture.completedFuture(this);
+
+    /**
+     * @return an already completed stage of this result, shared by all callers
+     */
+    public CompletionStage<PluginResult> completed() {
+        return completed;
+    }
+}
@@ -1,5 +1,16 @@
 package io.github.dumidev.belanova.gateway.gateway.config;
 
+import io.github.dumidev.belanova.gateway.gateway.plugin.PluginChainFilters;
+import io.github.dumidev.belanova.gateway.gateway.plugin.cache.ResponseCachePlugin;
+import io.github.dumidev.belanova.gateway.gateway.resilience.ConcurrencyLimitFilters;
+import io.github.dumidev.belanova.gateway.gateway.resilience.HedgingFilters;
+import io.github.dumidev.belanova.gateway.gateway.resilience.RetryFilters;
+import io.github.dumidev.belanova.gateway.gateway.routing.CompiledRouterFunction;
+import io.github.dumidev.belanova.gateway.gateway.routing.HttpMethodMask;
+import io.github.dumidev.belanova.gateway.gateway.routing.RouteTarget;
+import io.github.dumidev.belanova.gateway.gateway.routing.RouteTrie;
+import io.github.dumidev.belanova.gateway.gateway.routing.SwappableRouterFunction;
+import io.github.dumidev.belanova.gateway.gateway.service.BackendSnapshot;
 import io.github.dumidev.belanova.gateway.gateway.service.CacheService;
 import io.github.dumijdev.belanova.gateway.common.model.Backend;
 import io.github.dumijdev.belanova.gateway.common.model.Service;
@@ -9,10 +20,15 @@ import org.springframework.cloud.gateway.server.mvc.handler.HandlerFunctions;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
+import org.springframework.web.servlet.function.HandlerFilterFunction;
+import org.springframework.web.servlet.function.HandlerFunction;
 import org.springframework.web.servlet.function.RequestPredicate;
 import org.springframework.web.servlet.function.RouterFunction;
 import org.springframework.web.servlet.function.ServerResponse;
 
+import java.util.HashSet;
+import java.util.Set;
+
 import static org.springframework.cloud.gateway.server.mvc.filter.BeforeFilterFunctions.rewritePath;
 import static org.springframework.cloud.gateway.server.mvc.predicate.GatewayRequestPredicates.method;
 import static org.springframework.cloud.gateway.server.mvc.predicate.GatewayRequestPredicates.path;
@@ -22,28 +38,54 @@ import static org.springframework.cloud.gateway.server.mvc.predicate.GatewayRequ
 public class DynamicRouteLocator {
 
   private final CacheService cacheService;
+  private final PluginChainFilters pluginChains;
+  private final ConcurrencyLimitFilters concurrencyLimitFilters;
+  private final RetryFilters retryFilters;
+  private final HedgingFilters hedgingFilters;
+  private final ResponseCachePlugin responseCache;
 
-  public DynamicRouteLocator(CacheService cacheService) {
+  public DynamicRouteLocator(CacheService cacheService,
+                             PluginChainFilters pluginChains,
+                             ConcurrencyLimitFilters concurrencyLimitFilters,
+                             RetryFilters retryFilters,
+                             HedgingFilters hedgingFilters,
+                             ResponseCachePlugin responseCache) {
     this.cacheService = cacheService;
+    this.pluginChains = pluginChains;
+    this.concurrencyLimitFilters = concurrencyLimitFilters;
+    this.retryFilters = retryFilters;
+    this.hedgingFilters = hedgingFilters;
+    this.responseCache = responseCache;
   }
 
   @Bean
-  public RouterFunction<ServerResponse> dynamicRoutes() {
-    return cacheService.getBackends()
-        .stream()
-        .filter(Backend::isEnabled)
-        .flatMap(backend -> backend.getServices().stream())
-        .filter(Service::isEnabled)
-        .map(service -> buildRoute(service.getBackend(), service))
-        .reduce(RouterFunction::and)
-        .orElse(null);
+  public SwappableRouterFunction dynamicRoutes() {
+    return new SwappableRouterFunction(compile(cacheService.getSnapshot()));
   }
 
-  private RouterFunction<ServerResponse> buildRoute(Backend backend, Service service) {
-    String uri = backend.isUseServiceDiscovery()
-        ? "lb://" + backend.getServiceId()
-        : backend.getBaseUrl();
+  public RouterFunction<ServerResponse> compile(BackendSnapshot snapshot) {
+    RouteTrie.Builder<RouterFunction<ServerResponse>> routes = RouteTrie.builder();
+    Set<String> routeIds = new HashSet<>();
+    for (Backend backend : snapshot.backends()) {
+      if (!backend.isEnabled() || backend.getServices() == null) continue;
+
+      for (Service service : backend.getServices()) {
+        if (!service.isEnabled()) continue;
 
+        routes.add(service.getPath(), HttpMethodMask.of(service.getMethods()), buildRoute(backend, service));
+        routeIds.add(RouteTarget.routeId(backend, service));
+      }
+    }
+    // Per-route state kept across rebuilds goes with its route
+    pluginChains.retainAll(routeIds);
+    concurrencyLimitFilters.retainAll(routeIds);
+    hedgingFilters.retainAll(routeIds);
+
+    RouteTrie<RouterFunction<ServerResponse>> trie = routes.build();
+    return trie.size() > 0 ? new CompiledRouterFunction(trie) : SwappableRouterFunction.NO_ROUTES;
+  }
+
+  private RouterFunction<ServerResponse> buildRoute(Backend backend, Service service) {
     RequestPredicate predicate = path(service.getPath());
     if (service.getMethods() != null && !service.getMethods().isEmpty()) {
       var httpMethods = service.getMethods().stream().map(String::toUpperCase)
@@ -51,12 +93,51 @@ public class DynamicRouteLocator {
       predicate = predicate.and(method(httpMethods));
     }
 
-    return GatewayRouterFunctions.route(backend.getId() + "-" + service.getId())
-        .route(predicate, HandlerFunctions.http(uri))
+    String routeId = RouteTarget.routeId(backend, service);
+    var route = GatewayRouterFunctions.route(routeId)
+        .route(predicate, handlerFor(backend))
         .before(rewritePath(service.getPath(),
             backend.getGeneralPath() != null && !backend.getGeneralPath().isBlank()
                 ? backend.getGeneralPath() + service.getPath()
-                : service.getPath()))
-        .build();
+                : service.getPath()));
+
+    // Added last so that they wrap the proxy call only and every attempt reuses the rewritten request.
+    // Plugins see every request, cache hits skip the attempts altogether, the concurrency limit
+    // counts a request once however many attempts it takes, and a retry covers the hedged pair as a whole.
+    HandlerFilterFunction<ServerResponse, ServerResponse> plugins = pluginChains.forRoute(routeId, backend, service);
+    if (plugins != null) {
+      route = route.filter(plugins);
+    }
+    HandlerFilterFunction<ServerResponse, ServerResponse> cache = responseCache.forRoute(routeId, service);
+    if (cache != null) {
+      route = route.filter(cache);
+    }
+    HandlerFilterFunction<ServerResponse, ServerResponse> concurrencyLimit =
+        concurrencyLimitFilters.forRoute(routeId, service);
+    if (concurrencyLimit != null) {
+      route = route.filter(concurrencyLimit);
+    }
+    HandlerFilterFunction<ServerResponse, ServerResponse> retry = retryFilters.forRoute(routeId, service);
+    if (retry != null) {
+      route = route.filter(retry);
+    }
+    HandlerFilterFunction<ServerResponse, ServerResponse> hedge = hedgingFilters.forRoute(routeId, service);
+    if (hedge != null) {
+      route = route.filter(hedge);
+    }
+    return route.build();
+  }
+
+  private HandlerFunction<ServerResponse> handlerFor(Backend backend) {
+    // With upstreams the target URL is chosen per request by LoadBalancingInterceptor,
+    // so the handler must not overwrite it with a fixed URI.
+    if (backend.getUpstreams() != null && !backend.getUpstreams().isEmpty()) {
+      return HandlerFunctions.http();
+    }
+
+    String uri = backend.isUseServiceDiscovery()
+        ? "lb://" + backend.getServiceId()
+        : backend.getBaseUrl();
+    return HandlerFunctions.http(uri);
   }
 }
@@ -1,6 +1,7 @@
 package io.github.dumidev.belanova.gateway.gateway.config;
 
 import io.github.dumidev.belanova.gateway.gateway.loadbalancer.LoadBalancingInterceptor;
+import io.github.dumidev.belanova.gateway.gateway.plugin.PluginInterceptor;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
@@ -8,14 +9,18 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 @Configuration
 public class WebMvcConfig implements WebMvcConfigurer {
 
+  private final PluginInterceptor pluginInterceptor;
   private final LoadBalancingInterceptor loadBalancingInterceptor;
 
-  public WebMvcConfig(LoadBalancingInterceptor loadBalancingInterceptor) {
+  public WebMvcConfig(PluginInterceptor pluginInterceptor, LoadBalancingInterceptor loadBalancingInterceptor) {
+    this.pluginInterceptor = pluginInterceptor;
     this.loadBalancingInterceptor = loadBalancingInterceptor;
   }
 
   @Override
   public void addInterceptors(InterceptorRegistry registry) {
+    registry.addInterceptor(pluginInterceptor)
+        .order(pluginInterceptor.getOrder());
     registry.addInterceptor(loadBalancingInterceptor)
         .order(loadBalancingInterceptor.getOrder());
   }
@@ -0,0 +1,43 @@
+package io.github.dumidev.belanova.gateway.gateway.controller;
+
+import io.github.dumidev.belanova.gateway.gateway.loadbalancer.UpstreamPool;
+import io.github.dumidev.belanova.gateway.gateway.loadbalancer.UpstreamTarget;
+import io.github.dumidev.belanova.gateway.gateway.routing.RoutingIndex;
+import io.github.dumijdev.belanova.gateway.common.model.UpstreamRuntimeStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/gateway/status")
+public class UpstreamStatusController {
+  private final RoutingIndex routingIndex;
+
+  public UpstreamStatusController(RoutingIndex routingIndex) {
+    this.routingIndex = routingIndex;
+  }
+
+  @GetMapping("/upstreams")
+  public ResponseEntity<List<UpstreamRuntimeStatus>> getUpstreams() {
+    List<UpstreamRuntimeStatus> upstreams = new ArrayList<>();
+    for (UpstreamPool pool : routingIndex.pools()) {
+      for (UpstreamTarget target : pool.all()) {
+        upstreams.add(new UpstreamRuntimeStatus(
+            pool.backendId(),
+            target.id(),
+            target.upstream().getHost(),
+            target.upstream().getPort(),
+            target.status(),
+            target.stats().isEjected(),
+            target.circuitBreaker().state().name(),
+            target.circuitBreaker().openings(),
+            target.stats().inFlight()));
+      }
+    }
+    return ResponseEntity.ok(upstreams);
+  }
+}
@@ -1,89 +1,302 @@
 package io.github.dumidev.belanova.gateway.gateway.health;
 
 import io.github.dumijdev.belanova.gateway.common.model.Backend;
+import io.github.dumijdev.belanova.gateway.common.model.HealthCheckConfig;
 import io.github.dumijdev.belanova.gateway.common.model.Upstream;
 import io.github.dumijdev.belanova.gateway.common.model.UpstreamHealthStatus;
+import io.github.dumidev.belanova.gateway.gateway.service.BackendSnapshot;
+import io.github.dumidev.belanova.gateway.gateway.service.BackendSnapshotChangedEvent;
 import io.github.dumidev.belanova.gateway.gateway.service.CacheService;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.ignite.Ignite;
-import org.apache.ignite.IgniteCache;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
-import javax.cache.Cache;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Active health checks driven by each backend's {@link HealthCheckConfig}.
+ * <p>
+ * Every backend with a health path runs on its own schedule, offset by a random
+ * jitter so that backends do not probe in lockstep. A sweep fires one
+ * asynchronous request per enabled upstream and returns immediately; responses
+ * are handled on virtual threads, each with its own timeout, so a sweep takes
+ * about one timeout however many upstreams the backend has. The backend's
+ * timeout bounds connecting as well. Status changes follow the rise/fall
+ * thresholds of {@link UpstreamProbeState} and are written to the
+ * {@link UpstreamHealthStore}.
+ * <p>
+ * Unset config values fall back to the {@code belanova.gateway.health-check.*}
+ * defaults.
+ */
 @Service
 @Slf4j
 public class HealthCheckService {
 
   private final CacheService cacheService;
-  private final RestTemplate restTemplate;
-  private final Ignite ignite;
-  private final String backendCacheName;
+  private final UpstreamHealthStore healthStore;
+  private final long defaultIntervalMillis;
+  private final long defaultTimeoutMillis;
+  private final int defaultHealthyThreshold;
+  private final int defaultUnhealthyThreshold;
+  private final double jitter;
+
+  private final ScheduledExecutorService scheduler;
+  private final ExecutorService probeExecutor;
+  private final Map<Duration, HttpClient> httpClients = new ConcurrentHashMap<>();
+  private final Map<String, BackendChecker> checkers = new ConcurrentHashMap<>();
+  private final Map<String, UpstreamProbeState> states = new ConcurrentHashMap<>();
 
   public HealthCheckService(CacheService cacheService,
-                            RestTemplate restTemplate,
-                            Ignite ignite,
-                            @Value("${belanova.gateway.cache.ignite.backend-cache-name:backends}") String backendCacheName) {
+                            UpstreamHealthStore healthStore,
+                            @Value("${belanova.gateway.health-check.interval:10000}") long defaultIntervalMillis,
+                            @Value("${belanova.gateway.health-check.timeout:2000}") long defaultTimeoutMillis,
+                            @Value("${belanova.gateway.health-check.healthy-threshold:2}") int defaultHealthyThreshold,
+                            @Value("${belanova.gateway.health-check.unhealthy-threshold:2}") int defaultUnhealthyThreshold,
+                            @Value("${belanova.gateway.health-check.jitter:0.1}") double jitter) {
     this.cacheService = cacheService;
-    this.restTemplate = restTemplate;
-    this.ignite = ignite;
-    this.backendCacheName = backendCacheName;
+    this.healthStore = healthStore;
+    this.defaultIntervalMillis = defaultIntervalMillis;
+    this.defaultTimeoutMillis = defaultTimeoutMillis;
+    this.defaultHealthyThreshold = defaultHealthyThreshold;
+    this.defaultUnhealthyThreshold = defaultUnhealthyThreshold;
+    this.jitter = Math.max(0, Math.min(jitter, 0.5));
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "belanova-health-check");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.probeExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("belanova-health-probe-", 0).factory());
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onReady() {
+    // Snapshot events keep the schedules in sync; the periodic pass also covers the direct cache mode.
+    scheduler.scheduleWithFixedDelay(() -> reconcile(cacheService.getSnapshot()),
+        0, defaultIntervalMillis, TimeUnit.MILLISECONDS);
   }
 
-  @Scheduled(fixedRateString = "${belanova.gateway.health-check.interval:10000}")
-  public void performHealthChecks() {
-    List<Backend> backends = cacheService.getBackends();
+  @EventListener
+  public void onSnapshotChanged(BackendSnapshotChangedEvent event) {
+    scheduler.execute(() -> reconcile(event.snapshot()));
+  }
 
-    for (Backend backend : backends) {
-      if (!backend.isEnabled()) continue;
+  @PreDestroy
+  void stop() {
+    scheduler.shutdownNow();
+    httpClients.values().forEach(HttpClient::shutdownNow);
+    probeExecutor.shutdownNow();
+  }
 
-      for (Upstream upstream : backend.getUpstreams()) {
-        if (!upstream.isEnabled()) continue;
+  /**
+   * Starts, updates or stops the per-backend schedules to match the snapshot.
+   */
+  void reconcile(BackendSnapshot snapshot) {
+    Set<String> backendIds = new HashSet<>();
+    Set<String> upstreamIds = new HashSet<>();
+    for (Backend backend : snapshot.backends()) {
+      if (!isChecked(backend)) continue;
 
-        checkUpstreamHealth(backend, upstream);
+      backendIds.add(backend.getId());
+      backend.getUpstreams().forEach(upstream -> upstreamIds.add(upstream.getId()));
+      BackendChecker checker = checkers.get(backend.getId());
+      if (checker == null) {
+        checker = new BackendChecker(backend);
+        checkers.put(backend.getId(), checker);
+        checker.schedule((long) (ThreadLocalRandom.current().nextDouble() * intervalMillis(backend)));
+      } else {
+        checker.backend = backend;
       }
     }
+
+    checkers.entrySet().removeIf(entry -> {
+      if (backendIds.contains(entry.getKey())) return false;
+      entry.getValue().cancel();
+      return true;
+    });
+    states.keySet().retainAll(upstreamIds);
   }
 
-  private void checkUpstreamHealth(Backend backend, Upstream upstream) {
-    if (backend.getHealthCheck() == null || backend.getHealthCheck().getHealthPath() == null) {
-      return;
+  /**
+   * Probes every enabled upstream of the backend concurrently.
+   *
+   * @return a future completed once every probe has completed or timed out
+   */
+  CompletableFuture<Void> check(Backend backend) {
+    HealthCheckConfig config = backend.getHealthCheck();
+    Duration timeout = Duration.ofMillis(timeoutMillis(backend));
+    int healthyThreshold = config.getHealthyThreshold() > 0 ? config.getHealthyThreshold() : defaultHealthyThreshold;
+    int unhealthyThreshold = config.getUnhealthyThreshold() > 0 ? config.getUnhealthyThreshold() : defaultUnhealthyThreshold;
+
+    List<CompletableFuture<?>> probes = new ArrayList<>();
+    for (Upstream upstream : backend.getUpstreams()) {
+      if (!upstream.isEnabled()) continue;
+
+      UpstreamProbeState state = states.computeIfAbsent(upstream.getId(), id -> newProbeState(upstream));
+      if (!state.tryStartProbe()) {
+        // The previous probe is still waiting for its timeout.
+        continue;
+      }
+
+      HttpRequest request;
+      try {
+        request = HttpRequest.newBuilder(URI.create("http://" + upstream.getHost() + ":" + upstream.getPort() + config.getHealthPath()))
+            .timeout(timeout)
+            .GET()
+            .build();
+      } catch (IllegalArgumentException ex) {
+        log.warn("Invalid health check URL for upstream {}: {}", upstream.getId(), ex.getMessage());
+        onResult(backend, upstream, state, false, 0, healthyThreshold, unhealthyThreshold);
+        continue;
+      }
+
+      long startedAt = System.nanoTime();
+      probes.add(httpClient(timeout).sendAsync(request, HttpResponse.BodyHandlers.discarding())
+          .handle((response, error) -> {
+            if (error != null) {
+              log.debug("Health check for upstream {} failed: {}", upstream.getId(), error.toString());
+            }
+            boolean healthy = error == null && isExpected(config, response);
+            long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+            onResult(backend, upstream, state, healthy, latencyMillis, healthyThreshold, unhealthyThreshold);
+            return null;
+          }));
     }
+    return CompletableFuture.allOf(probes.toArray(CompletableFuture[]::new));
+  }
 
-    String url = "http://" + upstream.getHost() + ":" + upstream.getPort() + backend.getHealthCheck().getHealthPath();
+  /**
+   * @return the client connecting with the given timeout; backends with the same timeout share one
+   */
+  private HttpClient httpClient(Duration connectTimeout) {
+    return httpClients.computeIfAbsent(connectTimeout, timeout -> HttpClient.newBuilder()
+        .executor(probeExecutor)
+        .version(HttpClient.Version.HTTP_1_1)
+        .followRedirects(HttpClient.Redirect.NEVER)
+        .connectTimeout(timeout)
+        .build());
+  }
 
+  UpstreamHealthStatus status(String upstreamId) {
+    UpstreamProbeState state = states.get(upstreamId);
+    return state != null ? state.status() : UpstreamHealthStatus.UNKNOWN;
+  }
+
+  private UpstreamProbeState newProbeState(Upstream upstream) {
+    // Start from the cluster's view so a restarted gateway does not flap known upstreams.
+    UpstreamHealthStatus stored = healthStore.status(upstream.getId());
+    return new UpstreamProbeState(stored != null ? stored : upstream.getStatus());
+  }
+
+  private void onResult(Backend backend, Upstream upstream, UpstreamProbeState state, boolean healthy,
+                        long latencyMillis, int healthyThreshold, int unhealthyThreshold) {
+    UpstreamHealthStatus transition = state.record(healthy, healthyThreshold, unhealthyThreshold);
+    if (transition == null) {
+      return;
+    }
+    log.info("Upstream {} of backend {} is now {}", upstream.getId(), backend.getId(), transition);
     try {
-      org.springframework.http.ResponseEntity<Void> response =
-          restTemplate.getForEntity(url, Void.class);
+      healthStore.recordTransition(upstream.getId(), transition,
+          state.consecutiveSuccesses(), state.consecutiveFailures(), latencyMillis);
+    } catch (RuntimeException ex) {
+      log.warn("Could not store health status of upstream {}: {}", upstream.getId(), ex.getMessage());
+    }
+  }
 
-      if (backend.getHealthCheck().getExpectedStatusCodes() != null &&
-          backend.getHealthCheck().getExpectedStatusCodes().contains(response.getStatusCode().value())) {
-        updateUpstreamStatus(backend, upstream, UpstreamHealthStatus.HEALTHY);
-      } else {
-        updateUpstreamStatus(backend, upstream, UpstreamHealthStatus.UNHEALTHY);
+  private static boolean isExpected(HealthCheckConfig config, HttpResponse<?> response) {
+    List<Integer> expectedStatusCodes = config.getExpectedStatusCodes();
+    boolean statusMatches = expectedStatusCodes == null || expectedStatusCodes.isEmpty()
+        ? response.statusCode() >= 200 && response.statusCode() < 300
+        : expectedStatusCodes.contains(response.statusCode());
+    if (!statusMatches) {
+      return false;
+    }
+
+    Map<String, String> expectedHeaders = config.getExpectedHeaders();
+    if (expectedHeaders != null) {
+      for (Map.Entry<String, String> header : expectedHeaders.entrySet()) {
+        String actual = response.headers().firstValue(header.getKey()).orElse(null);
+        if (actual == null || header.getValue() != null && !header.getValue().equals(actual)) {
+          return false;
+        }
       }
-    } catch (Exception ex) {
-      log.warn("Health check for upstream {} failed: {}", upstream.getHost(), ex.getMessage());
-      updateUpstreamStatus(backend, upstream, UpstreamHealthStatus.UNHEALTHY);
     }
+    return true;
+  }
+
+  private static boolean isChecked(Backend backend) {
+    return backend.isEnabled()
+        && backend.getUpstreams() != null
+        && backend.getHealthCheck() != null
+        && backend.getHealthCheck().getHealthPath() != null;
+  }
+
+  private long intervalMillis(Backend backend) {
+    int seconds = backend.getHealthCheck().getIntervalSeconds();
+    return seconds > 0 ? TimeUnit.SECONDS.toMillis(seconds) : defaultIntervalMillis;
+  }
+
+  private long timeoutMillis(Backend backend) {
+    int seconds = backend.getHealthCheck().getTimeoutSeconds();
+    long timeout = seconds > 0 ? TimeUnit.SECONDS.toMillis(seconds) : defaultTimeoutMillis;
+    // A probe must finish before the next sweep of the same backend starts.
+    return Math.min(timeout, intervalMillis(backend));
   }
 
-  private void updateUpstreamStatus(Backend backend, Upstream upstream, UpstreamHealthStatus status) {
-    IgniteCache<String, Backend> cache = ignite.cache(backendCacheName);
-
-    // This is not atomic and can lead to race conditions.
-    // A better approach would be to use Ignite's EntryProcessor.
-    Backend currentBackend = cache.get(backend.getId());
-    if (currentBackend != null) {
-      currentBackend.getUpstreams().stream()
-          .filter(u -> u.getId().equals(upstream.getId()))
-          .findFirst()
-          .ifPresent(u -> u.setStatus(status));
-      cache.put(backend.getId(), currentBackend);
+  private final class BackendChecker implements Runnable {
+
+    private volatile Backend backend;
+    private volatile ScheduledFuture<?> next;
+    private volatile boolean cancelled;
+
+    private BackendChecker(Backend backend) {
+      this.backend = backend;
+    }
+
+    @Override
+    public void run() {
+      try {
+        check(backend);
+      } catch (RuntimeException ex) {
+        log.error("Health check sweep for backend {} failed", backend.getId(), ex);
+      } finally {
+        long interval = intervalMillis(backend);
+        double factor = 1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        schedule((long) (interval * factor));
+      }
+    }
+
+    private void schedule(long delayMillis) {
+      if (!cancelled && !scheduler.isShutdown()) {
+        next = scheduler.schedule(this, delayMillis, TimeUnit.MILLISECONDS);
+      }
+    }
+
+    private void cancel() {
+      cancelled = true;
+      ScheduledFuture<?> scheduled = next;
+      if (scheduled != null) {
+        scheduled.cancel(false);
+      }
     }
   }
 }
@@ -0,0 +1,9 @@
+package io.github.dumidev.belanova.gateway.gateway.health;
+
+import io.github.dumijdev.belanova.gateway.common.model.UpstreamHealthStatus;
+
+/**
+ * Published when the locally known health status of an upstream changes.
+ */
+public record UpstreamHealthChangedEvent(String upstreamId, UpstreamHealthStatus status) {
+}
@@ -0,0 +1,158 @@
+package io.github.dumidev.belanova.gateway.gateway.health;
+
+import io.github.dumijdev.belanova.gateway.common.model.UpstreamHealth;
+import io.github.dumijdev.belanova.gateway.common.model.UpstreamHealthStatus;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ignite.Ignite;
+import org.apache.ignite.IgniteCache;
+import org.apache.ignite.cache.CacheAtomicityMode;
+import org.apache.ignite.cache.CacheEntryProcessor;
+import org.apache.ignite.cache.CacheMode;
+import org.apache.ignite.cache.query.ContinuousQuery;
+import org.apache.ignite.cache.query.QueryCursor;
+import org.apache.ignite.cache.query.ScanQuery;
+import org.apache.ignite.configuration.CacheConfiguration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import javax.cache.Cache;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.processor.MutableEntry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Cluster-wide health state of upstreams, keyed by upstream id.
+ * <p>
+ * State lives in a dedicated replicated cache of compact {@link UpstreamHealth}
+ * entries. Writes go through an entry processor on the owning node and only
+ * happen when the status actually changes, so concurrent gateways cannot lose
+ * each other's updates and a probe never ships a whole backend across the
+ * cluster. Reads are served from a local view kept in sync by a continuous
+ * query; every change in that view is published as an
+ * {@link UpstreamHealthChangedEvent}.
+ */
+@Slf4j
+@Component
+public class UpstreamHealthStore {
+
+  private final Ignite ignite;
+  private final String healthCacheName;
+  private final ApplicationEventPublisher eventPublisher;
+  private final ExecutorService updateExecutor;
+  private final Map<String, UpstreamHealth> view = new ConcurrentHashMap<>();
+
+  private IgniteCache<String, UpstreamHealth> cache;
+  private QueryCursor<Cache.Entry<String, UpstreamHealth>> continuousQuery;
+
+  public UpstreamHealthStore(Ignite ignite,
+                             @Value("${belanova.gateway.cache.ignite.health-cache-name:upstream-health}") String healthCacheName,
+                             ApplicationEventPublisher eventPublisher) {
+    this.ignite = ignite;
+    this.healthCacheName = healthCacheName;
+    this.eventPublisher = eventPublisher;
+    this.updateExecutor = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "belanova-upstream-health");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @PostConstruct
+  void start() throws InterruptedException, ExecutionException {
+    cache = ignite.getOrCreateCache(new CacheConfiguration<String, UpstreamHealth>(healthCacheName)
+        .setCacheMode(CacheMode.REPLICATED)
+        .setAtomicityMode(CacheAtomicityMode.ATOMIC));
+
+    ContinuousQuery<String, UpstreamHealth> query = new ContinuousQuery<>();
+    query.setInitialQuery(new ScanQuery<>());
+    query.setLocalListener(events -> {
+      List<CacheEntryEvent<? extends String, ? extends UpstreamHealth>> batch = new ArrayList<>();
+      events.forEach(batch::add);
+      updateExecutor.execute(() -> batch.forEach(this::apply));
+    });
+    continuousQuery = cache.query(query);
+
+    updateExecutor.submit(() -> {
+      for (Cache.Entry<String, UpstreamHealth> entry : continuousQuery) {
+        view.put(entry.getKey(), entry.getValue());
+      }
+    }).get();
+    log.info("Upstream health view initialised with {} entries", view.size());
+  }
+
+  @PreDestroy
+  void stop() {
+    if (continuousQuery != null) {
+      continuousQuery.close();
+    }
+    updateExecutor.shutdownNow();
+  }
+
+  /**
+   * @return the last stored status of the upstream, or {@code null} if it was never checked
+   */
+  public UpstreamHealthStatus status(String upstreamId) {
+    UpstreamHealth health = view.get(upstreamId);
+    return health != null ? health.getStatus() : null;
+  }
+
+  public UpstreamHealth health(String upstreamId) {
+    return view.get(upstreamId);
+  }
+
+  /**
+   * Stores a status change decided by this gateway. A no-op if the cluster
+   * already has the upstream in that status.
+   */
+  public void recordTransition(String upstreamId, UpstreamHealthStatus status,
+                               int consecutiveSuccesses, int consecutiveFailures, long latencyMillis) {
+    cache.invoke(upstreamId, new TransitionProcessor(status, consecutiveSuccesses, consecutiveFailures, latencyMillis));
+  }
+
+  private void apply(CacheEntryEvent<? extends String, ? extends UpstreamHealth> event) {
+    String upstreamId = event.getKey();
+    UpstreamHealth previous = switch (event.getEventType()) {
+      case REMOVED, EXPIRED -> view.remove(upstreamId);
+      default -> view.put(upstreamId, event.getValue());
+    };
+    UpstreamHealthStatus status = status(upstreamId);
+    if (previous == null || previous.getStatus() != status) {
+      eventPublisher.publishEvent(new UpstreamHealthChangedEvent(upstreamId, status));
+    }
+  }
+
+  static final class TransitionProcessor implements CacheEntryProcessor<String, UpstreamHealth, Boolean> {
+
+    private final UpstreamHealthStatus status;
+    private final int consecutiveSuccesses;
+    private final int consecutiveFailures;
+    private final long latencyMillis;
+
+    TransitionProcessor(UpstreamHealthStatus status, int consecutiveSuccesses, int consecutiveFailures, long latencyMillis) {
+      this.status = status;
+      this.consecutiveSuccesses = consecutiveSuccesses;
+      this.consecutiveFailures = consecutiveFailures;
+      this.latencyMillis = latencyMillis;
+    }
+
+    @Override
+    public Boolean process(MutableEntry<String, UpstreamHealth> entry, Object... arguments) {
+      UpstreamHealth current = entry.getValue();
+      if (current != null && current.getStatus() == status) {
+        return false;
+      }
+      entry.setValue(new UpstreamHealth(status, consecutiveSuccesses, consecutiveFailures,
+          latencyMillis, System.currentTimeMillis()));
+      return true;
+    }
+  }
+}
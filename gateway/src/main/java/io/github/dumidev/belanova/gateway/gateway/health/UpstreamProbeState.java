@@ -0,0 +1,74 @@
+package io.github.dumidev.belanova.gateway.gateway.health;
+
+import io.github.dumijdev.belanova.gateway.common.model.UpstreamHealthStatus;
+
+/**
+ * Rise/fall bookkeeping for the active probes of one upstream.
+ * <p>
+ * An upstream becomes healthy after {@code healthyThreshold} consecutive
+ * successful probes and unhealthy after {@code unhealthyThreshold} consecutive
+ * failures. While its status is still unknown, the first result decides it.
+ */
+final class UpstreamProbeState {
+
+  private UpstreamHealthStatus status;
+  private int consecutiveSuccesses;
+  private int consecutiveFailures;
+  private boolean probing;
+
+  UpstreamProbeState(UpstreamHealthStatus initialStatus) {
+    this.status = initialStatus == UpstreamHealthStatus.HEALTHY || initialStatus == UpstreamHealthStatus.UNHEALTHY
+        ? initialStatus
+        : UpstreamHealthStatus.UNKNOWN;
+  }
+
+  /**
+   * Marks a probe as started, unless the previous one has not completed yet.
+   */
+  synchronized boolean tryStartProbe() {
+    if (probing) {
+      return false;
+    }
+    probing = true;
+    return true;
+  }
+
+  /**
+   * Records a probe result.
+   *
+   * @return the new status if this result changed it, otherwise {@code null}
+   */
+  synchronized UpstreamHealthStatus record(boolean success, int healthyThreshold, int unhealthyThreshold) {
+    probing = false;
+    if (success) {
+      consecutiveSuccesses++;
+      consecutiveFailures = 0;
+      if (status != UpstreamHealthStatus.HEALTHY
+          && (status == UpstreamHealthStatus.UNKNOWN || consecutiveSuccesses >= healthyThreshold)) {
+        status = UpstreamHealthStatus.HEALTHY;
+        return status;
+      }
+    } else {
+      consecutiveFailures++;
+      consecutiveSuccesses = 0;
+      if (status != UpstreamHealthStatus.UNHEALTHY
+          && (status == UpstreamHealthStatus.UNKNOWN || consecutiveFailures >= unhealthyThreshold)) {
+        status = UpstreamHealthStatus.UNHEALTHY;
+        return status;
+      }
+    }
+    return null;
+  }
+
+  synchronized UpstreamHealthStatus status() {
+    return status;
+  }
+
+  synchronized int consecutiveSuccesses() {
+    return consecutiveSuccesses;
+  }
+
+  synchronized int consecutiveFailures() {
+    return consecutiveFailures;
+  }
+}
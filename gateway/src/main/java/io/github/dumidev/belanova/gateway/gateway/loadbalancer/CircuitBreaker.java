@@ -0,0 +1,229 @@
+package io.github.dumidev.belanova.gateway.gateway.loadbalancer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free circuit breaker of one upstream.
+ * <p>
+ * Outcomes are counted in a sliding time window of {@link Config#buckets()}
+ * buckets, each packed into a single {@code long} (bucket epoch, failures,
+ * calls) and updated with CAS, so recording and checking never allocate. The
+ * circuit opens once the window holds at least {@code minimumCalls} calls and
+ * the failure rate reaches {@code failureRateThreshold}. After
+ * {@code openDuration} it lets {@code halfOpenCalls} trial calls through and
+ * closes again if all of them succeed; any failure reopens it.
+ * <p>
+ * Load balancers only {@link #isCallPermitted check} whether a circuit lets
+ * calls through; the permission is taken once the upstream is leased, so
+ * only calls that were actually sent hold one. Only calls that took a trial
+ * permit report to the half-open phase or hand their permit back.
+ */
+public final class CircuitBreaker {
+
+  public enum State { CLOSED, OPEN, HALF_OPEN }
+
+  public enum Permission { DENIED, CALL, TRIAL }
+
+  public record Config(int failureRateThreshold,
+                       int minimumCalls,
+                       long windowMillis,
+                       int buckets,
+                       long openDurationMillis,
+                       int halfOpenCalls) {
+
+    public static final Config DEFAULT = new Config(50, 20, 10_000, 10, 30_000, 5);
+  }
+
+  private static final int CLOSED = 0;
+  private static final int OPEN = 1;
+  private static final int HALF_OPEN = 2;
+  private static final State[] STATES = State.values();
+
+  // Bucket layout: 24 bits of epoch, 20 bits of failures, 20 bits of calls.
+  private static final int COUNT_BITS = 20;
+  private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+  private static final long EPOCH_MASK = (1L << 24) - 1;
+
+  private final Config config;
+  private final long bucketNanos;
+  private final long openNanos;
+  private final AtomicLongArray buckets;
+
+  private final AtomicInteger state = new AtomicInteger(CLOSED);
+  private final AtomicInteger halfOpenPermits = new AtomicInteger();
+  private final AtomicInteger halfOpenSuccesses = new AtomicInteger();
+  private volatile long openedAt;
+
+  private final AtomicLong openings = new AtomicLong();
+  private final AtomicLong halfOpenings = new AtomicLong();
+  private final AtomicLong closings = new AtomicLong();
+
+  CircuitBreaker(Config config) {
+    this.config = config;
+    this.bucketNanos = Math.max(1, TimeUnit.MILLISECONDS.toNanos(config.windowMillis()) / config.buckets());
+    this.openNanos = TimeUnit.MILLISECONDS.toNanos(config.openDurationMillis());
+    this.buckets = new AtomicLongArray(config.buckets());
+  }
+
+  public State state() {
+    return STATES[state.get()];
+  }
+
+  public long openings() {
+    return openings.get();
+  }
+
+  public long halfOpenings() {
+    return halfOpenings.get();
+  }
+
+  public long closings() {
+    return closings.get();
+  }
+
+  /**
+   * @return whether a call may be sent now, without taking a permission
+   */
+  public boolean isCallPermitted(long now) {
+    return switch (state.get()) {
+      case CLOSED -> true;
+      case OPEN -> now - openedAt >= openNanos;
+      default -> halfOpenPermits.get() < config.halfOpenCalls();
+    };
+  }
+
+  /**
+   * @return {@link Permission#TRIAL} if the call took one of the trial permits
+   *     of the half-open state, {@link Permission#CALL} if the circuit is closed
+   */
+  public Permission tryAcquirePermission(long now) {
+    int current = state.get();
+    if (current == CLOSED) {
+      return Permission.CALL;
+    }
+    if (current == OPEN) {
+      if (now - openedAt < openNanos) {
+        return Permission.DENIED;
+      }
+      if (state.compareAndSet(OPEN, HALF_OPEN)) {
+        halfOpenings.incrementAndGet();
+      }
+    }
+    int permits;
+    do {
+      permits = halfOpenPermits.get();
+      if (permits >= config.halfOpenCalls()) {
+        return Permission.DENIED;
+      }
+    } while (!halfOpenPermits.compareAndSet(permits, permits + 1));
+    return Permission.TRIAL;
+  }
+
+  /**
+   * Records the outcome of a call let through while the circuit was closed.
+   */
+  public void onResult(boolean success, long now) {
+    if (state.get() != CLOSED) {
+      // The circuit opened while the call was in flight
+      return;
+    }
+
+    record(success, now);
+    if (!success && isFailureRateExceeded(now)) {
+      open(CLOSED, now);
+    }
+  }
+
+  /**
+   * Records the outcome of a call that took a trial permit.
+   */
+  public void onTrialResult(boolean success, long now) {
+    if (state.get() != HALF_OPEN) {
+      return;
+    }
+    if (!success) {
+      open(HALF_OPEN, now);
+    } else if (halfOpenSuccesses.incrementAndGet() >= config.halfOpenCalls()
+        && state.compareAndSet(HALF_OPEN, CLOSED)) {
+      for (int i = 0; i < buckets.length(); i++) {
+        buckets.set(i, 0);
+      }
+      closings.incrementAndGet();
+    }
+  }
+
+  /**
+   * Hands back the trial permit of a call abandoned before it had an outcome.
+   */
+  public void onTrialIgnored() {
+    if (state.get() != HALF_OPEN) {
+      return;
+    }
+    int permits;
+    do {
+      permits = halfOpenPermits.get();
+      if (permits == 0) {
+        return;
+      }
+    } while (!halfOpenPermits.compareAndSet(permits, permits - 1));
+  }
+
+  private void open(int from, long now) {
+    openedAt = now;
+    if (state.compareAndSet(from, OPEN)) {
+      // Reset while no trial permit can be taken, so the next half-open phase starts clean
+      halfOpenPermits.set(0);
+      halfOpenSuccesses.set(0);
+      openings.incrementAndGet();
+    }
+  }
+
+  private void record(boolean success, long now) {
+    long epoch = (now / bucketNanos) & EPOCH_MASK;
+    int index = (int) (epoch % buckets.length());
+    long value;
+    long next;
+    do {
+      value = buckets.get(index);
+      long failures = 0;
+      long calls = 0;
+      if (epochOf(value) == epoch) {
+        failures = failuresOf(value);
+        calls = callsOf(value);
+      }
+      if (calls < COUNT_MASK) calls++;
+      if (!success && failures < COUNT_MASK) failures++;
+      next = epoch << (2 * COUNT_BITS) | failures << COUNT_BITS | calls;
+    } while (!buckets.compareAndSet(index, value, next));
+  }
+
+  private boolean isFailureRateExceeded(long now) {
+    long epoch = (now / bucketNanos) & EPOCH_MASK;
+    long failures = 0;
+    long calls = 0;
+    for (int i = 0; i < buckets.length(); i++) {
+      long value = buckets.get(i);
+      long age = (epoch - epochOf(value)) & EPOCH_MASK;
+      if (age < buckets.length()) {
+        failures += failuresOf(value);
+        calls += callsOf(value);
+      }
+    }
+    return calls >= config.minimumCalls() && failures * 100 >= calls * config.failureRateThreshold();
+  }
+
+  private static long epochOf(long value) {
+    return value >>> (2 * COUNT_BITS);
+  }
+
+  private static long failuresOf(long value) {
+    return (value >>> COUNT_BITS) & COUNT_MASK;
+  }
+
+  private static long callsOf(long value) {
+    return value & COUNT_MASK;
+  }
+}
@@ -0,0 +1,109 @@
+package io.github.dumidev.belanova.gateway.gateway.loadbalancer;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.util.Locale;
+
+/**
+ * Consistent hashing over a {@link MaglevTable}: when an upstream joins or
+ * leaves, only about 1/N of the keys are remapped, so upstream-local caches
+ * stay warm. The table is rebuilt only when the set of healthy upstreams
+ * changes.
+ * <p>
+ * The hash key is the client IP by default (first {@code X-Forwarded-For}
+ * entry, then the remote address), or a header, cookie or the request path.
+ * Requests without the configured header or cookie fall back to the client IP.
+ * The {@code key} and {@code key-name} come from the backend's load balancing
+ * parameters.
+ */
+public class ConsistentHashLoadBalancer implements LoadBalancer {
+
+  public enum HashKey { IP, HEADER, COOKIE, PATH }
+
+  private final HashKey hashKey;
+  private final String keyName;
+
+  // Replaced when the backend's healthy upstreams change.
+  private volatile Ring ring;
+
+  public ConsistentHashLoadBalancer(String hashKey, String keyName) {
+    this.hashKey = HashKey.valueOf(hashKey.toUpperCase(Locale.ROOT));
+    this.keyName = keyName;
+    if ((this.hashKey == HashKey.HEADER || this.hashKey == HashKey.COOKIE) && keyName.isBlank()) {
+      throw new IllegalArgumentException("key-name is required for hash key " + hashKey);
+    }
+  }
+
+  @Override
+  public UpstreamTarget select(UpstreamPool pool, HttpServletRequest request) {
+    UpstreamTarget[] healthyUpstreams = pool.healthy();
+    if (healthyUpstreams.length == 0) {
+      return null;
+    }
+
+    Ring current = ring;
+    if (current == null || current.source != healthyUpstreams) {
+      current = Ring.of(healthyUpstreams, current);
+      ring = current;
+    }
+    // When the owner's circuit is open, fall through to the next upstream rather than a random one
+    return LoadBalancer.permitted(healthyUpstreams, current.table.memberFor(keyHash(request)));
+  }
+
+  private long keyHash(HttpServletRequest request) {
+    switch (hashKey) {
+      case HEADER -> {
+        String value = request.getHeader(keyName);
+        if (value != null) return MaglevTable.hash(value, 0, value.length());
+      }
+      case COOKIE -> {
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+          for (Cookie cookie : cookies) {
+            if (keyName.equals(cookie.getName()) && cookie.getValue() != null) {
+              return MaglevTable.hash(cookie.getValue(), 0, cookie.getValue().length());
+            }
+          }
+        }
+      }
+      case PATH -> {
+        String path = request.getRequestURI();
+        return MaglevTable.hash(path, 0, path.length());
+      }
+      default -> {
+      }
+    }
+    return clientIpHash(request);
+  }
+
+  private static long clientIpHash(HttpServletRequest request) {
+    String forwardedFor = request.getHeader("X-Forwarded-For");
+    if (forwardedFor != null) {
+      int end = forwardedFor.indexOf(',');
+      if (end < 0) end = forwardedFor.length();
+      int start = 0;
+      while (start < end && forwardedFor.charAt(start) == ' ') start++;
+      while (end > start && forwardedFor.charAt(end - 1) == ' ') end--;
+      if (end > start) {
+        return MaglevTable.hash(forwardedFor, start, end);
+      }
+    }
+    String remoteAddr = request.getRemoteAddr() != null ? request.getRemoteAddr() : "127.0.0.1";
+    return MaglevTable.hash(remoteAddr, 0, remoteAddr.length());
+  }
+
+  private record Ring(UpstreamTarget[] source, MaglevTable table) {
+
+    static Ring of(UpstreamTarget[] source, Ring previous) {
+      String[] members = new String[source.length];
+      for (int i = 0; i < source.length; i++) {
+        members[i] = source[i].id();
+      }
+      MaglevTable table = previous != null && previous.table.hasMembers(members)
+          ? previous.table
+          : MaglevTable.build(members);
+      return new Ring(source, table);
+    }
+  }
+}
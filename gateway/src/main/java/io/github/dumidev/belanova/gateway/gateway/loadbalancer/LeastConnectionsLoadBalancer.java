@@ -1,39 +1,60 @@
 package io.github.dumidev.belanova.gateway.gateway.loadbalancer;
 
-import io.github.dumijdev.belanova.gateway.common.model.Upstream;
-import io.github.dumijdev.belanova.gateway.common.model.UpstreamHealthStatus;
 import jakarta.servlet.http.HttpServletRequest;
-import org.springframework.stereotype.Component;
 
-import java.util.Comparator;
-import java.util.List;
-import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ThreadLocalRandom;
 
-@Component("leastConnectionsLoadBalancer")
+/**
+ * Picks the upstream with the fewest in-flight requests, as tracked by
+ * {@link UpstreamLease}s opened and closed by {@link LoadBalancingInterceptor}.
+ * <p>
+ * With the {@code power-of-two-choices} parameter set it compares two random upstreams
+ * instead of scanning all of them, which keeps selection O(1) for large pools
+ * and avoids every gateway thread herding onto the same least-loaded upstream.
+ */
 public class LeastConnectionsLoadBalancer implements LoadBalancer {
-  private final ConcurrentHashMap<String, AtomicInteger> connectionCounts = new ConcurrentHashMap<>();
+
+  private final boolean powerOfTwoChoices;
+
+  public LeastConnectionsLoadBalancer(boolean powerOfTwoChoices) {
+    this.powerOfTwoChoices = powerOfTwoChoices;
+  }
 
   @Override
-  public Optional<Upstream> select(List<Upstream> upstreams, HttpServletRequest exchange) {
-    List<Upstream> healthyUpstreams = upstreams.stream()
-        .filter(u -> u.isEnabled() && u.getStatus() == UpstreamHealthStatus.HEALTHY)
-        .toList();
-    if (healthyUpstreams.isEmpty()) {
-      return Optional.empty();
+  public UpstreamTarget select(UpstreamPool pool, HttpServletRequest exchange) {
+    UpstreamTarget[] healthyUpstreams = pool.healthy();
+    if (healthyUpstreams.length == 0) {
+      return null;
+    }
+    if (healthyUpstreams.length == 1) {
+      return LoadBalancer.permitted(healthyUpstreams, 0);
     }
-    Upstream selected = healthyUpstreams.stream()
-        .min(Comparator.comparingInt(u -> connectionCounts.computeIfAbsent(u.getId(), k -> new AtomicInteger(0)).get()))
-        .orElse(healthyUpstreams.getFirst());
-    connectionCounts.computeIfAbsent(selected.getId(), k -> new AtomicInteger(0)).incrementAndGet();
-    return Optional.of(selected);
+    UpstreamTarget chosen = powerOfTwoChoices ? twoRandomChoices(healthyUpstreams) : leastLoaded(healthyUpstreams);
+    return LoadBalancer.permitted(chosen, healthyUpstreams);
   }
 
-  public void releaseConnection(String upstreamId) {
-    connectionCounts.computeIfPresent(upstreamId, (k, v) -> {
-      v.decrementAndGet();
-      return v;
-    });
+  private static UpstreamTarget leastLoaded(UpstreamTarget[] upstreams) {
+    UpstreamTarget selected = upstreams[0];
+    int selectedInFlight = selected.stats().inFlight();
+    for (int i = 1; i < upstreams.length; i++) {
+      int inFlight = upstreams[i].stats().inFlight();
+      if (inFlight < selectedInFlight) {
+        selected = upstreams[i];
+        selectedInFlight = inFlight;
+      }
+    }
+    return selected;
+  }
+
+  private static UpstreamTarget twoRandomChoices(UpstreamTarget[] upstreams) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int first = random.nextInt(upstreams.length);
+    int second = random.nextInt(upstreams.length - 1);
+    if (second >= first) {
+      second++;
+    }
+    UpstreamTarget a = upstreams[first];
+    UpstreamTarget b = upstreams[second];
+    return b.stats().inFlight() < a.stats().inFlight() ? b : a;
   }
 }
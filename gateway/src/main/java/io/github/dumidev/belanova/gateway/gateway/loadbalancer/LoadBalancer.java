@@ -1,11 +1,48 @@
 package io.github.dumidev.belanova.gateway.gateway.loadbalancer;
 
-import io.github.dumijdev.belanova.gateway.common.model.Upstream;
 import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.lang.Nullable;
 
-import java.util.List;
-import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
 
 public interface LoadBalancer {
-    Optional<Upstream> select(List<Upstream> upstreams, HttpServletRequest request);
+
+    /**
+     * Picks one of the pool's healthy upstreams whose circuit breaker lets
+     * calls through. The permission itself is taken by the caller once it
+     * leases the upstream. Called on every proxied request, so implementations
+     * must not allocate.
+     *
+     * @return the selected upstream, or {@code null} if none is available
+     */
+    @Nullable
+    UpstreamTarget select(UpstreamPool pool, HttpServletRequest request);
+
+    /**
+     * Returns {@code upstreams[from]} if its circuit is not open, otherwise the
+     * next upstream in array order whose circuit is not open.
+     */
+    @Nullable
+    static UpstreamTarget permitted(UpstreamTarget[] upstreams, int from) {
+        long now = System.nanoTime();
+        for (int i = 0; i < upstreams.length; i++) {
+            UpstreamTarget target = upstreams[(from + i) % upstreams.length];
+            if (target.circuitBreaker().isCallPermitted(now)) {
+                return target;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns {@code chosen} if its circuit is not open, otherwise another
+     * upstream whose circuit is not open, starting from a random position.
+     */
+    @Nullable
+    static UpstreamTarget permitted(UpstreamTarget chosen, UpstreamTarget[] upstreams) {
+        if (chosen.circuitBreaker().isCallPermitted(System.nanoTime())) {
+            return chosen;
+        }
+        return permitted(upstreams, ThreadLocalRandom.current().nextInt(upstreams.length));
+    }
 }
@@ -0,0 +1,124 @@
+package io.github.dumidev.belanova.gateway.gateway.loadbalancer;
+
+import io.github.dumijdev.belanova.gateway.common.model.Backend;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves the {@link LoadBalancer} of each backend from its
+ * {@link Backend#getLoadBalancing() strategy name} and parameters.
+ * <p>
+ * Every backend gets its own instance, so round robin counters, schedules and
+ * hash tables are never shared between unrelated backends. The instance is
+ * kept across configuration changes and only replaced when the backend's
+ * strategy or parameters change, which makes strategy changes apply on the
+ * next routing index rebuild without a restart.
+ * <p>
+ * Strategy names are matched ignoring case, dashes and underscores. Backends
+ * without a strategy, or with one that cannot be built, use
+ * {@code belanova.gateway.load-balancer.default-strategy}.
+ */
+@Slf4j
+@Component
+public class LoadBalancerRegistry {
+
+  public static final String ROUND_ROBIN = "roundRobin";
+  public static final String RANDOM = "random";
+  public static final String LEAST_CONNECTIONS = "leastConnections";
+  public static final String WEIGHTED_ROUND_ROBIN = "weightedRoundRobin";
+  public static final String CONSISTENT_HASH = "consistentHash";
+  public static final String PEAK_EWMA = "peakEwma";
+  /** Alias for consistent hashing on the client IP. */
+  public static final String IP_HASH = "ipHash";
+
+  private final String defaultStrategy;
+  private final ConcurrentHashMap<String, Resolved> balancers = new ConcurrentHashMap<>();
+
+  public LoadBalancerRegistry(
+      @Value("${belanova.gateway.load-balancer.default-strategy:" + ROUND_ROBIN + "}") String defaultStrategy) {
+    create(defaultStrategy, Map.of());
+    this.defaultStrategy = defaultStrategy;
+  }
+
+  /**
+   * Returns the balancer for the backend, reusing the previous instance when
+   * its strategy and parameters are unchanged.
+   */
+  public LoadBalancer resolve(Backend backend) {
+    String strategy = backend.getLoadBalancing() == null || backend.getLoadBalancing().isBlank()
+        ? defaultStrategy
+        : backend.getLoadBalancing().trim();
+    Map<String, String> parameters = parameters(backend.getLoadBalancingParameters());
+
+    Resolved current = balancers.get(backend.getId());
+    if (current != null && current.strategy().equals(strategy) && current.parameters().equals(parameters)) {
+      return current.loadBalancer();
+    }
+
+    LoadBalancer loadBalancer;
+    try {
+      loadBalancer = create(strategy, parameters);
+    } catch (IllegalArgumentException e) {
+      log.warn("Backend {}: {}; falling back to {}", backend.getId(), e.getMessage(), defaultStrategy);
+      loadBalancer = create(defaultStrategy, Map.of());
+    }
+    balancers.put(backend.getId(), new Resolved(strategy, parameters, loadBalancer));
+    if (current != null) {
+      log.info("Backend {} now uses load balancing strategy {} {}", backend.getId(), strategy, parameters);
+    }
+    return loadBalancer;
+  }
+
+  /**
+   * Drops the balancers of backends that are no longer configured.
+   */
+  public void retainAll(Set<String> backendIds) {
+    balancers.keySet().retainAll(backendIds);
+  }
+
+  static LoadBalancer create(String strategy, Map<String, String> parameters) {
+    return switch (normalize(strategy)) {
+      case "roundrobin" -> new RoundRobinLoadBalancer();
+      case "random" -> new RandomLoadBalancer();
+      case "leastconnections" -> new LeastConnectionsLoadBalancer(
+          Boolean.parseBoolean(parameters.getOrDefault("power-of-two-choices", "false")));
+      case "weightedroundrobin" -> new WeightedRoundRobinLoadBalancer();
+      case "consistenthash" -> new ConsistentHashLoadBalancer(
+          parameters.getOrDefault("key", "ip"), parameters.getOrDefault("key-name", ""));
+      case "iphash" -> new ConsistentHashLoadBalancer("ip", "");
+      case "peakewma" -> new PeakEwmaLoadBalancer();
+      default -> throw new IllegalArgumentException("unknown load balancing strategy '" + strategy + "'");
+    };
+  }
+
+  private static String normalize(String strategy) {
+    StringBuilder normalized = new StringBuilder(strategy.length());
+    for (int i = 0; i < strategy.length(); i++) {
+      char c = strategy.charAt(i);
+      if (c != '-' && c != '_' && !Character.isWhitespace(c)) {
+        normalized.append(Character.toLowerCase(c));
+      }
+    }
+    return normalized.toString();
+  }
+
+  private static Map<String, String> parameters(Map<String, String> parameters) {
+    if (parameters == null || parameters.isEmpty()) {
+      return Map.of();
+    }
+    Map<String, String> copy = new HashMap<>();
+    parameters.forEach((key, value) -> {
+      if (key != null && value != null) copy.put(key, value);
+    });
+    return Map.copyOf(copy);
+  }
+
+  private record Resolved(String strategy, Map<String, String> parameters, LoadBalancer loadBalancer) {
+  }
+}
@@ -1,8 +1,8 @@
 package io.github.dumidev.belanova.gateway.gateway.loadbalancer;
 
-import io.github.dumidev.belanova.gateway.gateway.service.CacheService;
-import io.github.dumijdev.belanova.gateway.common.model.Backend;
-import io.github.dumijdev.belanova.gateway.common.model.Upstream;
+import io.github.dumidev.belanova.gateway.gateway.routing.RouteTarget;
+import io.github.dumidev.belanova.gateway.gateway.routing.RoutingIndex;
+import jakarta.servlet.AsyncContext;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
@@ -10,25 +10,25 @@ import org.springframework.cloud.gateway.server.mvc.common.MvcUtils;
 import org.springframework.cloud.gateway.server.mvc.config.GatewayMvcProperties;
 import org.springframework.core.Ordered;
 import org.springframework.stereotype.Component;
-import org.springframework.web.servlet.HandlerInterceptor;
-
-import java.net.URI;
-import java.util.Optional;
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
 
 @Component
 @Slf4j
-public class LoadBalancingInterceptor implements HandlerInterceptor, Ordered {
+public class LoadBalancingInterceptor implements AsyncHandlerInterceptor, Ordered {
+
+  public static final String UPSTREAM_LEASE_ATTR = LoadBalancingInterceptor.class.getName() + ".lease";
 
-  private final CacheService cacheService;
-  private final LoadBalancer loadBalancer;
+  private final RoutingIndex routingIndex;
   private final GatewayMvcProperties gatewayProperties;
+  private final UpstreamResultListener resultListener;
 
-  public LoadBalancingInterceptor(CacheService cacheService,
-                                  LoadBalancer loadBalancer,
-                                  GatewayMvcProperties gatewayProperties) {
-    this.cacheService = cacheService;
-    this.loadBalancer = loadBalancer;
+  public LoadBalancingInterceptor(RoutingIndex routingIndex,
+                                  GatewayMvcProperties gatewayProperties,
+                                  OutlierDetector outlierDetector) {
+    this.routingIndex = routingIndex;
     this.gatewayProperties = gatewayProperties;
+    this.resultListener = outlierDetector;
   }
 
   @Override
@@ -36,47 +36,131 @@ public class LoadBalancingInterceptor implements HandlerInterceptor, Ordered {
     // Obter a rota atual do atributo da requisição
     String routeId = (String) request.getAttribute(MvcUtils.GATEWAY_ROUTE_ID_ATTR);
 
-    if (routeId == null) {
+    // Async and error dispatches reuse the upstream chosen by the initial dispatch
+    if (routeId == null || request.getAttribute(UPSTREAM_LEASE_ATTR) != null) {
       return true;
     }
 
-    Optional<Backend> backendOpt = cacheService.getBackends().stream()
-        .filter(backend -> backend.getServices() != null &&
-            backend.getServices().stream()
-                .anyMatch(s -> (backend.getId() + "-" + s.getId()).equals(routeId)))
-        .findFirst();
+    RouteTarget route = routingIndex.lookup(routeId);
 
-    if (backendOpt.isEmpty()) {
+    if (route == null || !route.hasUpstreams()) {
       return true;
     }
 
-    Backend backend = backendOpt.get();
+    UpstreamLease lease = lease(route, request, null);
+
+    if (lease == null) {
+      log.error("No healthy upstreams available for backend {}", route.backend().getId());
+      response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      return false;
+    }
+
+    // Armazenar o URI de destino como um atributo da requisição
+    request.setAttribute(MvcUtils.GATEWAY_REQUEST_URL_ATTR, lease.target().uri());
+    request.setAttribute(UPSTREAM_LEASE_ATTR, lease);
+    log.debug("Load balancing to {}", lease.target());
+
+    return true;
+  }
 
-    if (backend.getUpstreams() == null || backend.getUpstreams().isEmpty()) {
+  /**
+   * Moves a load balanced request to another upstream after a failed attempt.
+   * The current lease is released with the attempt's outcome, so the failure
+   * counts towards outlier detection and the circuit breaker.
+   *
+   * @return {@code false} if no upstream is available for another attempt,
+   *     {@code true} otherwise, including for requests that are not load balanced
+   */
+  public boolean reselect(HttpServletRequest request, int status, Throwable error) {
+    if (!(request.getAttribute(UPSTREAM_LEASE_ATTR) instanceof UpstreamLease lease)) {
       return true;
     }
+    lease.release(status, error);
 
-    Optional<Upstream> selectedUpstream =
-        loadBalancer.select(backend.getUpstreams(), request);
+    RouteTarget route = routingIndex.lookup((String) request.getAttribute(MvcUtils.GATEWAY_ROUTE_ID_ATTR));
+    if (route == null || !route.hasUpstreams()) {
+      return false;
+    }
 
-    if (selectedUpstream.isEmpty()) {
-      log.error("No healthy upstreams available for backend {}", backend.getId());
-      response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    UpstreamLease next = lease(route, request, lease.target());
+    if (next == null) {
       return false;
     }
 
-    String target = "http://" + selectedUpstream.get().getHost() + ":" + selectedUpstream.get().getPort();
-    URI newUri = URI.create(target);
+    request.setAttribute(MvcUtils.GATEWAY_REQUEST_URL_ATTR, next.target().uri());
+    request.setAttribute(UPSTREAM_LEASE_ATTR, next);
+    log.debug("Retrying on {}", next.target());
+    return true;
+  }
 
-    // Armazenar o URI de destino como um atributo da requisição
-    request.setAttribute(MvcUtils.GATEWAY_REQUEST_URL_ATTR, newUri);
-    log.debug("Load balancing to {}", newUri);
+  /**
+   * Leases a second upstream for a hedged attempt of a load balanced request.
+   * The request keeps its current lease; the caller owns the returned one.
+   *
+   * @return the lease, or {@code null} if the request is not load balanced or
+   *     no upstream other than the current one is available
+   */
+  public UpstreamLease hedge(HttpServletRequest request) {
+    if (!(request.getAttribute(UPSTREAM_LEASE_ATTR) instanceof UpstreamLease lease)) {
+      return null;
+    }
+    RouteTarget route = routingIndex.lookup((String) request.getAttribute(MvcUtils.GATEWAY_ROUTE_ID_ATTR));
+    if (route == null || !route.hasUpstreams()) {
+      return null;
+    }
+    UpstreamLease hedged = lease(route, request, lease.target());
+    if (hedged != null && hedged.target() == lease.target()) {
+      // No second upstream to hedge on
+      hedged.cancel();
+      return null;
+    }
+    return hedged;
+  }
 
-    return true;
+  /**
+   * Leases an upstream picked by the route's balancer, taking the permission
+   * of its circuit breaker. Picks of {@code current} are passed over unless
+   * the balancer keeps making them, as are picks whose circuit ran out of
+   * trial permits since the balancer checked it.
+   *
+   * @return the lease, or {@code null} if no upstream is available
+   */
+  private UpstreamLease lease(RouteTarget route, HttpServletRequest request, UpstreamTarget current) {
+    for (int i = 0; i < 3; i++) {
+      UpstreamTarget target = route.loadBalancer().select(route.pool(), request);
+      if (target == null) {
+        return null;
+      }
+      if (target == current && i < 2) continue;
+
+      CircuitBreaker.Permission permission = target.circuitBreaker().tryAcquirePermission(System.nanoTime());
+      if (permission != CircuitBreaker.Permission.DENIED) {
+        return new UpstreamLease(route.pool(), target, permission == CircuitBreaker.Permission.TRIAL, resultListener);
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+    // afterCompletion is not called if the async request times out or fails without a dispatch
+    if (request.getAttribute(UPSTREAM_LEASE_ATTR) instanceof UpstreamLease lease && request.isAsyncStarted()) {
+      AsyncContext asyncContext = request.getAsyncContext();
+      asyncContext.addListener(lease);
+    }
+  }
+
+  @Override
+  public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+    if (request.getAttribute(UPSTREAM_LEASE_ATTR) instanceof UpstreamLease lease) {
+      // Exceptions resolved by an exception handler only show up as a request attribute
+      Throwable error = ex != null ? ex : (Throwable) request.getAttribute(DispatcherServlet.EXCEPTION_ATTRIBUTE);
+      lease.release(response.getStatus(), error);
+    }
   }
 
   @Override
   public int getOrder() {
     return 10101; // Mesma ordem do filtro original
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,95 @@
+package io.github.dumidev.belanova.gateway.gateway.loadbalancer;
+
+import java.util.Arrays;
+
+/**
+ * Maglev consistent-hashing lookup table (Eisenbud et al., NSDI 2016).
+ * <p>
+ * Every member fills the table following its own permutation of slots, so the
+ * table is balanced and, when a member leaves, mostly the slots it owned change
+ * hands. Lookups are a single array read.
+ */
+final class MaglevTable {
+
+  // Table sizes are primes well above the member count, as the paper recommends (M >= 100 * N).
+  private static final int[] SIZES = {251, 509, 1021, 2039, 4093, 8191, 16381, 32749, 65521, 131071};
+
+  private final String[] members;
+  private final int[] lookup;
+
+  private MaglevTable(String[] members, int[] lookup) {
+    this.members = members;
+    this.lookup = lookup;
+  }
+
+  static MaglevTable build(String[] members) {
+    if (members.length == 0) {
+      throw new IllegalArgumentException("A Maglev table needs at least one member");
+    }
+    int size = tableSize(members.length);
+    int[] lookup = new int[size];
+    Arrays.fill(lookup, -1);
+
+    int[] offsets = new int[members.length];
+    int[] skips = new int[members.length];
+    for (int i = 0; i < members.length; i++) {
+      long h1 = hash(members[i], 0, members[i].length());
+      long h2 = mix(h1 + 0x9E3779B97F4A7C15L);
+      offsets[i] = (int) Math.floorMod(h1, (long) size);
+      skips[i] = (int) Math.floorMod(h2, (long) size - 1) + 1;
+    }
+
+    int[] next = new int[members.length];
+    int filled = 0;
+    while (filled < size) {
+      for (int i = 0; i < members.length && filled < size; i++) {
+        int slot;
+        do {
+          slot = (int) ((offsets[i] + (long) next[i] * skips[i]) % size);
+          next[i]++;
+        } while (lookup[slot] >= 0);
+        lookup[slot] = i;
+        filled++;
+      }
+    }
+    return new MaglevTable(members, lookup);
+  }
+
+  /**
+   * @return the index of the member owning {@code keyHash}
+   */
+  int memberFor(long keyHash) {
+    return lookup[(int) Math.floorMod(keyHash, (long) lookup.length)];
+  }
+
+  boolean hasMembers(String[] candidates) {
+    return Arrays.equals(members, candidates);
+  }
+
+  /**
+   * 64-bit FNV-1a over {@code key[from, to)}, finished with a MurmurHash3 mix.
+   */
+  static long hash(CharSequence key, int from, int to) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = from; i < to; i++) {
+      hash ^= key.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    return mix(hash);
+  }
+
+  private static long mix(long z) {
+    z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+    z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+    return z ^ (z >>> 33);
+  }
+
+  private static int tableSize(int memberCount) {
+    for (int size : SIZES) {
+      if (size >= memberCount * 100L) {
+        return size;
+      }
+    }
+    return SIZES[SIZES.length - 1];
+  }
+}
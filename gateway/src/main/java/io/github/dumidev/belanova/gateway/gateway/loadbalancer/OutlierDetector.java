@@ -0,0 +1,232 @@
+package io.github.dumidev.belanova.gateway.gateway.loadbalancer;
+
+import io.github.dumidev.belanova.gateway.gateway.routing.RoutingIndex;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.net.http.HttpConnectTimeoutException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Passive health checking from live traffic.
+ * <p>
+ * Every proxied call reports its outcome through its {@link UpstreamLease}.
+ * An upstream is ejected after {@code consecutive-5xx} server errors or
+ * {@code consecutive-connect-failures} failed connections in a row, and the
+ * healthy arrays of its pools are recomputed on the spot, so balancers stop
+ * picking it on the very next request. Every {@code interval-ms} the mean
+ * latencies of each pool's upstreams over at least {@code min-latency-samples}
+ * calls are compared as well, and upstreams slower than {@code latency-factor}
+ * times the pool median are ejected too.
+ * <p>
+ * Ejections last {@code base-ejection-ms}, doubling for each repeated ejection
+ * up to {@code max-ejection-ms}; the count starts over once an upstream stayed
+ * in for {@code max-ejection-ms}. At most {@code max-ejection-percent} of a
+ * backend's upstreams are ejected at a time, and none while fewer than
+ * {@code min-available-percent} of them would be left available, counting
+ * those the health checks took out; a backend's last available upstream is
+ * never ejected.
+ */
+@Slf4j
+@Component
+public class OutlierDetector implements UpstreamResultListener {
+
+  private final RoutingIndex routingIndex;
+  private final MeterRegistry meterRegistry;
+  private final int consecutive5xx;
+  private final int consecutiveConnectFailures;
+  private final long baseEjectionMillis;
+  private final long maxEjectionMillis;
+  private final int maxEjectionPercent;
+  private final int minAvailablePercent;
+  private final double latencyFactor;
+  private final long minLatencyNanos;
+  private final int minLatencySamples;
+  private final ScheduledExecutorService scheduler;
+
+  private final Map<String, Ejection> ejections = new ConcurrentHashMap<>();
+
+  public OutlierDetector(RoutingIndex routingIndex,
+                         MeterRegistry meterRegistry,
+                         @Value("${belanova.gateway.outlier-detection.consecutive-5xx:5}") int consecutive5xx,
+                         @Value("${belanova.gateway.outlier-detection.consecutive-connect-failures:3}") int consecutiveConnectFailures,
+                         @Value("${belanova.gateway.outlier-detection.base-ejection-ms:30000}") long baseEjectionMillis,
+                         @Value("${belanova.gateway.outlier-detection.max-ejection-ms:300000}") long maxEjectionMillis,
+                         @Value("${belanova.gateway.outlier-detection.max-ejection-percent:50}") int maxEjectionPercent,
+                         @Value("${belanova.gateway.outlier-detection.min-available-percent:50}") int minAvailablePercent,
+                         @Value("${belanova.gateway.outlier-detection.interval-ms:1000}") long intervalMillis,
+                         @Value("${belanova.gateway.outlier-detection.latency-factor:3.0}") double latencyFactor,
+                         @Value("${belanova.gateway.outlier-detection.min-latency-ms:100}") long minLatencyMillis,
+                         @Value("${belanova.gateway.outlier-detection.min-latency-samples:20}") int minLatencySamples) {
+    this.routingIndex = routingIndex;
+    this.meterRegistry = meterRegistry;
+    this.consecutive5xx = consecutive5xx;
+    this.consecutiveConnectFailures = consecutiveConnectFailures;
+    this.baseEjectionMillis = baseEjectionMillis;
+    this.maxEjectionMillis = maxEjectionMillis;
+    this.maxEjectionPercent = maxEjectionPercent;
+    this.minAvailablePercent = minAvailablePercent;
+    this.latencyFactor = latencyFactor;
+    this.minLatencyNanos = TimeUnit.MILLISECONDS.toNanos(minLatencyMillis);
+    this.minLatencySamples = Math.max(1, minLatencySamples);
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "belanova-outlier-detection");
+      thread.setDaemon(true);
+      return thread;
+    });
+    if (intervalMillis > 0 && latencyFactor > 0) {
+      scheduler.scheduleWithFixedDelay(this::detectLatencyOutliers, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @PreDestroy
+  void stop() {
+    scheduler.shutdownNow();
+  }
+
+  @Override
+  public void onResult(UpstreamPool pool, UpstreamTarget target, int status, Throwable error, long latencyNanos) {
+    UpstreamStats stats = target.stats();
+    if (error != null && isConnectFailure(error)) {
+      if (stats.recordConnectFailure() >= consecutiveConnectFailures) {
+        eject(pool, target, "connect-failures");
+      }
+    } else if (status >= 500) {
+      if (stats.record5xx() >= consecutive5xx) {
+        eject(pool, target, "5xx");
+      }
+    } else if (status > 0) {
+      stats.recordSuccess();
+    }
+  }
+
+  /**
+   * Ejects the upstream unless it is already out, the backend already
+   * reached its ejection cap or too few of its upstreams would be left.
+   *
+   * @return whether the upstream was ejected
+   */
+  synchronized boolean eject(UpstreamPool pool, UpstreamTarget target, String reason) {
+    UpstreamStats stats = target.stats();
+    if (stats.isEjected()) {
+      return false;
+    }
+    int total = pool.all().length;
+    int allowed = total * maxEjectionPercent / 100;
+    if (pool.ejectedCount() >= allowed) {
+      log.debug("Not ejecting upstream {} ({}): backend {} already has {} ejected",
+          target.id(), reason, pool.backendId(), allowed);
+      return false;
+    }
+    UpstreamTarget[] available = pool.healthy();
+    int left = Arrays.asList(available).contains(target) ? available.length - 1 : available.length;
+    int minAvailable = Math.max(1, (total * minAvailablePercent + 99) / 100);
+    if (left < minAvailable) {
+      log.warn("Not ejecting upstream {} ({}): backend {} would be left with {} of {} upstreams available",
+          target.id(), reason, pool.backendId(), left, total);
+      return false;
+    }
+
+    long now = System.nanoTime();
+    Ejection previous = ejections.get(target.id());
+    int count = previous == null || now - previous.restoreAt > TimeUnit.MILLISECONDS.toNanos(maxEjectionMillis)
+        ? 1
+        : previous.count + 1;
+    long durationMillis = Math.min(maxEjectionMillis, baseEjectionMillis << Math.min(count - 1, 20));
+    Ejection ejection = new Ejection(count, now + TimeUnit.MILLISECONDS.toNanos(durationMillis));
+    ejections.put(target.id(), ejection);
+
+    stats.ejected(true);
+    refreshPools(pool, target);
+    scheduler.schedule(() -> restore(pool, target), durationMillis, TimeUnit.MILLISECONDS);
+    // Past that the count starts over anyway, so upstreams removed meanwhile are forgotten too
+    scheduler.schedule(() -> ejections.remove(target.id(), ejection),
+        durationMillis + maxEjectionMillis + 1, TimeUnit.MILLISECONDS);
+
+    meterRegistry.counter("belanova.gateway.outlier.ejections", "backend", pool.backendId(), "reason", reason)
+        .increment();
+    log.warn("Ejected upstream {} of backend {} for {} ms ({}, ejection #{})",
+        target.id(), pool.backendId(), durationMillis, reason, count);
+    return true;
+  }
+
+  private void restore(UpstreamPool pool, UpstreamTarget target) {
+    target.stats().resetFailures();
+    target.stats().ejected(false);
+    refreshPools(pool, target);
+    log.info("Upstream {} of backend {} is back from ejection", target.id(), pool.backendId());
+  }
+
+  private void refreshPools(UpstreamPool pool, UpstreamTarget target) {
+    // The pool the call went through may have been replaced by a rebuild meanwhile
+    boolean refreshed = false;
+    for (UpstreamPool current : routingIndex.pools(target.id())) {
+      current.refresh();
+      refreshed |= current == pool;
+    }
+    if (!refreshed) {
+      pool.refresh();
+    }
+  }
+
+  void detectLatencyOutliers() {
+    try {
+      for (UpstreamPool pool : routingIndex.pools()) {
+        UpstreamTarget[] healthy = pool.healthy();
+        if (healthy.length < 3) continue;
+
+        // Upstreams without enough calls yet keep their window and sit this pass out
+        double[] latencies = new double[healthy.length];
+        int sampled = 0;
+        for (int i = 0; i < healthy.length; i++) {
+          latencies[i] = healthy[i].stats().takeMeanLatency(minLatencySamples);
+          if (latencies[i] >= 0) sampled++;
+        }
+        if (sampled < 3) continue;
+
+        double[] sorted = Arrays.stream(latencies).filter(latency -> latency >= 0).sorted().toArray();
+        double median = sorted[sorted.length / 2];
+        if (median <= 0) continue;
+
+        for (int i = 0; i < healthy.length; i++) {
+          if (latencies[i] > minLatencyNanos && latencies[i] > median * latencyFactor) {
+            eject(pool, healthy[i], "latency");
+          }
+        }
+      }
+    } catch (RuntimeException ex) {
+      log.error("Latency outlier detection failed", ex);
+    }
+  }
+
+  private static boolean isConnectFailure(Throwable error) {
+    for (int depth = 0; error != null && depth < 10; depth++, error = error.getCause()) {
+      if (error instanceof ConnectException
+          || error instanceof NoRouteToHostException
+          || error instanceof UnknownHostException
+          || error instanceof HttpConnectTimeoutException) {
+        return true;
+      }
+      if (error instanceof SocketTimeoutException && error.getMessage() != null
+          && error.getMessage().startsWith("Connect timed out")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private record Ejection(int count, long restoreAt) {
+  }
+}
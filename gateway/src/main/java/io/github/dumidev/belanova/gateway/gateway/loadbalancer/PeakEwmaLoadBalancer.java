@@ -0,0 +1,59 @@
+package io.github.dumidev.belanova.gateway.gateway.loadbalancer;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Latency-aware balancing in the style of Finagle's peak-EWMA balancer.
+ * <p>
+ * The expected cost of an upstream is its decayed peak latency EWMA times
+ * {@code inFlight + 1}, both read from {@link UpstreamStats}. Two random
+ * upstreams are compared (power of two choices), so selection reads a handful
+ * of per-upstream fields and never contends across cores. Upstreams without
+ * samples are tried first, but only while they have nothing in flight.
+ */
+public class PeakEwmaLoadBalancer implements LoadBalancer {
+
+  // Cost of an upstream that has requests in flight but no latency sample yet.
+  private static final double PENALTY = Long.MAX_VALUE >> 16;
+
+  @Override
+  public UpstreamTarget select(UpstreamPool pool, HttpServletRequest request) {
+    UpstreamTarget[] healthyUpstreams = pool.healthy();
+    if (healthyUpstreams.length == 0) {
+      return null;
+    }
+    if (healthyUpstreams.length == 1) {
+      return LoadBalancer.permitted(healthyUpstreams, 0);
+    }
+
+    int first;
+    int second;
+    if (healthyUpstreams.length == 2) {
+      first = 0;
+      second = 1;
+    } else {
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      first = random.nextInt(healthyUpstreams.length);
+      second = random.nextInt(healthyUpstreams.length - 1);
+      if (second >= first) {
+        second++;
+      }
+    }
+
+    long now = System.nanoTime();
+    UpstreamTarget a = healthyUpstreams[first];
+    UpstreamTarget b = healthyUpstreams[second];
+    return LoadBalancer.permitted(cost(b.stats(), now) < cost(a.stats(), now) ? b : a, healthyUpstreams);
+  }
+
+  static double cost(UpstreamStats stats, long now) {
+    double latency = stats.latencyEwma(now);
+    int inFlight = stats.inFlight();
+    if (latency == 0 && inFlight > 0) {
+      return PENALTY + inFlight;
+    }
+    return latency * (inFlight + 1);
+  }
+}
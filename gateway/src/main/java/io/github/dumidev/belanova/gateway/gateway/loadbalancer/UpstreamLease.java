@@ -0,0 +1,106 @@
+package io.github.dumidev.belanova.gateway.gateway.loadbalancer;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Marks one request as in flight on its selected upstream until the request
+ * completes, fails or times out, then records its latency and reports the
+ * outcome to an {@link UpstreamResultListener}. Releasing is idempotent, so it
+ * can happen both from {@code afterCompletion} and from the async lifecycle.
+ * Cancelled calls only give back their in-flight slot, and their trial
+ * permit if they took one of a half-open circuit. Calls that failed with
+ * an error report status {@code 0}: whatever status the response carries was
+ * written by the gateway, not received from the upstream.
+ */
+public final class UpstreamLease implements AsyncListener {
+
+  private static final AtomicIntegerFieldUpdater<UpstreamLease> RELEASED =
+      AtomicIntegerFieldUpdater.newUpdater(UpstreamLease.class, "released");
+
+  private final UpstreamPool pool;
+  private final UpstreamTarget target;
+  private final UpstreamResultListener listener;
+  private final boolean trial;
+  private final long startNanos;
+  private volatile int released;
+
+  /**
+   * @param trial whether the call took a trial permit of the upstream's half-open circuit
+   */
+  UpstreamLease(UpstreamPool pool, UpstreamTarget target, boolean trial, UpstreamResultListener listener) {
+    this.pool = pool;
+    this.target = target;
+    this.trial = trial;
+    this.listener = listener;
+    this.startNanos = System.nanoTime();
+    target.stats().acquire();
+  }
+
+  public UpstreamTarget target() {
+    return target;
+  }
+
+  public long startNanos() {
+    return startNanos;
+  }
+
+  public void release(int status, Throwable error) {
+    if (RELEASED.compareAndSet(this, 0, 1)) {
+      long now = System.nanoTime();
+      long latency = now - startNanos;
+      target.stats().release();
+      target.stats().observe(latency, now);
+      boolean success = error == null && status < 500;
+      if (trial) {
+        target.circuitBreaker().onTrialResult(success, now);
+      } else {
+        target.circuitBreaker().onResult(success, now);
+      }
+      listener.onResult(pool, target, error == null ? status : 0, error, latency);
+    }
+  }
+
+  /**
+   * Releases the upstream without reporting an outcome, for calls abandoned
+   * by the gateway itself rather than failed by the upstream.
+   */
+  public void cancel() {
+    if (RELEASED.compareAndSet(this, 0, 1)) {
+      target.stats().release();
+      if (trial) {
+        target.circuitBreaker().onTrialIgnored();
+      }
+    }
+  }
+
+  @Override
+  public void onComplete(AsyncEvent event) {
+    release(status(event.getSuppliedResponse()), null);
+  }
+
+  @Override
+  public void onTimeout(AsyncEvent event) {
+    Throwable error = event.getThrowable();
+    release(HttpServletResponse.SC_GATEWAY_TIMEOUT, error != null ? error : new TimeoutException("Request timed out"));
+  }
+
+  @Override
+  public void onError(AsyncEvent event) {
+    release(status(event.getSuppliedResponse()), event.getThrowable());
+  }
+
+  @Override
+  public void onStartAsync(AsyncEvent event) {
+    event.getAsyncContext().addListener(this);
+  }
+
+  private static int status(ServletResponse response) {
+    return response instanceof HttpServletResponse http ? http.getStatus() : 0;
+  }
+}
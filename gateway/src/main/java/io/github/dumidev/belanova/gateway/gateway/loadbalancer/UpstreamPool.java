@@ -0,0 +1,129 @@
+package io.github.dumidev.belanova.gateway.gateway.loadbalancer;
+
+import io.github.dumijdev.belanova.gateway.common.model.Upstream;
+import io.github.dumijdev.belanova.gateway.common.model.UpstreamHealthStatus;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * The upstreams of one backend, with the subset eligible for traffic
+ * precomputed into an array.
+ * <p>
+ * {@link #healthy()} is recomputed by {@link #refresh()} only when health or
+ * configuration changes; load balancers index into it directly and must treat
+ * it as read-only.
+ */
+@Slf4j
+public final class UpstreamPool {
+
+  private static final UpstreamTarget[] NONE = new UpstreamTarget[0];
+
+  private final String backendId;
+  private final UpstreamTarget[] all;
+  private volatile UpstreamTarget[] healthy = NONE;
+
+  private UpstreamPool(String backendId, UpstreamTarget[] all) {
+    this.backendId = backendId;
+    this.all = all;
+    refresh();
+  }
+
+  public static UpstreamPool of(String backendId, List<Upstream> upstreams, UpstreamStatsRegistry statsRegistry) {
+    List<UpstreamTarget> targets = new ArrayList<>();
+    if (upstreams != null) {
+      for (Upstream upstream : upstreams) {
+        try {
+          targets.add(new UpstreamTarget(upstream, statsRegistry.statsFor(upstream.getId())));
+        } catch (IllegalArgumentException ex) {
+          log.warn("Ignoring upstream {} of backend {}: {}", upstream.getId(), backendId, ex.getMessage());
+        }
+      }
+    }
+    return new UpstreamPool(backendId, targets.toArray(NONE));
+  }
+
+  public String backendId() {
+    return backendId;
+  }
+
+  public UpstreamTarget[] all() {
+    return all;
+  }
+
+  public UpstreamTarget[] healthy() {
+    return healthy;
+  }
+
+  public boolean isEmpty() {
+    return all.length == 0;
+  }
+
+  /**
+   * Applies the health status of every upstream known to {@code statusLookup};
+   * upstreams it returns {@code null} for keep their current status.
+   */
+  public void applyHealth(Function<String, UpstreamHealthStatus> statusLookup) {
+    for (UpstreamTarget target : all) {
+      UpstreamHealthStatus status = statusLookup.apply(target.id());
+      if (status != null) {
+        target.status(status);
+      }
+    }
+    refresh();
+  }
+
+  /**
+   * Updates the health status of one upstream, recomputing {@link #healthy()}
+   * only if its availability changed. A {@code null} status reverts to the
+   * configured one.
+   */
+  public void updateHealth(String upstreamId, UpstreamHealthStatus status) {
+    boolean changed = false;
+    for (UpstreamTarget target : all) {
+      if (!target.id().equals(upstreamId)) continue;
+
+      UpstreamHealthStatus next = status != null ? status : target.upstream().getStatus();
+      changed |= isAvailable(target) != isAvailable(target, next);
+      target.status(next);
+    }
+    if (changed) {
+      refresh();
+    }
+  }
+
+  public void refresh() {
+    List<UpstreamTarget> available = new ArrayList<>(all.length);
+    for (UpstreamTarget target : all) {
+      if (isAvailable(target)) {
+        available.add(target);
+      }
+    }
+    healthy = available.toArray(NONE);
+  }
+
+  /**
+   * @return how many upstreams of this pool are currently ejected by outlier detection
+   */
+  public int ejectedCount() {
+    int ejected = 0;
+    for (UpstreamTarget target : all) {
+      if (target.stats().isEjected()) ejected++;
+    }
+    return ejected;
+  }
+
+  private static boolean isAvailable(UpstreamTarget target) {
+    return isAvailable(target, target.status());
+  }
+
+  private static boolean isAvailable(UpstreamTarget target, UpstreamHealthStatus status) {
+    Upstream upstream = target.upstream();
+    return upstream.isEnabled()
+        && upstream.getStatus() != UpstreamHealthStatus.DISABLED
+        && status == UpstreamHealthStatus.HEALTHY
+        && !target.stats().isEjected();
+  }
+}
@@ -0,0 +1,20 @@
+package io.github.dumidev.belanova.gateway.gateway.loadbalancer;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Receives the outcome of every proxied call once its {@link UpstreamLease}
+ * is released. Called on the request thread, so implementations must be cheap.
+ */
+public interface UpstreamResultListener {
+
+  UpstreamResultListener NONE = (pool, target, status, error, latencyNanos) -> {
+  };
+
+  /**
+   * @param status the status received from the upstream, or {@code 0} if none was,
+   *               such as when the call failed or timed out
+   * @param error  the failure that ended the call, if any
+   */
+  void onResult(UpstreamPool pool, UpstreamTarget target, int status, @Nullable Throwable error, long latencyNanos);
+}
@@ -0,0 +1,130 @@
+package io.github.dumidev.belanova.gateway.gateway.loadbalancer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live traffic counters of one upstream. Instances outlive configuration
+ * changes, so requests started against an old {@link UpstreamPool} are still
+ * accounted for after the pool is rebuilt.
+ * <p>
+ * Besides the in-flight count it keeps a peak-EWMA of response latency: a
+ * sample above the average replaces it immediately, lower samples decay it
+ * exponentially with time constant {@code decayNanos}. That favours
+ * balancing away from a slow upstream quickly, so outlier detection reads
+ * the plain mean latency of the calls since its last pass instead. All
+ * updates are lock-free and only contend on the same upstream.
+ * <p>
+ * The consecutive failure counters and the ejection flag belong to the
+ * {@link OutlierDetector}; the upstream's {@link CircuitBreaker} lives here too
+ * so that its state survives configuration changes.
+ */
+public final class UpstreamStats {
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicLong ewmaBits = new AtomicLong(Double.doubleToRawLongBits(0));
+  private final double decayNanos;
+  private volatile long lastObservedAt = System.nanoTime();
+  private final LongAdder latencySum = new LongAdder();
+  private final LongAdder latencyCount = new LongAdder();
+  private long meanFromSum;
+  private long meanFromCount;
+  private final AtomicInteger consecutive5xx = new AtomicInteger();
+  private final AtomicInteger consecutiveConnectFailures = new AtomicInteger();
+  private volatile boolean ejected;
+  private final CircuitBreaker circuitBreaker;
+
+  UpstreamStats(long decayNanos, CircuitBreaker.Config circuitBreakerConfig) {
+    this.decayNanos = decayNanos;
+    this.circuitBreaker = new CircuitBreaker(circuitBreakerConfig);
+  }
+
+  public int inFlight() {
+    return inFlight.get();
+  }
+
+  /**
+   * @return the latency EWMA in nanoseconds, decayed up to {@code now}
+   */
+  public double latencyEwma(long now) {
+    double ewma = Double.longBitsToDouble(ewmaBits.get());
+    long elapsed = Math.max(0, now - lastObservedAt);
+    return ewma * Math.exp(-elapsed / decayNanos);
+  }
+
+  /**
+   * Mean latency of the calls observed since the last mean taken, which
+   * starts a new window. Windows with fewer than {@code minSamples} calls
+   * are left to grow instead. Only called by the outlier detector's thread.
+   *
+   * @return the mean in nanoseconds, or {@code -1} if there were fewer than {@code minSamples} calls
+   */
+  double takeMeanLatency(int minSamples) {
+    long sum = latencySum.sum();
+    long count = latencyCount.sum();
+    long samples = count - meanFromCount;
+    if (samples <= 0 || samples < minSamples) {
+      return -1;
+    }
+    double mean = (double) (sum - meanFromSum) / samples;
+    meanFromSum = sum;
+    meanFromCount = count;
+    return mean;
+  }
+
+  public CircuitBreaker circuitBreaker() {
+    return circuitBreaker;
+  }
+
+  public boolean isEjected() {
+    return ejected;
+  }
+
+  void ejected(boolean ejected) {
+    this.ejected = ejected;
+  }
+
+  void recordSuccess() {
+    // Read first so that healthy traffic does not keep writing the shared cache line.
+    if (consecutive5xx.get() != 0) consecutive5xx.set(0);
+    if (consecutiveConnectFailures.get() != 0) consecutiveConnectFailures.set(0);
+  }
+
+  int record5xx() {
+    if (consecutiveConnectFailures.get() != 0) consecutiveConnectFailures.set(0);
+    return consecutive5xx.incrementAndGet();
+  }
+
+  int recordConnectFailure() {
+    return consecutiveConnectFailures.incrementAndGet();
+  }
+
+  void resetFailures() {
+    consecutive5xx.set(0);
+    consecutiveConnectFailures.set(0);
+  }
+
+  void acquire() {
+    inFlight.incrementAndGet();
+  }
+
+  void release() {
+    inFlight.decrementAndGet();
+  }
+
+  void observe(long latencyNanos, long now) {
+    long elapsed = Math.max(0, now - lastObservedAt);
+    double weight = Math.exp(-elapsed / decayNanos);
+    long current;
+    double next;
+    do {
+      current = ewmaBits.get();
+      double ewma = Double.longBitsToDouble(current);
+      next = latencyNanos > ewma ? latencyNanos : ewma * weight + latencyNanos * (1 - weight);
+    } while (!ewmaBits.compareAndSet(current, Double.doubleToRawLongBits(next)));
+    lastObservedAt = now;
+    latencySum.add(latencyNanos);
+    latencyCount.increment();
+  }
+}
@@ -0,0 +1,103 @@
+package io.github.dumidev.belanova.gateway.gateway.loadbalancer;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the {@link UpstreamStats} of every known upstream, keyed by upstream id.
+ * Only touched when pools are built; the request path reaches the stats
+ * through {@link UpstreamTarget#stats()}.
+ * <p>
+ * Also registers the circuit breaker meters of each upstream:
+ * {@code belanova.gateway.circuit.state} (0 closed, 1 open, 2 half-open) and
+ * {@code belanova.gateway.circuit.transitions}, tagged with the target state.
+ */
+@Component
+public class UpstreamStatsRegistry {
+
+  private final ConcurrentHashMap<String, UpstreamStats> stats = new ConcurrentHashMap<>();
+  private final Map<String, List<Meter>> meters = new ConcurrentHashMap<>();
+  private final long latencyDecayNanos;
+  private final CircuitBreaker.Config circuitBreakerConfig;
+  private final MeterRegistry meterRegistry;
+
+  public UpstreamStatsRegistry(long latencyDecayMillis) {
+    this(latencyDecayMillis, CircuitBreaker.Config.DEFAULT, null);
+  }
+
+  @Autowired
+  public UpstreamStatsRegistry(
+      @Value("${belanova.gateway.load-balancer.latency-decay-ms:10000}") long latencyDecayMillis,
+      @Value("${belanova.gateway.circuit-breaker.failure-rate-threshold:50}") int failureRateThreshold,
+      @Value("${belanova.gateway.circuit-breaker.minimum-calls:20}") int minimumCalls,
+      @Value("${belanova.gateway.circuit-breaker.window-ms:10000}") long windowMillis,
+      @Value("${belanova.gateway.circuit-breaker.buckets:10}") int buckets,
+      @Value("${belanova.gateway.circuit-breaker.open-ms:30000}") long openDurationMillis,
+      @Value("${belanova.gateway.circuit-breaker.half-open-calls:5}") int halfOpenCalls,
+      MeterRegistry meterRegistry) {
+    this(latencyDecayMillis,
+        new CircuitBreaker.Config(failureRateThreshold, minimumCalls, windowMillis, buckets, openDurationMillis, halfOpenCalls),
+        meterRegistry);
+  }
+
+  UpstreamStatsRegistry(long latencyDecayMillis, CircuitBreaker.Config circuitBreakerConfig, MeterRegistry meterRegistry) {
+    this.latencyDecayNanos = TimeUnit.MILLISECONDS.toNanos(latencyDecayMillis);
+    this.circuitBreakerConfig = circuitBreakerConfig;
+    this.meterRegistry = meterRegistry;
+  }
+
+  public UpstreamStats statsFor(String upstreamId) {
+    return stats.computeIfAbsent(upstreamId, id -> {
+      UpstreamStats created = new UpstreamStats(latencyDecayNanos, circuitBreakerConfig);
+      registerMeters(id, created.circuitBreaker());
+      return created;
+    });
+  }
+
+  /**
+   * Drops the stats of upstreams that are no longer configured.
+   */
+  public void retainAll(Set<String> upstreamIds) {
+    stats.keySet().retainAll(upstreamIds);
+    meters.entrySet().removeIf(entry -> {
+      if (upstreamIds.contains(entry.getKey())) return false;
+      entry.getValue().forEach(meterRegistry::remove);
+      return true;
+    });
+  }
+
+  private void registerMeters(String upstreamId, CircuitBreaker circuitBreaker) {
+    if (meterRegistry == null) {
+      return;
+    }
+    Tags tags = Tags.of("upstream", upstreamId);
+    List<Meter> registered = new ArrayList<>();
+    registered.add(Gauge.builder("belanova.gateway.circuit.state", circuitBreaker, cb -> cb.state().ordinal())
+        .description("Circuit breaker state: 0 closed, 1 open, 2 half-open")
+        .tags(tags)
+        .register(meterRegistry));
+    registered.add(FunctionCounter.builder("belanova.gateway.circuit.transitions", circuitBreaker, CircuitBreaker::openings)
+        .tags(tags.and("state", "open"))
+        .register(meterRegistry));
+    registered.add(FunctionCounter.builder("belanova.gateway.circuit.transitions", circuitBreaker, CircuitBreaker::halfOpenings)
+        .tags(tags.and("state", "half_open"))
+        .register(meterRegistry));
+    registered.add(FunctionCounter.builder("belanova.gateway.circuit.transitions", circuitBreaker, CircuitBreaker::closings)
+        .tags(tags.and("state", "closed"))
+        .register(meterRegistry));
+    meters.put(upstreamId, registered);
+  }
+}
@@ -0,0 +1,65 @@
+package io.github.dumidev.belanova.gateway.gateway.loadbalancer;
+
+import io.github.dumijdev.belanova.gateway.common.model.Upstream;
+import io.github.dumijdev.belanova.gateway.common.model.UpstreamHealthStatus;
+
+import java.net.URI;
+
+/**
+ * An {@link Upstream} together with the target {@link URI} built from it, so
+ * selecting an upstream never has to format or parse a URL.
+ * <p>
+ * The health status starts from the configured one and then follows the
+ * health checks, see {@link UpstreamPool#updateHealth}.
+ */
+public final class UpstreamTarget {
+
+  private final Upstream upstream;
+  private final URI uri;
+  private final UpstreamStats stats;
+  private volatile UpstreamHealthStatus status;
+
+  UpstreamTarget(Upstream upstream, UpstreamStats stats) {
+    this.upstream = upstream;
+    this.uri = URI.create("http://" + upstream.getHost() + ":" + upstream.getPort());
+    this.stats = stats;
+    this.status = upstream.getStatus();
+  }
+
+  public Upstream upstream() {
+    return upstream;
+  }
+
+  public String id() {
+    return upstream.getId();
+  }
+
+  public int weight() {
+    return upstream.getWeight();
+  }
+
+  public URI uri() {
+    return uri;
+  }
+
+  public UpstreamStats stats() {
+    return stats;
+  }
+
+  public CircuitBreaker circuitBreaker() {
+    return stats.circuitBreaker();
+  }
+
+  public UpstreamHealthStatus status() {
+    return status;
+  }
+
+  void status(UpstreamHealthStatus status) {
+    this.status = status;
+  }
+
+  @Override
+  public String toString() {
+    return upstream.getId() + " (" + uri + ")";
+  }
+}
@@ -1,34 +1,123 @@
 package io.github.dumidev.belanova.gateway.gateway.loadbalancer;
 
-import io.github.dumijdev.belanova.gateway.common.model.Upstream;
-import io.github.dumijdev.belanova.gateway.common.model.UpstreamHealthStatus;
 import jakarta.servlet.http.HttpServletRequest;
-import org.springframework.stereotype.Component;
+import java.util.concurrent.atomic.AtomicLongArray;
 
-import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
-
-@Component("weightedRoundRobinLoadBalancer")
+/**
+ * Smooth weighted round robin, as implemented by Nginx.
+ * <p>
+ * Instead of running the algorithm under a lock on every request, the sequence
+ * it produces for the current healthy upstreams is computed once into a
+ * schedule. Requests then walk the schedule through striped, padded cursors,
+ * so selection is lock-free, O(1) and allocation-free, and heavy upstreams are
+ * interleaved with light ones instead of being picked in bursts.
+ * <p>
+ * Instances are per backend, see {@link LoadBalancerRegistry}.
+ */
 public class WeightedRoundRobinLoadBalancer implements LoadBalancer {
-    private final Map<String, AtomicInteger> counters = new HashMap<>();
+
+    /** Upper bound for the schedule length; larger weight sums are scaled down. */
+    static final int MAX_SCHEDULE_LENGTH = 4096;
+
+    private static final int STRIPES = stripes();
+    // One cursor per 64-byte cache line to avoid false sharing between stripes.
+    private static final int PADDING = 8;
+
+    // Replaced whenever the backend's healthy array changes.
+    private volatile Schedule schedule;
 
     @Override
-    public Optional<Upstream> select(List<Upstream> upstreams, HttpServletRequest exchange) {
-        List<Upstream> healthyUpstreams = upstreams.stream()
-                .filter(u -> u.isEnabled() && u.getStatus() == UpstreamHealthStatus.HEALTHY)
-                .toList();
-        if (healthyUpstreams.isEmpty()) {
-            return Optional.empty();
-        }
-        List<Upstream> weightedList = new ArrayList<>();
-        for (Upstream u : healthyUpstreams) {
-            for (int i = 0; i < Math.max(1, u.getWeight()); i++) {
-                weightedList.add(u);
+    public UpstreamTarget select(UpstreamPool pool, HttpServletRequest exchange) {
+        UpstreamTarget[] healthyUpstreams = pool.healthy();
+        if (healthyUpstreams.length == 0) {
+            return null;
+        }
+
+        Schedule current = schedule;
+        if (current == null || current.source != healthyUpstreams) {
+            current = new Schedule(healthyUpstreams);
+            schedule = current;
+        }
+        return LoadBalancer.permitted(current.next(), healthyUpstreams);
+    }
+
+    /**
+     * Runs the Nginx smooth weighted round robin algorithm for one full period.
+     */
+    static UpstreamTarget[] schedule(UpstreamTarget[] upstreams) {
+        int[] weights = normalizedWeights(upstreams);
+        int total = 0;
+        for (int weight : weights) {
+            total += weight;
+        }
+
+        UpstreamTarget[] sequence = new UpstreamTarget[total];
+        int[] current = new int[upstreams.length];
+        for (int slot = 0; slot < total; slot++) {
+            int best = 0;
+            for (int i = 0; i < upstreams.length; i++) {
+                current[i] += weights[i];
+                if (current[i] > current[best]) {
+                    best = i;
+                }
+            }
+            current[best] -= total;
+            sequence[slot] = upstreams[best];
+        }
+        return sequence;
+    }
+
+    private static int[] normalizedWeights(UpstreamTarget[] upstreams) {
+        int[] weights = new int[upstreams.length];
+        long total = 0;
+        int gcd = 0;
+        for (int i = 0; i < upstreams.length; i++) {
+            weights[i] = Math.max(1, upstreams[i].weight());
+            total += weights[i];
+            gcd = gcd(gcd, weights[i]);
+        }
+
+        double scale = total / gcd > MAX_SCHEDULE_LENGTH
+                ? (double) MAX_SCHEDULE_LENGTH / total
+                : 1.0 / gcd;
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = Math.max(1, (int) Math.round(weights[i] * scale));
+        }
+        return weights;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    private static int stripes() {
+        int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()));
+        return Math.min(stripes, 64);
+    }
+
+    private static final class Schedule {
+        private final UpstreamTarget[] source;
+        private final UpstreamTarget[] sequence;
+        private final AtomicLongArray cursors = new AtomicLongArray(STRIPES * PADDING);
+
+        private Schedule(UpstreamTarget[] source) {
+            this.source = source;
+            this.sequence = schedule(source);
+            // Start stripes at evenly spaced offsets so they do not replay the same slots in lockstep.
+            for (int stripe = 0; stripe < STRIPES; stripe++) {
+                cursors.set(stripe * PADDING, (long) stripe * sequence.length / STRIPES);
             }
         }
-        String key = exchange.getServletPath();
-        counters.putIfAbsent(key, new AtomicInteger(0));
-        int index = counters.get(key).getAndIncrement() % weightedList.size();
-        return Optional.of(weightedList.get(index));
+
+        private UpstreamTarget next() {
+            int stripe = (int) (Thread.currentThread().threadId() & (STRIPES - 1));
+            long position = cursors.getAndIncrement(stripe * PADDING);
+            return sequence[(int) (position % sequence.length)];
+        }
     }
 }
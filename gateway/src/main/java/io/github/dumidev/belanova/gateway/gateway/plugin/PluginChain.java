@@ -0,0 +1,161 @@
+package io.github.dumidev.belanova.gateway.gateway.plugin;
+
+import io.github.dumijdev.belanova.gateway.common.plugin.GatewayPlugin;
+import io.github.dumijdev.belanova.gateway.common.plugin.PluginContext;
+import io.github.dumijdev.belanova.gateway.common.plugin.PluginPhase;
+import io.github.dumijdev.belanova.gateway.common.plugin.PluginResult;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.IntStream;
+
+/**
+ * The plugins of one route, one array per {@link PluginPhase} in the order
+ * they run.
+ * <p>
+ * A pre-phase stage that is not complete yet is waited for on the calling
+ * thread, which parks a virtual thread rather than blocking a platform one.
+ * Failures propagate as thrown by the plugin, unwrapped from the stage.
+ * Each plugin finds the configuration compiled for the route in the context.
+ */
+public final class PluginChain {
+
+  public static final PluginChain EMPTY = new PluginChain(Map.of(), new GatewayPlugin[0], new Object[0]);
+
+  private final Map<String, String> metadata;
+  private final Phase preRoute;
+  private final Phase preUpstream;
+  private final Phase postResponse;
+  private final Phase onError;
+
+  /**
+   * @param configs the {@link GatewayPlugin#configure configuration} of each plugin, by position
+   */
+  PluginChain(Map<String, String> metadata, GatewayPlugin[] plugins, Object[] configs) {
+    this.metadata = metadata;
+    this.preRoute = new Phase(plugins, configs, PluginPhase.PRE_ROUTE);
+    this.preUpstream = new Phase(plugins, configs, PluginPhase.PRE_UPSTREAM);
+    this.postResponse = new Phase(plugins, configs, PluginPhase.POST_RESPONSE);
+    this.onError = new Phase(plugins, configs, PluginPhase.ON_ERROR);
+  }
+
+  /**
+   * @return the metadata of the route's backend and service the chain was compiled from
+   */
+  public Map<String, String> metadata() {
+    return metadata;
+  }
+
+  /**
+   * @return {@code false} if a plugin stopped the request
+   */
+  public boolean preRoute(PluginContext context) throws Exception {
+    for (int i = 0; i < preRoute.plugins.length; i++) {
+      context.bindConfig(preRoute.configs[i]);
+      if (await(preRoute.plugins[i].onPreRoute(context)) == PluginResult.STOP) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return {@code false} if a plugin stopped the request
+   */
+  public boolean preUpstream(PluginContext context) throws Exception {
+    for (int i = 0; i < preUpstream.plugins.length; i++) {
+      context.bindConfig(preUpstream.configs[i]);
+      if (await(preUpstream.plugins[i].onPreUpstream(context)) == PluginResult.STOP) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public void postResponse(PluginContext context) {
+    for (int i = 0; i < postResponse.plugins.length; i++) {
+      context.bindConfig(postResponse.configs[i]);
+      postResponse.plugins[i].onPostResponse(context);
+    }
+  }
+
+  /**
+   * Tells every plugin about the failure; a plugin that fails in turn does not stop the others.
+   */
+  public void onError(PluginContext context) {
+    for (int i = 0; i < onError.plugins.length; i++) {
+      context.bindConfig(onError.configs[i]);
+      try {
+        onError.plugins[i].onError(context);
+      } catch (RuntimeException ex) {
+        context.error().addSuppressed(ex);
+      }
+    }
+  }
+
+  public boolean isEmpty() {
+    return preRoute.plugins.length == 0 && preUpstream.plugins.length == 0
+        && postResponse.plugins.length == 0 && onError.plugins.length == 0;
+  }
+
+  GatewayPlugin[] plugins(PluginPhase phase) {
+    return phase(phase).plugins.clone();
+  }
+
+  Object config(PluginPhase phase, int index) {
+    return phase(phase).configs[index];
+  }
+
+  private Phase phase(PluginPhase phase) {
+    return switch (phase) {
+      case PRE_ROUTE -> preRoute;
+      case PRE_UPSTREAM -> preUpstream;
+      case POST_RESPONSE -> postResponse;
+      case ON_ERROR -> onError;
+    };
+  }
+
+  private static PluginResult await(CompletionStage<PluginResult> stage) throws Exception {
+    CompletableFuture<PluginResult> future = stage instanceof CompletableFuture<PluginResult> completable
+        ? completable
+        : stage.toCompletableFuture();
+    try {
+      return future.join();
+    } catch (CompletionException ex) {
+      if (ex.getCause() instanceof Exception cause) {
+        throw cause;
+      }
+      if (ex.getCause() instanceof Error cause) {
+        throw cause;
+      }
+      throw ex;
+    }
+  }
+
+  private static final class Phase {
+
+    private final GatewayPlugin[] plugins;
+    private final Object[] configs;
+
+    private Phase(GatewayPlugin[] all, Object[] allConfigs, PluginPhase phase) {
+      int[] indexes = IntStream.range(0, all.length).filter(i -> all[i].phases().contains(phase)).toArray();
+      this.plugins = new GatewayPlugin[indexes.length];
+      this.configs = new Object[indexes.length];
+      for (int i = 0; i < indexes.length; i++) {
+        plugins[i] = all[indexes[i]];
+        configs[i] = allConfigs[indexes[i]];
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.stream(PluginPhase.values())
+        .map(phase -> phase + "=" + Arrays.stream(plugins(phase)).map(GatewayPlugin::getName).toList())
+        .toList()
+        .toString();
+  }
+}
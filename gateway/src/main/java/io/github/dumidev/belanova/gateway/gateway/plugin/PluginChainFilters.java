@@ -0,0 +1,243 @@
+package io.github.dumidev.belanova.gateway.gateway.plugin;
+
+import io.github.dumidev.belanova.gateway.gateway.loadbalancer.LoadBalancingInterceptor;
+import io.github.dumidev.belanova.gateway.gateway.loadbalancer.UpstreamLease;
+import io.github.dumijdev.belanova.gateway.common.model.Backend;
+import io.github.dumijdev.belanova.gateway.common.model.Service;
+import io.github.dumijdev.belanova.gateway.common.plugin.GatewayPlugin;
+import io.github.dumijdev.belanova.gateway.common.plugin.PluginContext;
+import io.github.dumijdev.belanova.gateway.common.plugin.PluginPhase;
+import io.github.dumijdev.belanova.gateway.common.plugin.PluginResult;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.server.mvc.common.MvcUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.function.HandlerFilterFunction;
+import org.springframework.web.servlet.function.HandlerFunction;
+import org.springframework.web.servlet.function.ServerRequest;
+import org.springframework.web.servlet.function.ServerResponse;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Compiles the {@link GatewayPlugin}s of each route into a {@link PluginChain}
+ * and runs its phases after the pre-route one from one filter.
+ * <p>
+ * The enabled plugins are sorted once at startup. A route's chain holds those
+ * that {@link GatewayPlugin#appliesTo apply to} it, narrowed down to the
+ * comma-separated names of its {@code plugins} metadata if it has one, except
+ * for those its settings {@link GatewayPlugin#requiredBy require}, each
+ * with the configuration it {@link GatewayPlugin#configure compiled} from that
+ * metadata. A route's metadata is its backend's, overridden entry by entry by
+ * its service's. If a plugin that applies to a route cannot configure itself
+ * from that metadata, the route fails closed: its chain only answers
+ * {@code 503} before routing, as the plugin may be the one guarding it. Chains are only recompiled when it changes, so route table
+ * rebuilds for unrelated changes keep them as they are, and changed settings
+ * apply from the first request routed by the rebuilt table. Chains of routes
+ * that left the table are dropped with it.
+ * <p>
+ * The filter takes the request's {@link PluginContext} from the
+ * {@link PluginInterceptor}. A pre-upstream plugin that stops the request
+ * has answered it through the servlet response; the filter then returns its
+ * status without calling the upstream and hands back the upstream lease.
+ * Headers plugins added for the upstream in any phase are set on the
+ * proxied request, replacing those the client sent.
+ */
+@Slf4j
+@Component
+public class PluginChainFilters {
+
+  public static final String METADATA_KEY = "plugins";
+
+  private final GatewayPlugin[] plugins;
+  private final Map<String, CompiledChain> chains = new ConcurrentHashMap<>();
+
+  public PluginChainFilters(List<GatewayPlugin> plugins) {
+    this.plugins = plugins.stream()
+        .filter(GatewayPlugin::isEnabled)
+        .sorted(Comparator.comparingInt(GatewayPlugin::getOrder))
+        .toArray(GatewayPlugin[]::new);
+    log.info("Gateway plugins: {}", Arrays.stream(this.plugins).map(GatewayPlugin::getName).toList());
+  }
+
+  /**
+   * @return the plugin filter of the route, or {@code null} if no plugin applies to it
+   */
+  public HandlerFilterFunction<ServerResponse, ServerResponse> forRoute(String routeId, Backend backend, Service service) {
+    Map<String, String> metadata = metadata(backend, service);
+    CompiledChain compiled = chains.compute(routeId, (id, existing) ->
+        existing != null && existing.chain.metadata().equals(metadata) ? existing : compile(id, metadata));
+    // Routes with pre-route plugins only need the filter too, to set the upstream headers those plugins added
+    return compiled.chain.isEmpty() ? null : compiled.filter;
+  }
+
+  /**
+   * Forgets the chains of routes that are no longer in the route table.
+   */
+  public void retainAll(Set<String> routeIds) {
+    chains.keySet().retainAll(routeIds);
+  }
+
+  /**
+   * @return the compiled chain of the route, empty for unknown routes
+   */
+  public PluginChain chain(String routeId) {
+    CompiledChain compiled = chains.get(routeId);
+    return compiled != null ? compiled.chain : PluginChain.EMPTY;
+  }
+
+  private CompiledChain compile(String routeId, Map<String, String> metadata) {
+    String names = metadata.get(METADATA_KEY);
+    Set<String> selected = names != null
+        ? Arrays.stream(names.split(",")).map(String::trim).filter(name -> !name.isEmpty()).collect(Collectors.toSet())
+        : null;
+    List<GatewayPlugin> routePlugins = new ArrayList<>();
+    List<Object> configs = new ArrayList<>();
+    for (GatewayPlugin plugin : plugins) {
+      if (!plugin.appliesTo(metadata)) continue;
+      if (selected != null && !selected.contains(plugin.getName())) {
+        if (!plugin.requiredBy(metadata)) continue;
+
+        log.warn("Running plugin {} on route {}, its settings require it although its plugin list leaves it out",
+            plugin.getName(), routeId);
+      }
+
+      try {
+        configs.add(plugin.configure(routeId, metadata));
+        routePlugins.add(plugin);
+      } catch (IllegalArgumentException ex) {
+        log.error("Route {} answers {} until the configuration of plugin {} is fixed: {}",
+            routeId, HttpServletResponse.SC_SERVICE_UNAVAILABLE, plugin.getName(), ex.getMessage());
+        PluginChain chain = new PluginChain(metadata, new GatewayPlugin[]{MisconfiguredRoute.INSTANCE}, new Object[1]);
+        return new CompiledChain(chain, new PluginChainFilter(chain));
+      }
+    }
+    PluginChain chain = new PluginChain(metadata, routePlugins.toArray(GatewayPlugin[]::new), configs.toArray());
+    log.debug("Plugin chain of route {}: {}", routeId, chain);
+    return new CompiledChain(chain, new PluginChainFilter(chain));
+  }
+
+  /**
+   * @return the backend's metadata overridden by the service's
+   */
+  static Map<String, String> metadata(Backend backend, Service service) {
+    Map<String, String> metadata = new HashMap<>();
+    if (backend != null && backend.getMetadata() != null) {
+      metadata.putAll(backend.getMetadata());
+    }
+    if (service.getMetadata() != null) {
+      metadata.putAll(service.getMetadata());
+    }
+    // Shared by the requests of the route through their context
+    return Collections.unmodifiableMap(metadata);
+  }
+
+  private record CompiledChain(PluginChain chain, PluginChainFilter filter) {
+  }
+
+  /**
+   * Stands in for the plugins of a route one of which has an invalid configuration.
+   */
+  static final class MisconfiguredRoute implements GatewayPlugin {
+
+    static final MisconfiguredRoute INSTANCE = new MisconfiguredRoute();
+
+    private static final Set<PluginPhase> PHASES = Set.of(PluginPhase.PRE_ROUTE);
+
+    private MisconfiguredRoute() {
+    }
+
+    @Override
+    public String getName() {
+      return "misconfigured-route";
+    }
+
+    @Override
+    public int getOrder() {
+      return Integer.MIN_VALUE;
+    }
+
+    @Override
+    public boolean isEnabled() {
+      return true;
+    }
+
+    @Override
+    public Set<PluginPhase> phases() {
+      return PHASES;
+    }
+
+    @Override
+    public CompletionStage<PluginResult> onPreRoute(PluginContext context) {
+      context.response().setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      return PluginResult.STOP.completed();
+    }
+
+    @Override
+    public Map<String, Object> getConfiguration() {
+      return Map.of();
+    }
+  }
+
+  private static final class PluginChainFilter implements HandlerFilterFunction<ServerResponse, ServerResponse> {
+
+    private final PluginChain chain;
+
+    private PluginChainFilter(PluginChain chain) {
+      this.chain = chain;
+    }
+
+    @Override
+    public ServerResponse filter(ServerRequest request, HandlerFunction<ServerResponse> next) throws Exception {
+      HttpServletRequest servletRequest = request.servletRequest();
+      if (!(servletRequest.getAttribute(PluginContext.ATTRIBUTE) instanceof PluginContext context)) {
+        // Never skip the plugins, some of them guard the route
+        throw new IllegalStateException("No plugin context bound to request " + servletRequest.getRequestURI());
+      }
+
+      ServerResponse response;
+      try {
+        if (request.attribute(MvcUtils.GATEWAY_REQUEST_URL_ATTR).orElse(null) instanceof URI upstream) {
+          context.upstream(upstream);
+        }
+        if (!chain.preUpstream(context)) {
+          return stopped(servletRequest, context.response());
+        }
+        if (!context.upstreamHeaders().isEmpty()) {
+          request = ServerRequest.from(request)
+              .headers(headers -> context.upstreamHeaders().forEach(headers::set))
+              .build();
+        }
+        response = next.handle(request);
+      } catch (Exception ex) {
+        context.error(ex);
+        chain.onError(context);
+        throw ex;
+      }
+
+      context.response(response.statusCode().value(), response.headers());
+      chain.postResponse(context);
+      return response;
+    }
+
+    private static ServerResponse stopped(HttpServletRequest servletRequest, HttpServletResponse servletResponse) {
+      if (servletRequest.getAttribute(LoadBalancingInterceptor.UPSTREAM_LEASE_ATTR) instanceof UpstreamLease lease) {
+        lease.cancel();
+      }
+      // Headers and body written by the plugin stay; only the status is set again
+      return ServerResponse.status(servletResponse.getStatus()).build();
+    }
+  }
+}
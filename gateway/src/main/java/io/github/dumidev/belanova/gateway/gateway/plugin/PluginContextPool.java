@@ -0,0 +1,58 @@
+package io.github.dumidev.belanova.gateway.gateway.plugin;
+
+import io.github.dumijdev.belanova.gateway.common.plugin.PluginContext;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded pool of {@link PluginContext}s.
+ * <p>
+ * Contexts sit in an array of slots taken and filled with a CAS, starting at
+ * a slot picked from the thread id so that concurrent requests rarely probe
+ * the same slots. When the probed slots are empty a new context is created,
+ * and when they are full a released one is left to the garbage collector.
+ */
+final class PluginContextPool {
+
+  private static final int PROBES = 8;
+
+  private final AtomicReferenceArray<PluginContext> slots;
+
+  PluginContextPool(int size) {
+    this.slots = new AtomicReferenceArray<>(Math.max(1, size));
+  }
+
+  PluginContext acquire() {
+    int start = start();
+    for (int i = 0; i < PROBES; i++) {
+      int index = (start + i) % slots.length();
+      PluginContext context = slots.get(index);
+      if (context != null && slots.compareAndSet(index, context, null)) {
+        return context;
+      }
+    }
+    return new PluginContext();
+  }
+
+  void release(PluginContext context) {
+    context.clear();
+    int start = start();
+    for (int i = 0; i < PROBES; i++) {
+      if (slots.compareAndSet((start + i) % slots.length(), null, context)) {
+        return;
+      }
+    }
+  }
+
+  int size() {
+    int size = 0;
+    for (int i = 0; i < slots.length(); i++) {
+      if (slots.get(i) != null) size++;
+    }
+    return size;
+  }
+
+  private int start() {
+    return (int) (Thread.currentThread().threadId() % slots.length());
+  }
+}
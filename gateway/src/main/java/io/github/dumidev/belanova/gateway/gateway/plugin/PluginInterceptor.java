@@ -0,0 +1,80 @@
+package io.github.dumidev.belanova.gateway.gateway.plugin;
+
+import io.github.dumijdev.belanova.gateway.common.plugin.PluginContext;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.server.mvc.common.MvcUtils;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+/**
+ * Binds a pooled {@link PluginContext} to every request matched by a gateway
+ * route and runs the route's pre-route plugins.
+ * <p>
+ * Runs before {@code LoadBalancingInterceptor}, so requests stopped by a
+ * plugin never take an upstream. The context goes back to the pool once the
+ * request completes.
+ */
+@Slf4j
+@Component
+public class PluginInterceptor implements AsyncHandlerInterceptor, Ordered {
+
+  private final PluginChainFilters pluginChains;
+  private final PluginContextPool pool;
+
+  public PluginInterceptor(PluginChainFilters pluginChains,
+                           @Value("${belanova.gateway.plugins.context-pool-size:1024}") int poolSize) {
+    this.pluginChains = pluginChains;
+    this.pool = new PluginContextPool(poolSize);
+  }
+
+  @Override
+  public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+    String routeId = (String) request.getAttribute(MvcUtils.GATEWAY_ROUTE_ID_ATTR);
+    // Async and error dispatches keep the context of the initial dispatch
+    if (routeId == null || request.getDispatcherType() != DispatcherType.REQUEST
+        || request.getAttribute(PluginContext.ATTRIBUTE) != null) {
+      return true;
+    }
+
+    PluginChain chain = pluginChains.chain(routeId);
+    PluginContext context = pool.acquire();
+    context.start(routeId, chain.metadata(), request, response);
+    request.setAttribute(PluginContext.ATTRIBUTE, context);
+    try {
+      if (chain.preRoute(context)) {
+        return true;
+      }
+      log.debug("Request {} stopped before routing", request.getRequestURI());
+    } catch (Exception ex) {
+      context.error(ex);
+      chain.onError(context);
+      release(request);
+      throw ex;
+    }
+    // afterCompletion is not called for the interceptor that stopped the request
+    release(request);
+    return false;
+  }
+
+  @Override
+  public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+    release(request);
+  }
+
+  private void release(HttpServletRequest request) {
+    if (request.getAttribute(PluginContext.ATTRIBUTE) instanceof PluginContext context) {
+      request.removeAttribute(PluginContext.ATTRIBUTE);
+      pool.release(context);
+    }
+  }
+
+  @Override
+  public int getOrder() {
+    return 10000;
+  }
+}
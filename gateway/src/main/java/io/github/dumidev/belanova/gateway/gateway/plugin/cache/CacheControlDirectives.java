@@ -0,0 +1,65 @@
+package io.github.dumidev.belanova.gateway.gateway.plugin.cache;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The {@code Cache-Control} directives the response cache acts upon. Ages are
+ * in seconds, {@code -1} when absent.
+ */
+record CacheControlDirectives(boolean noStore,
+                              boolean noCache,
+                              boolean isPrivate,
+                              boolean isPublic,
+                              boolean mustRevalidate,
+                              long maxAge,
+                              long sMaxAge) {
+
+  static final CacheControlDirectives NONE = new CacheControlDirectives(false, false, false, false, false, -1, -1);
+
+  static CacheControlDirectives parse(List<String> headerValues) {
+    if (headerValues == null || headerValues.isEmpty()) {
+      return NONE;
+    }
+    boolean noStore = false;
+    boolean noCache = false;
+    boolean isPrivate = false;
+    boolean isPublic = false;
+    boolean mustRevalidate = false;
+    long maxAge = -1;
+    long sMaxAge = -1;
+    for (String headerValue : headerValues) {
+      for (String directive : headerValue.split(",")) {
+        String name = directive;
+        String argument = null;
+        int equals = directive.indexOf('=');
+        if (equals >= 0) {
+          name = directive.substring(0, equals);
+          argument = directive.substring(equals + 1).trim().replace("\"", "");
+        }
+        switch (name.trim().toLowerCase(Locale.ROOT)) {
+          case "no-store" -> noStore = true;
+          case "no-cache" -> noCache = true;
+          case "private" -> isPrivate = true;
+          case "public" -> isPublic = true;
+          case "must-revalidate", "proxy-revalidate" -> mustRevalidate = true;
+          case "max-age" -> maxAge = seconds(argument, maxAge);
+          case "s-maxage" -> sMaxAge = seconds(argument, sMaxAge);
+          default -> {
+            // Not relevant to a shared cache
+          }
+        }
+      }
+    }
+    return new CacheControlDirectives(noStore, noCache, isPrivate, isPublic, mustRevalidate, maxAge, sMaxAge);
+  }
+
+  private static long seconds(String argument, long fallback) {
+    try {
+      return argument != null ? Math.max(0, Long.parseLong(argument)) : fallback;
+    } catch (NumberFormatException ex) {
+      // An invalid age makes the response stale (RFC 9111, section 4.2.1)
+      return 0;
+    }
+  }
+}
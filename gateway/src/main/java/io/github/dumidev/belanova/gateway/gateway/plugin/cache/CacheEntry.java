@@ -0,0 +1,117 @@
+package io.github.dumidev.belanova.gateway.gateway.plugin.cache;
+
+import org.springframework.http.HttpHeaders;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Value of the response cache: either a stored response, or, for responses
+ * that vary, the list of request headers that select the variant.
+ */
+sealed interface CacheEntry permits CacheEntry.Variants, CacheEntry.StoredResponse {
+
+  /**
+   * @return the approximate size of the entry in bytes
+   */
+  int weight();
+
+  /**
+   * @return the wall clock time in milliseconds after which the entry is of no use anymore
+   */
+  long retainUntil();
+
+  record Variants(List<String> headerNames, long retainUntil) implements CacheEntry {
+
+    @Override
+    public int weight() {
+      return 64 + headerNames.stream().mapToInt(String::length).sum();
+    }
+  }
+
+  final class StoredResponse implements CacheEntry {
+
+    private final int status;
+    private final HttpHeaders headers;
+    private final byte[] body;
+    private final String etag;
+    private final long storedAt;
+    private final long initialAgeMillis;
+    private final long ttlMillis;
+    private final long staleRetentionMillis;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    StoredResponse(int status, HttpHeaders headers, byte[] body, long storedAt, long initialAgeMillis,
+                   long ttlMillis, long staleRetentionMillis) {
+      this.status = status;
+      this.headers = HttpHeaders.readOnlyHttpHeaders(headers);
+      this.body = body;
+      this.etag = headers.getETag();
+      this.storedAt = storedAt;
+      this.initialAgeMillis = initialAgeMillis;
+      this.ttlMillis = ttlMillis;
+      this.staleRetentionMillis = staleRetentionMillis;
+    }
+
+    int status() {
+      return status;
+    }
+
+    HttpHeaders headers() {
+      return headers;
+    }
+
+    byte[] body() {
+      return body;
+    }
+
+    String etag() {
+      return etag;
+    }
+
+    /**
+     * @return a copy of this response with the given body
+     */
+    StoredResponse withBody(byte[] body) {
+      return new StoredResponse(status, headers, body, storedAt, initialAgeMillis, ttlMillis, staleRetentionMillis);
+    }
+
+    long ageMillis(long now) {
+      return initialAgeMillis + Math.max(0, now - storedAt);
+    }
+
+    boolean isFresh(long now) {
+      return ageMillis(now) < ttlMillis;
+    }
+
+    /**
+     * @return whether the entry is older than {@code factorPercent} of its time to live
+     */
+    boolean isRefreshDue(long now, int factorPercent) {
+      return factorPercent > 0 && factorPercent < 100 && ageMillis(now) * 100 >= ttlMillis * factorPercent;
+    }
+
+    /**
+     * Claims the refresh of this entry, so that only one request refreshes it.
+     */
+    boolean tryStartRefresh() {
+      return refreshing.compareAndSet(false, true);
+    }
+
+    void refreshFailed() {
+      refreshing.set(false);
+    }
+
+    @Override
+    public long retainUntil() {
+      return storedAt - initialAgeMillis + ttlMillis + staleRetentionMillis;
+    }
+
+    @Override
+    public int weight() {
+      int[] headerBytes = {0};
+      headers.forEach((name, values) -> values.forEach(value -> headerBytes[0] += name.length() + value.length() + 4));
+      return 128 + headerBytes[0] + body.length;
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package io.github.dumidev.belanova.gateway.gateway.plugin.cache;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Passes the response through to the client while keeping a copy of its
+ * body, up to {@code maxBytes}. Bodies written through a writer or beyond
+ * the limit are not kept.
+ */
+final class CapturingResponse extends HttpServletResponseWrapper {
+
+  private final int maxBytes;
+  private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+  private ServletOutputStream outputStream;
+
+  CapturingResponse(HttpServletResponse response, int maxBytes) {
+    super(response);
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * @return the body written so far, or {@code null} if it could not be kept
+   */
+  byte[] body() {
+    return copy != null ? copy.toByteArray() : null;
+  }
+
+  @Override
+  public ServletOutputStream getOutputStream() throws IOException {
+    if (outputStream == null) {
+      ServletOutputStream target = super.getOutputStream();
+      outputStream = new ServletOutputStream() {
+        @Override
+        public boolean isReady() {
+          return target.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+          target.setWriteListener(writeListener);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+          target.write(b);
+          keep(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+          target.write(b, off, len);
+          keep(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+          target.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+          target.close();
+        }
+      };
+    }
+    return outputStream;
+  }
+
+  @Override
+  public PrintWriter getWriter() throws IOException {
+    copy = null;
+    return super.getWriter();
+  }
+
+  @Override
+  public void reset() {
+    super.reset();
+    copy = null;
+  }
+
+  @Override
+  public void resetBuffer() {
+    super.resetBuffer();
+    copy = null;
+  }
+
+  private void keep(byte[] b, int off, int len) {
+    if (copy == null) {
+      return;
+    }
+    if (copy.size() + len > maxBytes) {
+      copy = null;
+      return;
+    }
+    copy.write(b, off, len);
+  }
+}
@@ -0,0 +1,582 @@
+package io.github.dumidev.belanova.gateway.gateway.plugin.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.github.dumidev.belanova.gateway.gateway.loadbalancer.LoadBalancingInterceptor;
+import io.github.dumidev.belanova.gateway.gateway.loadbalancer.UpstreamLease;
+import io.github.dumidev.belanova.gateway.gateway.resilience.DiscardingResponse;
+import io.github.dumijdev.belanova.gateway.common.model.Service;
+import io.github.dumijdev.belanova.gateway.common.plugin.GatewayPlugin;
+import io.github.dumijdev.belanova.gateway.common.plugin.PluginPhase;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.function.HandlerFilterFunction;
+import org.springframework.web.servlet.function.HandlerFunction;
+import org.springframework.web.servlet.function.ServerRequest;
+import org.springframework.web.servlet.function.ServerResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Shared HTTP cache for the GET routes of services that set the
+ * {@code cache.enabled} metadata, following RFC 9111.
+ * <p>
+ * Freshness comes from {@code s-maxage}, {@code max-age} or {@code Expires};
+ * responses without any of them live for {@code default-ttl}.
+ * {@code no-store}, {@code private}, {@code Set-Cookie} and {@code Vary: *}
+ * keep a response out of the cache, and responses to requests with
+ * credentials are only kept if they are explicitly shareable. Responses that
+ * vary are stored per value of their {@code Vary} request headers. Clients
+ * get a {@code 304} when their {@code If-None-Match} matches, and stale
+ * entries with an ETag are revalidated with the upstream instead of being
+ * fetched again.
+ * <p>
+ * Entries live in a Caffeine cache, whose W-TinyLFU policy only admits a new
+ * entry over the eviction victim if it is likely to be read more often. The
+ * cache is bounded by {@code max-bytes}; every entry weighs at least
+ * {@code max-bytes / max-entries}, which bounds the entry count as well. Once
+ * an entry is older than {@code refresh-ahead-factor} percent of its time to
+ * live, the next request refreshes it from the upstream while concurrent
+ * requests keep being served from the cache, so popular entries rarely
+ * expire.
+ * <p>
+ * Concurrent misses for the same URL are coalesced: the first one calls the
+ * upstream while the others wait up to {@code coalesce-timeout-ms} for its
+ * response to be stored and are then served from the cache. If the wait
+ * times out or the response may not be stored, they call the upstream on
+ * their own. {@code belanova.gateway.response-cache.coalesced} counts the
+ * upstream calls saved, timeouts and fallbacks per route.
+ * <p>
+ * Caching needs the response, so it runs as a route filter built by
+ * {@link #forRoute}; {@link #apply} has nothing to do before routing.
+ */
+@Slf4j
+@Component
+public class ResponseCachePlugin implements GatewayPlugin {
+
+  public static final String METADATA_KEY = "cache.enabled";
+
+  private static final Set<Integer> CACHEABLE_STATUSES = Set.of(200, 203, 204, 300, 301, 308, 404, 410);
+  private static final Set<String> UNSTORED_HEADERS = Set.of(
+      "connection", "keep-alive", "proxy-authenticate", "proxy-authorization", "te", "trailer",
+      "transfer-encoding", "upgrade", "age", "x-cache");
+  private static final long MIN_STALE_RETENTION_MILLIS = 60_000;
+
+  private final boolean enabled;
+  private final long defaultTtlMillis;
+  private final long maxBytes;
+  private final int maxEntries;
+  private final int maxEntryBytes;
+  private final int refreshAheadFactor;
+  private final long coalesceTimeoutMillis;
+  private final MeterRegistry meterRegistry;
+  private final Cache<String, CacheEntry> cache;
+  private final Map<String, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+
+  public ResponseCachePlugin(MeterRegistry meterRegistry,
+                             @Value("${belanova.gateway.response-cache.enabled:true}") boolean enabled,
+                             @Value("${belanova.gateway.response-cache.default-ttl:3600}") long defaultTtlSeconds,
+                             @Value("${belanova.gateway.response-cache.max-entries:10000}") int maxEntries,
+                             @Value("${belanova.gateway.response-cache.max-bytes:67108864}") long maxBytes,
+                             @Value("${belanova.gateway.response-cache.max-entry-bytes:1048576}") int maxEntryBytes,
+                             @Value("${belanova.gateway.response-cache.refresh-ahead-factor:75}") int refreshAheadFactor,
+                             @Value("${belanova.gateway.response-cache.coalesce-timeout-ms:2000}") long coalesceTimeoutMillis) {
+    this.meterRegistry = meterRegistry;
+    this.enabled = enabled;
+    this.defaultTtlMillis = TimeUnit.SECONDS.toMillis(defaultTtlSeconds);
+    this.maxBytes = maxBytes;
+    this.maxEntries = Math.max(1, maxEntries);
+    this.maxEntryBytes = maxEntryBytes;
+    this.refreshAheadFactor = refreshAheadFactor;
+    this.coalesceTimeoutMillis = coalesceTimeoutMillis;
+
+    int minWeight = (int) Math.min(Integer.MAX_VALUE, (maxBytes + this.maxEntries - 1) / this.maxEntries);
+    this.cache = Caffeine.newBuilder()
+        .maximumWeight(maxBytes)
+        .weigher((String key, CacheEntry entry) -> Math.max(minWeight, entry.weight() + key.length()))
+        .expireAfter(new RetentionExpiry())
+        .recordStats()
+        .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, "belanova-response-cache");
+  }
+
+  @Override
+  public String getName() {
+    return "response-cache";
+  }
+
+  @Override
+  public int getOrder() {
+    return 100;
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @Override
+  public Set<PluginPhase> phases() {
+    // Caching wraps the upstream call, so it runs in the route filter built by forRoute instead
+    return Set.of();
+  }
+
+  @Override
+  public Map<String, Object> getConfiguration() {
+    Map<String, Object> configuration = new LinkedHashMap<>();
+    configuration.put("defaultTtlSeconds", TimeUnit.MILLISECONDS.toSeconds(defaultTtlMillis));
+    configuration.put("maxEntries", maxEntries);
+    configuration.put("maxBytes", maxBytes);
+    configuration.put("maxEntryBytes", maxEntryBytes);
+    configuration.put("refreshAheadFactor", refreshAheadFactor);
+    configuration.put("coalesceTimeoutMillis", coalesceTimeoutMillis);
+    return configuration;
+  }
+
+  /**
+   * @return the cache filter of the route, or {@code null} if its service is not cached
+   */
+  public HandlerFilterFunction<ServerResponse, ServerResponse> forRoute(String routeId, Service service) {
+    if (!enabled || service.getMetadata() == null || !Boolean.parseBoolean(service.getMetadata().get(METADATA_KEY))) {
+      return null;
+    }
+    return (request, next) -> filter(routeId, request, next);
+  }
+
+  long estimatedSize() {
+    cache.cleanUp();
+    return cache.estimatedSize();
+  }
+
+  private ServerResponse filter(String routeId, ServerRequest request, HandlerFunction<ServerResponse> next)
+      throws Exception {
+    HttpMethod method = request.method();
+    boolean head = HttpMethod.HEAD.equals(method);
+    if (!HttpMethod.GET.equals(method) && !head) {
+      return next.handle(request);
+    }
+    HttpHeaders requestHeaders = request.headers().asHttpHeaders();
+    CacheControlDirectives requestCacheControl = CacheControlDirectives.parse(requestHeaders.get(HttpHeaders.CACHE_CONTROL));
+    if (requestCacheControl.noStore()) {
+      count(routeId, "bypass");
+      return next.handle(request);
+    }
+
+    String key = routeId + ' ' + request.uri().getRawPath()
+        + (request.uri().getRawQuery() != null ? "?" + request.uri().getRawQuery() : "");
+    long now = System.currentTimeMillis();
+    CacheEntry.StoredResponse stored = lookup(key, requestHeaders);
+
+    boolean fresh = stored != null && stored.isFresh(now);
+    boolean refreshing = false;
+    if (fresh && !requestCacheControl.noCache() && requestCacheControl.maxAge() != 0) {
+      refreshing = stored.isRefreshDue(now, refreshAheadFactor) && stored.tryStartRefresh();
+      if (!refreshing) {
+        count(routeId, "hit");
+        cancelUpstreamLease(request.servletRequest());
+        return serve(stored, requestHeaders, head, now, "HIT");
+      }
+    }
+    if (refreshing || fresh || head || coalesceTimeoutMillis <= 0) {
+      // Either the others are still served from the cache, or the client asked to skip it
+      return fetch(routeId, key, request, next, requestHeaders, stored, refreshing, head, now, null);
+    }
+
+    CompletableFuture<Void> flight = new CompletableFuture<>();
+    CompletableFuture<Void> leader = inFlight.putIfAbsent(key, flight);
+    if (leader == null) {
+      return fetch(routeId, key, request, next, requestHeaders, stored, false, false, now, () -> {
+        inFlight.remove(key, flight);
+        flight.complete(null);
+      });
+    }
+
+    try {
+      leader.get(coalesceTimeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException ex) {
+      // The leader may be stuck or gone; let the next miss lead a new call
+      inFlight.remove(key, leader);
+      coalesced(routeId, "timeout");
+      return fetch(routeId, key, request, next, requestHeaders, stored, false, false, now, null);
+    }
+    long completedAt = System.currentTimeMillis();
+    CacheEntry.StoredResponse shared = lookup(key, requestHeaders);
+    if (shared == null || !shared.isFresh(completedAt)) {
+      // Nothing shareable came out of the leader's call
+      coalesced(routeId, "fallback");
+      return fetch(routeId, key, request, next, requestHeaders, stored, false, false, now, null);
+    }
+    coalesced(routeId, "saved");
+    cancelUpstreamLease(request.servletRequest());
+    return serve(shared, requestHeaders, false, completedAt, "HIT");
+  }
+
+  /**
+   * Calls the upstream, revalidating the stored response if there is one, and
+   * stores what comes back if it may be stored.
+   *
+   * @param onDone run once the response has been stored or turned out not to be storable
+   */
+  private ServerResponse fetch(String routeId, String key, ServerRequest request, HandlerFunction<ServerResponse> next,
+                               HttpHeaders requestHeaders,
+                               CacheEntry.StoredResponse stored, boolean refreshing, boolean head, long now,
+                               Runnable onDone) throws Exception {
+    boolean handedOver = false;
+    try {
+      // Revalidate what we have unless the client brought its own validator
+      boolean revalidating = stored != null && stored.etag() != null && requestHeaders.getIfNoneMatch().isEmpty();
+      ServerRequest upstreamRequest = revalidating
+          ? ServerRequest.from(request).header(HttpHeaders.IF_NONE_MATCH, stored.etag()).build()
+          : request;
+
+      ServerResponse response;
+      try {
+        response = next.handle(upstreamRequest);
+      } catch (Exception ex) {
+        if (refreshing) stored.refreshFailed();
+        throw ex;
+      }
+      int status = response.statusCode().value();
+
+      if (revalidating && status == HttpStatus.NOT_MODIFIED.value()) {
+        drain(request.servletRequest(), response);
+        CacheEntry.StoredResponse refreshed = revalidated(stored, response.headers(), now);
+        if (refreshed != null) {
+          store(key, requestHeaders, refreshed);
+        }
+        count(routeId, refreshing ? "refreshed" : "revalidated");
+        return serve(refreshed != null ? refreshed : stored, requestHeaders, head, now, "REVALIDATED");
+      }
+
+      CacheEntry.StoredResponse template = head ? null : storable(requestHeaders, response, now);
+      if (template == null) {
+        if (refreshing) stored.refreshFailed();
+        count(routeId, "miss");
+        return response;
+      }
+      count(routeId, refreshing ? "refreshed" : "miss");
+      handedOver = true;
+      // A refreshed body too large to store leaves the old entry in place, due for another refresh
+      return new StoringResponse(response, body -> store(key, requestHeaders, template.withBody(body)),
+          refreshing ? stored::refreshFailed : null, onDone);
+    } finally {
+      if (!handedOver && onDone != null) {
+        onDone.run();
+      }
+    }
+  }
+
+  private CacheEntry.StoredResponse lookup(String key, HttpHeaders requestHeaders) {
+    CacheEntry entry = cache.getIfPresent(key);
+    if (entry instanceof CacheEntry.Variants variants) {
+      entry = cache.getIfPresent(variantKey(key, variants.headerNames(), requestHeaders));
+    }
+    return entry instanceof CacheEntry.StoredResponse stored ? stored : null;
+  }
+
+  private void store(String key, HttpHeaders requestHeaders, CacheEntry.StoredResponse response) {
+    List<String> vary = varyHeaderNames(response.headers());
+    if (vary.isEmpty()) {
+      cache.put(key, response);
+      return;
+    }
+    cache.asMap().merge(key, new CacheEntry.Variants(vary, response.retainUntil()), (current, added) ->
+        current instanceof CacheEntry.Variants variants && variants.headerNames().equals(vary)
+            ? new CacheEntry.Variants(vary, Math.max(variants.retainUntil(), added.retainUntil()))
+            : added);
+    cache.put(variantKey(key, vary, requestHeaders), response);
+  }
+
+  /**
+   * @return a body-less copy of the response to be stored, or {@code null} if it must not be stored
+   */
+  private CacheEntry.StoredResponse storable(HttpHeaders requestHeaders, ServerResponse response, long now) {
+    int status = response.statusCode().value();
+    HttpHeaders headers = response.headers();
+    if (!CACHEABLE_STATUSES.contains(status) || headers.containsKey(HttpHeaders.SET_COOKIE)) {
+      return null;
+    }
+    CacheControlDirectives cacheControl = CacheControlDirectives.parse(headers.get(HttpHeaders.CACHE_CONTROL));
+    if (cacheControl.noStore() || cacheControl.isPrivate() || varyHeaderNames(headers).contains("*")) {
+      return null;
+    }
+    if (requestHeaders.containsKey(HttpHeaders.AUTHORIZATION)
+        && !cacheControl.isPublic() && !cacheControl.mustRevalidate() && cacheControl.sMaxAge() < 0) {
+      return null;
+    }
+
+    long ttl = cacheControl.noCache() ? 0 : freshnessMillis(cacheControl, headers);
+    if (ttl <= 0 && headers.getETag() == null) {
+      return null;
+    }
+    return new CacheEntry.StoredResponse(status, storedHeaders(headers), new byte[0], now,
+        initialAgeMillis(headers), ttl, staleRetention(headers, ttl));
+  }
+
+  private CacheEntry.StoredResponse revalidated(CacheEntry.StoredResponse stored, HttpHeaders notModified, long now) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.putAll(stored.headers());
+    // A 304 updates the stored header fields it carries (RFC 9111, section 4.3.4)
+    storedHeaders(notModified).forEach(headers::put);
+    CacheControlDirectives cacheControl = CacheControlDirectives.parse(headers.get(HttpHeaders.CACHE_CONTROL));
+    if (cacheControl.noStore() || cacheControl.isPrivate()) {
+      return null;
+    }
+    long ttl = cacheControl.noCache() ? 0 : freshnessMillis(cacheControl, headers);
+    return new CacheEntry.StoredResponse(stored.status(), headers, stored.body(), now,
+        initialAgeMillis(notModified), ttl, staleRetention(headers, ttl));
+  }
+
+  private ServerResponse serve(CacheEntry.StoredResponse stored, HttpHeaders requestHeaders, boolean head,
+                               long now, String cacheStatus) {
+    long age = TimeUnit.MILLISECONDS.toSeconds(stored.ageMillis(now));
+    if (stored.etag() != null && matches(requestHeaders.getIfNoneMatch(), stored.etag())) {
+      return ServerResponse.status(HttpStatus.NOT_MODIFIED)
+          .headers(headers -> {
+            copy(stored.headers(), headers, HttpHeaders.ETAG, HttpHeaders.CACHE_CONTROL, HttpHeaders.EXPIRES,
+                HttpHeaders.VARY, HttpHeaders.CONTENT_LOCATION, HttpHeaders.DATE);
+            headers.set(HttpHeaders.AGE, Long.toString(age));
+            headers.set("X-Cache", cacheStatus);
+          })
+          .build();
+    }
+    byte[] body = stored.body();
+    return ServerResponse.status(stored.status())
+        .headers(headers -> {
+          headers.putAll(stored.headers());
+          headers.set(HttpHeaders.AGE, Long.toString(age));
+          headers.set("X-Cache", cacheStatus);
+          headers.setContentLength(body.length);
+        })
+        .build((servletRequest, servletResponse) -> {
+          if (!head && body.length > 0) {
+            servletResponse.getOutputStream().write(body);
+          }
+          return null;
+        });
+  }
+
+  private long freshnessMillis(CacheControlDirectives cacheControl, HttpHeaders headers) {
+    if (cacheControl.sMaxAge() >= 0) {
+      return TimeUnit.SECONDS.toMillis(cacheControl.sMaxAge());
+    }
+    if (cacheControl.maxAge() >= 0) {
+      return TimeUnit.SECONDS.toMillis(cacheControl.maxAge());
+    }
+    if (headers.containsKey(HttpHeaders.EXPIRES)) {
+      long expires = headers.getFirstDate(HttpHeaders.EXPIRES, false);
+      long date = headers.containsKey(HttpHeaders.DATE)
+          ? headers.getFirstDate(HttpHeaders.DATE, false)
+          : System.currentTimeMillis();
+      // An invalid Expires means already expired
+      return expires > 0 && date > 0 ? Math.max(0, expires - date) : 0;
+    }
+    return defaultTtlMillis;
+  }
+
+  private static long staleRetention(HttpHeaders headers, long ttl) {
+    // Stale entries are only useful while they can be revalidated
+    return headers.getETag() != null ? Math.max(ttl, MIN_STALE_RETENTION_MILLIS) : 0;
+  }
+
+  private static long initialAgeMillis(HttpHeaders headers) {
+    try {
+      String age = headers.getFirst(HttpHeaders.AGE);
+      return age != null ? TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(age.trim()))) : 0;
+    } catch (NumberFormatException ex) {
+      return 0;
+    }
+  }
+
+  private static HttpHeaders storedHeaders(HttpHeaders headers) {
+    HttpHeaders stored = new HttpHeaders();
+    headers.forEach((name, values) -> {
+      if (!UNSTORED_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+        stored.put(name, new ArrayList<>(values));
+      }
+    });
+    return stored;
+  }
+
+  private static List<String> varyHeaderNames(HttpHeaders headers) {
+    List<String> names = new ArrayList<>();
+    for (String value : headers.getOrEmpty(HttpHeaders.VARY)) {
+      Arrays.stream(value.split(","))
+          .map(name -> name.trim().toLowerCase(Locale.ROOT))
+          .filter(name -> !name.isEmpty() && !names.contains(name))
+          .forEach(names::add);
+    }
+    names.sort(null);
+    return names;
+  }
+
+  private static String variantKey(String key, List<String> headerNames, HttpHeaders requestHeaders) {
+    StringBuilder variant = new StringBuilder(key);
+    for (String name : headerNames) {
+      variant.append('\n').append(name).append(':').append(String.join(",", requestHeaders.getOrEmpty(name)));
+    }
+    return variant.toString();
+  }
+
+  private static boolean matches(List<String> ifNoneMatch, String etag) {
+    String opaque = weakless(etag);
+    for (String candidate : ifNoneMatch) {
+      if ("*".equals(candidate.trim()) || weakless(candidate).equals(opaque)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String weakless(String etag) {
+    String trimmed = etag.trim();
+    return trimmed.startsWith("W/") ? trimmed.substring(2) : trimmed;
+  }
+
+  private static void copy(HttpHeaders from, HttpHeaders to, String... names) {
+    for (String name : names) {
+      List<String> values = from.get(name);
+      if (values != null) {
+        to.put(name, values);
+      }
+    }
+  }
+
+  private static void cancelUpstreamLease(HttpServletRequest request) {
+    // A hit never reaches the upstream picked for it, so it must not count as a call to it
+    if (request.getAttribute(LoadBalancingInterceptor.UPSTREAM_LEASE_ATTR) instanceof UpstreamLease lease) {
+      lease.cancel();
+    }
+  }
+
+  private static void drain(HttpServletRequest request, ServerResponse response) {
+    if (RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes
+        && attributes.getResponse() != null) {
+      try {
+        DiscardingResponse.discard(response, request, attributes.getResponse());
+      } catch (ServletException | IOException ex) {
+        log.debug("Could not drain revalidation response: {}", ex.toString());
+      }
+    }
+  }
+
+  private void count(String routeId, String result) {
+    meterRegistry.counter("belanova.gateway.response-cache.requests", "route", routeId, "result", result).increment();
+  }
+
+  private void coalesced(String routeId, String outcome) {
+    meterRegistry.counter("belanova.gateway.response-cache.coalesced", "route", routeId, "outcome", outcome).increment();
+  }
+
+  /**
+   * Writes the upstream response through to the client and stores a copy of
+   * it once it has been written completely.
+   */
+  private final class StoringResponse implements ServerResponse {
+
+    private final ServerResponse delegate;
+    private final Consumer<byte[]> onComplete;
+    private final Runnable onNotStored;
+    private final Runnable onDone;
+
+    private StoringResponse(ServerResponse delegate, Consumer<byte[]> onComplete, Runnable onNotStored,
+                            Runnable onDone) {
+      this.delegate = delegate;
+      this.onComplete = onComplete;
+      this.onNotStored = onNotStored;
+      this.onDone = onDone;
+    }
+
+    @Override
+    public HttpStatusCode statusCode() {
+      return delegate.statusCode();
+    }
+
+    @SuppressWarnings("deprecation")
+    public int rawStatusCode() {
+      return delegate.statusCode().value();
+    }
+
+    @Override
+    public HttpHeaders headers() {
+      return delegate.headers();
+    }
+
+    @Override
+    public MultiValueMap<String, Cookie> cookies() {
+      return delegate.cookies();
+    }
+
+    @Override
+    public ModelAndView writeTo(HttpServletRequest request, HttpServletResponse response, Context context)
+        throws ServletException, IOException {
+      boolean stored = false;
+      try {
+        CapturingResponse capture = new CapturingResponse(response, maxEntryBytes);
+        ModelAndView modelAndView = delegate.writeTo(request, capture, context);
+        byte[] body = capture.body();
+        if (modelAndView == null && body != null) {
+          onComplete.accept(body);
+          stored = true;
+        }
+        return modelAndView;
+      } finally {
+        if (!stored && onNotStored != null) {
+          onNotStored.run();
+        }
+        if (onDone != null) {
+          onDone.run();
+        }
+      }
+    }
+  }
+
+  /**
+   * Keeps every entry until it is of no use anymore, as decided by the entry itself.
+   */
+  private static final class RetentionExpiry implements Expiry<String, CacheEntry> {
+
+    @Override
+    public long expireAfterCreate(String key, CacheEntry entry, long currentTime) {
+      return TimeUnit.MILLISECONDS.toNanos(Math.max(0, entry.retainUntil() - System.currentTimeMillis()));
+    }
+
+    @Override
+    public long expireAfterUpdate(String key, CacheEntry entry, long currentTime, long currentDuration) {
+      return expireAfterCreate(key, entry, currentTime);
+    }
+
+    @Override
+    public long expireAfterRead(String key, CacheEntry entry, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+  }
+}
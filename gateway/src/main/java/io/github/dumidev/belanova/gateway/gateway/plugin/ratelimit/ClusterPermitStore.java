@@ -0,0 +1,185 @@
+package io.github.dumidev.belanova.gateway.gateway.plugin.ratelimit;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ignite.Ignite;
+import org.apache.ignite.IgniteCache;
+import org.apache.ignite.cache.CacheAtomicityMode;
+import org.apache.ignite.cache.CacheEntryProcessor;
+import org.apache.ignite.cache.CacheMode;
+import org.apache.ignite.configuration.CacheConfiguration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.cache.expiry.Duration;
+import javax.cache.expiry.ModifiedExpiryPolicy;
+import javax.cache.processor.MutableEntry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cluster-wide token buckets shared by all gateway nodes, kept in an Ignite
+ * cache of theoretical arrival times.
+ * <p>
+ * Nodes never take single permits from it: {@link #lease} grants a whole
+ * batch at once through an entry processor on the owning node, and the
+ * {@link ClusterRateLimiter} of the route spends it locally. Entries expire
+ * once their bucket is full again, which makes them equivalent to absent ones.
+ * <p>
+ * When a lease fails or takes longer than {@code lease-timeout-ms}, the store
+ * reports itself unavailable for {@code retry-ms} and rate limits fall back to
+ * node-local buckets meanwhile.
+ */
+@Slf4j
+@Component
+public class ClusterPermitStore {
+
+  private final Ignite ignite;
+  private final MeterRegistry meterRegistry;
+  private final boolean enabled;
+  private final String cacheName;
+  private final int batchPercent;
+  private final long leaseTimeoutNanos;
+  private final long retryNanos;
+
+  private volatile IgniteCache<String, Long> cache;
+  private volatile long unavailableUntil;
+  private volatile boolean unavailable;
+
+  public ClusterPermitStore(Ignite ignite,
+                            MeterRegistry meterRegistry,
+                            @Value("${belanova.gateway.rate-limit.cluster.enabled:true}") boolean enabled,
+                            @Value("${belanova.gateway.rate-limit.cluster.cache-name:rate-limits}") String cacheName,
+                            @Value("${belanova.gateway.rate-limit.cluster.batch-percent:10}") int batchPercent,
+                            @Value("${belanova.gateway.rate-limit.cluster.lease-timeout-ms:20}") long leaseTimeoutMillis,
+                            @Value("${belanova.gateway.rate-limit.cluster.retry-ms:5000}") long retryMillis) {
+    this.ignite = ignite;
+    this.meterRegistry = meterRegistry;
+    this.enabled = enabled;
+    this.cacheName = cacheName;
+    this.batchPercent = Math.max(1, Math.min(batchPercent, 100));
+    this.leaseTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(leaseTimeoutMillis);
+    this.retryNanos = TimeUnit.MILLISECONDS.toNanos(retryMillis);
+  }
+
+  @PostConstruct
+  void start() {
+    if (!enabled) {
+      return;
+    }
+    try {
+      cache = ignite.getOrCreateCache(new CacheConfiguration<String, Long>(cacheName)
+          .setCacheMode(CacheMode.PARTITIONED)
+          .setAtomicityMode(CacheAtomicityMode.ATOMIC)
+          .setBackups(1));
+    } catch (RuntimeException ex) {
+      log.warn("Cluster rate limits unavailable, using node-local limits: {}", ex.getMessage());
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @return whether leases can be taken now; {@code false} while a recent failure is being waited out
+   */
+  public boolean isAvailable() {
+    if (cache == null) {
+      return false;
+    }
+    if (unavailable) {
+      if (System.nanoTime() - unavailableUntil < 0) {
+        return false;
+      }
+      unavailable = false;
+      log.info("Retrying cluster rate limits");
+    }
+    return true;
+  }
+
+  /**
+   * Permits a node leases at once: {@code batch-percent} of the burst. Bigger
+   * batches mean fewer cluster round trips, but permits parked on one node
+   * are not available to the others.
+   */
+  public long batchSize(RateLimitPolicy policy) {
+    return Math.max(1, policy.burst() * batchPercent / 100);
+  }
+
+  public long leaseTimeoutNanos() {
+    return leaseTimeoutNanos;
+  }
+
+  /**
+   * Takes up to {@code permits} permits from the cluster bucket of the key.
+   *
+   * @param now wall clock time in nanoseconds
+   * @return the permits granted, possibly 0, and the bucket's arrival time after the grant
+   */
+  public CompletableFuture<long[]> lease(String key, long now, long emissionNanos, long toleranceNanos, long permits) {
+    CompletableFuture<long[]> result = new CompletableFuture<>();
+    try {
+      Duration ttl = new Duration(TimeUnit.MILLISECONDS, TimeUnit.NANOSECONDS.toMillis(toleranceNanos) + 1_000);
+      cache.withExpiryPolicy(new ModifiedExpiryPolicy(ttl))
+          .invokeAsync(key, new LeaseProcessor(now, emissionNanos, toleranceNanos, permits))
+          .listen(future -> {
+            try {
+              result.complete(future.get());
+            } catch (RuntimeException ex) {
+              result.completeExceptionally(ex);
+            }
+          });
+    } catch (RuntimeException ex) {
+      result.completeExceptionally(ex);
+    }
+    return result;
+  }
+
+  /**
+   * Switches rate limits to node-local buckets for {@code retry-ms}.
+   */
+  public void markUnavailable(Throwable error) {
+    unavailableUntil = System.nanoTime() + retryNanos;
+    if (!unavailable) {
+      unavailable = true;
+      meterRegistry.counter("belanova.gateway.rate-limit.cluster.failures").increment();
+      log.warn("Cluster rate limits failed, using node-local limits for {} ms: {}",
+          TimeUnit.NANOSECONDS.toMillis(retryNanos), error.toString());
+    }
+  }
+
+  /**
+   * Grants as many of the requested permits as fit within the bucket's
+   * tolerance and advances its arrival time accordingly. Runs with the
+   * caller's clock, so every node's clock only shifts its own grants.
+   */
+  static final class LeaseProcessor implements CacheEntryProcessor<String, Long, long[]> {
+
+    private final long now;
+    private final long emissionNanos;
+    private final long toleranceNanos;
+    private final long permits;
+
+    LeaseProcessor(long now, long emissionNanos, long toleranceNanos, long permits) {
+      this.now = now;
+      this.emissionNanos = emissionNanos;
+      this.toleranceNanos = toleranceNanos;
+      this.permits = permits;
+    }
+
+    @Override
+    public long[] process(MutableEntry<String, Long> entry, Object... arguments) {
+      Long current = entry.getValue();
+      long tat = current != null ? Math.max(current, now) : now;
+      long available = (now + toleranceNanos - tat) / emissionNanos;
+      long granted = Math.max(0, Math.min(permits, available));
+      if (granted > 0) {
+        tat += granted * emissionNanos;
+        entry.setValue(tat);
+      }
+      return new long[] {granted, tat};
+    }
+  }
+}
@@ -0,0 +1,196 @@
+package io.github.dumidev.belanova.gateway.gateway.plugin.ratelimit;
+
+import io.micrometer.core.instrument.Counter;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Rate limit shared by all gateway nodes through the {@link ClusterPermitStore}.
+ * <p>
+ * Each key holds a local lease of permits taken from the cluster bucket in
+ * batches and spent with a CAS, so requests only wait for the cluster when a
+ * lease is empty. Once a lease runs below half a batch, the next one is
+ * fetched in the background, unless the cluster bucket was found empty.
+ * Unspent permits lapse after one bucket tolerance, so a node cannot save
+ * them up beyond the burst.
+ * <p>
+ * While the store is unavailable, and for keys beyond {@code maxKeys}, the
+ * limit is enforced per node by a {@link LocalRateLimiter}.
+ */
+final class ClusterRateLimiter implements RateLimiter {
+
+  private final String keyPrefix;
+  private final ClusterPermitStore store;
+  private final LocalRateLimiter fallback;
+  private final long emissionNanos;
+  private final long toleranceNanos;
+  private final long batch;
+  private final int maxKeys;
+  private final ConcurrentHashMap<String, Lease> leases = new ConcurrentHashMap<>();
+
+  /**
+   * @param overflows counts the requests of the fallback's keys beyond {@code maxKeys}
+   */
+  ClusterRateLimiter(String routeId, RateLimitPolicy policy, int maxKeys, ClusterPermitStore store, Counter overflows) {
+    this.keyPrefix = routeId + '|';
+    this.store = store;
+    this.fallback = new LocalRateLimiter(policy, maxKeys, overflows);
+    this.emissionNanos = Math.max(1, TimeUnit.MILLISECONDS.toNanos(policy.periodMillis()) / policy.limit());
+    this.toleranceNanos = emissionNanos * policy.burst();
+    this.batch = store.batchSize(policy);
+    this.maxKeys = maxKeys;
+  }
+
+  @Override
+  public long tryAcquire(String key, long now) {
+    key = RateLimiter.normalize(key);
+    Lease lease = store.isAvailable() ? lease(key) : null;
+    if (lease == null) {
+      return fallback.tryAcquire(key, now);
+    }
+    lease.lastUsed = now;
+
+    long wall = wallClock();
+    long left = lease.trySpend(wall);
+    if (left >= 0) {
+      if (left < (batch + 1) / 2 && wall - lease.deniedUntil >= 0) {
+        refill(key, lease, wall);
+      }
+      return left + clusterRemaining(lease, wall);
+    }
+    if (wall - lease.deniedUntil < 0) {
+      return -(lease.deniedUntil - wall);
+    }
+
+    try {
+      refill(key, lease, wall).get(store.leaseTimeoutNanos(), TimeUnit.NANOSECONDS);
+    } catch (TimeoutException | ExecutionException ex) {
+      store.markUnavailable(ex instanceof ExecutionException ? ex.getCause() : ex);
+      return fallback.tryAcquire(key, now);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return fallback.tryAcquire(key, now);
+    }
+    left = lease.trySpend(wall);
+    return left >= 0 ? left + clusterRemaining(lease, wall) : -Math.max(1, lease.deniedUntil - wall);
+  }
+
+  @Override
+  public long nanosUntilFull(String key, long now) {
+    if (!store.isAvailable()) {
+      return fallback.nanosUntilFull(key, now);
+    }
+    Lease lease = leases.get(RateLimiter.normalize(key));
+    return lease != null ? Math.max(0, lease.tat - wallClock()) : 0;
+  }
+
+  @Override
+  public void evictIdle(long now, long idleNanos) {
+    leases.values().removeIf(lease -> now - lease.lastUsed > idleNanos && lease.refill.get() == null);
+    fallback.evictIdle(now, idleNanos);
+  }
+
+  int size() {
+    return leases.size();
+  }
+
+  private Lease lease(String key) {
+    Lease lease = leases.get(key);
+    if (lease != null || leases.size() >= maxKeys) {
+      return lease;
+    }
+    return leases.computeIfAbsent(key, k -> new Lease());
+  }
+
+  /**
+   * Starts fetching the next batch unless a fetch is already under way.
+   *
+   * @return the fetch in progress
+   */
+  private CompletableFuture<Void> refill(String key, Lease lease, long wall) {
+    for (;;) {
+      CompletableFuture<Void> pending = lease.refill.get();
+      if (pending != null) {
+        return pending;
+      }
+      CompletableFuture<Void> next = new CompletableFuture<>();
+      if (!lease.refill.compareAndSet(null, next)) {
+        continue;
+      }
+      store.lease(keyPrefix + key, wall, emissionNanos, toleranceNanos, batch).whenComplete((grant, error) -> {
+        if (error == null) {
+          lease.granted(grant[0], grant[1], wall, emissionNanos, toleranceNanos);
+        }
+        lease.refill.set(null);
+        if (error != null) {
+          next.completeExceptionally(error);
+        } else {
+          next.complete(null);
+        }
+      });
+      return next;
+    }
+  }
+
+  /**
+   * @return the permits the cluster bucket had left after the last grant to this node
+   */
+  private long clusterRemaining(Lease lease, long wall) {
+    return Math.max(0, toleranceNanos - Math.max(0, lease.tat - wall)) / emissionNanos;
+  }
+
+  private static long wallClock() {
+    return TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+  }
+
+  private static final class Lease {
+
+    private static final AtomicLongFieldUpdater<Lease> PERMITS =
+        AtomicLongFieldUpdater.newUpdater(Lease.class, "permits");
+
+    private volatile long permits;
+    private volatile long expiresAt;
+    private volatile long tat;
+    private volatile long deniedUntil;
+    private volatile long lastUsed;
+    private final AtomicReference<CompletableFuture<Void>> refill = new AtomicReference<>();
+
+    /**
+     * @return the permits left after taking one, or -1 if the lease is empty or lapsed
+     */
+    long trySpend(long wall) {
+      if (wall - expiresAt >= 0) {
+        return -1;
+      }
+      for (;;) {
+        long current = permits;
+        if (current <= 0) {
+          return -1;
+        }
+        if (PERMITS.compareAndSet(this, current, current - 1)) {
+          return current - 1;
+        }
+      }
+    }
+
+    void granted(long granted, long tat, long wall, long emissionNanos, long toleranceNanos) {
+      this.tat = tat;
+      if (granted == 0) {
+        deniedUntil = tat + emissionNanos - toleranceNanos;
+        return;
+      }
+      if (wall - expiresAt >= 0) {
+        permits = granted;
+      } else {
+        PERMITS.addAndGet(this, granted);
+      }
+      expiresAt = wall + toleranceNanos;
+    }
+  }
+}
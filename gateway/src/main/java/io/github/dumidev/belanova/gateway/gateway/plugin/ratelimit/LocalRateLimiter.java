@@ -0,0 +1,120 @@
+package io.github.dumidev.belanova.gateway.gateway.plugin.ratelimit;
+
+import io.micrometer.core.instrument.Counter;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Token buckets of one rate limit, one per key.
+ * <p>
+ * Each bucket runs the generic cell rate algorithm, the virtual-scheduling
+ * form of a token bucket: its whole state is the theoretical arrival time of
+ * the next request, advanced by one emission interval per permit with a
+ * single CAS. A check therefore never locks or allocates once the key has a
+ * bucket, and buckets of different keys sit in different stripes of the map.
+ * <p>
+ * A bucket whose arrival time lies in the past is full, exactly like a bucket
+ * that does not exist, so idle buckets can be dropped at any time without
+ * changing any decision. Once there are {@code maxKeys} buckets, a new key
+ * first drops the full ones, at most once per {@value #OVERFLOW_EVICTION_MILLIS}
+ * ms, so keys rotated by one client do not lock others out until the idle
+ * sweep. New keys that still find no room share one overflow bucket, whose
+ * state is then theirs, and are counted by the {@code overflows} counter.
+ */
+final class LocalRateLimiter implements RateLimiter {
+
+  static final long OVERFLOW_EVICTION_MILLIS = 100;
+  private static final long OVERFLOW_EVICTION_NANOS = TimeUnit.MILLISECONDS.toNanos(OVERFLOW_EVICTION_MILLIS);
+
+  private final long emissionNanos;
+  private final long toleranceNanos;
+  private final int maxKeys;
+  private final Counter overflows;
+  private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+  private final Bucket overflow = new Bucket();
+  private final AtomicLong lastOverflowEviction = new AtomicLong(Long.MIN_VALUE / 2);
+
+  LocalRateLimiter(RateLimitPolicy policy, int maxKeys, Counter overflows) {
+    this.emissionNanos = Math.max(1, TimeUnit.MILLISECONDS.toNanos(policy.periodMillis()) / policy.limit());
+    this.toleranceNanos = emissionNanos * policy.burst();
+    this.maxKeys = maxKeys;
+    this.overflows = overflows;
+  }
+
+  @Override
+  public long tryAcquire(String key, long now) {
+    return bucket(RateLimiter.normalize(key), now).tryAcquire(now, emissionNanos, toleranceNanos);
+  }
+
+  @Override
+  public long nanosUntilFull(String key, long now) {
+    Bucket bucket = buckets.get(RateLimiter.normalize(key));
+    if (bucket == null && buckets.size() >= maxKeys) {
+      bucket = overflow;
+    }
+    return bucket != null ? Math.max(0, bucket.tat - now) : 0;
+  }
+
+  /**
+   * Drops buckets that have been full for at least {@code idleNanos}.
+   */
+  @Override
+  public void evictIdle(long now, long idleNanos) {
+    buckets.values().removeIf(bucket -> now - bucket.tat > idleNanos);
+  }
+
+  int size() {
+    return buckets.size();
+  }
+
+  private Bucket bucket(String key, long now) {
+    Bucket bucket = buckets.get(key);
+    if (bucket != null) {
+      return bucket;
+    }
+    if (buckets.size() >= maxKeys && !evictFull(now)) {
+      overflows.increment();
+      return overflow;
+    }
+    return buckets.computeIfAbsent(key, k -> new Bucket());
+  }
+
+  /**
+   * Drops the full buckets unless that was done less than
+   * {@value #OVERFLOW_EVICTION_MILLIS} ms ago.
+   *
+   * @return whether there is room for another key
+   */
+  private boolean evictFull(long now) {
+    long last = lastOverflowEviction.get();
+    if (now - last >= OVERFLOW_EVICTION_NANOS && lastOverflowEviction.compareAndSet(last, now)) {
+      evictIdle(now, 0);
+    }
+    return buckets.size() < maxKeys;
+  }
+
+  private static final class Bucket {
+
+    private static final AtomicLongFieldUpdater<Bucket> TAT = AtomicLongFieldUpdater.newUpdater(Bucket.class, "tat");
+
+    // Theoretical arrival time; Long.MIN_VALUE / 2 keeps "now - tat" from overflowing
+    private volatile long tat = Long.MIN_VALUE / 2;
+
+    long tryAcquire(long now, long emissionNanos, long toleranceNanos) {
+      for (;;) {
+        long current = tat;
+        long next = Math.max(current, now) + emissionNanos;
+        long ahead = next - now;
+        if (ahead > toleranceNanos) {
+          return -(ahead - toleranceNanos);
+        }
+        if (TAT.compareAndSet(this, current, next)) {
+          return (toleranceNanos - ahead) / emissionNanos;
+        }
+      }
+    }
+  }
+}
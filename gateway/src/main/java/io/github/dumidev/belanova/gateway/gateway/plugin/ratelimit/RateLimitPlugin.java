@@ -0,0 +1,233 @@
+package io.github.dumidev.belanova.gateway.gateway.plugin.ratelimit;
+
+import io.github.dumidev.belanova.gateway.gateway.routing.RoutingIndex;
+import io.github.dumijdev.belanova.gateway.common.plugin.GatewayPlugin;
+import io.github.dumijdev.belanova.gateway.common.plugin.PluginContext;
+import io.github.dumijdev.belanova.gateway.common.plugin.PluginPhase;
+import io.github.dumijdev.belanova.gateway.common.plugin.PluginResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.security.Principal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limits the routes of services with a {@link RateLimitPolicy}, keyed
+ * per route, consumer, API key or client IP.
+ * <p>
+ * Allowed and rejected responses carry the {@code RateLimit-Limit},
+ * {@code RateLimit-Remaining}, {@code RateLimit-Reset} and
+ * {@code RateLimit-Policy} headers of the IETF RateLimit header fields draft;
+ * rejected requests get a {@code 429} with {@code Retry-After}. Buckets that
+ * stayed full for {@code idle-eviction-ms} are dropped, and each route keeps
+ * at most {@code max-keys} of them; requests of further keys share one bucket
+ * and are counted by {@code belanova.gateway.rate-limit.overflow}.
+ * <p>
+ * With {@code cluster.enabled}, limits are shared by all gateway nodes
+ * through a {@link ClusterRateLimiter}; otherwise each node enforces them on
+ * its own.
+ */
+@Slf4j
+@Component
+public class RateLimitPlugin implements GatewayPlugin {
+
+  static final String LIMIT_HEADER = "RateLimit-Limit";
+  static final String REMAINING_HEADER = "RateLimit-Remaining";
+  static final String RESET_HEADER = "RateLimit-Reset";
+  static final String POLICY_HEADER = "RateLimit-Policy";
+
+  private static final String ROUTE_KEY = "";
+  private static final Set<PluginPhase> PHASES = Set.of(PluginPhase.PRE_ROUTE);
+
+  private final RoutingIndex routingIndex;
+  private final ClusterPermitStore clusterPermits;
+  private final MeterRegistry meterRegistry;
+  private final boolean enabled;
+  private final int maxKeys;
+  private final long idleEvictionNanos;
+  private final boolean headers;
+  private final ScheduledExecutorService scheduler;
+  private final Map<String, RouteLimit> routeLimits = new ConcurrentHashMap<>();
+
+  public RateLimitPlugin(RoutingIndex routingIndex,
+                         ClusterPermitStore clusterPermits,
+                         MeterRegistry meterRegistry,
+                         @Value("${belanova.gateway.rate-limit.enabled:true}") boolean enabled,
+                         @Value("${belanova.gateway.rate-limit.max-keys:100000}") int maxKeys,
+                         @Value("${belanova.gateway.rate-limit.idle-eviction-ms:60000}") long idleEvictionMillis,
+                         @Value("${belanova.gateway.rate-limit.headers:true}") boolean headers) {
+    this.routingIndex = routingIndex;
+    this.clusterPermits = clusterPermits;
+    this.meterRegistry = meterRegistry;
+    this.enabled = enabled;
+    this.maxKeys = maxKeys;
+    this.idleEvictionNanos = TimeUnit.MILLISECONDS.toNanos(idleEvictionMillis);
+    this.headers = headers;
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "belanova-rate-limit");
+      thread.setDaemon(true);
+      return thread;
+    });
+    long sweepMillis = Math.max(1_000, idleEvictionMillis / 2);
+    scheduler.scheduleWithFixedDelay(this::evictIdle, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  void stop() {
+    scheduler.shutdownNow();
+  }
+
+  @Override
+  public String getName() {
+    return "rate-limit";
+  }
+
+  @Override
+  public int getOrder() {
+    return 20;
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @Override
+  public boolean appliesTo(Map<String, String> metadata) {
+    return metadata != null && metadata.containsKey(RateLimitPolicy.PREFIX + "limit");
+  }
+
+  /**
+   * Reads the route's policy, keeping the route's buckets if the policy stayed the same.
+   */
+  @Override
+  public RouteLimit configure(String routeId, Map<String, String> metadata) {
+    RateLimitPolicy policy = RateLimitPolicy.fromMetadata(metadata);
+    if (policy == null) {
+      return null;
+    }
+    return routeLimits.compute(routeId, (id, existing) -> {
+      if (existing != null && policy.equals(existing.policy)) {
+        return existing;
+      }
+      Counter overflows = meterRegistry.counter("belanova.gateway.rate-limit.overflow", "route", id);
+      return new RouteLimit(policy, clusterPermits.isEnabled()
+          ? new ClusterRateLimiter(id, policy, maxKeys, clusterPermits, overflows)
+          : new LocalRateLimiter(policy, maxKeys, overflows));
+    });
+  }
+
+  @Override
+  public Set<PluginPhase> phases() {
+    return PHASES;
+  }
+
+  @Override
+  public CompletionStage<PluginResult> onPreRoute(PluginContext context) {
+    return (check(context) ? PluginResult.CONTINUE : PluginResult.STOP).completed();
+  }
+
+  private boolean check(PluginContext context) {
+    RouteLimit routeLimit = context.config(RouteLimit.class);
+    if (routeLimit == null) {
+      return true;
+    }
+
+    HttpServletResponse response = context.response();
+    String key = key(routeLimit.policy, context);
+    long now = System.nanoTime();
+    long result = routeLimit.limiter.tryAcquire(key, now);
+    boolean allowed = result >= 0;
+
+    if (headers) {
+      long resetSeconds = toSeconds(routeLimit.limiter.nanosUntilFull(key, now));
+      response.setHeader(LIMIT_HEADER, routeLimit.limitHeader);
+      response.setHeader(REMAINING_HEADER, allowed ? Long.toString(result) : "0");
+      response.setHeader(RESET_HEADER, Long.toString(resetSeconds));
+      response.setHeader(POLICY_HEADER, routeLimit.policyHeader);
+    }
+    if (allowed) {
+      return true;
+    }
+
+    response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+    response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(1, toSeconds(-result))));
+    meterRegistry.counter("belanova.gateway.rate-limit.rejected", "route", context.routeId()).increment();
+    return false;
+  }
+
+  @Override
+  public Map<String, Object> getConfiguration() {
+    Map<String, Object> configuration = new LinkedHashMap<>();
+    configuration.put("maxKeys", maxKeys);
+    configuration.put("idleEvictionMillis", TimeUnit.NANOSECONDS.toMillis(idleEvictionNanos));
+    configuration.put("headers", headers);
+    return configuration;
+  }
+
+  private static String key(RateLimitPolicy policy, PluginContext context) {
+    HttpServletRequest request = context.request();
+    String key = switch (policy.key()) {
+      case ROUTE -> ROUTE_KEY;
+      case IP -> null;
+      case API_KEY -> request.getHeader(policy.header());
+      case CONSUMER -> {
+        String consumerId = context.get(PluginContext.CONSUMER_ID);
+        Principal principal = consumerId == null ? request.getUserPrincipal() : null;
+        yield consumerId != null ? consumerId
+            : principal != null ? principal.getName()
+            : policy.header() != null ? request.getHeader(policy.header())
+            : null;
+      }
+    };
+    // Anonymous requests are limited per client address
+    return key != null ? key : request.getRemoteAddr();
+  }
+
+  private static long toSeconds(long nanos) {
+    return (nanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
+  }
+
+  void evictIdle() {
+    try {
+      long now = System.nanoTime();
+      routeLimits.entrySet().removeIf(entry -> routingIndex.lookup(entry.getKey()) == null);
+      for (RouteLimit routeLimit : routeLimits.values()) {
+        routeLimit.limiter.evictIdle(now, idleEvictionNanos);
+      }
+    } catch (RuntimeException ex) {
+      log.error("Rate limit bucket eviction failed", ex);
+    }
+  }
+
+  static final class RouteLimit {
+
+    private final RateLimitPolicy policy;
+    private final RateLimiter limiter;
+    private final String limitHeader;
+    private final String policyHeader;
+
+    private RouteLimit(RateLimitPolicy policy, RateLimiter limiter) {
+      this.policy = policy;
+      this.limiter = limiter;
+      this.limitHeader = Long.toString(policy.limit());
+      this.policyHeader = policy.limit() + ";w=" + Math.max(1, TimeUnit.MILLISECONDS.toSeconds(policy.periodMillis()))
+          + (policy.burst() != policy.limit() ? ";burst=" + policy.burst() : "");
+    }
+  }
+}
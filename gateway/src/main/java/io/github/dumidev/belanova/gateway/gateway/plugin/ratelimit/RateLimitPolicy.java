@@ -0,0 +1,44 @@
+package io.github.dumidev.belanova.gateway.gateway.plugin.ratelimit;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Rate limit of one service, read from its metadata:
+ * <ul>
+ *   <li>{@code rate-limit.limit}: requests allowed per period; no limit if absent</li>
+ *   <li>{@code rate-limit.period-ms}: length of the period, default 60000</li>
+ *   <li>{@code rate-limit.burst}: requests that may arrive back to back, default the limit</li>
+ *   <li>{@code rate-limit.key}: what is limited, one of {@code route}, {@code consumer},
+ *       {@code api-key} or {@code ip} (default)</li>
+ *   <li>{@code rate-limit.header}: header holding the API key, default {@code X-API-Key};
+ *       with {@code consumer}, a header the client may name itself by when no consumer
+ *       was authenticated, off unless set, since the client controls it</li>
+ * </ul>
+ */
+public record RateLimitPolicy(long limit, long periodMillis, long burst, KeyType key, String header) {
+
+  public static final String PREFIX = "rate-limit.";
+
+  public enum KeyType { ROUTE, CONSUMER, API_KEY, IP }
+
+  /**
+   * @return the policy described by the metadata, or {@code null} if the service is not rate limited
+   * @throws IllegalArgumentException if a value cannot be parsed or is out of range
+   */
+  public static RateLimitPolicy fromMetadata(Map<String, String> metadata) {
+    if (metadata == null || !metadata.containsKey(PREFIX + "limit")) {
+      return null;
+    }
+    long limit = Long.parseLong(metadata.get(PREFIX + "limit").trim());
+    long periodMillis = Long.parseLong(metadata.getOrDefault(PREFIX + "period-ms", "60000").trim());
+    long burst = Long.parseLong(metadata.getOrDefault(PREFIX + "burst", Long.toString(limit)).trim());
+    if (limit <= 0 || periodMillis <= 0 || burst <= 0) {
+      throw new IllegalArgumentException("rate-limit.limit, period-ms and burst must be positive");
+    }
+    KeyType key = KeyType.valueOf(metadata.getOrDefault(PREFIX + "key", "ip").trim()
+        .replace('-', '_').toUpperCase(Locale.ROOT));
+    String header = metadata.getOrDefault(PREFIX + "header", key == KeyType.CONSUMER ? null : "X-API-Key");
+    return new RateLimitPolicy(limit, periodMillis, burst, key, header);
+  }
+}
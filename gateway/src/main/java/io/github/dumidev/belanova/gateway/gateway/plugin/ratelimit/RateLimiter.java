@@ -0,0 +1,37 @@
+package io.github.dumidev.belanova.gateway.gateway.plugin.ratelimit;
+
+/**
+ * Token buckets of one rate limit, one per key. {@code now} is a
+ * {@link System#nanoTime()} reading.
+ */
+interface RateLimiter {
+
+  int MAX_KEY_LENGTH = 256;
+
+  /**
+   * Takes one permit for the key.
+   *
+   * @return the permits left if the request is allowed, otherwise minus the
+   *     nanoseconds until the next permit (always negative)
+   */
+  long tryAcquire(String key, long now);
+
+  /**
+   * @return the nanoseconds until the key's bucket is full again
+   */
+  long nanosUntilFull(String key, long now);
+
+  /**
+   * Drops the state of keys that have been idle for at least {@code idleNanos}.
+   */
+  void evictIdle(long now, long idleNanos);
+
+  /**
+   * Cuts keys taken from client input down to {@link #MAX_KEY_LENGTH}, so they
+   * cannot blow up the memory held per key. Every lookup of a key must go
+   * through here, or long keys would never find their bucket.
+   */
+  static String normalize(String key) {
+    return key.length() > MAX_KEY_LENGTH ? key.substring(0, MAX_KEY_LENGTH) : key;
+  }
+}
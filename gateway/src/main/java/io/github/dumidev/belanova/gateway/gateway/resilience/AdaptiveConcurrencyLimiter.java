@@ -0,0 +1,159 @@
+package io.github.dumidev.belanova.gateway.gateway.resilience;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrency limit of one route that follows the upstream's latency.
+ * <p>
+ * Admission is a single CAS on the in-flight count. Each completed call
+ * feeds its round trip time to the limit algorithm:
+ * <ul>
+ *   <li>{@code GRADIENT} compares each RTT with a long-term average: the
+ *       limit shrinks by their ratio once RTTs rise above 1.5 times the
+ *       average, and otherwise grows by its square root, smoothed by 0.2.</li>
+ *   <li>{@code VEGAS} estimates the queue at the upstream from the RTT and
+ *       the minimum RTT seen (re-probed every {@value #PROBE_FACTOR} times
+ *       the limit samples) and grows the limit while the queue stays short,
+ *       shrinking it once the queue gets long.</li>
+ * </ul>
+ * Both back off multiplicatively on dropped calls (errors, 503 and 504) and
+ * keep the limit while less than half of it is in use, so an idle route does
+ * not inflate it. Samples are applied under a try-lock, and RTT samples that
+ * arrive while another one is applied are skipped; drops are never skipped
+ * but left for the next call that gets the lock.
+ */
+final class AdaptiveConcurrencyLimiter {
+
+  static final int PROBE_FACTOR = 30;
+
+  private static final AtomicIntegerFieldUpdater<AdaptiveConcurrencyLimiter> IN_FLIGHT =
+      AtomicIntegerFieldUpdater.newUpdater(AdaptiveConcurrencyLimiter.class, "inFlight");
+
+  private static final double GRADIENT_TOLERANCE = 1.5;
+  private static final double GRADIENT_SMOOTHING = 0.2;
+  private static final int GRADIENT_LONG_WINDOW = 600;
+  private static final double DROP_FACTOR = 0.9;
+
+  private final ConcurrencyLimitPolicy policy;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final AtomicLong rejections = new AtomicLong();
+  private final AtomicInteger pendingDrops = new AtomicInteger();
+
+  private volatile int inFlight;
+  private volatile int limit;
+
+  // Guarded by lock
+  private double estimate;
+  private double longRtt;
+  private long minRtt;
+  private long samples;
+  private long sinceProbe;
+
+  AdaptiveConcurrencyLimiter(ConcurrencyLimitPolicy policy) {
+    this.policy = policy;
+    this.estimate = policy.initialLimit();
+    this.limit = policy.initialLimit();
+  }
+
+  ConcurrencyLimitPolicy policy() {
+    return policy;
+  }
+
+  int limit() {
+    return limit;
+  }
+
+  int inFlight() {
+    return inFlight;
+  }
+
+  long rejections() {
+    return rejections.get();
+  }
+
+  /**
+   * @return the calls in flight including this one, or -1 if the limit is reached
+   */
+  int tryAcquire() {
+    for (;;) {
+      int current = inFlight;
+      if (current >= limit) {
+        rejections.incrementAndGet();
+        return -1;
+      }
+      if (IN_FLIGHT.compareAndSet(this, current, current + 1)) {
+        return current + 1;
+      }
+    }
+  }
+
+  /**
+   * Ends a call admitted by {@link #tryAcquire()}.
+   *
+   * @param inFlightAtStart what {@link #tryAcquire()} returned for the call
+   */
+  void release(long rttNanos, int inFlightAtStart, boolean dropped) {
+    IN_FLIGHT.decrementAndGet(this);
+    if (dropped) {
+      pendingDrops.incrementAndGet();
+    }
+    if (!lock.tryLock()) {
+      return;
+    }
+    try {
+      int drops = pendingDrops.getAndSet(0);
+      if (drops > 0) {
+        estimate *= Math.pow(DROP_FACTOR, drops);
+      } else if (rttNanos > 0) {
+        switch (policy.algorithm()) {
+          case GRADIENT -> gradient(rttNanos, inFlightAtStart);
+          case VEGAS -> vegas(rttNanos, inFlightAtStart);
+        }
+      }
+      estimate = Math.max(policy.minLimit(), Math.min(policy.maxLimit(), estimate));
+      limit = (int) estimate;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void gradient(long rtt, int inFlightAtStart) {
+    samples++;
+    // A plain average until the window has filled, then an EWMA over it
+    longRtt += (rtt - longRtt) / Math.min(samples, GRADIENT_LONG_WINDOW);
+    if (longRtt > 2.0 * rtt) {
+      // Let the average come down quickly after a load spike
+      longRtt *= 0.95;
+    }
+    if (inFlightAtStart < estimate / 2) {
+      return;
+    }
+    double gradient = Math.max(0.5, Math.min(1.0, GRADIENT_TOLERANCE * longRtt / rtt));
+    double next = estimate * gradient + Math.sqrt(estimate);
+    estimate = estimate * (1 - GRADIENT_SMOOTHING) + next * GRADIENT_SMOOTHING;
+  }
+
+  private void vegas(long rtt, int inFlightAtStart) {
+    if (minRtt == 0 || rtt < minRtt || ++sinceProbe >= PROBE_FACTOR * estimate) {
+      // Take a fresh baseline now and then, in case the upstream got slower for good
+      minRtt = rtt;
+      sinceProbe = 0;
+      return;
+    }
+    if (inFlightAtStart * 2 < estimate) {
+      return;
+    }
+    double log = Math.max(1, Math.log10(estimate));
+    double queue = Math.ceil(estimate * (1 - (double) minRtt / rtt));
+    if (queue <= log) {
+      estimate += 6 * log;
+    } else if (queue < 3 * log) {
+      estimate += log;
+    } else if (queue > 6 * log) {
+      estimate -= log;
+    }
+  }
+}
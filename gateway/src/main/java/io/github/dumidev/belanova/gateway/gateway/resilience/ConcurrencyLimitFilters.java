@@ -0,0 +1,148 @@
+package io.github.dumidev.belanova.gateway.gateway.resilience;
+
+import io.github.dumidev.belanova.gateway.gateway.loadbalancer.LoadBalancingInterceptor;
+import io.github.dumidev.belanova.gateway.gateway.loadbalancer.UpstreamLease;
+import io.github.dumijdev.belanova.gateway.common.model.Service;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.function.HandlerFilterFunction;
+import org.springframework.web.servlet.function.HandlerFunction;
+import org.springframework.web.servlet.function.ServerRequest;
+import org.springframework.web.servlet.function.ServerResponse;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Builds the concurrency limit filter of each route from its service's
+ * {@link ConcurrencyLimitPolicy}.
+ * <p>
+ * Requests beyond the route's current limit are answered with {@code 503}
+ * right away instead of queueing for a slow upstream. The limit of a route
+ * survives route table rebuilds as long as its policy stays the same, and
+ * goes away, with its meters, together with the route.
+ * <p>
+ * Per route, {@code belanova.gateway.concurrency.limit} and
+ * {@code belanova.gateway.concurrency.in-flight} report the limit and the
+ * calls in flight, and {@code belanova.gateway.concurrency.rejected} counts
+ * rejected requests.
+ */
+@Slf4j
+@Component
+public class ConcurrencyLimitFilters {
+
+  private static final List<String> METER_NAMES = List.of("belanova.gateway.concurrency.limit",
+      "belanova.gateway.concurrency.in-flight", "belanova.gateway.concurrency.rejected");
+
+  private final MeterRegistry meterRegistry;
+  private final Map<String, AdaptiveConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+  public ConcurrencyLimitFilters(MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+  }
+
+  /**
+   * @return the concurrency limit filter of the route, or {@code null} if its service does not enable one
+   */
+  public HandlerFilterFunction<ServerResponse, ServerResponse> forRoute(String routeId, Service service) {
+    ConcurrencyLimitPolicy policy;
+    try {
+      policy = ConcurrencyLimitPolicy.fromMetadata(service.getMetadata());
+    } catch (IllegalArgumentException ex) {
+      log.warn("Ignoring invalid concurrency limit of route {}: {}", routeId, ex.getMessage());
+      remove(routeId);
+      return null;
+    }
+    if (policy == null) {
+      remove(routeId);
+      return null;
+    }
+    AdaptiveConcurrencyLimiter limiter = limiters.compute(routeId, (id, existing) ->
+        existing != null && existing.policy().equals(policy) ? existing : new AdaptiveConcurrencyLimiter(policy));
+    registerGauges(routeId);
+    return new ConcurrencyLimitFilter(limiter,
+        meterRegistry.counter("belanova.gateway.concurrency.rejected", "route", routeId));
+  }
+
+  /**
+   * Forgets the limits and meters of routes that are no longer in the route table.
+   */
+  public void retainAll(Set<String> routeIds) {
+    for (String routeId : limiters.keySet()) {
+      if (!routeIds.contains(routeId)) {
+        remove(routeId);
+      }
+    }
+  }
+
+  private void remove(String routeId) {
+    if (limiters.remove(routeId) != null) {
+      for (String name : METER_NAMES) {
+        meterRegistry.find(name).tag("route", routeId).meters().forEach(meterRegistry::remove);
+      }
+    }
+  }
+
+  private void registerGauges(String routeId) {
+    // Registering is idempotent; the gauges read whichever limiter the route has now
+    Gauge.builder("belanova.gateway.concurrency.limit", limiters, map -> {
+          AdaptiveConcurrencyLimiter limiter = map.get(routeId);
+          return limiter != null ? limiter.limit() : 0;
+        })
+        .tag("route", routeId)
+        .register(meterRegistry);
+    Gauge.builder("belanova.gateway.concurrency.in-flight", limiters, map -> {
+          AdaptiveConcurrencyLimiter limiter = map.get(routeId);
+          return limiter != null ? limiter.inFlight() : 0;
+        })
+        .tag("route", routeId)
+        .register(meterRegistry);
+  }
+
+  private static final class ConcurrencyLimitFilter implements HandlerFilterFunction<ServerResponse, ServerResponse> {
+
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final Counter rejected;
+
+    private ConcurrencyLimitFilter(AdaptiveConcurrencyLimiter limiter, Counter rejected) {
+      this.limiter = limiter;
+      this.rejected = rejected;
+    }
+
+    @Override
+    public ServerResponse filter(ServerRequest request, HandlerFunction<ServerResponse> next) throws Exception {
+      int inFlight = limiter.tryAcquire();
+      if (inFlight < 0) {
+        rejected.increment();
+        // The request never reaches the upstream picked for it
+        if (request.servletRequest().getAttribute(LoadBalancingInterceptor.UPSTREAM_LEASE_ATTR)
+            instanceof UpstreamLease lease) {
+          lease.cancel();
+        }
+        return ServerResponse.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+      }
+
+      long start = System.nanoTime();
+      boolean dropped = true;
+      try {
+        ServerResponse response = next.handle(request);
+        int status = response.statusCode().value();
+        dropped = status == HttpStatus.SERVICE_UNAVAILABLE.value() || status == HttpStatus.GATEWAY_TIMEOUT.value();
+        return response;
+      } finally {
+        // The RTT runs until the upstream's response headers arrive; the body is streamed afterwards.
+        // Retried calls are timed from their last attempt, leaving out earlier attempts and backoff.
+        if (request.servletRequest().getAttribute(RetryFilters.ATTEMPT_START_ATTR) instanceof Long attemptStart) {
+          start = Math.max(start, attemptStart);
+        }
+        limiter.release(System.nanoTime() - start, inFlight, dropped);
+      }
+    }
+  }
+}
@@ -0,0 +1,44 @@
+package io.github.dumidev.belanova.gateway.gateway.resilience;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Adaptive concurrency limit of one service, read from its metadata:
+ * <ul>
+ *   <li>{@code concurrency-limit.enabled}: {@code true} to limit the requests in flight to the route</li>
+ *   <li>{@code concurrency-limit.algorithm}: {@code gradient} (default) or {@code vegas}</li>
+ *   <li>{@code concurrency-limit.initial}: limit before any latency was measured, default 20</li>
+ *   <li>{@code concurrency-limit.min}: lowest limit, default 1</li>
+ *   <li>{@code concurrency-limit.max}: highest limit, default 1000</li>
+ * </ul>
+ */
+public record ConcurrencyLimitPolicy(Algorithm algorithm, int initialLimit, int minLimit, int maxLimit) {
+
+  public static final String PREFIX = "concurrency-limit.";
+
+  public enum Algorithm { GRADIENT, VEGAS }
+
+  /**
+   * @return the policy described by the metadata, or {@code null} if the route is not limited
+   * @throws IllegalArgumentException if a value cannot be parsed or is out of range
+   */
+  public static ConcurrencyLimitPolicy fromMetadata(Map<String, String> metadata) {
+    if (metadata == null || !Boolean.parseBoolean(metadata.get(PREFIX + "enabled"))) {
+      return null;
+    }
+    Algorithm algorithm = Algorithm.valueOf(metadata.getOrDefault(PREFIX + "algorithm", "gradient").trim()
+        .toUpperCase(Locale.ROOT));
+    int minLimit = Integer.parseInt(metadata.getOrDefault(PREFIX + "min", "1").trim());
+    int maxLimit = Integer.parseInt(metadata.getOrDefault(PREFIX + "max", "1000").trim());
+    int initialLimit = Integer.parseInt(metadata.getOrDefault(PREFIX + "initial", "20").trim());
+    if (minLimit < 1 || maxLimit < minLimit) {
+      throw new IllegalArgumentException("concurrency-limit.min must be positive and at most max: "
+          + minLimit + ", " + maxLimit);
+    }
+    if (initialLimit < minLimit || initialLimit > maxLimit) {
+      throw new IllegalArgumentException("concurrency-limit.initial must be between min and max: " + initialLimit);
+    }
+    return new ConcurrencyLimitPolicy(algorithm, initialLimit, minLimit, maxLimit);
+  }
+}
@@ -0,0 +1,172 @@
+package io.github.dumidev.belanova.gateway.gateway.resilience;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.web.servlet.function.ServerResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.List;
+
+/**
+ * Response that swallows everything written to it. A proxied response only
+ * releases its upstream connection once its body has been written, so
+ * responses that are thrown away, such as failed attempts that get retried
+ * or attempts that lost a hedging race, are written here instead. A
+ * response can also be {@link #close closed} unread, for bodies not worth
+ * reading to the end.
+ */
+public final class DiscardingResponse extends HttpServletResponseWrapper {
+
+  private static final ServerResponse.Context CONTEXT = List::of;
+
+  private final boolean refuseBody;
+  private final ServletOutputStream outputStream = new ServletOutputStream() {
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      written();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      written();
+    }
+
+    private void written() throws IOException {
+      if (refuseBody) {
+        throw new IOException("Response body discarded");
+      }
+    }
+  };
+
+  DiscardingResponse(HttpServletResponse response, boolean refuseBody) {
+    super(response);
+    this.refuseBody = refuseBody;
+  }
+
+  /**
+   * Writes the response to nowhere, which releases whatever it still holds.
+   */
+  public static void discard(ServerResponse response, HttpServletRequest request, HttpServletResponse servletResponse)
+      throws ServletException, IOException {
+    response.writeTo(request, new DiscardingResponse(servletResponse, false), CONTEXT);
+  }
+
+  /**
+   * Writes the response to a stream that fails on the first byte of its
+   * body, so a proxied response closes its upstream connection instead of
+   * reading the body to the end.
+   *
+   * @throws IOException once the response got to its body
+   */
+  public static void close(ServerResponse response, HttpServletRequest request, HttpServletResponse servletResponse)
+      throws ServletException, IOException {
+    response.writeTo(request, new DiscardingResponse(servletResponse, true), CONTEXT);
+  }
+
+  @Override
+  public ServletOutputStream getOutputStream() {
+    return outputStream;
+  }
+
+  @Override
+  public PrintWriter getWriter() {
+    return new PrintWriter(OutputStream.nullOutputStream());
+  }
+
+  @Override
+  public void setStatus(int sc) {
+  }
+
+  @Override
+  public void sendError(int sc) {
+  }
+
+  @Override
+  public void sendError(int sc, String msg) {
+  }
+
+  @Override
+  public void sendRedirect(String location) {
+  }
+
+  @Override
+  public void setHeader(String name, String value) {
+  }
+
+  @Override
+  public void addHeader(String name, String value) {
+  }
+
+  @Override
+  public void setIntHeader(String name, int value) {
+  }
+
+  @Override
+  public void addIntHeader(String name, int value) {
+  }
+
+  @Override
+  public void setDateHeader(String name, long date) {
+  }
+
+  @Override
+  public void addDateHeader(String name, long date) {
+  }
+
+  @Override
+  public void addCookie(Cookie cookie) {
+  }
+
+  @Override
+  public void setContentType(String type) {
+  }
+
+  @Override
+  public void setContentLength(int len) {
+  }
+
+  @Override
+  public void setContentLengthLong(long len) {
+  }
+
+  @Override
+  public void setCharacterEncoding(String charset) {
+  }
+
+  @Override
+  public void setBufferSize(int size) {
+  }
+
+  @Override
+  public void flushBuffer() {
+  }
+
+  @Override
+  public void resetBuffer() {
+  }
+
+  @Override
+  public void reset() {
+  }
+
+  @Override
+  public boolean isCommitted() {
+    return false;
+  }
+}
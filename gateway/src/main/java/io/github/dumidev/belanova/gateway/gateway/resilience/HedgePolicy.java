@@ -0,0 +1,40 @@
+package io.github.dumidev.belanova.gateway.gateway.resilience;
+
+import java.util.Map;
+
+/**
+ * Hedging settings of one service, read from its metadata:
+ * <ul>
+ *   <li>{@code hedge.enabled}: {@code true} to hedge GET and HEAD requests</li>
+ *   <li>{@code hedge.percentile}: latency percentile of the route after which
+ *       a second attempt is sent, default 95</li>
+ *   <li>{@code hedge.min-delay-ms}: lower bound of that delay, default 5</li>
+ *   <li>{@code hedge.max-percent}: hedges allowed as a percentage of the
+ *       route's requests, default 10</li>
+ * </ul>
+ */
+public record HedgePolicy(double percentile, long minDelayMillis, double maxPercent) {
+
+  public static final String PREFIX = "hedge.";
+
+  /**
+   * @return the policy described by the metadata, or {@code null} if hedging is not enabled
+   * @throws IllegalArgumentException if a value cannot be parsed or is out of range
+   */
+  public static HedgePolicy fromMetadata(Map<String, String> metadata) {
+    if (metadata == null || !Boolean.parseBoolean(metadata.get(PREFIX + "enabled"))) {
+      return null;
+    }
+    double percentile = Double.parseDouble(metadata.getOrDefault(PREFIX + "percentile", "95").trim());
+    double maxPercent = Double.parseDouble(metadata.getOrDefault(PREFIX + "max-percent", "10").trim());
+    if (percentile <= 0 || percentile >= 100) {
+      throw new IllegalArgumentException("hedge.percentile must be between 0 and 100: " + percentile);
+    }
+    if (maxPercent <= 0 || maxPercent > 100) {
+      throw new IllegalArgumentException("hedge.max-percent must be between 0 and 100: " + maxPercent);
+    }
+    return new HedgePolicy(percentile,
+        Long.parseLong(metadata.getOrDefault(PREFIX + "min-delay-ms", "5").trim()),
+        maxPercent);
+  }
+}
@@ -0,0 +1,331 @@
+package io.github.dumidev.belanova.gateway.gateway.resilience;
+
+import io.github.dumidev.belanova.gateway.gateway.loadbalancer.LoadBalancingInterceptor;
+import io.github.dumidev.belanova.gateway.gateway.loadbalancer.UpstreamLease;
+import io.github.dumijdev.belanova.gateway.common.model.Service;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.server.mvc.common.MvcUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.function.HandlerFilterFunction;
+import org.springframework.web.servlet.function.HandlerFunction;
+import org.springframework.web.servlet.function.ServerRequest;
+import org.springframework.web.servlet.function.ServerResponse;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Builds the hedging filter of each route from its service's {@link HedgePolicy}.
+ * <p>
+ * Attempts run on virtual threads while the request thread waits. If the
+ * first attempt has not answered within the route's latency percentile, a
+ * second one is sent to a different upstream and whichever answers first is
+ * returned; a failed attempt does not win while the other one is still
+ * running. The loser is interrupted and waited for, and its response, if
+ * any, closed unread before the filter returns, while the servlet request
+ * and response it needs for that are still the request's.
+ * Hedges are capped at {@code hedge.max-percent} of the route's requests, and
+ * no hedge is sent until the route has {@value #MIN_SAMPLES} latency samples.
+ * The filter of a route, and so its latencies, survives route table rebuilds
+ * as long as its policy stays the same.
+ * <p>
+ * Per route, {@code belanova.gateway.hedges} counts hedges sent, hedges that
+ * won and hedges skipped for lack of budget, and
+ * {@code belanova.gateway.hedges.wasted} times the attempts whose work was
+ * thrown away.
+ */
+@Slf4j
+@Component
+public class HedgingFilters {
+
+  static final long MIN_SAMPLES = 100;
+  private static final long HISTOGRAM_PERIOD_MILLIS = 30_000;
+  private static final int MAX_HEDGE_BURST = 10;
+
+  private final LoadBalancingInterceptor loadBalancing;
+  private final MeterRegistry meterRegistry;
+  private final Map<String, HedgingFilter> filters = new ConcurrentHashMap<>();
+  private final ExecutorService executor =
+      Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("belanova-hedge-", 0).factory());
+
+  public HedgingFilters(LoadBalancingInterceptor loadBalancing, MeterRegistry meterRegistry) {
+    this.loadBalancing = loadBalancing;
+    this.meterRegistry = meterRegistry;
+  }
+
+  @PreDestroy
+  void stop() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * @return the hedging filter of the route, or {@code null} if its service does not enable hedging
+   */
+  public HandlerFilterFunction<ServerResponse, ServerResponse> forRoute(String routeId, Service service) {
+    HedgePolicy policy;
+    try {
+      policy = HedgePolicy.fromMetadata(service.getMetadata());
+    } catch (IllegalArgumentException ex) {
+      log.warn("Ignoring invalid hedging policy of route {}: {}", routeId, ex.getMessage());
+      filters.remove(routeId);
+      return null;
+    }
+    if (policy == null) {
+      filters.remove(routeId);
+      return null;
+    }
+    return filters.compute(routeId, (id, existing) ->
+        existing != null && existing.policy.equals(policy) ? existing : new HedgingFilter(routeId, policy));
+  }
+
+  /**
+   * Forgets the filters of routes that are no longer in the route table.
+   */
+  public void retainAll(Set<String> routeIds) {
+    filters.keySet().retainAll(routeIds);
+  }
+
+  final class HedgingFilter implements HandlerFilterFunction<ServerResponse, ServerResponse> {
+
+    private final String routeId;
+    private final HedgePolicy policy;
+    private final LatencyHistogram latencies = new LatencyHistogram(HISTOGRAM_PERIOD_MILLIS);
+    // Hedges are extra attempts just like retries, so they get a budget of their own per route
+    private final RetryBudget budget;
+    private final Timer wasted;
+
+    private HedgingFilter(String routeId, HedgePolicy policy) {
+      this.routeId = routeId;
+      this.policy = policy;
+      this.budget = new RetryBudget(policy.maxPercent(), 0, MAX_HEDGE_BURST);
+      this.wasted = meterRegistry.timer("belanova.gateway.hedges.wasted", "route", routeId);
+    }
+
+    @Override
+    public ServerResponse filter(ServerRequest request, HandlerFunction<ServerResponse> next) throws Exception {
+      HttpServletRequest servletRequest = request.servletRequest();
+      if (!isHedgeable(request) || !(servletRequest.getAttribute(LoadBalancingInterceptor.UPSTREAM_LEASE_ATTR)
+          instanceof UpstreamLease primaryLease)) {
+        return next.handle(request);
+      }
+      budget.deposit();
+
+      long delayNanos = latencies.percentileNanos(policy.percentile(), MIN_SAMPLES, System.nanoTime());
+      HttpServletResponse servletResponse = currentResponse();
+      if (delayNanos < 0 || servletResponse == null) {
+        long start = System.nanoTime();
+        try {
+          return next.handle(request);
+        } finally {
+          long now = System.nanoTime();
+          latencies.record(now - start, now);
+        }
+      }
+      delayNanos = Math.max(delayNanos, TimeUnit.MILLISECONDS.toNanos(policy.minDelayMillis()));
+
+      Attempt primary = start(request, next, primaryLease, servletRequest, servletResponse);
+      try {
+        return primary.result.get(delayNanos, TimeUnit.NANOSECONDS);
+      } catch (TimeoutException ignored) {
+        // Slower than the percentile; fall through to hedging
+      } catch (ExecutionException ex) {
+        throw unwrapFailure(ex);
+      } catch (InterruptedException ex) {
+        primary.abandon();
+        throw ex;
+      }
+
+      Attempt hedge = startHedge(request, next, servletRequest, servletResponse);
+      if (hedge == null) {
+        return await(primary.result);
+      }
+
+      CompletableFuture<Attempt> winner = new CompletableFuture<>();
+      primary.result.whenComplete((response, error) -> {
+        if (error == null || hedge.result.isCompletedExceptionally()) winner.complete(primary);
+      });
+      hedge.result.whenComplete((response, error) -> {
+        if (error == null || primary.result.isCompletedExceptionally()) winner.complete(error == null ? hedge : primary);
+      });
+
+      Attempt won;
+      try {
+        won = winner.get();
+      } catch (InterruptedException ex) {
+        primary.abandon();
+        hedge.abandon();
+        throw ex;
+      }
+      Attempt lost = won == primary ? hedge : primary;
+      lost.abandon();
+      if (won == hedge) {
+        // From here on the request's outcome belongs to the hedge's upstream
+        servletRequest.setAttribute(MvcUtils.GATEWAY_REQUEST_URL_ATTR, hedge.lease.target().uri());
+        servletRequest.setAttribute(LoadBalancingInterceptor.UPSTREAM_LEASE_ATTR, hedge.lease);
+        count("won");
+      }
+      return await(won.result);
+    }
+
+    private Attempt startHedge(ServerRequest request, HandlerFunction<ServerResponse> next,
+                               HttpServletRequest servletRequest, HttpServletResponse servletResponse) {
+      if (!budget.tryWithdraw()) {
+        count("budget-exhausted");
+        return null;
+      }
+      UpstreamLease lease = loadBalancing.hedge(servletRequest);
+      if (lease == null) {
+        return null;
+      }
+      ServerRequest hedgeRequest = ServerRequest.from(request)
+          .attribute(MvcUtils.GATEWAY_REQUEST_URL_ATTR, lease.target().uri())
+          .build();
+      count("sent");
+      log.debug("Hedging request of route {} to {}", routeId, lease.target());
+      return start(hedgeRequest, next, lease, servletRequest, servletResponse);
+    }
+
+    private Attempt start(ServerRequest request, HandlerFunction<ServerResponse> next, UpstreamLease lease,
+                          HttpServletRequest servletRequest, HttpServletResponse servletResponse) {
+      Attempt attempt = new Attempt(this, request, next, lease, servletRequest, servletResponse);
+      executor.execute(attempt);
+      return attempt;
+    }
+
+    private void count(String outcome) {
+      meterRegistry.counter("belanova.gateway.hedges", "route", routeId, "outcome", outcome).increment();
+    }
+  }
+
+  /**
+   * One proxied call on its own virtual thread.
+   */
+  private static final class Attempt implements Runnable {
+
+    private final HedgingFilter filter;
+    private final ServerRequest request;
+    private final HandlerFunction<ServerResponse> next;
+    private final UpstreamLease lease;
+    private final HttpServletRequest servletRequest;
+    private final HttpServletResponse servletResponse;
+    private final CompletableFuture<ServerResponse> result = new CompletableFuture<>();
+    private final long startNanos = System.nanoTime();
+    private volatile Thread thread;
+    private volatile boolean abandoned;
+
+    private Attempt(HedgingFilter filter, ServerRequest request, HandlerFunction<ServerResponse> next,
+                    UpstreamLease lease, HttpServletRequest servletRequest, HttpServletResponse servletResponse) {
+      this.filter = filter;
+      this.request = request;
+      this.next = next;
+      this.lease = lease;
+      this.servletRequest = servletRequest;
+      this.servletResponse = servletResponse;
+    }
+
+    @Override
+    public void run() {
+      thread = Thread.currentThread();
+      try {
+        if (abandoned) {
+          throw new CancellationException();
+        }
+        result.complete(next.handle(request));
+      } catch (Throwable ex) {
+        result.completeExceptionally(ex);
+      } finally {
+        thread = null;
+        // Interrupted calls are recorded too, as a lower bound, so slow upstreams still count
+        long now = System.nanoTime();
+        filter.latencies.record(now - startNanos, now);
+      }
+    }
+
+    /**
+     * Interrupts the call if it is still running, waits for it to end and cleans up after it.
+     */
+    private void abandon() {
+      // A call that already ended has a real outcome; one that gets cut short has none
+      boolean finished = result.isDone();
+      abandoned = true;
+      Thread running = thread;
+      if (running != null) {
+        running.interrupt();
+      }
+
+      // Waits even if the request thread is interrupted, the cleanup needs the request's servlet objects
+      ServerResponse response = null;
+      Throwable error = null;
+      try {
+        response = result.join();
+      } catch (CompletionException ex) {
+        error = ex.getCause();
+      } catch (CancellationException ex) {
+        error = ex;
+      }
+      filter.wasted.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+      if (response != null) {
+        lease.release(response.statusCode().value(), null);
+        try {
+          DiscardingResponse.close(response, servletRequest, servletResponse);
+        } catch (Exception ex) {
+          log.trace("Closed abandoned response of route {}: {}", filter.routeId, ex.toString());
+        }
+      } else if (!finished) {
+        lease.cancel();
+      } else {
+        lease.release(0, error);
+      }
+    }
+  }
+
+  private static boolean isHedgeable(ServerRequest request) {
+    HttpMethod method = request.method();
+    return (HttpMethod.GET.equals(method) || HttpMethod.HEAD.equals(method))
+        && request.servletRequest().getContentLengthLong() <= 0
+        && request.servletRequest().getHeader(HttpHeaders.TRANSFER_ENCODING) == null;
+  }
+
+  private static HttpServletResponse currentResponse() {
+    return RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes
+        ? attributes.getResponse()
+        : null;
+  }
+
+  private static ServerResponse await(CompletableFuture<ServerResponse> result) throws Exception {
+    try {
+      return result.get();
+    } catch (ExecutionException ex) {
+      throw unwrapFailure(ex);
+    }
+  }
+
+  private static Exception unwrapFailure(ExecutionException ex) {
+    Throwable cause = ex.getCause();
+    if (cause instanceof Exception exception) {
+      return exception;
+    }
+    if (cause instanceof Error error) {
+      throw error;
+    }
+    return ex;
+  }
+}
@@ -0,0 +1,125 @@
+package io.github.dumidev.belanova.gateway.gateway.resilience;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram over a sliding window of two periods.
+ * <p>
+ * Buckets are log-linear over microseconds, four per power of two, so any
+ * percentile is reported at most 25% above the real value. Recording is one
+ * atomic increment; the current period is replaced once it is
+ * {@code periodMillis} old, and percentiles cover it plus the previous one.
+ * A percentile is computed at most once per 100 ms tick.
+ */
+final class LatencyHistogram {
+
+  private static final int SUB_BUCKETS = 4;
+  private static final int BUCKETS = 128;
+  private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private final long periodNanos;
+  private volatile Period current;
+  private volatile Period previous;
+  private volatile Percentile cached;
+
+  LatencyHistogram(long periodMillis) {
+    this.periodNanos = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+    this.current = new Period(System.nanoTime());
+  }
+
+  void record(long nanos, long now) {
+    period(now).counts.incrementAndGet(index(TimeUnit.NANOSECONDS.toMicros(nanos)));
+  }
+
+  /**
+   * @return the upper bound of the bucket holding the percentile, or {@code -1}
+   *     if the window holds fewer than {@code minSamples} samples
+   */
+  long percentileNanos(double percentile, long minSamples, long now) {
+    // Callers ask on every request, so the answer is reused for a tick
+    Percentile cached = this.cached;
+    if (cached != null && now - cached.computedAt < TICK_NANOS
+        && cached.percentile == percentile && cached.minSamples == minSamples) {
+      return cached.nanos;
+    }
+    long nanos = computePercentileNanos(percentile, minSamples, now);
+    this.cached = new Percentile(percentile, minSamples, nanos, now);
+    return nanos;
+  }
+
+  private long computePercentileNanos(double percentile, long minSamples, long now) {
+    Period latest = period(now);
+    Period older = previous;
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      total += count(latest, older, i);
+    }
+    if (total < Math.max(1, minSamples)) {
+      return -1;
+    }
+
+    // Counts only grow between the two passes, which at worst reports a slightly lower bucket
+    long rank = (long) Math.ceil(total * percentile / 100);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += count(latest, older, i);
+      if (seen >= rank) {
+        return TimeUnit.MICROSECONDS.toNanos(upperBound(i));
+      }
+    }
+    return TimeUnit.MICROSECONDS.toNanos(upperBound(BUCKETS - 1));
+  }
+
+  private static long count(Period latest, Period older, int index) {
+    return latest.counts.get(index) + (older != null ? older.counts.get(index) : 0);
+  }
+
+  private Period period(long now) {
+    Period period = current;
+    if (now - period.start < periodNanos) {
+      return period;
+    }
+    synchronized (this) {
+      period = current;
+      if (now - period.start >= periodNanos) {
+        // A period that ended long ago says nothing about the current latency
+        previous = now - period.start < 2 * periodNanos ? period : null;
+        period = new Period(now);
+        current = period;
+      }
+      return period;
+    }
+  }
+
+  static int index(long micros) {
+    if (micros < SUB_BUCKETS) {
+      return (int) Math.max(0, micros);
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(micros);
+    int sub = (int) (micros >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+    return Math.min(BUCKETS - 1, (exponent - 1) * SUB_BUCKETS + sub);
+  }
+
+  static long upperBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index + 1;
+    }
+    int exponent = index / SUB_BUCKETS + 1;
+    int sub = index % SUB_BUCKETS;
+    return (long) (SUB_BUCKETS + sub + 1) << (exponent - 2);
+  }
+
+  private static final class Period {
+
+    private final long start;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private Period(long start) {
+      this.start = start;
+    }
+  }
+
+  private record Percentile(double percentile, long minSamples, long nanos, long computedAt) {
+  }
+}
@@ -0,0 +1,78 @@
+package io.github.dumidev.belanova.gateway.gateway.resilience;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps retries at a percentage of the requests seen by retrying routes, so
+ * that retries cannot multiply the load on upstreams that are already
+ * failing.
+ * <p>
+ * Every request deposits {@code percent / 100} of a token and every retry
+ * withdraws a whole one. A floor of {@code min-retries-per-second} keeps
+ * retries possible at low traffic, and the balance is capped so a quiet
+ * period cannot be cashed in as a retry burst. Gateway nodes receive an even
+ * share of the traffic, so a per-node budget of that percentage is also the
+ * cluster-wide budget, without coordinating on every request.
+ */
+@Component
+public class RetryBudget {
+
+  // Balances are kept in thousandths of a retry.
+  private static final long TOKEN = 1000;
+
+  private final long deposit;
+  private final long refillPerSecond;
+  private final long maxBalance;
+  private final AtomicLong balance;
+  private final AtomicLong lastRefill = new AtomicLong(System.nanoTime());
+
+  public RetryBudget(@Value("${belanova.gateway.retry-budget.percent:20}") double percent,
+                     @Value("${belanova.gateway.retry-budget.min-retries-per-second:10}") int minRetriesPerSecond,
+                     @Value("${belanova.gateway.retry-budget.max-burst:100}") int maxBurst) {
+    this.deposit = Math.round(percent * TOKEN / 100);
+    this.refillPerSecond = minRetriesPerSecond * TOKEN;
+    this.maxBalance = Math.max(1, maxBurst) * TOKEN;
+    this.balance = new AtomicLong(refillPerSecond);
+  }
+
+  /**
+   * Records a request that may be retried.
+   */
+  public void deposit() {
+    // Skip the write once the balance is full, which is the steady state under normal traffic.
+    if (balance.get() < maxBalance) {
+      add(deposit);
+    }
+  }
+
+  /**
+   * @return whether a retry may be sent; if so, its token has been withdrawn
+   */
+  public boolean tryWithdraw() {
+    refill(System.nanoTime());
+    long current;
+    do {
+      current = balance.get();
+      if (current < TOKEN) {
+        return false;
+      }
+    } while (!balance.compareAndSet(current, current - TOKEN));
+    return true;
+  }
+
+  private void refill(long now) {
+    long last = lastRefill.get();
+    long elapsed = now - last;
+    if (elapsed >= TimeUnit.MILLISECONDS.toNanos(10) && lastRefill.compareAndSet(last, now)) {
+      add(refillPerSecond * elapsed / TimeUnit.SECONDS.toNanos(1));
+    }
+  }
+
+  private void add(long amount) {
+    balance.accumulateAndGet(amount, (current, delta) -> Math.min(maxBalance, current + delta));
+  }
+}
@@ -0,0 +1,162 @@
+package io.github.dumidev.belanova.gateway.gateway.resilience;
+
+import io.github.dumidev.belanova.gateway.gateway.loadbalancer.LoadBalancingInterceptor;
+import io.github.dumijdev.belanova.gateway.common.model.Service;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.server.mvc.common.MvcUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.function.HandlerFilterFunction;
+import org.springframework.web.servlet.function.HandlerFunction;
+import org.springframework.web.servlet.function.ServerRequest;
+import org.springframework.web.servlet.function.ServerResponse;
+
+/**
+ * Builds the retry filter of each route from its service's {@link RetryPolicy}.
+ * <p>
+ * The filter wraps the proxy handler only. A failed attempt, either a
+ * retryable exception or a retryable status, is retried on another upstream
+ * after the policy's backoff, as long as attempts are left and the
+ * {@link RetryBudget} allows it; otherwise the last response is returned, or
+ * the last exception rethrown, as is.
+ */
+@Slf4j
+@Component
+public class RetryFilters {
+
+  /**
+   * Request attribute holding the {@link System#nanoTime()} at which the last
+   * retry was sent, for timing the attempt that produced the response.
+   */
+  public static final String ATTEMPT_START_ATTR = RetryFilters.class.getName() + ".attemptStart";
+
+  private final RetryBudget budget;
+  private final LoadBalancingInterceptor loadBalancing;
+  private final MeterRegistry meterRegistry;
+
+  public RetryFilters(RetryBudget budget, LoadBalancingInterceptor loadBalancing, MeterRegistry meterRegistry) {
+    this.budget = budget;
+    this.loadBalancing = loadBalancing;
+    this.meterRegistry = meterRegistry;
+  }
+
+  /**
+   * @return the retry filter of the route, or {@code null} if its service does not enable retries
+   */
+  public HandlerFilterFunction<ServerResponse, ServerResponse> forRoute(String routeId, Service service) {
+    RetryPolicy policy;
+    try {
+      policy = RetryPolicy.fromMetadata(service.getMetadata());
+    } catch (IllegalArgumentException ex) {
+      log.warn("Ignoring invalid retry policy of route {}: {}", routeId, ex.getMessage());
+      return null;
+    }
+    return policy != null ? new RetryFilter(routeId, policy) : null;
+  }
+
+  private final class RetryFilter implements HandlerFilterFunction<ServerResponse, ServerResponse> {
+
+    private final String routeId;
+    private final RetryPolicy policy;
+
+    private RetryFilter(String routeId, RetryPolicy policy) {
+      this.routeId = routeId;
+      this.policy = policy;
+    }
+
+    @Override
+    public ServerResponse filter(ServerRequest request, HandlerFunction<ServerResponse> next) throws Exception {
+      HttpServletRequest servletRequest = request.servletRequest();
+      if (!policy.methods().contains(request.method().name()) || hasBody(servletRequest)) {
+        return next.handle(request);
+      }
+      budget.deposit();
+
+      for (int attempt = 1; ; attempt++) {
+        ServerResponse response;
+        try {
+          response = next.handle(request);
+        } catch (Exception ex) {
+          if (attempt >= policy.maxAttempts() || !policy.isRetryable(ex) || !prepareRetry(servletRequest, 0, ex)) {
+            throw ex;
+          }
+          backoff(attempt);
+          retarget(request, servletRequest);
+          servletRequest.setAttribute(ATTEMPT_START_ATTR, System.nanoTime());
+          continue;
+        }
+
+        int status = response.statusCode().value();
+        if (attempt >= policy.maxAttempts() || !policy.isRetryable(status)
+            || !prepareRetry(servletRequest, status, null)) {
+          return response;
+        }
+        // Only thrown away once the retry is certain, so a response that is not retried keeps its body
+        discard(servletRequest, response);
+        backoff(attempt);
+        retarget(request, servletRequest);
+        servletRequest.setAttribute(ATTEMPT_START_ATTR, System.nanoTime());
+      }
+    }
+
+    /**
+     * Takes a retry token and moves the request to another upstream.
+     *
+     * @return whether the request can be retried
+     */
+    private boolean prepareRetry(HttpServletRequest request, int status, Throwable error) {
+      if (!budget.tryWithdraw()) {
+        count("budget-exhausted");
+        return false;
+      }
+      if (!loadBalancing.reselect(request, status, error)) {
+        count("no-upstream");
+        return false;
+      }
+      count("retried");
+      return true;
+    }
+
+    private void backoff(int attempt) throws InterruptedException {
+      long backoff = policy.backoffMillis(attempt);
+      if (backoff > 0) {
+        Thread.sleep(backoff);
+      }
+    }
+
+    /**
+     * Points the request at the upstream picked for the retry. Requests built
+     * by outer filters carry a copy of the servlet request's attributes.
+     */
+    private void retarget(ServerRequest request, HttpServletRequest servletRequest) {
+      Object url = servletRequest.getAttribute(MvcUtils.GATEWAY_REQUEST_URL_ATTR);
+      if (url != null) {
+        request.attributes().put(MvcUtils.GATEWAY_REQUEST_URL_ATTR, url);
+      }
+    }
+
+    private void discard(HttpServletRequest request, ServerResponse response) {
+      if (!(RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes)
+          || attributes.getResponse() == null) {
+        return;
+      }
+      try {
+        DiscardingResponse.discard(response, request, attributes.getResponse());
+      } catch (Exception ex) {
+        log.debug("Could not drain discarded response of route {}: {}", routeId, ex.toString());
+      }
+    }
+
+    private void count(String outcome) {
+      meterRegistry.counter("belanova.gateway.retries", "route", routeId, "outcome", outcome).increment();
+    }
+  }
+
+  private static boolean hasBody(HttpServletRequest request) {
+    return request.getContentLengthLong() > 0 || request.getHeader(HttpHeaders.TRANSFER_ENCODING) != null;
+  }
+}
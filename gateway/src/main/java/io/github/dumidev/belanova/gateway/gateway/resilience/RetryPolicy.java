@@ -0,0 +1,87 @@
+package io.github.dumidev.belanova.gateway.gateway.resilience;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Retry settings of one service, read from its metadata:
+ * <ul>
+ *   <li>{@code retry.max-attempts}: total attempts including the first; retries are off below 2</li>
+ *   <li>{@code retry.statuses}: retryable response statuses, default {@code 502,503,504}</li>
+ *   <li>{@code retry.exceptions}: retryable exception classes, matched against the whole
+ *       cause chain including superclasses, default {@code java.io.IOException}</li>
+ *   <li>{@code retry.methods}: methods that may be retried, default {@code GET,HEAD,OPTIONS}</li>
+ *   <li>{@code retry.backoff-ms} and {@code retry.max-backoff-ms}: exponential backoff with
+ *       full jitter, default 25 and 1000</li>
+ * </ul>
+ * Requests with a body are never retried.
+ */
+public record RetryPolicy(int maxAttempts,
+                          Set<Integer> statuses,
+                          Set<String> exceptions,
+                          Set<String> methods,
+                          long backoffMillis,
+                          long maxBackoffMillis) {
+
+  public static final String PREFIX = "retry.";
+
+  /**
+   * @return the policy described by the metadata, or {@code null} if retries are not enabled
+   * @throws IllegalArgumentException if a value cannot be parsed
+   */
+  public static RetryPolicy fromMetadata(Map<String, String> metadata) {
+    if (metadata == null || !metadata.containsKey(PREFIX + "max-attempts")) {
+      return null;
+    }
+    int maxAttempts = Integer.parseInt(metadata.get(PREFIX + "max-attempts").trim());
+    if (maxAttempts < 2) {
+      return null;
+    }
+    return new RetryPolicy(
+        maxAttempts,
+        split(metadata.getOrDefault(PREFIX + "statuses", "502,503,504")).stream()
+            .map(Integer::valueOf).collect(Collectors.toUnmodifiableSet()),
+        split(metadata.getOrDefault(PREFIX + "exceptions", "java.io.IOException")),
+        split(metadata.getOrDefault(PREFIX + "methods", "GET,HEAD,OPTIONS")).stream()
+            .map(method -> method.toUpperCase(Locale.ROOT)).collect(Collectors.toUnmodifiableSet()),
+        Long.parseLong(metadata.getOrDefault(PREFIX + "backoff-ms", "25").trim()),
+        Long.parseLong(metadata.getOrDefault(PREFIX + "max-backoff-ms", "1000").trim()));
+  }
+
+  public boolean isRetryable(int status) {
+    return statuses.contains(status);
+  }
+
+  public boolean isRetryable(Throwable error) {
+    for (int depth = 0; error != null && depth < 10; depth++, error = error.getCause()) {
+      for (Class<?> type = error.getClass(); type != null; type = type.getSuperclass()) {
+        if (exceptions.contains(type.getName())) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the delay before retry number {@code retry} (starting at 1)
+   */
+  public long backoffMillis(int retry) {
+    if (backoffMillis <= 0) {
+      return 0;
+    }
+    long ceiling = Math.min(maxBackoffMillis, backoffMillis << Math.min(retry - 1, 20));
+    return ThreadLocalRandom.current().nextLong(ceiling + 1);
+  }
+
+  private static Set<String> split(String value) {
+    return Arrays.stream(value.split(","))
+        .map(String::trim)
+        .filter(s -> !s.isEmpty())
+        .collect(Collectors.toUnmodifiableSet());
+  }
+}
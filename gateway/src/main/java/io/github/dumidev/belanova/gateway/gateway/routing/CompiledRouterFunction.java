@@ -0,0 +1,33 @@
+package io.github.dumidev.belanova.gateway.gateway.routing;
+
+import org.springframework.web.servlet.function.HandlerFunction;
+import org.springframework.web.servlet.function.RouterFunction;
+import org.springframework.web.servlet.function.ServerRequest;
+import org.springframework.web.servlet.function.ServerResponse;
+
+import java.util.Optional;
+
+/**
+ * Resolves the candidate route through a {@link RouteTrie} and lets only that
+ * route's own {@link RouterFunction} run its predicates and gateway attributes.
+ */
+public class CompiledRouterFunction implements RouterFunction<ServerResponse> {
+
+  private final RouteTrie<RouterFunction<ServerResponse>> routes;
+
+  public CompiledRouterFunction(RouteTrie<RouterFunction<ServerResponse>> routes) {
+    this.routes = routes;
+  }
+
+  @Override
+  public Optional<HandlerFunction<ServerResponse>> route(ServerRequest request) {
+    RouterFunction<ServerResponse> candidate = routes.match(
+        request.requestPath().pathWithinApplication().value(),
+        HttpMethodMask.of(request.method().name()));
+    return candidate != null ? candidate.route(request) : Optional.empty();
+  }
+
+  public int size() {
+    return routes.size();
+  }
+}
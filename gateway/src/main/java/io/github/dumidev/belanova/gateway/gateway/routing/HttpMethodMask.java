@@ -0,0 +1,51 @@
+package io.github.dumidev.belanova.gateway.gateway.routing;
+
+import java.util.Collection;
+
+/**
+ * Bit flags for HTTP methods, so a route can test a request method with a single AND.
+ */
+public final class HttpMethodMask {
+
+  public static final int ANY = -1;
+  public static final int GET = 1;
+  public static final int HEAD = 1 << 1;
+  public static final int POST = 1 << 2;
+  public static final int PUT = 1 << 3;
+  public static final int PATCH = 1 << 4;
+  public static final int DELETE = 1 << 5;
+  public static final int OPTIONS = 1 << 6;
+  public static final int TRACE = 1 << 7;
+  public static final int OTHER = 1 << 30;
+
+  private HttpMethodMask() {
+  }
+
+  public static int of(String method) {
+    return switch (method) {
+      case "GET" -> GET;
+      case "HEAD" -> HEAD;
+      case "POST" -> POST;
+      case "PUT" -> PUT;
+      case "PATCH" -> PATCH;
+      case "DELETE" -> DELETE;
+      case "OPTIONS" -> OPTIONS;
+      case "TRACE" -> TRACE;
+      default -> OTHER;
+    };
+  }
+
+  /**
+   * @return the mask for the given method names, or {@link #ANY} when none are given
+   */
+  public static int of(Collection<String> methods) {
+    if (methods == null || methods.isEmpty()) {
+      return ANY;
+    }
+    int mask = 0;
+    for (String method : methods) {
+      mask |= of(method.toUpperCase());
+    }
+    return mask;
+  }
+}
@@ -0,0 +1,105 @@
+package io.github.dumidev.belanova.gateway.gateway.routing;
+
+import io.github.dumidev.belanova.gateway.gateway.config.DynamicRouteLocator;
+import io.github.dumidev.belanova.gateway.gateway.service.BackendSnapshot;
+import io.github.dumidev.belanova.gateway.gateway.service.BackendSnapshotChangedEvent;
+import io.github.dumidev.belanova.gateway.gateway.service.CacheService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recompiles the routing index and the router whenever the backend snapshot changes.
+ * <p>
+ * Bursts of changes are debounced: a refresh runs once no new change arrived for
+ * {@code refresh-debounce-ms}, but never later than {@code refresh-max-delay-ms}
+ * after the first pending change. Compilation happens on a background thread and
+ * the result is published with a single reference swap.
+ */
+@Slf4j
+@Component
+public class RouteTableRefresher {
+
+  private final CacheService cacheService;
+  private final RoutingIndex routingIndex;
+  private final DynamicRouteLocator routeLocator;
+  private final SwappableRouterFunction router;
+  private final long debounceMillis;
+  private final long maxDelayNanos;
+  private final ScheduledExecutorService scheduler;
+
+  private ScheduledFuture<?> pending;
+  private long firstPendingAt;
+  private volatile long appliedVersion = -1;
+
+  public RouteTableRefresher(CacheService cacheService,
+                             RoutingIndex routingIndex,
+                             DynamicRouteLocator routeLocator,
+                             SwappableRouterFunction router,
+                             @Value("${belanova.gateway.routes.refresh-debounce-ms:250}") long debounceMillis,
+                             @Value("${belanova.gateway.routes.refresh-max-delay-ms:2000}") long maxDelayMillis) {
+    this.cacheService = cacheService;
+    this.routingIndex = routingIndex;
+    this.routeLocator = routeLocator;
+    this.router = router;
+    this.debounceMillis = debounceMillis;
+    this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "belanova-route-refresh");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onReady() {
+    scheduler.execute(this::refresh);
+  }
+
+  @EventListener
+  public synchronized void onSnapshotChanged(BackendSnapshotChangedEvent event) {
+    long now = System.nanoTime();
+    if (pending == null) {
+      firstPendingAt = now;
+    } else if (now - firstPendingAt < maxDelayNanos) {
+      pending.cancel(false);
+    } else {
+      // Already overdue: let the scheduled refresh pick this change up.
+      return;
+    }
+    pending = scheduler.schedule(this::refresh, debounceMillis, TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  void stop() {
+    scheduler.shutdownNow();
+  }
+
+  private void refresh() {
+    synchronized (this) {
+      pending = null;
+    }
+
+    BackendSnapshot snapshot = cacheService.getSnapshot();
+    if (snapshot.version() == appliedVersion) {
+      return;
+    }
+
+    try {
+      routingIndex.rebuild(snapshot);
+      router.swap(routeLocator.compile(snapshot));
+      appliedVersion = snapshot.version();
+      log.info("Routes refreshed from snapshot v{}", snapshot.version());
+    } catch (RuntimeException ex) {
+      log.error("Failed to compile routes from snapshot v{}, keeping previous routes", snapshot.version(), ex);
+    }
+  }
+}
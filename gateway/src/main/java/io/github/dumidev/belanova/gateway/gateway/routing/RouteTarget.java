@@ -0,0 +1,24 @@
+package io.github.dumidev.belanova.gateway.gateway.routing;
+
+import io.github.dumidev.belanova.gateway.gateway.loadbalancer.LoadBalancer;
+import io.github.dumidev.belanova.gateway.gateway.loadbalancer.UpstreamPool;
+import io.github.dumijdev.belanova.gateway.common.model.Backend;
+import io.github.dumijdev.belanova.gateway.common.model.Service;
+
+/**
+ * Runtime view of a single route, resolved once per configuration change.
+ */
+public record RouteTarget(String routeId,
+                          Backend backend,
+                          Service service,
+                          UpstreamPool pool,
+                          LoadBalancer loadBalancer) {
+
+  public static String routeId(Backend backend, Service service) {
+    return backend.getId() + "-" + service.getId();
+  }
+
+  public boolean hasUpstreams() {
+    return !pool.isEmpty();
+  }
+}
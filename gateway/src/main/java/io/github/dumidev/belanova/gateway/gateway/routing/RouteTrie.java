@@ -0,0 +1,217 @@
+package io.github.dumidev.belanova.gateway.gateway.routing;
+
+import org.springframework.http.server.PathContainer;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Prefix tree over path segments used to resolve a request path to a route in
+ * time proportional to the number of segments rather than the number of routes.
+ * <p>
+ * Supports the {@link PathPattern} syntax used by {@code Service.getPath()}:
+ * literal segments, single-segment wildcards ({@code *}, {@code {var}}) and
+ * trailing catch-alls ({@code **}, {@code {*var}}). Segments mixing literals and
+ * wildcards ({@code *.json}, {@code {id:\d+}}) are indexed as single-segment
+ * wildcards and confirmed with the original pattern on a hit.
+ * <p>
+ * At each level literal children win over wildcards, which win over catch-alls;
+ * routes registered on the same node are tried in registration order.
+ * Instances are immutable once built and safe to share between threads.
+ *
+ * @param <T> the value stored for each route
+ */
+public final class RouteTrie<T> {
+
+  private static final PathPatternParser PARSER = PathPatternParser.defaultInstance;
+
+  private final Node<T> root;
+  private final int size;
+
+  private RouteTrie(Node<T> root, int size) {
+    this.root = root;
+    this.size = size;
+  }
+
+  public static <T> Builder<T> builder() {
+    return new Builder<>();
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param path       the raw request path, starting with {@code /}
+   * @param methodMask the {@link HttpMethodMask} bit of the request method
+   * @return the best matching value, or {@code null}
+   */
+  public T match(String path, int methodMask) {
+    int start = path.length() <= 1 ? -1 : 1;
+    return match(root, new Lookup(path), start, methodMask);
+  }
+
+  /**
+   * @param start index of the next segment, or -1 when the path is fully consumed
+   */
+  private T match(Node<T> node, Lookup lookup, int start, int methodMask) {
+    if (start < 0) {
+      T value = select(node.terminal, lookup, methodMask);
+      return value != null ? value : select(node.catchAll, lookup, methodMask);
+    }
+
+    String path = lookup.path;
+    int slash = path.indexOf('/', start);
+    int end = slash < 0 ? path.length() : slash;
+    int next = slash < 0 ? -1 : slash + 1;
+
+    if (node.literals != null) {
+      Node<T> child = node.literals.get(path.substring(start, end));
+      if (child != null) {
+        T value = match(child, lookup, next, methodMask);
+        if (value != null) return value;
+      }
+    }
+    if (node.wildcard != null && end > start) {
+      T value = match(node.wildcard, lookup, next, methodMask);
+      if (value != null) return value;
+    }
+    return select(node.catchAll, lookup, methodMask);
+  }
+
+  private T select(List<Entry<T>> entries, Lookup lookup, int methodMask) {
+    if (entries == null) {
+      return null;
+    }
+    for (int i = 0; i < entries.size(); i++) {
+      Entry<T> entry = entries.get(i);
+      if ((entry.methods & methodMask) != 0
+          && (entry.pattern == null || entry.pattern.matches(lookup.parsed()))) {
+        return entry.value;
+      }
+    }
+    return null;
+  }
+
+  private record Entry<T>(T value, int methods, PathPattern pattern) {
+  }
+
+  /**
+   * The path of one lookup, parsed at most once however many pattern entries it is checked against.
+   */
+  private static final class Lookup {
+    private final String path;
+    private PathContainer parsed;
+
+    private Lookup(String path) {
+      this.path = path;
+    }
+
+    private PathContainer parsed() {
+      if (parsed == null) {
+        parsed = PathContainer.parsePath(path);
+      }
+      return parsed;
+    }
+  }
+
+  private static final class Node<T> {
+    private Map<String, Node<T>> literals;
+    private Node<T> wildcard;
+    private List<Entry<T>> terminal;
+    private List<Entry<T>> catchAll;
+
+    private void freeze() {
+      if (literals != null) {
+        literals.values().forEach(Node::freeze);
+        literals = Map.copyOf(literals);
+      }
+      if (wildcard != null) {
+        wildcard.freeze();
+      }
+      terminal = terminal != null ? List.copyOf(terminal) : null;
+      catchAll = catchAll != null ? List.copyOf(catchAll) : null;
+    }
+  }
+
+  public static final class Builder<T> {
+
+    private final Node<T> root = new Node<>();
+    private int size;
+
+    private Builder() {
+    }
+
+    /**
+     * @param pattern    a {@link PathPattern} string such as {@code /users/{id}/**}
+     * @param methodMask the accepted methods, or {@link HttpMethodMask#ANY}
+     */
+    public Builder<T> add(String pattern, int methodMask, T value) {
+      PathPattern parsed = PARSER.parse(pattern);
+      String[] segments = segments(pattern);
+      Node<T> node = root;
+      boolean exact = true;
+
+      for (int i = 0; i < segments.length; i++) {
+        String segment = segments[i];
+        boolean last = i == segments.length - 1;
+
+        if (last && isCatchAll(segment)) {
+          node.catchAll = append(node.catchAll, new Entry<>(value, methodMask, exact ? null : parsed));
+          size++;
+          return this;
+        }
+
+        if (isLiteral(segment)) {
+          if (node.literals == null) node.literals = new HashMap<>();
+          node = node.literals.computeIfAbsent(segment, s -> new Node<>());
+        } else {
+          exact &= isWildcard(segment);
+          if (node.wildcard == null) node.wildcard = new Node<>();
+          node = node.wildcard;
+        }
+      }
+
+      node.terminal = append(node.terminal, new Entry<>(value, methodMask, exact ? null : parsed));
+      size++;
+      return this;
+    }
+
+    public RouteTrie<T> build() {
+      root.freeze();
+      return new RouteTrie<>(root, size);
+    }
+
+    private static String[] segments(String pattern) {
+      if (pattern.isEmpty() || pattern.equals("/")) {
+        return new String[0];
+      }
+      String path = pattern.charAt(0) == '/' ? pattern.substring(1) : pattern;
+      return path.split("/", -1);
+    }
+
+    private static boolean isCatchAll(String segment) {
+      return segment.equals("**") || (segment.startsWith("{*") && segment.endsWith("}"));
+    }
+
+    private static boolean isWildcard(String segment) {
+      return segment.equals("*")
+          || (segment.startsWith("{") && segment.endsWith("}") && segment.indexOf(':') < 0
+          && segment.indexOf('{', 1) < 0);
+    }
+
+    private static boolean isLiteral(String segment) {
+      return segment.indexOf('*') < 0 && segment.indexOf('?') < 0 && segment.indexOf('{') < 0;
+    }
+
+    private static <T> List<Entry<T>> append(List<Entry<T>> entries, Entry<T> entry) {
+      List<Entry<T>> list = entries != null ? entries : new ArrayList<>();
+      list.add(entry);
+      return list;
+    }
+  }
+}
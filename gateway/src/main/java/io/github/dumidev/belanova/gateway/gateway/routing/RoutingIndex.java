@@ -0,0 +1,131 @@
+package io.github.dumidev.belanova.gateway.gateway.routing;
+
+import io.github.dumidev.belanova.gateway.gateway.health.UpstreamHealthChangedEvent;
+import io.github.dumidev.belanova.gateway.gateway.health.UpstreamHealthStore;
+import io.github.dumidev.belanova.gateway.gateway.loadbalancer.LoadBalancer;
+import io.github.dumidev.belanova.gateway.gateway.loadbalancer.LoadBalancerRegistry;
+import io.github.dumidev.belanova.gateway.gateway.loadbalancer.UpstreamPool;
+import io.github.dumidev.belanova.gateway.gateway.loadbalancer.UpstreamStatsRegistry;
+import io.github.dumidev.belanova.gateway.gateway.service.BackendSnapshot;
+import io.github.dumidev.belanova.gateway.gateway.service.CacheService;
+import io.github.dumijdev.belanova.gateway.common.model.Backend;
+import io.github.dumijdev.belanova.gateway.common.model.Service;
+import io.github.dumijdev.belanova.gateway.common.model.Upstream;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps gateway route ids to their {@link RouteTarget}.
+ * <p>
+ * The index is rebuilt off the request path by {@link RouteTableRefresher}
+ * whenever a new backend snapshot is published and swapped in with a single
+ * volatile write, so a lookup is one hash probe on an immutable map. Health
+ * changes only recompute the healthy arrays of the pools that contain the
+ * upstream.
+ */
+@Slf4j
+@Component
+public class RoutingIndex {
+
+  private final CacheService cacheService;
+  private final LoadBalancerRegistry loadBalancers;
+  private final UpstreamStatsRegistry statsRegistry;
+  private final UpstreamHealthStore healthStore;
+
+  private volatile Map<String, RouteTarget> routes = Map.of();
+  private volatile Map<String, List<UpstreamPool>> poolsByUpstream = Map.of();
+  private volatile List<UpstreamPool> pools = List.of();
+  private long version = -1;
+
+  public RoutingIndex(CacheService cacheService,
+                      LoadBalancerRegistry loadBalancers,
+                      UpstreamStatsRegistry statsRegistry,
+                      UpstreamHealthStore healthStore) {
+    this.cacheService = cacheService;
+    this.loadBalancers = loadBalancers;
+    this.statsRegistry = statsRegistry;
+    this.healthStore = healthStore;
+  }
+
+  @PostConstruct
+  void init() {
+    rebuild(cacheService.getSnapshot());
+  }
+
+  public RouteTarget lookup(String routeId) {
+    return routes.get(routeId);
+  }
+
+  /**
+   * @return the pools that contain the upstream, usually just the one of its backend
+   */
+  public List<UpstreamPool> pools(String upstreamId) {
+    return poolsByUpstream.getOrDefault(upstreamId, List.of());
+  }
+
+  /**
+   * @return every upstream pool of the current index
+   */
+  public Collection<UpstreamPool> pools() {
+    return pools;
+  }
+
+  public synchronized void rebuild(BackendSnapshot snapshot) {
+    if (snapshot.version() < version) {
+      return;
+    }
+
+    Map<String, RouteTarget> next = new HashMap<>();
+    Set<String> backendIds = new HashSet<>();
+    Set<String> upstreamIds = new HashSet<>();
+    List<UpstreamPool> allPools = new ArrayList<>();
+    Map<String, List<UpstreamPool>> pools = new HashMap<>();
+    for (Backend backend : snapshot.backends()) {
+      if (!backend.isEnabled() || backend.getServices() == null) continue;
+
+      UpstreamPool pool = UpstreamPool.of(backend.getId(), backend.getUpstreams(), statsRegistry);
+      pool.applyHealth(healthStore::status);
+      allPools.add(pool);
+      LoadBalancer loadBalancer = loadBalancers.resolve(backend);
+      backendIds.add(backend.getId());
+      if (backend.getUpstreams() != null) {
+        for (Upstream upstream : backend.getUpstreams()) {
+          upstreamIds.add(upstream.getId());
+          pools.computeIfAbsent(upstream.getId(), id -> new ArrayList<>()).add(pool);
+        }
+      }
+
+      for (Service service : backend.getServices()) {
+        if (!service.isEnabled()) continue;
+
+        String routeId = RouteTarget.routeId(backend, service);
+        next.put(routeId, new RouteTarget(routeId, backend, service, pool, loadBalancer));
+      }
+    }
+
+    routes = Map.copyOf(next);
+    poolsByUpstream = Map.copyOf(pools);
+    this.pools = List.copyOf(allPools);
+    statsRegistry.retainAll(upstreamIds);
+    loadBalancers.retainAll(backendIds);
+    version = snapshot.version();
+    log.debug("Routing index rebuilt from snapshot v{} ({} routes)", version, next.size());
+  }
+
+  @EventListener
+  public synchronized void onHealthChanged(UpstreamHealthChangedEvent event) {
+    for (UpstreamPool pool : pools(event.upstreamId())) {
+      pool.updateHealth(event.upstreamId(), event.status());
+    }
+  }
+}
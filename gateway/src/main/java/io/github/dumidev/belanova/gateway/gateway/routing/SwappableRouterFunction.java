@@ -0,0 +1,33 @@
+package io.github.dumidev.belanova.gateway.gateway.routing;
+
+import org.springframework.web.servlet.function.HandlerFunction;
+import org.springframework.web.servlet.function.RouterFunction;
+import org.springframework.web.servlet.function.ServerRequest;
+import org.springframework.web.servlet.function.ServerResponse;
+
+import java.util.Optional;
+
+/**
+ * {@link RouterFunction} that delegates to a compiled route table which can be
+ * replaced at runtime. Requests already routed keep the handler they resolved;
+ * new requests see the new table as soon as {@link #swap} returns.
+ */
+public class SwappableRouterFunction implements RouterFunction<ServerResponse> {
+
+  public static final RouterFunction<ServerResponse> NO_ROUTES = request -> Optional.empty();
+
+  private volatile RouterFunction<ServerResponse> delegate;
+
+  public SwappableRouterFunction(RouterFunction<ServerResponse> initial) {
+    this.delegate = initial;
+  }
+
+  @Override
+  public Optional<HandlerFunction<ServerResponse>> route(ServerRequest request) {
+    return delegate.route(request);
+  }
+
+  public void swap(RouterFunction<ServerResponse> next) {
+    this.delegate = next;
+  }
+}
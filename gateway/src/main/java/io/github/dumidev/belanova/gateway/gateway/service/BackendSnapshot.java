@@ -0,0 +1,30 @@
+package io.github.dumidev.belanova.gateway.gateway.service;
+
+import io.github.dumijdev.belanova.gateway.common.model.Backend;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable, versioned view of every backend known to the gateway.
+ * A new instance is published whenever the backend cache changes; readers
+ * never see a partially applied update.
+ */
+public record BackendSnapshot(long version,
+                              long createdAtNanos,
+                              Map<String, Backend> backendsById,
+                              List<Backend> backends) {
+
+  public static final BackendSnapshot EMPTY = of(0, Map.of());
+
+  public static BackendSnapshot of(long version, Map<String, Backend> backendsById) {
+    Map<String, Backend> sorted = Collections.unmodifiableMap(new TreeMap<>(backendsById));
+    return new BackendSnapshot(version, System.nanoTime(), sorted, List.copyOf(sorted.values()));
+  }
+
+  public Backend backend(String id) {
+    return backendsById.get(id);
+  }
+}
@@ -0,0 +1,7 @@
+package io.github.dumidev.belanova.gateway.gateway.service;
+
+/**
+ * Published after a new {@link BackendSnapshot} becomes visible through {@link CacheService}.
+ */
+public record BackendSnapshotChangedEvent(BackendSnapshot snapshot) {
+}
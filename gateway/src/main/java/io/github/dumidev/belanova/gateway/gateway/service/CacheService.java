@@ -6,4 +6,6 @@ import java.util.List;
 
 public interface CacheService {
   List<Backend> getBackends();
+
+  BackendSnapshot getSnapshot();
 }
@@ -1,28 +1,83 @@
-
 package io.github.dumidev.belanova.gateway.gateway.service.impl;
 
 import io.github.dumijdev.belanova.gateway.common.model.Backend;
+import io.github.dumidev.belanova.gateway.gateway.service.BackendSnapshot;
+import io.github.dumidev.belanova.gateway.gateway.service.BackendSnapshotChangedEvent;
 import io.github.dumidev.belanova.gateway.gateway.service.CacheService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.ignite.Ignite;
 import org.apache.ignite.IgniteCache;
+import org.apache.ignite.cache.query.ContinuousQuery;
+import org.apache.ignite.cache.query.QueryCursor;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import javax.cache.Cache;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
+/**
+ * Reads backends straight from Ignite on every call. Only meant for debugging.
+ * <p>
+ * Routing still needs a {@link BackendSnapshot}: it is rebuilt with a full
+ * scan of the cache whenever a continuous query reports a change, and
+ * published like in snapshot mode. Changes arriving during a scan are folded
+ * into one more scan.
+ */
+@Slf4j
 @Service
+@ConditionalOnProperty(name = "belanova.gateway.cache.mode", havingValue = "direct")
 public class IgniteCacheService implements CacheService {
 
     private final Ignite ignite;
     private final String backendCacheName;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ExecutorService refreshExecutor;
+    private final AtomicBoolean refreshPending = new AtomicBoolean();
+
+    private volatile BackendSnapshot snapshot = BackendSnapshot.EMPTY;
+    private QueryCursor<Cache.Entry<String, Backend>> continuousQuery;
 
     public IgniteCacheService(Ignite ignite,
-                              @Value("${belanova.gateway.cache.ignite.backend-cache-name:backends}") String backendCacheName) {
+                              @Value("${belanova.gateway.cache.ignite.backend-cache-name:backends}") String backendCacheName,
+                              ApplicationEventPublisher eventPublisher) {
         this.ignite = ignite;
         this.backendCacheName = backendCacheName;
+        this.eventPublisher = eventPublisher;
+        this.refreshExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "belanova-config-direct");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    void start() {
+        IgniteCache<String, Backend> cache = ignite.getOrCreateCache(backendCacheName);
+
+        ContinuousQuery<String, Backend> query = new ContinuousQuery<>();
+        query.setIncludeExpired(true);
+        query.setLocalListener(events -> scheduleRefresh());
+        continuousQuery = cache.query(query);
+
+        refresh();
+    }
+
+    @PreDestroy
+    void stop() {
+        if (continuousQuery != null) {
+            continuousQuery.close();
+        }
+        refreshExecutor.shutdownNow();
     }
 
     @Override
@@ -32,4 +87,30 @@ public class IgniteCacheService implements CacheService {
                 .map(Cache.Entry::getValue)
                 .collect(Collectors.toList());
     }
+
+    @Override
+    public BackendSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    private void scheduleRefresh() {
+        if (refreshPending.compareAndSet(false, true)) {
+            refreshExecutor.execute(() -> {
+                refreshPending.set(false);
+                refresh();
+            });
+        }
+    }
+
+    private void refresh() {
+        try {
+            BackendSnapshot next = BackendSnapshot.of(snapshot.version() + 1, getBackends().stream()
+                    .collect(Collectors.toMap(Backend::getId, Function.identity())));
+            snapshot = next;
+            log.debug("Reloaded backend snapshot v{} ({} backends)", next.version(), next.backends().size());
+            eventPublisher.publishEvent(new BackendSnapshotChangedEvent(next));
+        } catch (RuntimeException ex) {
+            log.error("Failed to reload the backend snapshot", ex);
+        }
+    }
 }
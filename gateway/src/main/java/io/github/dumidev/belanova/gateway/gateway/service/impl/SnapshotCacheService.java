@@ -0,0 +1,187 @@
+package io.github.dumidev.belanova.gateway.gateway.service.impl;
+
+import io.github.dumidev.belanova.gateway.gateway.service.BackendSnapshot;
+import io.github.dumidev.belanova.gateway.gateway.service.BackendSnapshotChangedEvent;
+import io.github.dumidev.belanova.gateway.gateway.service.CacheService;
+import io.github.dumijdev.belanova.gateway.common.model.Backend;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ignite.Ignite;
+import org.apache.ignite.IgniteCache;
+import org.apache.ignite.cache.query.ContinuousQuery;
+import org.apache.ignite.cache.query.QueryCursor;
+import org.apache.ignite.cache.query.ScanQuery;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import javax.cache.Cache;
+import javax.cache.event.CacheEntryEvent;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a local, immutable {@link BackendSnapshot} of the backend cache.
+ * <p>
+ * The snapshot is loaded once through the initial query of an Ignite
+ * {@link ContinuousQuery} and then patched with the query's update events, so
+ * {@link #getBackends()} is a single volatile read and never touches the cluster.
+ * Events are applied on a dedicated thread to keep Ignite's notification threads free;
+ * those that arrive before the initial scan has finished are held back and applied on
+ * top of its result.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "belanova.gateway.cache.mode", havingValue = "snapshot", matchIfMissing = true)
+public class SnapshotCacheService implements CacheService {
+
+  private final Ignite ignite;
+  private final String backendCacheName;
+  private final ApplicationEventPublisher eventPublisher;
+  private final ExecutorService updateExecutor;
+  private final Timer updateLag;
+  private final Counter fullLoads;
+
+  private final Object pendingLock = new Object();
+  private List<Batch> pending = new ArrayList<>();
+
+  private volatile BackendSnapshot snapshot = BackendSnapshot.EMPTY;
+  private QueryCursor<Cache.Entry<String, Backend>> continuousQuery;
+
+  public SnapshotCacheService(Ignite ignite,
+                              @Value("${belanova.gateway.cache.ignite.backend-cache-name:backends}") String backendCacheName,
+                              ApplicationEventPublisher eventPublisher,
+                              MeterRegistry meterRegistry) {
+    this.ignite = ignite;
+    this.backendCacheName = backendCacheName;
+    this.eventPublisher = eventPublisher;
+    this.updateExecutor = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "belanova-config-snapshot");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    Gauge.builder("belanova.gateway.config.snapshot.version", this, s -> s.snapshot.version())
+        .description("Version of the local backend snapshot")
+        .register(meterRegistry);
+    TimeGauge.builder("belanova.gateway.config.snapshot.staleness", this, TimeUnit.NANOSECONDS,
+            s -> System.nanoTime() - s.snapshot.createdAtNanos())
+        .description("Time since the local backend snapshot was last replaced")
+        .register(meterRegistry);
+    this.updateLag = Timer.builder("belanova.gateway.config.snapshot.update.lag")
+        .description("Time from receiving a cache event to publishing the patched snapshot")
+        .register(meterRegistry);
+    this.fullLoads = Counter.builder("belanova.gateway.config.snapshot.full.loads")
+        .description("Full scans of the backend cache; should only grow at startup")
+        .register(meterRegistry);
+  }
+
+  @PostConstruct
+  void start() throws InterruptedException, ExecutionException {
+    IgniteCache<String, Backend> cache = ignite.getOrCreateCache(backendCacheName);
+
+    ContinuousQuery<String, Backend> query = new ContinuousQuery<>();
+    query.setInitialQuery(new ScanQuery<>());
+    query.setIncludeExpired(true);
+    query.setLocalListener(events -> {
+      long receivedAt = System.nanoTime();
+      List<CacheEntryEvent<? extends String, ? extends Backend>> batch = new ArrayList<>();
+      events.forEach(batch::add);
+      synchronized (pendingLock) {
+        if (pending != null) {
+          pending.add(new Batch(batch, receivedAt));
+          return;
+        }
+      }
+      updateExecutor.execute(() -> apply(batch, receivedAt));
+    });
+
+    continuousQuery = cache.query(query);
+
+    // Events are buffered until the scan is done, so none of them is applied to the empty snapshot.
+    updateExecutor.submit(this::loadInitial).get();
+    log.info("Backend snapshot initialised with {} backends", snapshot.backends().size());
+  }
+
+  @PreDestroy
+  void stop() {
+    if (continuousQuery != null) {
+      continuousQuery.close();
+    }
+    updateExecutor.shutdownNow();
+  }
+
+  @Override
+  public List<Backend> getBackends() {
+    return snapshot.backends();
+  }
+
+  @Override
+  public BackendSnapshot getSnapshot() {
+    return snapshot;
+  }
+
+  private void loadInitial() {
+    Map<String, Backend> backends = new HashMap<>();
+    for (Cache.Entry<String, Backend> entry : continuousQuery) {
+      backends.put(entry.getKey(), entry.getValue());
+    }
+    fullLoads.increment();
+
+    // Anything handed to the executor after this point runs after the load, so ordering holds.
+    List<Batch> buffered;
+    synchronized (pendingLock) {
+      buffered = pending;
+      pending = null;
+    }
+    for (Batch batch : buffered) {
+      patch(backends, batch.events());
+    }
+    publish(backends);
+    buffered.forEach(batch -> updateLag.record(System.nanoTime() - batch.receivedAt(), TimeUnit.NANOSECONDS));
+  }
+
+  private void apply(List<CacheEntryEvent<? extends String, ? extends Backend>> events, long receivedAt) {
+    try {
+      Map<String, Backend> backends = new HashMap<>(snapshot.backendsById());
+      patch(backends, events);
+      publish(backends);
+      updateLag.record(System.nanoTime() - receivedAt, TimeUnit.NANOSECONDS);
+    } catch (RuntimeException ex) {
+      log.error("Failed to apply {} backend cache events", events.size(), ex);
+    }
+  }
+
+  private static void patch(Map<String, Backend> backends,
+                            List<CacheEntryEvent<? extends String, ? extends Backend>> events) {
+    for (CacheEntryEvent<? extends String, ? extends Backend> event : events) {
+      switch (event.getEventType()) {
+        case REMOVED, EXPIRED -> backends.remove(event.getKey());
+        default -> backends.put(event.getKey(), event.getValue());
+      }
+    }
+  }
+
+  private void publish(Map<String, Backend> backends) {
+    BackendSnapshot next = BackendSnapshot.of(snapshot.version() + 1, backends);
+    snapshot = next;
+    log.debug("Published backend snapshot v{} ({} backends)", next.version(), next.backends().size());
+    eventPublisher.publishEvent(new BackendSnapshotChangedEvent(next));
+  }
+
+  private record Batch(List<CacheEntryEvent<? extends String, ? extends Backend>> events, long receivedAt) {
+  }
+}
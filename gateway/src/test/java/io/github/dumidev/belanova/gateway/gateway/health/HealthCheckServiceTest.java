@@ -0,0 +1,118 @@
+package io.github.dumidev.belanova.gateway.gateway.health;
+
+import com.sun.net.httpserver.HttpServer;
+import io.github.dumijdev.belanova.gateway.common.model.Backend;
+import io.github.dumijdev.belanova.gateway.common.model.HealthCheckConfig;
+import io.github.dumijdev.belanova.gateway.common.model.Upstream;
+import io.github.dumijdev.belanova.gateway.common.model.UpstreamHealthStatus;
+import io.github.dumidev.belanova.gateway.gateway.service.CacheService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class HealthCheckServiceTest {
+
+  private HttpServer server;
+  private HealthCheckService healthChecks;
+  private volatile int healthStatus = 200;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+    server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    server.createContext("/health", exchange -> {
+      exchange.getResponseHeaders().add("X-Ready", "yes");
+      exchange.sendResponseHeaders(healthStatus, -1);
+      exchange.close();
+    });
+    server.createContext("/slow", exchange -> {
+      try {
+        Thread.sleep(3_000);
+      } catch (InterruptedException ignored) {
+        Thread.currentThread().interrupt();
+      }
+      exchange.sendResponseHeaders(200, -1);
+      exchange.close();
+    });
+    server.start();
+
+    healthChecks = new HealthCheckService(mock(CacheService.class), mock(UpstreamHealthStore.class),
+        10_000, 2_000, 1, 1, 0.1);
+  }
+
+  @AfterEach
+  void tearDown() {
+    healthChecks.stop();
+    server.stop(0);
+  }
+
+  @Test
+  void sweepTakesAboutOneTimeout() throws Exception {
+    Backend backend = backend("/slow", 1, 1, 1, null, 200);
+
+    long start = System.nanoTime();
+    healthChecks.check(backend).get(10, TimeUnit.SECONDS);
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    assertTrue(elapsedMillis < 2_500, "sweep took " + elapsedMillis + "ms");
+    for (Upstream upstream : backend.getUpstreams()) {
+      assertEquals(UpstreamHealthStatus.UNHEALTHY, healthChecks.status(upstream.getId()));
+    }
+  }
+
+  @Test
+  void appliesRiseAndFallThresholds() throws Exception {
+    Backend backend = backend("/health", 2, 2, 2, Map.of("X-Ready", "yes"), 1);
+    String upstreamId = backend.getUpstreams().get(0).getId();
+
+    healthStatus = 503;
+    healthChecks.check(backend).get(5, TimeUnit.SECONDS);
+    assertEquals(UpstreamHealthStatus.HEALTHY, healthChecks.status(upstreamId));
+    healthChecks.check(backend).get(5, TimeUnit.SECONDS);
+    assertEquals(UpstreamHealthStatus.UNHEALTHY, healthChecks.status(upstreamId));
+
+    healthStatus = 200;
+    healthChecks.check(backend).get(5, TimeUnit.SECONDS);
+    assertEquals(UpstreamHealthStatus.UNHEALTHY, healthChecks.status(upstreamId));
+    healthChecks.check(backend).get(5, TimeUnit.SECONDS);
+    assertEquals(UpstreamHealthStatus.HEALTHY, healthChecks.status(upstreamId));
+  }
+
+  @Test
+  void failsWhenAnExpectedHeaderIsMissing() throws Exception {
+    Backend backend = backend("/health", 1, 1, 1, Map.of("X-Ready", "always"), 1);
+
+    healthChecks.check(backend).get(5, TimeUnit.SECONDS);
+
+    assertEquals(UpstreamHealthStatus.UNHEALTHY, healthChecks.status(backend.getUpstreams().get(0).getId()));
+  }
+
+  private Backend backend(String path, int timeoutSeconds, int healthyThreshold, int unhealthyThreshold,
+                          Map<String, String> expectedHeaders, int upstreamCount) {
+    Backend backend = new Backend();
+    backend.setId("b1");
+    backend.setEnabled(true);
+    backend.setHealthCheck(new HealthCheckConfig(path, 10, timeoutSeconds, healthyThreshold, unhealthyThreshold,
+        expectedHeaders, null));
+
+    List<Upstream> upstreams = new ArrayList<>();
+    for (int i = 0; i < upstreamCount; i++) {
+      upstreams.add(new Upstream("u" + i, backend, "127.0.0.1", server.getAddress().getPort(), 1, true,
+          UpstreamHealthStatus.HEALTHY));
+    }
+    backend.setUpstreams(upstreams);
+    return backend;
+  }
+}
@@ -0,0 +1,36 @@
+package io.github.dumidev.belanova.gateway.gateway.health;
+
+import io.github.dumijdev.belanova.gateway.common.model.UpstreamHealth;
+import io.github.dumijdev.belanova.gateway.common.model.UpstreamHealthStatus;
+import org.junit.jupiter.api.Test;
+
+import javax.cache.processor.MutableEntry;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UpstreamHealthStoreTest {
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void writesOnlyOnTransitions() {
+    MutableEntry<String, UpstreamHealth> entry = mock(MutableEntry.class);
+    when(entry.getValue()).thenReturn(new UpstreamHealth(UpstreamHealthStatus.HEALTHY, 3, 0, 12, 1L));
+
+    var stillHealthy = new UpstreamHealthStore.TransitionProcessor(UpstreamHealthStatus.HEALTHY, 2, 0, 10);
+    assertFalse(stillHealthy.process(entry));
+    verify(entry, never()).setValue(any());
+
+    var failed = new UpstreamHealthStore.TransitionProcessor(UpstreamHealthStatus.UNHEALTHY, 0, 2, 2000);
+    assertTrue(failed.process(entry));
+    verify(entry).setValue(argThat(health -> health.getStatus() == UpstreamHealthStatus.UNHEALTHY
+        && health.getConsecutiveFailures() == 2
+        && health.getLastLatencyMillis() == 2000));
+  }
+}
@@ -0,0 +1,166 @@
+package io.github.dumidev.belanova.gateway.gateway.loadbalancer;
+
+import io.github.dumijdev.belanova.gateway.common.model.Upstream;
+import io.github.dumijdev.belanova.gateway.common.model.UpstreamHealthStatus;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CircuitBreakerTest {
+
+  private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final CircuitBreaker.Config CONFIG = new CircuitBreaker.Config(50, 4, 10_000, 10, 100, 2);
+
+  @Test
+  void opensOnceTheFailureRateIsReached() {
+    CircuitBreaker breaker = new CircuitBreaker(CONFIG);
+    long now = System.nanoTime();
+
+    breaker.onResult(true, now);
+    breaker.onResult(false, now);
+    breaker.onResult(true, now);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+
+    breaker.onResult(false, now);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    assertEquals(CircuitBreaker.Permission.DENIED, breaker.tryAcquirePermission(now + 50 * MS));
+  }
+
+  @Test
+  void forgetsFailuresOutsideTheWindow() {
+    CircuitBreaker breaker = new CircuitBreaker(CONFIG);
+    long now = System.nanoTime();
+
+    for (int i = 0; i < 3; i++) breaker.onResult(false, now);
+    breaker.onResult(false, now + 11_000 * MS);
+
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+  }
+
+  @Test
+  void closesAfterSuccessfulTrialCalls() {
+    CircuitBreaker breaker = open(System.nanoTime());
+    long later = System.nanoTime() + 200 * MS;
+
+    assertEquals(CircuitBreaker.Permission.TRIAL, breaker.tryAcquirePermission(later));
+    assertEquals(CircuitBreaker.Permission.TRIAL, breaker.tryAcquirePermission(later));
+    assertEquals(CircuitBreaker.Permission.DENIED, breaker.tryAcquirePermission(later));
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+
+    breaker.onTrialResult(true, later);
+    breaker.onTrialResult(true, later);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    assertEquals(1, breaker.openings());
+    assertEquals(1, breaker.closings());
+  }
+
+  @Test
+  void reopensWhenATrialCallFails() {
+    CircuitBreaker breaker = open(System.nanoTime());
+    long later = System.nanoTime() + 200 * MS;
+
+    assertEquals(CircuitBreaker.Permission.TRIAL, breaker.tryAcquirePermission(later));
+    breaker.onTrialResult(false, later);
+
+    assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    assertEquals(2, breaker.openings());
+  }
+
+  @Test
+  void startsEachHalfOpenPhaseWithFreshPermits() {
+    CircuitBreaker breaker = open(System.nanoTime());
+    long later = System.nanoTime() + 200 * MS;
+
+    assertEquals(CircuitBreaker.Permission.TRIAL, breaker.tryAcquirePermission(later));
+    assertEquals(CircuitBreaker.Permission.TRIAL, breaker.tryAcquirePermission(later));
+    breaker.onTrialResult(true, later);
+    breaker.onTrialResult(false, later);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+
+    long again = later + 200 * MS;
+    assertEquals(CircuitBreaker.Permission.TRIAL, breaker.tryAcquirePermission(again));
+    assertEquals(CircuitBreaker.Permission.TRIAL, breaker.tryAcquirePermission(again));
+    assertEquals(CircuitBreaker.Permission.DENIED, breaker.tryAcquirePermission(again));
+
+    breaker.onTrialResult(true, again);
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+    breaker.onTrialResult(true, again);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+  }
+
+  @Test
+  void countsOnlyCallsThatTookATrialPermit() {
+    CircuitBreaker breaker = open(System.nanoTime());
+    long later = System.nanoTime() + 200 * MS;
+
+    // Results of calls let through before the circuit opened are not trials
+    breaker.onResult(true, later);
+    assertEquals(CircuitBreaker.Permission.TRIAL, breaker.tryAcquirePermission(later));
+    breaker.onResult(true, later);
+    breaker.onResult(true, later);
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+
+    breaker.onTrialResult(true, later);
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+  }
+
+  @Test
+  void cancelledLeasesDoNotAddTrialCalls() {
+    UpstreamStatsRegistry registry = new UpstreamStatsRegistry(10_000, CONFIG, null);
+    UpstreamPool pool = UpstreamPool.of("backend", List.of(
+        new Upstream("u1", null, "10.0.0.1", 8080, 1, true, UpstreamHealthStatus.HEALTHY)), registry);
+    UpstreamTarget target = pool.all()[0];
+    CircuitBreaker breaker = target.circuitBreaker();
+    long now = System.nanoTime();
+    for (int i = 0; i < 4; i++) breaker.onResult(false, now);
+    long later = now + 200 * MS;
+
+    assertEquals(CircuitBreaker.Permission.TRIAL, breaker.tryAcquirePermission(later));
+    // Leases of calls started while closed, e.g. answered from the cache or stopped by a plugin
+    for (int i = 0; i < 5; i++) {
+      new UpstreamLease(pool, target, false, UpstreamResultListener.NONE).cancel();
+    }
+
+    assertEquals(CircuitBreaker.Permission.TRIAL, breaker.tryAcquirePermission(later));
+    assertEquals(CircuitBreaker.Permission.DENIED, breaker.tryAcquirePermission(later));
+
+    new UpstreamLease(pool, target, true, UpstreamResultListener.NONE).cancel();
+    assertEquals(CircuitBreaker.Permission.TRIAL, breaker.tryAcquirePermission(later));
+    assertEquals(CircuitBreaker.Permission.DENIED, breaker.tryAcquirePermission(later));
+  }
+
+  @Test
+  void loadBalancersSkipOpenCircuits() {
+    UpstreamPool pool = UpstreamPool.of("backend", List.of(
+        new Upstream("u1", null, "10.0.0.1", 8080, 1, true, UpstreamHealthStatus.HEALTHY),
+        new Upstream("u2", null, "10.0.0.2", 8080, 1, true, UpstreamHealthStatus.HEALTHY)),
+        new UpstreamStatsRegistry(10_000));
+    long now = System.nanoTime();
+    for (int i = 0; i < 20; i++) {
+      pool.all()[0].circuitBreaker().onResult(false, now);
+    }
+
+    RoundRobinLoadBalancer loadBalancer = new RoundRobinLoadBalancer();
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    for (int i = 0; i < 10; i++) {
+      assertEquals("u2", loadBalancer.select(pool, request).id());
+    }
+
+    for (int i = 0; i < 20; i++) {
+      pool.all()[1].circuitBreaker().onResult(false, now);
+    }
+    assertNull(loadBalancer.select(pool, request));
+  }
+
+  private static CircuitBreaker open(long now) {
+    CircuitBreaker breaker = new CircuitBreaker(CONFIG);
+    for (int i = 0; i < 4; i++) breaker.onResult(false, now);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    return breaker;
+  }
+}
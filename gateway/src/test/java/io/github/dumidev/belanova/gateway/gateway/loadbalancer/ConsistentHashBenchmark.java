@@ -0,0 +1,81 @@
+package io.github.dumidev.belanova.gateway.gateway.loadbalancer;
+
+import io.github.dumijdev.belanova.gateway.common.model.Upstream;
+import io.github.dumijdev.belanova.gateway.common.model.UpstreamHealthStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup cost of the Maglev table per request, and the cost of rebuilding it
+ * on a membership change.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConsistentHashBenchmark {
+
+  @Param({"8", "64", "512"})
+  private int upstreams;
+
+  private ConsistentHashLoadBalancer loadBalancer;
+  private UpstreamPool pool;
+  private String[] members;
+  private MockHttpServletRequest[] requests;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    loadBalancer = new ConsistentHashLoadBalancer("ip", "");
+    List<Upstream> list = new ArrayList<>();
+    members = new String[upstreams];
+    for (int i = 0; i < upstreams; i++) {
+      list.add(new Upstream("u" + i, null, "10.0." + (i / 250) + "." + (i % 250), 8080, 1, true,
+          UpstreamHealthStatus.HEALTHY));
+      members[i] = "u" + i;
+    }
+    pool = UpstreamPool.of("backend", list, new UpstreamStatsRegistry(10_000));
+
+    requests = new MockHttpServletRequest[256];
+    for (int i = 0; i < requests.length; i++) {
+      requests[i] = new MockHttpServletRequest("GET", "/");
+      requests[i].addHeader("X-Forwarded-For", "192.168.7." + i);
+    }
+  }
+
+  @Benchmark
+  public UpstreamTarget lookup() {
+    return loadBalancer.select(pool, requests[next++ & (requests.length - 1)]);
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public MaglevTable rebuild() {
+    return MaglevTable.build(members);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(ConsistentHashBenchmark.class.getSimpleName())
+        .build()).run();
+  }
+}
@@ -0,0 +1,76 @@
+package io.github.dumidev.belanova.gateway.gateway.loadbalancer;
+
+import io.github.dumijdev.belanova.gateway.common.model.Upstream;
+import io.github.dumijdev.belanova.gateway.common.model.UpstreamHealthStatus;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConsistentHashLoadBalancerTest {
+
+  private static final int UPSTREAMS = 10;
+  private static final int KEYS = 20_000;
+
+  @Test
+  void remapsAboutOneNthOfKeysWhenAnUpstreamLeaves() {
+    ConsistentHashLoadBalancer loadBalancer = new ConsistentHashLoadBalancer("ip", "");
+    List<Upstream> upstreams = new ArrayList<>();
+    for (int i = 0; i < UPSTREAMS; i++) {
+      upstreams.add(new Upstream("u" + i, null, "10.0.0." + i, 8080, 1, true, UpstreamHealthStatus.HEALTHY));
+    }
+    UpstreamPool pool = UpstreamPool.of("backend", upstreams, new UpstreamStatsRegistry(10_000));
+
+    String[] before = new String[KEYS];
+    for (int k = 0; k < KEYS; k++) {
+      before[k] = loadBalancer.select(pool, request(k)).id();
+    }
+
+    upstreams.get(3).setStatus(UpstreamHealthStatus.UNHEALTHY);
+    pool.refresh();
+
+    int moved = 0;
+    int movedFromOthers = 0;
+    for (int k = 0; k < KEYS; k++) {
+      String after = loadBalancer.select(pool, request(k)).id();
+      assertNotEquals("u3", after);
+      if (!after.equals(before[k])) {
+        moved++;
+        if (!before[k].equals("u3")) movedFromOthers++;
+      }
+    }
+
+    double movedShare = (double) moved / KEYS;
+    assertTrue(movedShare >= 0.5 / UPSTREAMS && movedShare <= 1.5 / UPSTREAMS, "moved share " + movedShare);
+    assertTrue((double) movedFromOthers / KEYS < 0.05, "keys moved between surviving upstreams " + movedFromOthers);
+  }
+
+  @Test
+  void hashesOnConfiguredHeaderAndFallsBackToClientIp() {
+    ConsistentHashLoadBalancer loadBalancer = new ConsistentHashLoadBalancer("header", "X-Tenant");
+    List<Upstream> upstreams = new ArrayList<>();
+    for (int i = 0; i < UPSTREAMS; i++) {
+      upstreams.add(new Upstream("u" + i, null, "10.0.0." + i, 8080, 1, true, UpstreamHealthStatus.HEALTHY));
+    }
+    UpstreamPool pool = UpstreamPool.of("backend", upstreams, new UpstreamStatsRegistry(10_000));
+
+    MockHttpServletRequest first = request(1);
+    first.addHeader("X-Tenant", "acme");
+    MockHttpServletRequest second = request(2);
+    second.addHeader("X-Tenant", "acme");
+    assertEquals(loadBalancer.select(pool, first).id(), loadBalancer.select(pool, second).id());
+
+    assertEquals(loadBalancer.select(pool, request(7)).id(), loadBalancer.select(pool, request(7)).id());
+  }
+
+  private static MockHttpServletRequest request(int key) {
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+    request.addHeader("X-Forwarded-For", "10.1." + (key / 250) + "." + (key % 250) + ", 172.16.0.1");
+    return request;
+  }
+}
@@ -0,0 +1,82 @@
+package io.github.dumidev.belanova.gateway.gateway.loadbalancer;
+
+import io.github.dumijdev.belanova.gateway.common.model.Upstream;
+import io.github.dumijdev.belanova.gateway.common.model.UpstreamHealthStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures selection cost per strategy. Run through {@link #main} to get the
+ * GC profiler's {@code gc.alloc.rate.norm}, which should stay at ~0 B/op.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoadBalancerBenchmark {
+
+  @Param({"roundRobin", "random", "consistentHash", "leastConnections", "leastConnectionsP2c", "weightedRoundRobin", "peakEwma"})
+  private String strategy;
+
+  @Param({"8"})
+  private int upstreams;
+
+  private LoadBalancer loadBalancer;
+  private UpstreamPool pool;
+  private MockHttpServletRequest request;
+
+  @Setup
+  public void setUp() {
+    loadBalancer = switch (strategy) {
+      case "roundRobin" -> new RoundRobinLoadBalancer();
+      case "random" -> new RandomLoadBalancer();
+      case "consistentHash" -> new ConsistentHashLoadBalancer("ip", "");
+      case "leastConnections" -> new LeastConnectionsLoadBalancer(false);
+      case "leastConnectionsP2c" -> new LeastConnectionsLoadBalancer(true);
+      case "weightedRoundRobin" -> new WeightedRoundRobinLoadBalancer();
+      case "peakEwma" -> new PeakEwmaLoadBalancer();
+      default -> throw new IllegalArgumentException(strategy);
+    };
+
+    List<Upstream> list = new ArrayList<>();
+    for (int i = 0; i < upstreams; i++) {
+      list.add(new Upstream("u" + i, null, "10.0.0." + i, 8080, 1 + i % 3, true, UpstreamHealthStatus.HEALTHY));
+    }
+    pool = UpstreamPool.of("backend", list, new UpstreamStatsRegistry(10_000));
+
+    request = new MockHttpServletRequest("GET", "/orders/42");
+    request.setRemoteAddr("192.168.1.20");
+  }
+
+  @Benchmark
+  public UpstreamTarget select() {
+    return loadBalancer.select(pool, request);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(LoadBalancerBenchmark.class.getSimpleName())
+        .addProfiler(GCProfiler.class)
+        .build()).run();
+  }
+}
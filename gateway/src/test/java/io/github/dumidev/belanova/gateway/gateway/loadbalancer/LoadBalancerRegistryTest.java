@@ -0,0 +1,72 @@
+package io.github.dumidev.belanova.gateway.gateway.loadbalancer;
+
+import io.github.dumijdev.belanova.gateway.common.model.Backend;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LoadBalancerRegistryTest {
+
+  private final LoadBalancerRegistry registry = new LoadBalancerRegistry("roundRobin");
+
+  @Test
+  void usesTheDefaultStrategyWhenTheBackendHasNone() {
+    assertInstanceOf(RoundRobinLoadBalancer.class, registry.resolve(backend("b1", null)));
+  }
+
+  @Test
+  void givesEachBackendItsOwnInstance() {
+    LoadBalancer first = registry.resolve(backend("b1", "weighted-round-robin"));
+    LoadBalancer second = registry.resolve(backend("b2", "WEIGHTED_ROUND_ROBIN"));
+
+    assertInstanceOf(WeightedRoundRobinLoadBalancer.class, first);
+    assertNotSame(first, second);
+  }
+
+  @Test
+  void keepsTheInstanceUntilTheStrategyChanges() {
+    Backend backend = backend("b1", "consistentHash");
+    backend.setLoadBalancingParameters(Map.of("key", "header", "key-name", "X-Tenant"));
+    LoadBalancer loadBalancer = registry.resolve(backend);
+
+    assertSame(loadBalancer, registry.resolve(backend));
+
+    backend.setLoadBalancing("peakEwma");
+    assertInstanceOf(PeakEwmaLoadBalancer.class, registry.resolve(backend));
+  }
+
+  @Test
+  void fallsBackToTheDefaultForInvalidConfiguration() {
+    assertInstanceOf(RoundRobinLoadBalancer.class, registry.resolve(backend("b1", "fastest")));
+
+    Backend backend = backend("b2", "consistentHash");
+    backend.setLoadBalancingParameters(Map.of("key", "header"));
+    assertInstanceOf(RoundRobinLoadBalancer.class, registry.resolve(backend));
+  }
+
+  @Test
+  void forgetsRemovedBackends() {
+    LoadBalancer loadBalancer = registry.resolve(backend("b1", "random"));
+    registry.retainAll(Set.of());
+
+    assertNotSame(loadBalancer, registry.resolve(backend("b1", "random")));
+  }
+
+  @Test
+  void rejectsAnUnknownDefaultStrategy() {
+    assertThrows(IllegalArgumentException.class, () -> new LoadBalancerRegistry("fastest"));
+  }
+
+  private static Backend backend(String id, String strategy) {
+    Backend backend = new Backend();
+    backend.setId(id);
+    backend.setLoadBalancing(strategy);
+    return backend;
+  }
+}
@@ -0,0 +1,131 @@
+package io.github.dumidev.belanova.gateway.gateway.loadbalancer;
+
+import io.github.dumidev.belanova.gateway.gateway.routing.RouteTarget;
+import io.github.dumidev.belanova.gateway.gateway.routing.RoutingIndex;
+import io.github.dumijdev.belanova.gateway.common.model.Backend;
+import io.github.dumijdev.belanova.gateway.common.model.Service;
+import io.github.dumijdev.belanova.gateway.common.model.Upstream;
+import io.github.dumijdev.belanova.gateway.common.model.UpstreamHealthStatus;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.cloud.gateway.server.mvc.common.MvcUtils;
+import org.springframework.cloud.gateway.server.mvc.config.GatewayMvcProperties;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoadBalancingInterceptorTest {
+
+  @Test
+  void tracksInFlightRequestsUntilCompletion() throws Exception {
+    Upstream upstream = new Upstream("u1", null, "10.0.0.1", 8080, 1, true, UpstreamHealthStatus.HEALTHY);
+    UpstreamPool pool = UpstreamPool.of("b1", List.of(upstream), new UpstreamStatsRegistry(10_000));
+    Backend backend = new Backend();
+    backend.setId("b1");
+    Service service = new Service();
+    service.setId("s1");
+
+    RoutingIndex routingIndex = Mockito.mock(RoutingIndex.class);
+    Mockito.when(routingIndex.lookup("b1-s1"))
+        .thenReturn(new RouteTarget("b1-s1", backend, service, pool, new RoundRobinLoadBalancer()));
+    LoadBalancingInterceptor interceptor = new LoadBalancingInterceptor(routingIndex, new GatewayMvcProperties(),
+        Mockito.mock(OutlierDetector.class));
+
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/orders");
+    request.setAttribute(MvcUtils.GATEWAY_ROUTE_ID_ATTR, "b1-s1");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    assertTrue(interceptor.preHandle(request, response, null));
+    assertEquals(URI.create("http://10.0.0.1:8080"), request.getAttribute(MvcUtils.GATEWAY_REQUEST_URL_ATTR));
+    assertEquals(1, pool.all()[0].stats().inFlight());
+
+    // A second dispatch of the same request must not open another lease
+    assertTrue(interceptor.preHandle(request, response, null));
+    assertEquals(1, pool.all()[0].stats().inFlight());
+
+    interceptor.afterCompletion(request, response, null, null);
+    interceptor.afterCompletion(request, response, null, null);
+    assertEquals(0, pool.all()[0].stats().inFlight());
+  }
+
+  @Test
+  void handsBackTrialPermitsOfDiscardedRetryPicks() throws Exception {
+    // Circuits open on the first failure and go half-open right away, with 3 trial calls
+    UpstreamStatsRegistry registry = new UpstreamStatsRegistry(10_000,
+        new CircuitBreaker.Config(50, 1, 10_000, 10, 0, 3), null);
+    UpstreamPool pool = UpstreamPool.of("b1", List.of(
+        new Upstream("u1", null, "10.0.0.1", 8080, 1, true, UpstreamHealthStatus.HEALTHY),
+        new Upstream("u2", null, "10.0.0.2", 8080, 1, true, UpstreamHealthStatus.HEALTHY)), registry);
+    UpstreamTarget first = pool.all()[0];
+    first.circuitBreaker().onResult(false, System.nanoTime());
+
+    // The balancer keeps picking the failed upstream before moving on
+    Deque<UpstreamTarget> picks = new ArrayDeque<>(List.of(first, first, first, pool.all()[1]));
+    LoadBalancer loadBalancer = (p, r) -> {
+      UpstreamTarget target = picks.poll();
+      return target.circuitBreaker().isCallPermitted(System.nanoTime()) ? target : null;
+    };
+    Backend backend = new Backend();
+    backend.setId("b1");
+    Service service = new Service();
+    service.setId("s1");
+    RoutingIndex routingIndex = Mockito.mock(RoutingIndex.class);
+    Mockito.when(routingIndex.lookup("b1-s1"))
+        .thenReturn(new RouteTarget("b1-s1", backend, service, pool, loadBalancer));
+    LoadBalancingInterceptor interceptor = new LoadBalancingInterceptor(routingIndex, new GatewayMvcProperties(),
+        Mockito.mock(OutlierDetector.class));
+
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/orders");
+    request.setAttribute(MvcUtils.GATEWAY_ROUTE_ID_ATTR, "b1-s1");
+    assertTrue(interceptor.preHandle(request, new MockHttpServletResponse(), null));
+    assertEquals(CircuitBreaker.State.HALF_OPEN, first.circuitBreaker().state());
+
+    // A 429 is not a failure, so the circuit stays half-open with one trial call done
+    assertTrue(interceptor.reselect(request, 429, null));
+    assertEquals(URI.create("http://10.0.0.2:8080"), request.getAttribute(MvcUtils.GATEWAY_REQUEST_URL_ATTR));
+
+    long now = System.nanoTime();
+    assertEquals(CircuitBreaker.Permission.TRIAL, first.circuitBreaker().tryAcquirePermission(now));
+    assertEquals(CircuitBreaker.Permission.TRIAL, first.circuitBreaker().tryAcquirePermission(now));
+    assertEquals(CircuitBreaker.Permission.DENIED, first.circuitBreaker().tryAcquirePermission(now));
+  }
+
+  @Test
+  void handsBackTheTrialPermitWhenThereIsNothingToHedgeOn() throws Exception {
+    UpstreamStatsRegistry registry = new UpstreamStatsRegistry(10_000,
+        new CircuitBreaker.Config(50, 1, 10_000, 10, 0, 3), null);
+    UpstreamPool pool = UpstreamPool.of("b1", List.of(
+        new Upstream("u1", null, "10.0.0.1", 8080, 1, true, UpstreamHealthStatus.HEALTHY)), registry);
+    UpstreamTarget only = pool.all()[0];
+    only.circuitBreaker().onResult(false, System.nanoTime());
+
+    Backend backend = new Backend();
+    backend.setId("b1");
+    Service service = new Service();
+    service.setId("s1");
+    RoutingIndex routingIndex = Mockito.mock(RoutingIndex.class);
+    Mockito.when(routingIndex.lookup("b1-s1"))
+        .thenReturn(new RouteTarget("b1-s1", backend, service, pool, new RoundRobinLoadBalancer()));
+    LoadBalancingInterceptor interceptor = new LoadBalancingInterceptor(routingIndex, new GatewayMvcProperties(),
+        Mockito.mock(OutlierDetector.class));
+
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/orders");
+    request.setAttribute(MvcUtils.GATEWAY_ROUTE_ID_ATTR, "b1-s1");
+    assertTrue(interceptor.preHandle(request, new MockHttpServletResponse(), null));
+
+    assertNull(interceptor.hedge(request));
+
+    long now = System.nanoTime();
+    assertEquals(CircuitBreaker.Permission.TRIAL, only.circuitBreaker().tryAcquirePermission(now));
+    assertEquals(CircuitBreaker.Permission.TRIAL, only.circuitBreaker().tryAcquirePermission(now));
+    assertEquals(CircuitBreaker.Permission.DENIED, only.circuitBreaker().tryAcquirePermission(now));
+  }
+}
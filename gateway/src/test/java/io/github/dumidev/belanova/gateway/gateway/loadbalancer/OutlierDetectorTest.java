@@ -0,0 +1,162 @@
+package io.github.dumidev.belanova.gateway.gateway.loadbalancer;
+
+import io.github.dumidev.belanova.gateway.gateway.routing.RoutingIndex;
+import io.github.dumijdev.belanova.gateway.common.model.Upstream;
+import io.github.dumijdev.belanova.gateway.common.model.UpstreamHealthStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutlierDetectorTest {
+
+  private final RoutingIndex routingIndex = Mockito.mock(RoutingIndex.class);
+  private final OutlierDetector detector = new OutlierDetector(routingIndex, new SimpleMeterRegistry(),
+      5, 3, 200, 1_000, 50, 50, 0, 3.0, 100, 5);
+
+  @AfterEach
+  void tearDown() {
+    detector.stop();
+  }
+
+  @Test
+  void ejectsAfterConsecutive5xxAndRestoresLater() throws InterruptedException {
+    UpstreamPool pool = pool(4);
+    UpstreamTarget target = pool.all()[0];
+
+    for (int i = 0; i < 5; i++) {
+      detector.onResult(pool, target, 502, null, 0);
+    }
+    assertTrue(target.stats().isEjected());
+    assertEquals(3, pool.healthy().length);
+
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (pool.healthy().length < 4 && System.nanoTime() < deadline) {
+      Thread.sleep(20);
+    }
+    assertEquals(4, pool.healthy().length);
+  }
+
+  @Test
+  void aSuccessResetsTheFailureCount() {
+    UpstreamPool pool = pool(4);
+    UpstreamTarget target = pool.all()[0];
+
+    for (int i = 0; i < 4; i++) detector.onResult(pool, target, 500, null, 0);
+    detector.onResult(pool, target, 200, null, 0);
+    for (int i = 0; i < 4; i++) detector.onResult(pool, target, 500, null, 0);
+
+    assertFalse(target.stats().isEjected());
+  }
+
+  @Test
+  void ejectsOnConnectFailures() {
+    UpstreamPool pool = pool(4);
+    UpstreamTarget target = pool.all()[1];
+    RuntimeException error = new RuntimeException("I/O error", new ConnectException("Connection refused"));
+
+    for (int i = 0; i < 3; i++) {
+      detector.onResult(pool, target, 500, error, 0);
+    }
+
+    assertTrue(target.stats().isEjected());
+  }
+
+  @Test
+  void ignoresStatusesWrittenByTheGatewayItself() {
+    UpstreamPool pool = pool(4);
+    UpstreamTarget target = pool.all()[2];
+
+    for (int i = 0; i < 5; i++) {
+      new UpstreamLease(pool, target, false, detector).release(500, new IllegalStateException("local failure"));
+    }
+
+    assertFalse(target.stats().isEjected());
+  }
+
+  @Test
+  void capsTheEjectedShareOfABackend() {
+    UpstreamPool pool = pool(2);
+
+    assertTrue(detector.eject(pool, pool.all()[0], "test"));
+    assertFalse(detector.eject(pool, pool.all()[1], "test"));
+    assertEquals(1, pool.healthy().length);
+  }
+
+  @Test
+  void neverEjectsTheOnlyUpstream() {
+    UpstreamPool pool = pool(1);
+    UpstreamTarget target = pool.all()[0];
+
+    for (int i = 0; i < 10; i++) {
+      detector.onResult(pool, target, 503, null, 0);
+    }
+
+    assertFalse(target.stats().isEjected());
+    assertEquals(1, pool.healthy().length);
+  }
+
+  @Test
+  void countsUpstreamsTheHealthChecksTookOut() {
+    UpstreamPool pool = pool(4);
+    pool.updateHealth("u0", UpstreamHealthStatus.UNHEALTHY);
+    pool.updateHealth("u1", UpstreamHealthStatus.UNHEALTHY);
+
+    assertFalse(detector.eject(pool, pool.all()[2], "test"));
+    assertEquals(2, pool.healthy().length);
+  }
+
+  @Test
+  void ejectsLatencyOutliers() {
+    UpstreamPool pool = pool(4);
+    Mockito.when(routingIndex.pools()).thenReturn(List.of(pool));
+    for (int i = 0; i < 3; i++) {
+      observe(pool.all()[i], 10, 5);
+    }
+    observe(pool.all()[3], 900, 5);
+
+    detector.detectLatencyOutliers();
+
+    assertTrue(pool.all()[3].stats().isEjected());
+    assertEquals(3, pool.healthy().length);
+  }
+
+  @Test
+  void waitsForEnoughCallsBeforeJudgingLatency() {
+    UpstreamPool pool = pool(4);
+    Mockito.when(routingIndex.pools()).thenReturn(List.of(pool));
+    for (int i = 0; i < 3; i++) {
+      observe(pool.all()[i], 10, 5);
+    }
+    observe(pool.all()[3], 10, 3);
+    observe(pool.all()[3], 30_000, 1);
+
+    detector.detectLatencyOutliers();
+
+    assertFalse(pool.all()[3].stats().isEjected());
+    assertEquals(4, pool.healthy().length);
+  }
+
+  private static void observe(UpstreamTarget target, long latencyMillis, int calls) {
+    for (int i = 0; i < calls; i++) {
+      target.stats().observe(TimeUnit.MILLISECONDS.toNanos(latencyMillis), System.nanoTime());
+    }
+  }
+
+  private static UpstreamPool pool(int size) {
+    List<Upstream> upstreams = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      upstreams.add(new Upstream("u" + i, null, "10.0.0." + i, 8080, 1, true, UpstreamHealthStatus.HEALTHY));
+    }
+    return UpstreamPool.of("backend", upstreams, new UpstreamStatsRegistry(10_000));
+  }
+}
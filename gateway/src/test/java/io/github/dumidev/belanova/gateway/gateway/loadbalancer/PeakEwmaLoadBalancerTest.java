@@ -0,0 +1,60 @@
+package io.github.dumidev.belanova.gateway.gateway.loadbalancer;
+
+import io.github.dumijdev.belanova.gateway.common.model.Upstream;
+import io.github.dumijdev.belanova.gateway.common.model.UpstreamHealthStatus;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PeakEwmaLoadBalancerTest {
+
+  private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  @Test
+  void avoidsTheSlowUpstream() {
+    UpstreamPool pool = UpstreamPool.of("backend", List.of(
+        upstream("slow"), upstream("fast")), new UpstreamStatsRegistry(10_000));
+    long now = System.nanoTime();
+    pool.all()[0].stats().observe(200 * MS, now);
+    pool.all()[1].stats().observe(5 * MS, now);
+
+    PeakEwmaLoadBalancer loadBalancer = new PeakEwmaLoadBalancer();
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    for (int i = 0; i < 100; i++) {
+      assertEquals("fast", loadBalancer.select(pool, request).id());
+    }
+  }
+
+  @Test
+  void reactsToPeaksImmediatelyAndDecaysSlowly() {
+    UpstreamStats stats = new UpstreamStats(TimeUnit.SECONDS.toNanos(10), CircuitBreaker.Config.DEFAULT);
+    long now = 0;
+    for (int i = 0; i < 10; i++) {
+      stats.observe(5 * MS, now += MS);
+    }
+    stats.observe(500 * MS, now += MS);
+    assertEquals(500 * MS, stats.latencyEwma(now), MS);
+
+    stats.observe(5 * MS, now += 100 * MS);
+    assertTrue(stats.latencyEwma(now) > 400 * MS, "a single fast response must not erase the peak");
+  }
+
+  @Test
+  void penalisesUpstreamsWithoutSamplesOnceTheyHaveLoad() {
+    UpstreamStats idle = new UpstreamStats(TimeUnit.SECONDS.toNanos(10), CircuitBreaker.Config.DEFAULT);
+    UpstreamStats busy = new UpstreamStats(TimeUnit.SECONDS.toNanos(10), CircuitBreaker.Config.DEFAULT);
+    busy.acquire();
+
+    assertEquals(0, PeakEwmaLoadBalancer.cost(idle, System.nanoTime()));
+    assertTrue(PeakEwmaLoadBalancer.cost(busy, System.nanoTime()) > TimeUnit.HOURS.toNanos(1));
+  }
+
+  private static Upstream upstream(String id) {
+    return new Upstream(id, null, "10.0.0.1", 8080, 1, true, UpstreamHealthStatus.HEALTHY);
+  }
+}
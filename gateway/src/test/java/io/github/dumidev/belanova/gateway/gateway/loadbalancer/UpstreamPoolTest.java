@@ -0,0 +1,48 @@
+package io.github.dumidev.belanova.gateway.gateway.loadbalancer;
+
+import io.github.dumijdev.belanova.gateway.common.model.Upstream;
+import io.github.dumijdev.belanova.gateway.common.model.UpstreamHealthStatus;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class UpstreamPoolTest {
+
+  @Test
+  void followsHealthUpdates() {
+    UpstreamPool pool = UpstreamPool.of("backend", List.of(
+        upstream("u1", UpstreamHealthStatus.HEALTHY),
+        upstream("u2", UpstreamHealthStatus.UNKNOWN)), new UpstreamStatsRegistry(10_000));
+    assertEquals(1, pool.healthy().length);
+
+    pool.applyHealth(Map.of("u2", UpstreamHealthStatus.HEALTHY)::get);
+    assertEquals(2, pool.healthy().length);
+
+    pool.updateHealth("u1", UpstreamHealthStatus.UNHEALTHY);
+    assertEquals("u2", pool.healthy()[0].id());
+    assertEquals(1, pool.healthy().length);
+
+    // Reverts to the configured status.
+    pool.updateHealth("u1", null);
+    assertEquals(2, pool.healthy().length);
+  }
+
+  @Test
+  void keepsTheHealthyArrayWhenAvailabilityDoesNotChange() {
+    UpstreamPool pool = UpstreamPool.of("backend", List.of(
+        upstream("u1", UpstreamHealthStatus.UNHEALTHY)), new UpstreamStatsRegistry(10_000));
+    UpstreamTarget[] healthy = pool.healthy();
+
+    pool.updateHealth("u1", UpstreamHealthStatus.UNKNOWN);
+
+    assertSame(healthy, pool.healthy());
+  }
+
+  private static Upstream upstream(String id, UpstreamHealthStatus status) {
+    return new Upstream(id, null, "10.0.0.1", 8080, 1, true, status);
+  }
+}
@@ -0,0 +1,73 @@
+package io.github.dumidev.belanova.gateway.gateway.loadbalancer;
+
+import io.github.dumijdev.belanova.gateway.common.model.Upstream;
+import io.github.dumijdev.belanova.gateway.common.model.UpstreamHealthStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contention benchmark: 64 request threads selecting from the same backend.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(64)
+public class WeightedRoundRobinBenchmark {
+
+  @Param({"4", "32"})
+  private int upstreams;
+
+  private WeightedRoundRobinLoadBalancer weighted;
+  private RoundRobinLoadBalancer roundRobin;
+  private UpstreamPool pool;
+  private MockHttpServletRequest request;
+
+  @Setup
+  public void setUp() {
+    weighted = new WeightedRoundRobinLoadBalancer();
+    roundRobin = new RoundRobinLoadBalancer();
+    List<Upstream> list = new ArrayList<>();
+    for (int i = 0; i < upstreams; i++) {
+      list.add(new Upstream("u" + i, null, "10.0.0." + i, 8080, 1 + i % 5, true, UpstreamHealthStatus.HEALTHY));
+    }
+    pool = UpstreamPool.of("backend", list, new UpstreamStatsRegistry(10_000));
+    request = new MockHttpServletRequest("GET", "/");
+  }
+
+  @Benchmark
+  public UpstreamTarget smoothWeightedRoundRobin() {
+    return weighted.select(pool, request);
+  }
+
+  @Benchmark
+  public UpstreamTarget plainRoundRobin() {
+    return roundRobin.select(pool, request);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(WeightedRoundRobinBenchmark.class.getSimpleName())
+        .build()).run();
+  }
+}
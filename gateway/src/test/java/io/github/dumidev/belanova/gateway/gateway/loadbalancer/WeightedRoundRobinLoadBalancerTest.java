@@ -0,0 +1,76 @@
+package io.github.dumidev.belanova.gateway.gateway.loadbalancer;
+
+import io.github.dumijdev.belanova.gateway.common.model.Upstream;
+import io.github.dumijdev.belanova.gateway.common.model.UpstreamHealthStatus;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WeightedRoundRobinLoadBalancerTest {
+
+  @Test
+  void spreadsHeavyUpstreamLikeNginx() {
+    UpstreamPool pool = pool(5, 1, 1);
+    UpstreamTarget[] all = pool.all();
+
+    UpstreamTarget[] sequence = WeightedRoundRobinLoadBalancer.schedule(pool.healthy());
+
+    UpstreamTarget a = all[0], b = all[1], c = all[2];
+    assertArrayEquals(new UpstreamTarget[]{a, a, b, a, c, a, a}, sequence);
+  }
+
+  @Test
+  void reducesWeightsByTheirCommonDivisor() {
+    UpstreamPool pool = pool(300, 100);
+
+    assertEquals(4, WeightedRoundRobinLoadBalancer.schedule(pool.healthy()).length);
+  }
+
+  @Test
+  void keepsWeightRatiosUnderConcurrency() throws InterruptedException {
+    WeightedRoundRobinLoadBalancer loadBalancer = new WeightedRoundRobinLoadBalancer();
+    UpstreamPool pool = pool(3, 2, 1);
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    Map<String, LongAdder> picks = new ConcurrentHashMap<>();
+
+    int threads = 64;
+    int perThread = 6_000;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch done = new CountDownLatch(threads);
+    for (int t = 0; t < threads; t++) {
+      executor.execute(() -> {
+        for (int i = 0; i < perThread; i++) {
+          picks.computeIfAbsent(loadBalancer.select(pool, request).id(), k -> new LongAdder()).increment();
+        }
+        done.countDown();
+      });
+    }
+    assertTrue(done.await(30, TimeUnit.SECONDS));
+    executor.shutdown();
+
+    double total = threads * perThread;
+    assertEquals(3 / 6.0, picks.get("u0").sum() / total, 0.01);
+    assertEquals(2 / 6.0, picks.get("u1").sum() / total, 0.01);
+    assertEquals(1 / 6.0, picks.get("u2").sum() / total, 0.01);
+  }
+
+  private static UpstreamPool pool(int... weights) {
+    Upstream[] upstreams = new Upstream[weights.length];
+    for (int i = 0; i < weights.length; i++) {
+      upstreams[i] = new Upstream("u" + i, null, "10.0.0." + i, 8080, weights[i], true, UpstreamHealthStatus.HEALTHY);
+    }
+    return UpstreamPool.of("backend", List.of(upstreams), new UpstreamStatsRegistry(10_000));
+  }
+}
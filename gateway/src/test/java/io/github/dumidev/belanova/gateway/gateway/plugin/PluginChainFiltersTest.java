@@ -0,0 +1,283 @@
+package io.github.dumidev.belanova.gateway.gateway.plugin;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.dumijdev.belanova.gateway.common.model.Backend;
+import io.github.dumijdev.belanova.gateway.common.model.Service;
+import io.github.dumijdev.belanova.gateway.common.plugin.GatewayPlugin;
+import io.github.dumijdev.belanova.gateway.common.plugin.PluginContext;
+import io.github.dumijdev.belanova.gateway.common.plugin.PluginPhase;
+import io.github.dumijdev.belanova.gateway.common.plugin.PluginResult;
+import io.github.dumijdev.belanova.gateway.plugin.auth.JwtAuthenticationPlugin;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.cloud.gateway.server.mvc.common.MvcUtils;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.function.HandlerFilterFunction;
+import org.springframework.web.servlet.function.ServerRequest;
+import org.springframework.web.servlet.function.ServerResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PluginChainFiltersTest {
+
+  private final GatewayPlugin auth = plugin("auth", 10, true, PluginPhase.PRE_ROUTE);
+  private final GatewayPlugin headers = plugin("headers", 30, true, PluginPhase.PRE_UPSTREAM);
+  private final GatewayPlugin logging = plugin("logging", 50, true, PluginPhase.POST_RESPONSE, PluginPhase.ON_ERROR);
+  private final GatewayPlugin disabled = plugin("disabled", 1, false, PluginPhase.PRE_ROUTE);
+
+  @Test
+  void compilesEnabledPluginsInOrderPerPhase() {
+    GatewayPlugin audit = plugin("audit", 5, true, PluginPhase.POST_RESPONSE);
+    PluginChainFilters filters = new PluginChainFilters(List.of(logging, disabled, auth, audit, headers));
+
+    assertNotNull(filters.forRoute("r1", null, service(Map.of())));
+
+    PluginChain chain = filters.chain("r1");
+    assertArrayEquals(new GatewayPlugin[]{auth}, chain.plugins(PluginPhase.PRE_ROUTE));
+    assertArrayEquals(new GatewayPlugin[]{headers}, chain.plugins(PluginPhase.PRE_UPSTREAM));
+    assertArrayEquals(new GatewayPlugin[]{audit, logging}, chain.plugins(PluginPhase.POST_RESPONSE));
+    assertArrayEquals(new GatewayPlugin[]{logging}, chain.plugins(PluginPhase.ON_ERROR));
+  }
+
+  @Test
+  void needsNoFilterWithoutPlugins() {
+    when(auth.appliesTo(any())).thenReturn(false);
+    PluginChainFilters filters = new PluginChainFilters(List.of(auth));
+
+    assertNull(filters.forRoute("r1", null, service(Map.of())));
+    assertTrue(filters.chain("r1").isEmpty());
+  }
+
+  @Test
+  void setsUpstreamHeadersOfPreRoutePluginsOverTheClientOnes() throws Exception {
+    when(auth.onPreRoute(any())).thenAnswer(invocation -> {
+      PluginContext context = invocation.getArgument(0);
+      context.addUpstreamHeader("X-User-Id", "alice");
+      return PluginResult.CONTINUE.completed();
+    });
+    PluginChainFilters filters = new PluginChainFilters(List.of(auth, logging));
+    HandlerFilterFunction<ServerResponse, ServerResponse> filter =
+        filters.forRoute("r1", null, service(Map.of(PluginChainFilters.METADATA_KEY, "auth")));
+    assertNotNull(filter);
+
+    MockHttpServletRequest servletRequest = new MockHttpServletRequest("GET", "/orders");
+    servletRequest.addHeader("X-User-Id", "mallory");
+    PluginContext context = new PluginContext();
+    context.start("r1", Map.of(), servletRequest, new MockHttpServletResponse());
+    servletRequest.setAttribute(PluginContext.ATTRIBUTE, context);
+    assertTrue(filters.chain("r1").preRoute(context));
+
+    List<String> forwarded = new ArrayList<>();
+    filter.filter(ServerRequest.create(servletRequest, List.of()), request -> {
+      forwarded.addAll(request.headers().header("X-User-Id"));
+      return ServerResponse.ok().build();
+    });
+
+    assertEquals(List.of("alice"), forwarded);
+  }
+
+  @Test
+  void honoursTheServicePluginList() {
+    when(logging.appliesTo(any())).thenReturn(false);
+    PluginChainFilters filters = new PluginChainFilters(List.of(logging, auth));
+
+    filters.forRoute("r1", null, service(Map.of(PluginChainFilters.METADATA_KEY, "logging")));
+    filters.forRoute("r2", null, service(Map.of(PluginChainFilters.METADATA_KEY, " auth, logging ")));
+
+    assertTrue(filters.chain("r1").isEmpty());
+    assertArrayEquals(new GatewayPlugin[]{auth}, filters.chain("r2").plugins(PluginPhase.PRE_ROUTE));
+    assertTrue(filters.chain("r3").isEmpty());
+  }
+
+  @Test
+  void keepsPluginsTheRouteSettingsRequireOutsideThePluginList() {
+    when(auth.requiredBy(any())).thenReturn(true);
+    PluginChainFilters filters = new PluginChainFilters(List.of(auth, logging, headers));
+
+    filters.forRoute("r1", null, service(Map.of(PluginChainFilters.METADATA_KEY, "logging")));
+
+    assertArrayEquals(new GatewayPlugin[]{auth}, filters.chain("r1").plugins(PluginPhase.PRE_ROUTE));
+    assertEquals(0, filters.chain("r1").plugins(PluginPhase.PRE_UPSTREAM).length);
+  }
+
+  @Test
+  void recompilesOnlyWhenTheMetadataChanges() {
+    PluginChainFilters filters = new PluginChainFilters(List.of(auth, logging));
+
+    var first = filters.forRoute("r1", null, service(new HashMap<>(Map.of("a", "1"))));
+    var unchanged = filters.forRoute("r1", null, service(new HashMap<>(Map.of("a", "1"))));
+    var changed = filters.forRoute("r1", null, service(Map.of("a", "2")));
+
+    assertSame(first, unchanged);
+    assertNotSame(first, changed);
+  }
+
+  @Test
+  void forgetsTheChainsOfRemovedRoutes() {
+    PluginChainFilters filters = new PluginChainFilters(List.of(auth, logging));
+    filters.forRoute("r1", null, service(Map.of()));
+    filters.forRoute("r2", null, service(Map.of()));
+
+    filters.retainAll(Set.of("r2"));
+
+    assertTrue(filters.chain("r1").isEmpty());
+    assertFalse(filters.chain("r2").isEmpty());
+  }
+
+  @Test
+  void compilesEachPluginsConfigurationFromTheRouteMetadata() throws Exception {
+    when(auth.configure(any(), any())).thenAnswer(invocation -> {
+      Map<String, String> metadata = invocation.getArgument(1);
+      return Integer.parseInt(metadata.get("auth.level"));
+    });
+    when(auth.onPreRoute(any())).thenAnswer(invocation -> {
+      PluginContext context = invocation.getArgument(0);
+      return (context.config(Integer.class) > 1 ? PluginResult.STOP : PluginResult.CONTINUE).completed();
+    });
+    Backend backend = new Backend();
+    backend.setMetadata(Map.of("auth.level", "1", "other", "x"));
+    PluginChainFilters filters = new PluginChainFilters(List.of(auth));
+
+    filters.forRoute("r1", backend, service(Map.of()));
+    filters.forRoute("r2", backend, service(Map.of("auth.level", "2")));
+
+    assertEquals(Map.of("auth.level", "1", "other", "x"), filters.chain("r1").metadata());
+    assertEquals(1, filters.chain("r1").config(PluginPhase.PRE_ROUTE, 0));
+    assertEquals(2, filters.chain("r2").config(PluginPhase.PRE_ROUTE, 0));
+    assertTrue(filters.chain("r1").preRoute(context()));
+    assertFalse(filters.chain("r2").preRoute(context()));
+  }
+
+  @Test
+  void answersUnavailableWhenAPluginConfigurationIsInvalid() throws Exception {
+    when(auth.configure(any(), any())).thenThrow(new IllegalArgumentException("auth.level must be a number"));
+    PluginChainFilters filters = new PluginChainFilters(List.of(auth, headers));
+
+    assertNotNull(filters.forRoute("r1", null, service(Map.of("auth.level", "high"))));
+    PluginContext context = context();
+
+    assertFalse(filters.chain("r1").preRoute(context));
+    assertEquals(503, context.response().getStatus());
+    assertEquals(0, filters.chain("r1").plugins(PluginPhase.PRE_UPSTREAM).length);
+    verify(auth, never()).onPreRoute(any());
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"jwt.algorithms=HS256", "jwt.clock-skew-seconds=soon", "jwt.jwks-uri="})
+  void neverProxiesAJwtRouteWithInvalidSettings(String setting) throws Exception {
+    Map<String, String> metadata = new HashMap<>(Map.of(
+        "jwt.enabled", "true", "jwt.jwks-uri", "https://issuer.example/jwks"));
+    String[] entry = setting.split("=", 2);
+    metadata.put(entry[0], entry[1]);
+
+    try (JwtAuthenticationPlugin jwt = new JwtAuthenticationPlugin(new ObjectMapper(), 100, 60_000, 60_000, 1_000, 1_000)) {
+      PluginChainFilters filters = new PluginChainFilters(List.of(jwt));
+      filters.forRoute("r1", null, service(metadata));
+      PluginInterceptor interceptor = new PluginInterceptor(filters, 4);
+      MockHttpServletRequest request = new MockHttpServletRequest("GET", "/orders");
+      request.setAttribute(MvcUtils.GATEWAY_ROUTE_ID_ATTR, "r1");
+      MockHttpServletResponse response = new MockHttpServletResponse();
+
+      assertFalse(interceptor.preHandle(request, response, new Object()));
+      assertEquals(503, response.getStatus());
+    }
+  }
+
+  @Test
+  void stopsAtThePluginThatAnswers() throws Exception {
+    GatewayPlugin quota = plugin("quota", 20, true, PluginPhase.PRE_ROUTE);
+    when(auth.onPreRoute(any())).thenReturn(PluginResult.STOP.completed());
+    PluginChainFilters filters = new PluginChainFilters(List.of(auth, quota));
+    filters.forRoute("r1", null, service(Map.of()));
+
+    assertFalse(filters.chain("r1").preRoute(context()));
+    verify(quota, never()).onPreRoute(any());
+  }
+
+  @Test
+  void waitsForAsynchronousPlugins() throws Exception {
+    CompletableFuture<PluginResult> lookup = new CompletableFuture<>();
+    when(auth.onPreRoute(any())).thenReturn(lookup);
+    PluginChainFilters filters = new PluginChainFilters(List.of(auth));
+    filters.forRoute("r1", null, service(Map.of()));
+
+    CompletableFuture.delayedExecutor(50, TimeUnit.MILLISECONDS)
+        .execute(() -> lookup.complete(PluginResult.STOP));
+
+    assertFalse(filters.chain("r1").preRoute(context()));
+  }
+
+  @Test
+  void rethrowsTheFailureOfAnAsynchronousPlugin() {
+    when(headers.onPreUpstream(any())).thenReturn(CompletableFuture.failedFuture(new IOException("down")));
+    PluginChainFilters filters = new PluginChainFilters(List.of(headers));
+    filters.forRoute("r1", null, service(Map.of()));
+
+    assertThrows(IOException.class, () -> filters.chain("r1").preUpstream(context()));
+  }
+
+  @Test
+  void keepsNotifyingWhenAnErrorPluginFails() {
+    GatewayPlugin alerts = plugin("alerts", 60, true, PluginPhase.ON_ERROR);
+    doThrow(new IllegalStateException("broken")).when(logging).onError(any());
+    PluginChainFilters filters = new PluginChainFilters(List.of(logging, alerts));
+    filters.forRoute("r1", null, service(Map.of()));
+    PluginContext context = context();
+    context.error(new IOException("upstream"));
+
+    filters.chain("r1").onError(context);
+
+    verify(alerts).onError(context);
+    assertSame(IllegalStateException.class, context.error().getSuppressed()[0].getClass());
+  }
+
+  private static GatewayPlugin plugin(String name, int order, boolean enabled, PluginPhase... phases) {
+    GatewayPlugin plugin = mock(GatewayPlugin.class);
+    when(plugin.getName()).thenReturn(name);
+    when(plugin.getOrder()).thenReturn(order);
+    when(plugin.isEnabled()).thenReturn(enabled);
+    when(plugin.phases()).thenReturn(Set.of(phases));
+    when(plugin.appliesTo(any())).thenReturn(true);
+    when(plugin.onPreRoute(any())).thenReturn(PluginResult.CONTINUE.completed());
+    when(plugin.onPreUpstream(any())).thenReturn(PluginResult.CONTINUE.completed());
+    return plugin;
+  }
+
+  private static PluginContext context() {
+    PluginContext context = new PluginContext();
+    context.start("r1", Map.of(), new MockHttpServletRequest(), new MockHttpServletResponse());
+    return context;
+  }
+
+  private static Service service(Map<String, String> metadata) {
+    Service service = new Service();
+    service.setId("s1");
+    service.setMetadata(metadata);
+    return service;
+  }
+}
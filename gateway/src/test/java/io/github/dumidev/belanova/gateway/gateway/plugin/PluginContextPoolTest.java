@@ -0,0 +1,51 @@
+package io.github.dumidev.belanova.gateway.gateway.plugin;
+
+import io.github.dumijdev.belanova.gateway.common.plugin.PluginContext;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PluginContextPoolTest {
+
+  private static final PluginContext.Key<Integer> ATTEMPT = PluginContext.Key.of("attempt", Integer.class);
+
+  @Test
+  void reusesReleasedContextsCleared() {
+    PluginContextPool pool = new PluginContextPool(4);
+    PluginContext context = pool.acquire();
+    context.start("r1", Map.of("a", "1"), new MockHttpServletRequest(), new MockHttpServletResponse());
+    context.put(PluginContext.CONSUMER_ID, "alice");
+    context.put(ATTEMPT, 2);
+    context.addUpstreamHeader("X-User-Id", "alice");
+
+    pool.release(context);
+    PluginContext reused = pool.acquire();
+
+    assertSame(context, reused);
+    assertNull(reused.get(PluginContext.CONSUMER_ID));
+    assertNull(reused.get(ATTEMPT));
+    assertNull(reused.request());
+    assertTrue(reused.upstreamHeaders().isEmpty());
+  }
+
+  @Test
+  void dropsContextsOnceFull() {
+    PluginContextPool pool = new PluginContextPool(1);
+    PluginContext first = pool.acquire();
+    PluginContext second = pool.acquire();
+    assertNotSame(first, second);
+
+    pool.release(first);
+    pool.release(second);
+
+    assertEquals(1, pool.size());
+  }
+}
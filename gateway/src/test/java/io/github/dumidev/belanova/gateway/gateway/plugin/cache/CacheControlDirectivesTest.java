@@ -0,0 +1,35 @@
+package io.github.dumidev.belanova.gateway.gateway.plugin.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CacheControlDirectivesTest {
+
+  @Test
+  void parsesDirectivesAcrossHeaderValues() {
+    CacheControlDirectives directives = CacheControlDirectives.parse(
+        List.of("public, max-age=60", "S-MaxAge=\"120\", must-revalidate"));
+
+    assertTrue(directives.isPublic());
+    assertTrue(directives.mustRevalidate());
+    assertFalse(directives.noStore());
+    assertEquals(60, directives.maxAge());
+    assertEquals(120, directives.sMaxAge());
+  }
+
+  @Test
+  void treatsInvalidAgesAsStale() {
+    assertEquals(0, CacheControlDirectives.parse(List.of("max-age=soon")).maxAge());
+  }
+
+  @Test
+  void defaultsWhenAbsent() {
+    assertEquals(CacheControlDirectives.NONE, CacheControlDirectives.parse(null));
+    assertEquals(-1, CacheControlDirectives.parse(List.of("no-cache")).maxAge());
+  }
+}
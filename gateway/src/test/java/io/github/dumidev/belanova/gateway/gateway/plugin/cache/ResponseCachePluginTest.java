@@ -0,0 +1,198 @@
+package io.github.dumidev.belanova.gateway.gateway.plugin.cache;
+
+import io.github.dumijdev.belanova.gateway.common.model.Service;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.function.HandlerFilterFunction;
+import org.springframework.web.servlet.function.HandlerFunction;
+import org.springframework.web.servlet.function.ServerRequest;
+import org.springframework.web.servlet.function.ServerResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResponseCachePluginTest {
+
+  private static final List<HttpMessageConverter<?>> CONVERTERS = List.of(new StringHttpMessageConverter());
+
+  private final AtomicInteger upstreamCalls = new AtomicInteger();
+
+  @Test
+  void servesRepeatedReadsFromTheCache() throws Exception {
+    HandlerFilterFunction<ServerResponse, ServerResponse> filter = filter(plugin(100));
+    HandlerFunction<ServerResponse> upstream = upstream("max-age=60", null);
+
+    MockHttpServletResponse first = exchange(filter, upstream, get("/catalog"));
+    MockHttpServletResponse second = exchange(filter, upstream, get("/catalog"));
+
+    assertEquals(1, upstreamCalls.get());
+    assertEquals("catalog", second.getContentAsString());
+    assertEquals("HIT", second.getHeader("X-Cache"));
+    assertNull(first.getHeader("X-Cache"));
+  }
+
+  @Test
+  void answersMatchingConditionalRequestsWithNotModified() throws Exception {
+    HandlerFilterFunction<ServerResponse, ServerResponse> filter = filter(plugin(100));
+    HandlerFunction<ServerResponse> upstream = upstream("max-age=60", null);
+    exchange(filter, upstream, get("/catalog"));
+
+    MockHttpServletRequest conditional = get("/catalog");
+    conditional.addHeader(HttpHeaders.IF_NONE_MATCH, "W/\"v1\"");
+    MockHttpServletResponse response = exchange(filter, upstream, conditional);
+
+    assertEquals(304, response.getStatus());
+    assertEquals("\"v1\"", response.getHeader(HttpHeaders.ETAG));
+  }
+
+  @Test
+  void storesVariantsPerVaryHeader() throws Exception {
+    HandlerFilterFunction<ServerResponse, ServerResponse> filter = filter(plugin(100));
+    HandlerFunction<ServerResponse> upstream = upstream("max-age=60", HttpHeaders.ACCEPT_LANGUAGE);
+
+    exchange(filter, upstream, get("/catalog", "pt"));
+    exchange(filter, upstream, get("/catalog", "en"));
+    MockHttpServletResponse cached = exchange(filter, upstream, get("/catalog", "pt"));
+
+    assertEquals(2, upstreamCalls.get());
+    assertEquals("HIT", cached.getHeader("X-Cache"));
+  }
+
+  @Test
+  void neverStoresNoStoreResponses() throws Exception {
+    HandlerFilterFunction<ServerResponse, ServerResponse> filter = filter(plugin(100));
+    HandlerFunction<ServerResponse> upstream = upstream("no-store", null);
+
+    exchange(filter, upstream, get("/catalog"));
+    exchange(filter, upstream, get("/catalog"));
+
+    assertEquals(2, upstreamCalls.get());
+  }
+
+  @Test
+  void staysWithinTheEntryBound() throws Exception {
+    ResponseCachePlugin plugin = plugin(10);
+    HandlerFilterFunction<ServerResponse, ServerResponse> filter = filter(plugin);
+    HandlerFunction<ServerResponse> upstream = upstream("max-age=60", null);
+
+    for (int i = 0; i < 100; i++) {
+      exchange(filter, upstream, get("/catalog/" + i));
+    }
+
+    assertTrue(plugin.estimatedSize() <= 10, "cache holds " + plugin.estimatedSize() + " entries");
+  }
+
+  @Test
+  void coalescesConcurrentMisses() throws Exception {
+    HandlerFilterFunction<ServerResponse, ServerResponse> filter = filter(plugin(100));
+    CountDownLatch release = new CountDownLatch(1);
+    HandlerFunction<ServerResponse> cached = upstream("max-age=60", null);
+    HandlerFunction<ServerResponse> slow = request -> {
+      release.await();
+      return cached.handle(request);
+    };
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<MockHttpServletResponse>> responses = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        responses.add(executor.submit(() -> exchange(filter, slow, get("/catalog"))));
+      }
+      Thread.sleep(200);
+      release.countDown();
+
+      for (Future<MockHttpServletResponse> response : responses) {
+        assertEquals("catalog", response.get(5, TimeUnit.SECONDS).getContentAsString());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(1, upstreamCalls.get());
+  }
+
+  @Test
+  void refreshesAgainWhenARefreshedBodyIsTooLargeToStore() throws Exception {
+    ResponseCachePlugin plugin = new ResponseCachePlugin(new SimpleMeterRegistry(), true, 3600, 100, 409_600, 16, 75,
+        5_000);
+    HandlerFilterFunction<ServerResponse, ServerResponse> filter = filter(plugin);
+    HandlerFunction<ServerResponse> upstream = request -> ServerResponse.ok()
+        .header(HttpHeaders.CACHE_CONTROL, "max-age=2")
+        .header(HttpHeaders.ETAG, "\"v1\"")
+        .body(upstreamCalls.incrementAndGet() == 1 ? "catalog" : "catalog".repeat(10));
+
+    exchange(filter, upstream, get("/catalog"));
+    // Past the refresh-ahead point, 75% of the time to live, but still fresh
+    Thread.sleep(1_600);
+    exchange(filter, upstream, get("/catalog"));
+    exchange(filter, upstream, get("/catalog"));
+
+    assertEquals(3, upstreamCalls.get());
+  }
+
+  @Test
+  void onlyCachesServicesThatOptIn() {
+    Service service = new Service();
+    service.setMetadata(Map.of());
+
+    assertNull(plugin(100).forRoute("b1-s1", service));
+  }
+
+  private ResponseCachePlugin plugin(int maxEntries) {
+    return new ResponseCachePlugin(new SimpleMeterRegistry(), true, 3600, maxEntries, maxEntries * 4096L, 65536, 75,
+        5_000);
+  }
+
+  private static HandlerFilterFunction<ServerResponse, ServerResponse> filter(ResponseCachePlugin plugin) {
+    Service service = new Service();
+    service.setMetadata(Map.of(ResponseCachePlugin.METADATA_KEY, "true"));
+    return plugin.forRoute("b1-s1", service);
+  }
+
+  private HandlerFunction<ServerResponse> upstream(String cacheControl, String vary) {
+    return request -> {
+      upstreamCalls.incrementAndGet();
+      ServerResponse.BodyBuilder response = ServerResponse.ok()
+          .header(HttpHeaders.CACHE_CONTROL, cacheControl)
+          .header(HttpHeaders.ETAG, "\"v1\"");
+      if (vary != null) {
+        response.header(HttpHeaders.VARY, vary);
+      }
+      return response.body("catalog");
+    };
+  }
+
+  private static MockHttpServletRequest get(String path) {
+    return new MockHttpServletRequest("GET", path);
+  }
+
+  private static MockHttpServletRequest get(String path, String language) {
+    MockHttpServletRequest request = get(path);
+    request.addHeader(HttpHeaders.ACCEPT_LANGUAGE, language);
+    return request;
+  }
+
+  private static MockHttpServletResponse exchange(HandlerFilterFunction<ServerResponse, ServerResponse> filter,
+                                                  HandlerFunction<ServerResponse> upstream,
+                                                  MockHttpServletRequest servletRequest) throws Exception {
+    ServerResponse response = filter.filter(ServerRequest.create(servletRequest, CONVERTERS), upstream);
+    MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+    response.writeTo(servletRequest, servletResponse, () -> CONVERTERS);
+    return servletResponse;
+  }
+}
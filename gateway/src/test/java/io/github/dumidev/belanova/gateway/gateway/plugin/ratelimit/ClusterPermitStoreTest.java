@@ -0,0 +1,37 @@
+package io.github.dumidev.belanova.gateway.gateway.plugin.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import javax.cache.processor.MutableEntry;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ClusterPermitStoreTest {
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void grantsWhatFitsInTheBucket() {
+    MutableEntry<String, Long> entry = mock(MutableEntry.class);
+    when(entry.getValue()).thenReturn(1_070L);
+
+    var lease = new ClusterPermitStore.LeaseProcessor(1_000, 10, 100, 5);
+    assertArrayEquals(new long[] {3, 1_100}, lease.process(entry));
+    verify(entry).setValue(1_100L);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void leavesAnEmptyBucketAlone() {
+    MutableEntry<String, Long> entry = mock(MutableEntry.class);
+    when(entry.getValue()).thenReturn(1_095L);
+
+    var lease = new ClusterPermitStore.LeaseProcessor(1_000, 10, 100, 5);
+    assertArrayEquals(new long[] {0, 1_095}, lease.process(entry));
+    verify(entry, never()).setValue(anyLong());
+  }
+}
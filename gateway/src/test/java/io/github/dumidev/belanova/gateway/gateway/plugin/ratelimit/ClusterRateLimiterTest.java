@@ -0,0 +1,119 @@
+package io.github.dumidev.belanova.gateway.gateway.plugin.ratelimit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.cache.processor.MutableEntry;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ClusterRateLimiterTest {
+
+  // 10 permits a minute, so no permit is refilled while a test runs
+  private static final RateLimitPolicy POLICY =
+      new RateLimitPolicy(10, 60_000, 10, RateLimitPolicy.KeyType.IP, "X-API-Key");
+
+  private final Map<String, Long> cluster = new ConcurrentHashMap<>();
+  private final Counter overflows = new SimpleMeterRegistry().counter("overflow");
+  private ClusterPermitStore store;
+
+  @BeforeEach
+  void setUp() {
+    store = mock(ClusterPermitStore.class);
+    when(store.isAvailable()).thenReturn(true);
+    when(store.batchSize(any())).thenReturn(4L);
+    when(store.leaseTimeoutNanos()).thenReturn(1_000_000_000L);
+    when(store.lease(anyString(), anyLong(), anyLong(), anyLong(), anyLong())).thenAnswer(invocation -> {
+      var processor = new ClusterPermitStore.LeaseProcessor(invocation.getArgument(1), invocation.getArgument(2),
+          invocation.getArgument(3), invocation.getArgument(4));
+      return CompletableFuture.completedFuture(processor.process(entry(invocation.getArgument(0))));
+    });
+  }
+
+  @Test
+  void spendsLeasedPermitsLocally() {
+    ClusterRateLimiter limiter = new ClusterRateLimiter("route", POLICY, 100, store, overflows);
+
+    limiter.tryAcquire("a", 0);
+    limiter.tryAcquire("a", 0);
+
+    verify(store, times(1)).lease(anyString(), anyLong(), anyLong(), anyLong(), anyLong());
+
+    limiter.tryAcquire("a", 0);
+
+    verify(store, times(2)).lease(anyString(), anyLong(), anyLong(), anyLong(), anyLong());
+  }
+
+  @Test
+  void sharesTheLimitBetweenNodes() {
+    ClusterRateLimiter first = new ClusterRateLimiter("route", POLICY, 100, store, overflows);
+    ClusterRateLimiter second = new ClusterRateLimiter("route", POLICY, 100, store, overflows);
+
+    int allowed = 0;
+    for (int i = 0; i < 20; i++) {
+      if (first.tryAcquire("a", 0) >= 0) allowed++;
+      if (second.tryAcquire("a", 0) >= 0) allowed++;
+    }
+
+    assertEquals(10, allowed);
+    assertTrue(first.tryAcquire("a", 0) < 0);
+  }
+
+  @Test
+  void fallsBackToLocalLimitsWhenTheClusterFails() {
+    RuntimeException failure = new IllegalStateException("disconnected");
+    when(store.lease(anyString(), anyLong(), anyLong(), anyLong(), anyLong()))
+        .thenReturn(CompletableFuture.failedFuture(failure));
+    ClusterRateLimiter limiter = new ClusterRateLimiter("route", POLICY, 100, store, overflows);
+
+    assertEquals(9, limiter.tryAcquire("a", 0));
+    verify(store).markUnavailable(failure);
+  }
+
+  private MutableEntry<String, Long> entry(String key) {
+    return new MutableEntry<>() {
+      @Override
+      public boolean exists() {
+        return cluster.containsKey(key);
+      }
+
+      @Override
+      public void remove() {
+        cluster.remove(key);
+      }
+
+      @Override
+      public void setValue(Long value) {
+        cluster.put(key, value);
+      }
+
+      @Override
+      public String getKey() {
+        return key;
+      }
+
+      @Override
+      public Long getValue() {
+        return cluster.get(key);
+      }
+
+      @Override
+      public <T> T unwrap(Class<T> type) {
+        throw new IllegalArgumentException();
+      }
+    };
+  }
+}
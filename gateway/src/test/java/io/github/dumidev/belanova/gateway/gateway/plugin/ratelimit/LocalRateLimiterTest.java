@@ -0,0 +1,96 @@
+package io.github.dumidev.belanova.gateway.gateway.plugin.ratelimit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalRateLimiterTest {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final Counter overflows = new SimpleMeterRegistry().counter("overflow");
+
+  @Test
+  void allowsTheBurstThenRejects() {
+    LocalRateLimiter limiter = new LocalRateLimiter(policy(10, 5), 100, overflows);
+
+    for (int i = 4; i >= 0; i--) {
+      assertEquals(i, limiter.tryAcquire("a", 0));
+    }
+    long rejected = limiter.tryAcquire("a", 0);
+
+    assertTrue(rejected < 0);
+    assertEquals(SECOND / 10, -rejected);
+    assertEquals(4, limiter.tryAcquire("b", 0));
+  }
+
+  @Test
+  void refillsAtTheConfiguredRate() {
+    LocalRateLimiter limiter = new LocalRateLimiter(policy(10, 2), 100, overflows);
+    limiter.tryAcquire("a", 0);
+    limiter.tryAcquire("a", 0);
+
+    assertTrue(limiter.tryAcquire("a", SECOND / 20) < 0);
+    assertEquals(0, limiter.tryAcquire("a", SECOND / 10));
+    assertEquals(SECOND / 5, limiter.nanosUntilFull("a", SECOND / 10));
+    assertEquals(1, limiter.tryAcquire("a", SECOND));
+  }
+
+  @Test
+  void evictsOnlyFullBuckets() {
+    LocalRateLimiter limiter = new LocalRateLimiter(policy(10, 10), 100, overflows);
+    limiter.tryAcquire("idle", 0);
+    limiter.tryAcquire("busy", SECOND);
+
+    limiter.evictIdle(SECOND, SECOND / 2);
+
+    assertEquals(1, limiter.size());
+    assertEquals(8, limiter.tryAcquire("busy", SECOND));
+  }
+
+  @Test
+  void sharesOneBucketBeyondMaxKeys() {
+    LocalRateLimiter limiter = new LocalRateLimiter(policy(10, 2), 1, overflows);
+    limiter.tryAcquire("a", 0);
+
+    assertEquals(1, limiter.tryAcquire("b", 0));
+    assertEquals(0, limiter.tryAcquire("c", 0));
+    assertTrue(limiter.tryAcquire("d", 0) < 0);
+    assertEquals(1, limiter.size());
+    assertEquals(3, overflows.count());
+    // Overflowed keys are told the state of the bucket they share
+    assertEquals(SECOND / 5, limiter.nanosUntilFull("d", 0));
+  }
+
+  @Test
+  void makesRoomForNewKeysByDroppingFullBuckets() {
+    LocalRateLimiter limiter = new LocalRateLimiter(policy(10, 2), 1, overflows);
+    limiter.tryAcquire("rotated", 0);
+
+    assertEquals(1, limiter.tryAcquire("client", SECOND));
+    assertEquals(0, limiter.tryAcquire("client", SECOND));
+    assertEquals(1, limiter.size());
+    assertEquals(0, overflows.count());
+  }
+
+  @Test
+  void findsTheBucketOfALongKeyAgain() {
+    LocalRateLimiter limiter = new LocalRateLimiter(policy(10, 2), 1, overflows);
+    String key = "k".repeat(RateLimiter.MAX_KEY_LENGTH + 44);
+
+    assertEquals(1, limiter.tryAcquire(key, 0));
+    assertEquals(0, limiter.tryAcquire(key, 0));
+    assertTrue(limiter.tryAcquire(key, 0) < 0);
+    assertEquals(SECOND / 5, limiter.nanosUntilFull(key, 0));
+    assertEquals(1, limiter.size());
+  }
+
+  private static RateLimitPolicy policy(long limitPerSecond, long burst) {
+    return new RateLimitPolicy(limitPerSecond, 1_000, burst, RateLimitPolicy.KeyType.IP, "X-API-Key");
+  }
+}
@@ -0,0 +1,82 @@
+package io.github.dumidev.belanova.gateway.gateway.plugin.ratelimit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rate limit checks from every core at once, either all on one hot key or
+ * spread over many keys. Run with the GC profiler to confirm the check does
+ * not allocate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+public class RateLimiterBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class Limiter {
+
+    @Param({"1", "10000"})
+    private int keys;
+
+    private LocalRateLimiter limiter;
+    private String[] names;
+    private final AtomicInteger threads = new AtomicInteger();
+
+    @Setup
+    public void setUp() {
+      // Effectively unlimited, so every check takes the CAS path
+      limiter = new LocalRateLimiter(new RateLimitPolicy(Long.MAX_VALUE / 2, 1_000, Long.MAX_VALUE / 2,
+          RateLimitPolicy.KeyType.IP, "X-API-Key"), 100_000, new SimpleMeterRegistry().counter("overflow"));
+      names = new String[keys];
+      for (int i = 0; i < keys; i++) {
+        names[i] = "10.0." + (i / 250) + "." + (i % 250);
+      }
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Client {
+
+    private int next;
+
+    @Setup
+    public void setUp(Limiter limiter) {
+      next = limiter.threads.getAndIncrement() * 7919;
+    }
+  }
+
+  @Benchmark
+  public long tryAcquire(Limiter limiter, Client client) {
+    String key = limiter.names[Math.floorMod(client.next++, limiter.names.length)];
+    return limiter.limiter.tryAcquire(key, System.nanoTime());
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(RateLimiterBenchmark.class.getSimpleName())
+        .addProfiler(GCProfiler.class)
+        .build()).run();
+  }
+}
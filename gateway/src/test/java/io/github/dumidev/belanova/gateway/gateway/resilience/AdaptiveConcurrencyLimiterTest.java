@@ -0,0 +1,73 @@
+package io.github.dumidev.belanova.gateway.gateway.resilience;
+
+import io.github.dumidev.belanova.gateway.gateway.resilience.ConcurrencyLimitPolicy.Algorithm;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveConcurrencyLimiterTest {
+
+  @Test
+  void rejectsBeyondTheLimit() {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(
+        new ConcurrencyLimitPolicy(Algorithm.GRADIENT, 2, 1, 10));
+
+    assertEquals(1, limiter.tryAcquire());
+    assertEquals(2, limiter.tryAcquire());
+    assertEquals(-1, limiter.tryAcquire());
+    assertEquals(1, limiter.rejections());
+
+    limiter.release(0, 2, false);
+    assertEquals(2, limiter.tryAcquire());
+  }
+
+  @ParameterizedTest
+  @EnumSource(Algorithm.class)
+  void growsWhileLatencyHoldsAndShrinksWhenItRises(Algorithm algorithm) {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(
+        new ConcurrencyLimitPolicy(algorithm, 20, 1, 200));
+
+    saturate(limiter, 10, 200);
+    int grown = limiter.limit();
+    saturate(limiter, 40, 50);
+
+    assertEquals(200, grown);
+    assertTrue(limiter.limit() < grown / 2, "limit " + limiter.limit());
+    assertEquals(0, limiter.inFlight());
+  }
+
+  @ParameterizedTest
+  @EnumSource(Algorithm.class)
+  void keepsTheLimitOfAnIdleRoute(Algorithm algorithm) {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(
+        new ConcurrencyLimitPolicy(algorithm, 20, 1, 200));
+
+    for (int i = 0; i < 200; i++) {
+      limiter.release(TimeUnit.MILLISECONDS.toNanos(10), limiter.tryAcquire(), false);
+    }
+
+    assertEquals(20, limiter.limit());
+  }
+
+  @Test
+  void backsOffOnDrops() {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(
+        new ConcurrencyLimitPolicy(Algorithm.VEGAS, 100, 1, 200));
+
+    limiter.release(0, limiter.tryAcquire(), true);
+
+    assertEquals(90, limiter.limit());
+  }
+
+  private static void saturate(AdaptiveConcurrencyLimiter limiter, long rttMillis, int calls) {
+    for (int i = 0; i < calls; i++) {
+      limiter.tryAcquire();
+      limiter.release(TimeUnit.MILLISECONDS.toNanos(rttMillis), limiter.limit(), false);
+    }
+  }
+}
@@ -0,0 +1,44 @@
+package io.github.dumidev.belanova.gateway.gateway.resilience;
+
+import io.github.dumijdev.belanova.gateway.common.model.Service;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.servlet.function.HandlerFilterFunction;
+import org.springframework.web.servlet.function.ServerRequest;
+import org.springframework.web.servlet.function.ServerResponse;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ConcurrencyLimitFiltersTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final ConcurrencyLimitFilters filters = new ConcurrencyLimitFilters(meterRegistry);
+
+  @Test
+  void dropsTheLimitAndMetersOfRemovedRoutes() throws Exception {
+    HandlerFilterFunction<ServerResponse, ServerResponse> filter = filters.forRoute("b1-s1", service());
+    filters.forRoute("b1-s2", service());
+    filter.filter(ServerRequest.create(new MockHttpServletRequest("GET", "/orders"), List.of()),
+        request -> ServerResponse.ok().build());
+    assertNotNull(meterRegistry.find("belanova.gateway.concurrency.limit").tag("route", "b1-s1").gauge());
+
+    filters.retainAll(Set.of("b1-s2"));
+
+    assertNull(meterRegistry.find("belanova.gateway.concurrency.limit").tag("route", "b1-s1").gauge());
+    assertNull(meterRegistry.find("belanova.gateway.concurrency.in-flight").tag("route", "b1-s1").gauge());
+    assertEquals(20, meterRegistry.find("belanova.gateway.concurrency.limit").tag("route", "b1-s2").gauge().value());
+  }
+
+  private static Service service() {
+    Service service = new Service();
+    service.setMetadata(Map.of("concurrency-limit.enabled", "true"));
+    return service;
+  }
+}
@@ -0,0 +1,187 @@
+package io.github.dumidev.belanova.gateway.gateway.resilience;
+
+import io.github.dumidev.belanova.gateway.gateway.loadbalancer.LoadBalancingInterceptor;
+import io.github.dumidev.belanova.gateway.gateway.loadbalancer.OutlierDetector;
+import io.github.dumidev.belanova.gateway.gateway.loadbalancer.RoundRobinLoadBalancer;
+import io.github.dumidev.belanova.gateway.gateway.loadbalancer.UpstreamLease;
+import io.github.dumidev.belanova.gateway.gateway.loadbalancer.UpstreamPool;
+import io.github.dumidev.belanova.gateway.gateway.loadbalancer.UpstreamStatsRegistry;
+import io.github.dumidev.belanova.gateway.gateway.loadbalancer.UpstreamTarget;
+import io.github.dumidev.belanova.gateway.gateway.routing.RouteTarget;
+import io.github.dumidev.belanova.gateway.gateway.routing.RoutingIndex;
+import io.github.dumijdev.belanova.gateway.common.model.Backend;
+import io.github.dumijdev.belanova.gateway.common.model.Service;
+import io.github.dumijdev.belanova.gateway.common.model.Upstream;
+import io.github.dumijdev.belanova.gateway.common.model.UpstreamHealthStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.cloud.gateway.server.mvc.common.MvcUtils;
+import org.springframework.cloud.gateway.server.mvc.config.GatewayMvcProperties;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.function.HandlerFilterFunction;
+import org.springframework.web.servlet.function.ServerRequest;
+import org.springframework.web.servlet.function.ServerResponse;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HedgingFiltersTest {
+
+  private static final Map<String, String> POLICY =
+      Map.of("hedge.enabled", "true", "hedge.min-delay-ms", "10", "hedge.max-percent", "100");
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final UpstreamPool pool = UpstreamPool.of("b1", List.of(
+      new Upstream("u1", null, "10.0.0.1", 8080, 1, true, UpstreamHealthStatus.HEALTHY),
+      new Upstream("u2", null, "10.0.0.2", 8080, 1, true, UpstreamHealthStatus.HEALTHY)),
+      new UpstreamStatsRegistry(10_000));
+  private final LoadBalancingInterceptor loadBalancing = loadBalancing(pool);
+  private final HedgingFilters hedgingFilters = new HedgingFilters(loadBalancing, meterRegistry);
+  private final MockHttpServletRequest servletRequest = new MockHttpServletRequest("GET", "/orders");
+
+  private HandlerFilterFunction<ServerResponse, ServerResponse> filter;
+  private ServerRequest request;
+  private UpstreamLease primaryLease;
+  private URI primaryUrl;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    servletRequest.setAttribute(MvcUtils.GATEWAY_ROUTE_ID_ATTR, "b1-s1");
+    loadBalancing.preHandle(servletRequest, new MockHttpServletResponse(), null);
+    primaryLease = (UpstreamLease) servletRequest.getAttribute(LoadBalancingInterceptor.UPSTREAM_LEASE_ATTR);
+    primaryUrl = (URI) servletRequest.getAttribute(MvcUtils.GATEWAY_REQUEST_URL_ATTR);
+    RequestContextHolder.setRequestAttributes(
+        new ServletRequestAttributes(servletRequest, new MockHttpServletResponse()));
+
+    filter = hedgingFilters.forRoute("b1-s1", service(POLICY));
+    request = ServerRequest.create(servletRequest, List.of());
+    // Fast answers make up the latency percentile, so slower attempts get hedged
+    for (long i = 0; i < HedgingFilters.MIN_SAMPLES; i++) {
+      filter.filter(request, r -> ServerResponse.ok().build());
+    }
+    // Let the cached percentile, computed before there were enough samples, expire
+    Thread.sleep(150);
+  }
+
+  @AfterEach
+  void tearDown() {
+    RequestContextHolder.resetRequestAttributes();
+    hedgingFilters.stop();
+  }
+
+  @Test
+  void theHedgeWinsOverASlowPrimary() throws Exception {
+    ServerResponse response = filter.filter(request, r -> {
+      if (isPrimary(r)) {
+        Thread.sleep(10_000);
+      }
+      return ServerResponse.ok().header("X-Attempt", "hedge").build();
+    });
+
+    assertEquals("hedge", response.headers().getFirst("X-Attempt"));
+    UpstreamLease hedgeLease = (UpstreamLease) servletRequest.getAttribute(LoadBalancingInterceptor.UPSTREAM_LEASE_ATTR);
+    assertNotSame(primaryLease, hedgeLease);
+    assertEquals(hedgeLease.target().uri(), servletRequest.getAttribute(MvcUtils.GATEWAY_REQUEST_URL_ATTR));
+    assertEquals(1, hedgeLease.target().stats().inFlight());
+    // The interrupted primary gave its upstream back before the filter returned
+    assertEquals(0, primaryLease.target().stats().inFlight());
+    assertEquals(1, meterRegistry.counter("belanova.gateway.hedges", "route", "b1-s1", "outcome", "won").count());
+  }
+
+  @Test
+  void thePrimaryWinsWhenItAnswersFirst() throws Exception {
+    ServerResponse response = filter.filter(request, r -> {
+      Thread.sleep(isPrimary(r) ? 50 : 10_000);
+      return ServerResponse.ok().header("X-Attempt", isPrimary(r) ? "primary" : "hedge").build();
+    });
+
+    assertEquals("primary", response.headers().getFirst("X-Attempt"));
+    assertSame(primaryLease, servletRequest.getAttribute(LoadBalancingInterceptor.UPSTREAM_LEASE_ATTR));
+    assertEquals(primaryUrl, servletRequest.getAttribute(MvcUtils.GATEWAY_REQUEST_URL_ATTR));
+    assertEquals(1, meterRegistry.counter("belanova.gateway.hedges", "route", "b1-s1", "outcome", "sent").count());
+    // The hedge's upstream was only held by the abandoned attempt
+    UpstreamTarget hedged = pool.all()[0] == primaryLease.target() ? pool.all()[1] : pool.all()[0];
+    assertEquals(0, hedged.stats().inFlight());
+  }
+
+  @Test
+  void closesTheResponseOfTheLoserBeforeReturning() throws Exception {
+    AtomicReference<String> written = new AtomicReference<>();
+    ServerResponse response = filter.filter(request, r -> {
+      if (!isPrimary(r)) {
+        return ServerResponse.ok().header("X-Attempt", "hedge").build();
+      }
+      // Answers late, and without noticing the interrupt
+      long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+      while (System.nanoTime() < until) {
+        Thread.onSpinWait();
+      }
+      return ServerResponse.ok().build((req, res) -> {
+        written.set(req.getMethod());
+        res.getOutputStream().write(new byte[8192]);
+        written.set("whole body");
+        return null;
+      });
+    });
+
+    assertEquals("hedge", response.headers().getFirst("X-Attempt"));
+    assertEquals("GET", written.get());
+    assertEquals(0, primaryLease.target().stats().inFlight());
+  }
+
+  @Test
+  void failsWithThePrimaryErrorWhenBothAttemptsFail() {
+    IOException error = assertThrows(IOException.class, () -> filter.filter(request, r -> {
+      if (isPrimary(r)) {
+        Thread.sleep(50);
+        throw new IOException("primary failed");
+      }
+      throw new IOException("hedge failed");
+    }));
+
+    assertEquals("primary failed", error.getMessage());
+    assertSame(primaryLease, servletRequest.getAttribute(LoadBalancingInterceptor.UPSTREAM_LEASE_ATTR));
+  }
+
+  @Test
+  void keepsTheFilterOfARouteWhosePolicyIsUnchanged() {
+    assertSame(filter, hedgingFilters.forRoute("b1-s1", service(POLICY)));
+    assertNotSame(filter, hedgingFilters.forRoute("b1-s1",
+        service(Map.of("hedge.enabled", "true", "hedge.percentile", "99"))));
+  }
+
+  private boolean isPrimary(ServerRequest request) {
+    return primaryUrl.equals(request.attributes().get(MvcUtils.GATEWAY_REQUEST_URL_ATTR));
+  }
+
+  private static Service service(Map<String, String> metadata) {
+    Service service = new Service();
+    service.setId("s1");
+    service.setMetadata(metadata);
+    return service;
+  }
+
+  private static LoadBalancingInterceptor loadBalancing(UpstreamPool pool) {
+    Backend backend = new Backend();
+    backend.setId("b1");
+    RoutingIndex routingIndex = Mockito.mock(RoutingIndex.class);
+    Mockito.when(routingIndex.lookup("b1-s1"))
+        .thenReturn(new RouteTarget("b1-s1", backend, service(POLICY), pool, new RoundRobinLoadBalancer()));
+    return new LoadBalancingInterceptor(routingIndex, new GatewayMvcProperties(), Mockito.mock(OutlierDetector.class));
+  }
+}
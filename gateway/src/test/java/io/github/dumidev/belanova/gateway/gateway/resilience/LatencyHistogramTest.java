@@ -0,0 +1,76 @@
+package io.github.dumidev.belanova.gateway.gateway.resilience;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+  @Test
+  void bucketsCoverEveryValue() {
+    for (long micros = 0; micros < 1_000_000; micros += 7) {
+      int index = LatencyHistogram.index(micros);
+      assertTrue(micros < LatencyHistogram.upperBound(index), "value " + micros + " above its bucket");
+      assertTrue(micros == 0 || micros * 5 / 4 + 1 >= LatencyHistogram.upperBound(index) - 1,
+          "bucket of " + micros + " too wide");
+    }
+  }
+
+  @Test
+  void reportsPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram(60_000);
+    long now = System.nanoTime();
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(TimeUnit.MILLISECONDS.toNanos(i), now);
+    }
+
+    long p95 = TimeUnit.NANOSECONDS.toMillis(histogram.percentileNanos(95, 100, now));
+
+    assertTrue(p95 >= 95 && p95 <= 120, "p95 was " + p95);
+  }
+
+  @Test
+  void needsEnoughSamples() {
+    LatencyHistogram histogram = new LatencyHistogram(60_000);
+    long now = System.nanoTime();
+    histogram.record(1_000_000, now);
+
+    assertEquals(-1, histogram.percentileNanos(95, 100, now));
+  }
+
+  @Test
+  void forgetsOldPeriods() {
+    LatencyHistogram histogram = new LatencyHistogram(1_000);
+    long now = System.nanoTime();
+    for (int i = 0; i < 100; i++) {
+      histogram.record(TimeUnit.SECONDS.toNanos(1), now);
+    }
+
+    long later = now + TimeUnit.SECONDS.toNanos(5);
+    for (int i = 0; i < 100; i++) {
+      histogram.record(TimeUnit.MILLISECONDS.toNanos(1), later);
+    }
+
+    assertTrue(histogram.percentileNanos(99, 100, later) < TimeUnit.MILLISECONDS.toNanos(2));
+  }
+
+  @Test
+  void reusesThePercentileForATick() {
+    LatencyHistogram histogram = new LatencyHistogram(60_000);
+    long now = System.nanoTime();
+    for (int i = 0; i < 100; i++) {
+      histogram.record(TimeUnit.MILLISECONDS.toNanos(1), now);
+    }
+    long p99 = histogram.percentileNanos(99, 100, now);
+
+    for (int i = 0; i < 100; i++) {
+      histogram.record(TimeUnit.SECONDS.toNanos(1), now);
+    }
+
+    assertEquals(p99, histogram.percentileNanos(99, 100, now + TimeUnit.MILLISECONDS.toNanos(50)));
+    assertTrue(histogram.percentileNanos(99, 100, now + TimeUnit.MILLISECONDS.toNanos(150)) > p99);
+  }
+}
@@ -0,0 +1,53 @@
+package io.github.dumidev.belanova.gateway.gateway.resilience;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryBudgetTest {
+
+  @Test
+  void limitsRetriesToAShareOfRequests() {
+    RetryBudget budget = new RetryBudget(20, 0, 100);
+
+    for (int i = 0; i < 100; i++) {
+      budget.deposit();
+    }
+    int retries = 0;
+    while (budget.tryWithdraw()) {
+      retries++;
+    }
+
+    assertEquals(20, retries);
+  }
+
+  @Test
+  void capsTheBalance() {
+    RetryBudget budget = new RetryBudget(100, 0, 5);
+
+    for (int i = 0; i < 1_000; i++) {
+      budget.deposit();
+    }
+    int retries = 0;
+    while (budget.tryWithdraw()) {
+      retries++;
+    }
+
+    assertEquals(5, retries);
+  }
+
+  @Test
+  void refillsTheMinimumRateOverTime() throws InterruptedException {
+    RetryBudget budget = new RetryBudget(0, 100, 100);
+    while (budget.tryWithdraw()) {
+      // Spend the initial allowance
+    }
+    assertFalse(budget.tryWithdraw());
+
+    Thread.sleep(50);
+
+    assertTrue(budget.tryWithdraw());
+  }
+}
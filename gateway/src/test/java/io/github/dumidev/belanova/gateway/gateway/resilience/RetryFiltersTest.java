@@ -0,0 +1,105 @@
+package io.github.dumidev.belanova.gateway.gateway.resilience;
+
+import io.github.dumidev.belanova.gateway.gateway.loadbalancer.LoadBalancingInterceptor;
+import io.github.dumidev.belanova.gateway.gateway.loadbalancer.OutlierDetector;
+import io.github.dumidev.belanova.gateway.gateway.loadbalancer.RoundRobinLoadBalancer;
+import io.github.dumidev.belanova.gateway.gateway.loadbalancer.UpstreamPool;
+import io.github.dumidev.belanova.gateway.gateway.loadbalancer.UpstreamStatsRegistry;
+import io.github.dumidev.belanova.gateway.gateway.routing.RouteTarget;
+import io.github.dumidev.belanova.gateway.gateway.routing.RoutingIndex;
+import io.github.dumijdev.belanova.gateway.common.model.Backend;
+import io.github.dumijdev.belanova.gateway.common.model.Service;
+import io.github.dumijdev.belanova.gateway.common.model.Upstream;
+import io.github.dumijdev.belanova.gateway.common.model.UpstreamHealthStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.cloud.gateway.server.mvc.common.MvcUtils;
+import org.springframework.cloud.gateway.server.mvc.config.GatewayMvcProperties;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.function.HandlerFilterFunction;
+import org.springframework.web.servlet.function.ServerRequest;
+import org.springframework.web.servlet.function.ServerResponse;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class RetryFiltersTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final LoadBalancingInterceptor loadBalancing = loadBalancing();
+
+  @Test
+  void retriesOnAnotherUpstream() throws Exception {
+    RetryFilters retryFilters = new RetryFilters(new RetryBudget(20, 10, 100), loadBalancing, meterRegistry);
+    HandlerFilterFunction<ServerResponse, ServerResponse> filter = retryFilters.forRoute("b1-s1", service());
+    MockHttpServletRequest servletRequest = request();
+
+    List<Object> urls = new ArrayList<>();
+    ServerResponse response = filter.filter(copy(servletRequest), request -> {
+      urls.add(request.attributes().get(MvcUtils.GATEWAY_REQUEST_URL_ATTR));
+      return ServerResponse.status(urls.size() == 1 ? 503 : 200).build();
+    });
+
+    assertEquals(200, response.statusCode().value());
+    assertEquals(2, urls.size());
+    assertNotEquals(urls.get(0), urls.get(1));
+    assertEquals(1, meterRegistry.counter("belanova.gateway.retries",
+        "route", "b1-s1", "outcome", "retried").count());
+  }
+
+  @Test
+  void returnsTheFailedResponseWhenTheBudgetIsExhausted() throws Exception {
+    RetryFilters retryFilters = new RetryFilters(new RetryBudget(0, 0, 1), loadBalancing, meterRegistry);
+    HandlerFilterFunction<ServerResponse, ServerResponse> filter = retryFilters.forRoute("b1-s1", service());
+    MockHttpServletRequest servletRequest = request();
+
+    ServerResponse failed = ServerResponse.status(503).body("upstream unavailable");
+    ServerResponse response = filter.filter(copy(servletRequest), request -> failed);
+
+    assertSame(failed, response);
+    assertEquals(1, meterRegistry.counter("belanova.gateway.retries",
+        "route", "b1-s1", "outcome", "budget-exhausted").count());
+  }
+
+  private MockHttpServletRequest request() throws Exception {
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/orders");
+    request.setAttribute(MvcUtils.GATEWAY_ROUTE_ID_ATTR, "b1-s1");
+    loadBalancing.preHandle(request, new MockHttpServletResponse(), null);
+    return request;
+  }
+
+  /**
+   * A request as built by an outer filter, with its own copy of the attributes.
+   */
+  private static ServerRequest copy(MockHttpServletRequest servletRequest) {
+    return ServerRequest.from(ServerRequest.create(servletRequest, List.of())).build();
+  }
+
+  private static Service service() {
+    Service service = new Service();
+    service.setId("s1");
+    service.setMetadata(Map.of("retry.max-attempts", "3", "retry.backoff-ms", "0"));
+    return service;
+  }
+
+  private static LoadBalancingInterceptor loadBalancing() {
+    UpstreamPool pool = UpstreamPool.of("b1", List.of(
+        new Upstream("u1", null, "10.0.0.1", 8080, 1, true, UpstreamHealthStatus.HEALTHY),
+        new Upstream("u2", null, "10.0.0.2", 8080, 1, true, UpstreamHealthStatus.HEALTHY)),
+        new UpstreamStatsRegistry(10_000));
+    Backend backend = new Backend();
+    backend.setId("b1");
+    RoutingIndex routingIndex = Mockito.mock(RoutingIndex.class);
+    Mockito.when(routingIndex.lookup("b1-s1"))
+        .thenReturn(new RouteTarget("b1-s1", backend, service(), pool, new RoundRobinLoadBalancer()));
+    return new LoadBalancingInterceptor(routingIndex, new GatewayMvcProperties(), Mockito.mock(OutlierDetector.class));
+  }
+}
@@ -0,0 +1,68 @@
+package io.github.dumidev.belanova.gateway.gateway.resilience;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryPolicyTest {
+
+  @Test
+  void retriesAreOffUnlessEnabled() {
+    assertNull(RetryPolicy.fromMetadata(null));
+    assertNull(RetryPolicy.fromMetadata(Map.of("owner", "payments")));
+    assertNull(RetryPolicy.fromMetadata(Map.of("retry.max-attempts", "1")));
+  }
+
+  @Test
+  void appliesDefaults() {
+    RetryPolicy policy = RetryPolicy.fromMetadata(Map.of("retry.max-attempts", "3"));
+
+    assertEquals(3, policy.maxAttempts());
+    assertTrue(policy.isRetryable(503));
+    assertFalse(policy.isRetryable(500));
+    assertTrue(policy.methods().contains("GET"));
+    assertFalse(policy.methods().contains("POST"));
+  }
+
+  @Test
+  void matchesExceptionsThroughSuperclassesAndCauses() {
+    RetryPolicy policy = RetryPolicy.fromMetadata(Map.of("retry.max-attempts", "2"));
+
+    assertTrue(policy.isRetryable(new ConnectException("refused")));
+    assertTrue(policy.isRetryable(new UncheckedIOException(new IOException("reset"))));
+    assertFalse(policy.isRetryable(new IllegalStateException("bug")));
+  }
+
+  @Test
+  void readsCustomSettings() {
+    RetryPolicy policy = RetryPolicy.fromMetadata(Map.of(
+        "retry.max-attempts", "4",
+        "retry.statuses", "500, 429",
+        "retry.methods", "get,put",
+        "retry.backoff-ms", "10",
+        "retry.max-backoff-ms", "40"));
+
+    assertTrue(policy.isRetryable(429));
+    assertFalse(policy.isRetryable(503));
+    assertTrue(policy.methods().contains("PUT"));
+    for (int retry = 1; retry <= 10; retry++) {
+      long backoff = policy.backoffMillis(retry);
+      assertTrue(backoff >= 0 && backoff <= Math.min(40, 10L << (retry - 1)), "backoff " + backoff);
+    }
+  }
+
+  @Test
+  void rejectsInvalidValues() {
+    assertThrows(IllegalArgumentException.class,
+        () -> RetryPolicy.fromMetadata(Map.of("retry.max-attempts", "three")));
+  }
+}
@@ -0,0 +1,107 @@
+package io.github.dumidev.belanova.gateway.gateway.routing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.server.PathContainer;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the linear predicate chain (what {@code RouterFunction::and} does)
+ * with {@link RouteTrie} lookups.
+ * <p>
+ * Run with {@code mvn -pl gateway test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=io.github.dumidev.belanova.gateway.gateway.routing.RouteMatcherBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteMatcherBenchmark {
+
+  @Param({"100", "1000", "10000"})
+  private int routes;
+
+  private List<PathPattern> patterns;
+  private int[] methods;
+  private RouteTrie<Integer> trie;
+  private String[] paths;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    PathPatternParser parser = PathPatternParser.defaultInstance;
+    patterns = new ArrayList<>(routes);
+    methods = new int[routes];
+    RouteTrie.Builder<Integer> builder = RouteTrie.builder();
+
+    for (int i = 0; i < routes; i++) {
+      String pattern = switch (i % 3) {
+        case 0 -> "/service-" + i + "/v1/items/{id}";
+        case 1 -> "/service-" + i + "/v1/**";
+        default -> "/service-" + i + "/orders/*/lines";
+      };
+      int mask = i % 2 == 0 ? HttpMethodMask.GET : HttpMethodMask.ANY;
+      patterns.add(parser.parse(pattern));
+      methods[i] = mask;
+      builder.add(pattern, mask, i);
+    }
+    trie = builder.build();
+
+    Random random = new Random(42);
+    paths = new String[1024];
+    for (int i = 0; i < paths.length; i++) {
+      int route = random.nextInt(routes);
+      paths[i] = switch (route % 3) {
+        case 0 -> "/service-" + route + "/v1/items/42";
+        case 1 -> "/service-" + route + "/v1/catalog/books/7";
+        default -> "/service-" + route + "/orders/9/lines";
+      };
+    }
+  }
+
+  @Benchmark
+  public int linearChain() {
+    PathContainer path = PathContainer.parsePath(nextPath());
+    for (int i = 0; i < patterns.size(); i++) {
+      if ((methods[i] & HttpMethodMask.GET) != 0 && patterns.get(i).matches(path)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Benchmark
+  public Integer routeTrie() {
+    return trie.match(nextPath(), HttpMethodMask.GET);
+  }
+
+  private String nextPath() {
+    return paths[next++ & (paths.length - 1)];
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(RouteMatcherBenchmark.class.getSimpleName())
+        .build()).run();
+  }
+}
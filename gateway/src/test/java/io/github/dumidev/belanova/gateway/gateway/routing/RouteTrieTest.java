@@ -0,0 +1,70 @@
+package io.github.dumidev.belanova.gateway.gateway.routing;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RouteTrieTest {
+
+  @Test
+  void literalSegmentsWinOverTemplatesAndCatchAll() {
+    RouteTrie<String> trie = RouteTrie.<String>builder()
+        .add("/users/**", HttpMethodMask.ANY, "catch-all")
+        .add("/users/{id}", HttpMethodMask.ANY, "template")
+        .add("/users/me", HttpMethodMask.ANY, "literal")
+        .build();
+
+    assertEquals("literal", trie.match("/users/me", HttpMethodMask.GET));
+    assertEquals("template", trie.match("/users/42", HttpMethodMask.GET));
+    assertEquals("catch-all", trie.match("/users/42/orders", HttpMethodMask.GET));
+    assertEquals("catch-all", trie.match("/users", HttpMethodMask.GET));
+    assertNull(trie.match("/orders", HttpMethodMask.GET));
+  }
+
+  @Test
+  void backtracksWhenDeeperLiteralBranchDoesNotMatch() {
+    RouteTrie<String> trie = RouteTrie.<String>builder()
+        .add("/api/v1/health", HttpMethodMask.ANY, "health")
+        .add("/api/{version}/items", HttpMethodMask.ANY, "items")
+        .build();
+
+    assertEquals("items", trie.match("/api/v1/items", HttpMethodMask.GET));
+    assertEquals("health", trie.match("/api/v1/health", HttpMethodMask.GET));
+  }
+
+  @Test
+  void honoursMethodMasks() {
+    RouteTrie<String> trie = RouteTrie.<String>builder()
+        .add("/orders", HttpMethodMask.GET | HttpMethodMask.HEAD, "read")
+        .add("/orders", HttpMethodMask.POST, "write")
+        .build();
+
+    assertEquals("read", trie.match("/orders", HttpMethodMask.GET));
+    assertEquals("write", trie.match("/orders", HttpMethodMask.POST));
+    assertNull(trie.match("/orders", HttpMethodMask.DELETE));
+  }
+
+  @Test
+  void verifiesSegmentsMixingLiteralsAndWildcards() {
+    RouteTrie<String> trie = RouteTrie.<String>builder()
+        .add("/files/*.json", HttpMethodMask.ANY, "json")
+        .add("/files/{name}", HttpMethodMask.ANY, "any")
+        .build();
+
+    assertEquals("json", trie.match("/files/report.json", HttpMethodMask.GET));
+    assertEquals("any", trie.match("/files/report.csv", HttpMethodMask.GET));
+  }
+
+  @Test
+  void distinguishesTrailingSlashAndRoot() {
+    RouteTrie<String> trie = RouteTrie.<String>builder()
+        .add("/", HttpMethodMask.ANY, "root")
+        .add("/status", HttpMethodMask.ANY, "status")
+        .build();
+
+    assertEquals("root", trie.match("/", HttpMethodMask.GET));
+    assertEquals("status", trie.match("/status", HttpMethodMask.GET));
+    assertNull(trie.match("/status/", HttpMethodMask.GET));
+  }
+}
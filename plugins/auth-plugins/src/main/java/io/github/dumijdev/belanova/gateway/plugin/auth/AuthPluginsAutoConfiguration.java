@@ -0,0 +1,28 @@
+package io.github.dumijdev.belanova.gateway.plugin.auth;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+
+/**
+ * Registers the authentication plugins with the gateway.
+ */
+@AutoConfiguration
+public class AuthPluginsAutoConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    public JwtAuthenticationPlugin jwtAuthenticationPlugin(
+            ObjectProvider<ObjectMapper> objectMapper,
+            @Value("${belanova.gateway.jwt.token-cache-size:100000}") long tokenCacheSize,
+            @Value("${belanova.gateway.jwt.token-cache-max-age-ms:300000}") long tokenCacheMaxAgeMillis,
+            @Value("${belanova.gateway.jwt.jwks-refresh-ms:300000}") long jwksRefreshMillis,
+            @Value("${belanova.gateway.jwt.jwks-min-refresh-ms:30000}") long jwksMinRefreshMillis,
+            @Value("${belanova.gateway.jwt.jwks-timeout-ms:2000}") long jwksTimeoutMillis) {
+        return new JwtAuthenticationPlugin(objectMapper.getIfAvailable(ObjectMapper::new),
+                tokenCacheSize, tokenCacheMaxAgeMillis, jwksRefreshMillis, jwksMinRefreshMillis, jwksTimeoutMillis);
+    }
+}
@@ -0,0 +1,12 @@
+package io.github.dumijdev.belanova.gateway.plugin.auth;
+
+/**
+ * A bearer token that cannot be trusted. The message is sent back to the
+ * client, so it must not reveal more than what is wrong with the token.
+ */
+class InvalidTokenException extends RuntimeException {
+
+    InvalidTokenException(String message) {
+        super(message, null, false, false);
+    }
+}
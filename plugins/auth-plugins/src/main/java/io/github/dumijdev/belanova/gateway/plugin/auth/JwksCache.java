@@ -0,0 +1,230 @@
+package io.github.dumijdev.belanova.gateway.plugin.auth;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Signing keys of the JWKS endpoints routes verify tokens against.
+ * <p>
+ * Every known endpoint is fetched again every {@code refreshMillis} in the
+ * background, so key rotations are picked up before tokens signed with the
+ * new key show up. A token with a key id the cache does not know triggers a
+ * fetch as well, at most once per {@code minRefreshMillis} and endpoint so
+ * that made-up key ids cannot hammer the issuer, which also holds while the
+ * endpoint has never answered. Concurrent lookups share
+ * one fetch, and a failed fetch keeps the keys of the last good one.
+ */
+@Slf4j
+final class JwksCache implements AutoCloseable {
+
+    private static final Base64.Decoder BASE64URL = Base64.getUrlDecoder();
+
+    private final ObjectMapper objectMapper;
+    private final long minRefreshNanos;
+    private final Duration timeout;
+    private final ExecutorService fetchExecutor;
+    private final HttpClient httpClient;
+    private final ScheduledExecutorService scheduler;
+    private final Map<URI, KeySet> keySets = new ConcurrentHashMap<>();
+
+    JwksCache(ObjectMapper objectMapper, long refreshMillis, long minRefreshMillis, long timeoutMillis) {
+        this.objectMapper = objectMapper;
+        this.minRefreshNanos = TimeUnit.MILLISECONDS.toNanos(minRefreshMillis);
+        this.timeout = Duration.ofMillis(timeoutMillis);
+        this.fetchExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("belanova-jwks-", 0).factory());
+        this.httpClient = HttpClient.newBuilder()
+                .executor(fetchExecutor)
+                .connectTimeout(timeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "belanova-jwks-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::refreshAll, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        httpClient.shutdownNow();
+        fetchExecutor.shutdownNow();
+    }
+
+    /**
+     * Starts fetching the keys of an endpoint unless they are known already.
+     */
+    void prefetch(URI jwksUri) {
+        KeySet keySet = keySets.computeIfAbsent(jwksUri, KeySet::new);
+        if (keySet.keys == null) {
+            keySet.refresh();
+        }
+    }
+
+    /**
+     * @param keyId the {@code kid} of the token, may be null if the endpoint publishes a single key
+     * @return a stage completed with the key, or with {@code null} if the endpoint does not publish it;
+     *     completed already unless the keys have to be fetched
+     */
+    CompletionStage<PublicKey> key(URI jwksUri, String keyId) {
+        KeySet keySet = keySets.computeIfAbsent(jwksUri, KeySet::new);
+        Map<String, PublicKey> keys = keySet.keys;
+        PublicKey key = keys != null ? find(keys, keyId) : null;
+        if (key != null) {
+            return CompletableFuture.completedFuture(key);
+        }
+        if (keySet.inFlight.get() == null && System.nanoTime() - keySet.fetchedAt < minRefreshNanos) {
+            // Fetched a moment ago, so the key id is unknown or the endpoint is down; either way, do not ask again
+            return keys != null
+                    ? CompletableFuture.completedFuture(null)
+                    : CompletableFuture.failedFuture(new IllegalStateException("JWKS of " + jwksUri + " is unavailable"));
+        }
+        // Unknown key id: the issuer may have rotated its keys since the last fetch
+        return keySet.refresh().thenApply(refreshed -> find(refreshed, keyId));
+    }
+
+    int size() {
+        return keySets.size();
+    }
+
+    private void refreshAll() {
+        for (KeySet keySet : keySets.values()) {
+            keySet.refresh();
+        }
+    }
+
+    private static PublicKey find(Map<String, PublicKey> keys, String keyId) {
+        if (keyId != null) {
+            return keys.get(keyId);
+        }
+        return keys.size() == 1 ? keys.values().iterator().next() : null;
+    }
+
+    private Map<String, PublicKey> parse(String body) throws IOException {
+        Map<String, PublicKey> keys = new HashMap<>();
+        for (JsonNode jwk : objectMapper.readTree(body).path("keys")) {
+            if (jwk.hasNonNull("use") && !"sig".equals(jwk.get("use").asText())) continue;
+
+            try {
+                PublicKey key = switch (jwk.path("kty").asText()) {
+                    case "RSA" -> KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(
+                            unsigned(jwk, "n"), unsigned(jwk, "e")));
+                    case "EC" -> KeyFactory.getInstance("EC").generatePublic(new ECPublicKeySpec(
+                            new ECPoint(unsigned(jwk, "x"), unsigned(jwk, "y")), curve(jwk.path("crv").asText())));
+                    default -> null;
+                };
+                if (key != null) {
+                    keys.put(jwk.path("kid").asText(""), key);
+                }
+            } catch (GeneralSecurityException | IllegalArgumentException ex) {
+                log.warn("Skipping invalid key {} of a JWKS: {}", jwk.path("kid").asText(), ex.getMessage());
+            }
+        }
+        return Map.copyOf(keys);
+    }
+
+    private static BigInteger unsigned(JsonNode jwk, String field) {
+        if (!jwk.hasNonNull(field)) {
+            throw new IllegalArgumentException("missing " + field);
+        }
+        return new BigInteger(1, BASE64URL.decode(jwk.get(field).asText()));
+    }
+
+    private static ECParameterSpec curve(String name) throws GeneralSecurityException {
+        String stdName = switch (name) {
+            case "P-256" -> "secp256r1";
+            case "P-384" -> "secp384r1";
+            case "P-521" -> "secp521r1";
+            default -> throw new IllegalArgumentException("unsupported curve " + name);
+        };
+        AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+        parameters.init(new ECGenParameterSpec(stdName));
+        return parameters.getParameterSpec(ECParameterSpec.class);
+    }
+
+    private final class KeySet {
+
+        private final URI uri;
+        private final AtomicReference<CompletableFuture<Map<String, PublicKey>>> inFlight = new AtomicReference<>();
+        private volatile Map<String, PublicKey> keys;
+        // Starts out as long enough ago for the first lookup to fetch
+        private volatile long fetchedAt = System.nanoTime() - minRefreshNanos;
+
+        private KeySet(URI uri) {
+            this.uri = uri;
+        }
+
+        private CompletableFuture<Map<String, PublicKey>> refresh() {
+            CompletableFuture<Map<String, PublicKey>> fetch = new CompletableFuture<>();
+            while (true) {
+                CompletableFuture<Map<String, PublicKey>> current = inFlight.get();
+                if (current != null) {
+                    return current;
+                }
+                if (inFlight.compareAndSet(null, fetch)) {
+                    break;
+                }
+            }
+
+            fetchedAt = System.nanoTime();
+            HttpRequest request = HttpRequest.newBuilder(uri).timeout(timeout).GET().build();
+            httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                    .thenApply(response -> {
+                        if (response.statusCode() != 200) {
+                            throw new IllegalStateException("JWKS endpoint answered " + response.statusCode());
+                        }
+                        try {
+                            return parse(response.body());
+                        } catch (IOException ex) {
+                            throw new IllegalStateException("JWKS is not valid JSON", ex);
+                        }
+                    })
+                    .whenComplete((fetched, error) -> {
+                        Map<String, PublicKey> result = keys;
+                        if (error == null) {
+                            keys = fetched;
+                            result = fetched;
+                        } else if (!scheduler.isShutdown()) {
+                            log.warn("Could not fetch the JWKS of {}: {}", uri, error.toString());
+                        }
+                        inFlight.set(null);
+                        if (result != null) {
+                            fetch.complete(result);
+                        } else {
+                            fetch.completeExceptionally(error);
+                        }
+                    });
+            return fetch;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package io.github.dumijdev.belanova.gateway.plugin.auth;
+
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+
+/**
+ * The asymmetric JWS algorithms the gateway verifies. Symmetric and
+ * {@code none} algorithms are deliberately missing: a gateway holding shared
+ * secrets could mint tokens, and unsigned tokens prove nothing.
+ */
+enum JwtAlgorithm {
+
+    RS256("SHA256withRSA", 0),
+    RS384("SHA384withRSA", 0),
+    RS512("SHA512withRSA", 0),
+    // JWS carries ECDSA signatures as r || s, which is the P1363 format rather than DER
+    ES256("SHA256withECDSAinP1363Format", 256),
+    ES384("SHA384withECDSAinP1363Format", 384);
+
+    private final String jcaName;
+    private final int curveBits;
+
+    JwtAlgorithm(String jcaName, int curveBits) {
+        this.jcaName = jcaName;
+        this.curveBits = curveBits;
+    }
+
+    String jcaName() {
+        return jcaName;
+    }
+
+    /**
+     * @return whether the key is of the type, and for ECDSA of the curve, the algorithm requires
+     */
+    boolean accepts(PublicKey key) {
+        if (curveBits == 0) {
+            return key instanceof RSAPublicKey;
+        }
+        return key instanceof ECPublicKey ec && ec.getParams().getCurve().getField().getFieldSize() == curveBits;
+    }
+
+    /**
+     * @return the algorithm, or {@code null} if it is not one the gateway verifies
+     */
+    static JwtAlgorithm of(String name) {
+        for (JwtAlgorithm algorithm : values()) {
+            if (algorithm.name().equals(name)) {
+                return algorithm;
+            }
+        }
+        return null;
+    }
+}
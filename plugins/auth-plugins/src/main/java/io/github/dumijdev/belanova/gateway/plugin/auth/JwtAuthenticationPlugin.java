@@ -0,0 +1,207 @@
+package io.github.dumijdev.belanova.gateway.plugin.auth;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.dumijdev.belanova.gateway.common.plugin.GatewayPlugin;
+import io.github.dumijdev.belanova.gateway.common.plugin.PluginContext;
+import io.github.dumijdev.belanova.gateway.common.plugin.PluginPhase;
+import io.github.dumijdev.belanova.gateway.common.plugin.PluginResult;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Collectors;
+
+/**
+ * Requires a valid bearer JWT on the routes of services with
+ * {@code jwt.enabled} set, see {@link JwtConfig} for their settings.
+ * <p>
+ * Tokens must be signed with one of the route's algorithms by a key of its
+ * JWKS endpoint, unexpired and, if configured, of the right issuer and
+ * audience. Keys come from a {@link JwksCache}; when they have to be fetched
+ * the plugin returns a pending stage, which parks the request's virtual
+ * thread until they arrive. Verified tokens are remembered in a
+ * {@link VerifiedTokenCache}, so repeat tokens skip the signature check.
+ * <p>
+ * The consumer claim becomes the request's {@link PluginContext#CONSUMER_ID},
+ * and the claims of {@code jwt.claim-headers} are sent to the upstream as
+ * headers, replacing any the client sent. Requests without a valid token get
+ * a {@code 401} with a {@code WWW-Authenticate} challenge.
+ */
+@Slf4j
+public class JwtAuthenticationPlugin implements GatewayPlugin, AutoCloseable {
+
+    static final String ENABLED_KEY = JwtConfig.PREFIX + "enabled";
+
+    private static final Set<PluginPhase> PHASES = Set.of(PluginPhase.PRE_ROUTE);
+    private static final String BEARER = "Bearer ";
+
+    private final ObjectMapper objectMapper;
+    private final JwksCache keys;
+    private final VerifiedTokenCache tokens;
+    private final Map<String, Object> configuration;
+
+    public JwtAuthenticationPlugin(ObjectMapper objectMapper,
+                                   long tokenCacheSize,
+                                   long tokenCacheMaxAgeMillis,
+                                   long jwksRefreshMillis,
+                                   long jwksMinRefreshMillis,
+                                   long jwksTimeoutMillis) {
+        this.objectMapper = objectMapper;
+        this.keys = new JwksCache(objectMapper, jwksRefreshMillis, jwksMinRefreshMillis, jwksTimeoutMillis);
+        this.tokens = new VerifiedTokenCache(tokenCacheSize, tokenCacheMaxAgeMillis);
+        Map<String, Object> configuration = new LinkedHashMap<>();
+        configuration.put("tokenCacheSize", tokenCacheSize);
+        configuration.put("tokenCacheMaxAgeMillis", tokenCacheMaxAgeMillis);
+        configuration.put("jwksRefreshMillis", jwksRefreshMillis);
+        configuration.put("jwksMinRefreshMillis", jwksMinRefreshMillis);
+        configuration.put("jwksTimeoutMillis", jwksTimeoutMillis);
+        this.configuration = Map.copyOf(configuration);
+    }
+
+    @Override
+    public void close() {
+        keys.close();
+    }
+
+    @Override
+    public String getName() {
+        return "jwt-auth";
+    }
+
+    @Override
+    public int getOrder() {
+        return 10;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public boolean appliesTo(Map<String, String> metadata) {
+        return metadata != null && Boolean.parseBoolean(metadata.get(ENABLED_KEY));
+    }
+
+    /**
+     * A route with {@code jwt.enabled} set always requires a token, whatever its plugin list says.
+     */
+    @Override
+    public boolean requiredBy(Map<String, String> metadata) {
+        return appliesTo(metadata);
+    }
+
+    @Override
+    public JwtConfig configure(String routeId, Map<String, String> metadata) {
+        JwtConfig config = JwtConfig.fromMetadata(metadata);
+        if (config != null) {
+            keys.prefetch(config.jwksUri());
+        }
+        return config;
+    }
+
+    @Override
+    public Set<PluginPhase> phases() {
+        return PHASES;
+    }
+
+    @Override
+    public CompletionStage<PluginResult> onPreRoute(PluginContext context) {
+        JwtConfig config = context.config(JwtConfig.class);
+        String authorization = context.request().getHeader("Authorization");
+        if (authorization == null || !authorization.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            return reject(context, null).completed();
+        }
+        String token = authorization.substring(BEARER.length()).trim();
+        long now = System.currentTimeMillis() / 1000;
+
+        String cacheKey = VerifiedTokenCache.key(token);
+        VerifiedTokenCache.VerifiedToken verified = tokens.get(cacheKey, config.jwksUri());
+        if (verified != null) {
+            if (!config.algorithms().contains(verified.algorithm())) {
+                return reject(context, "unsupported algorithm").completed();
+            }
+            return authenticate(context, config, verified.claims(), now).completed();
+        }
+
+        SignedJwt jwt;
+        try {
+            jwt = SignedJwt.parse(token, objectMapper);
+            if (!config.algorithms().contains(jwt.algorithm())) {
+                throw new InvalidTokenException("unsupported algorithm");
+            }
+            // Cheap checks first, a token that fails them is not worth a key lookup
+            config.validate(jwt.claims(), now);
+        } catch (InvalidTokenException ex) {
+            return reject(context, ex.getMessage()).completed();
+        }
+
+        return keys.key(config.jwksUri(), jwt.keyId()).handle((key, error) -> {
+            if (error != null) {
+                return reject(context, "signing keys unavailable");
+            }
+            if (key == null) {
+                return reject(context, "unknown signing key");
+            }
+            try {
+                jwt.verify(key);
+            } catch (InvalidTokenException ex) {
+                return reject(context, ex.getMessage());
+            }
+            tokens.put(cacheKey, config.jwksUri(), jwt.algorithm(), jwt.claims());
+            return authenticate(context, config, jwt.claims(), now);
+        });
+    }
+
+    @Override
+    public Map<String, Object> getConfiguration() {
+        return configuration;
+    }
+
+    long verifiedTokens() {
+        return tokens.size();
+    }
+
+    private static PluginResult authenticate(PluginContext context, JwtConfig config,
+                                             Map<String, Object> claims, long now) {
+        try {
+            config.validate(claims, now);
+        } catch (InvalidTokenException ex) {
+            return reject(context, ex.getMessage());
+        }
+
+        String consumerId = claimValue(claims.get(config.consumerClaim()));
+        if (consumerId != null) {
+            context.put(PluginContext.CONSUMER_ID, consumerId);
+        }
+        for (Map.Entry<String, String> claimHeader : config.claimHeaders().entrySet()) {
+            // An empty value still overrides a header the client made up
+            String value = claimValue(claims.get(claimHeader.getKey()));
+            context.addUpstreamHeader(claimHeader.getValue(), value != null ? value : "");
+        }
+        return PluginResult.CONTINUE;
+    }
+
+    private static PluginResult reject(PluginContext context, String reason) {
+        HttpServletResponse response = context.response();
+        response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+        response.setHeader("WWW-Authenticate", reason == null
+                ? "Bearer realm=\"belanova\""
+                : "Bearer realm=\"belanova\", error=\"invalid_token\", error_description=\"" + reason + "\"");
+        log.debug("Rejected request to route {}: {}", context.routeId(), reason != null ? reason : "no bearer token");
+        return PluginResult.STOP;
+    }
+
+    private static String claimValue(Object claim) {
+        if (claim instanceof Collection<?> values) {
+            return values.stream().map(String::valueOf).collect(Collectors.joining(","));
+        }
+        return claim instanceof String || claim instanceof Number || claim instanceof Boolean
+                ? claim.toString()
+                : null;
+    }
+}
@@ -0,0 +1,118 @@
+package io.github.dumijdev.belanova.gateway.plugin.auth;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * JWT settings of a route, read from the {@code jwt.*} metadata of its
+ * backend and service:
+ * <ul>
+ *   <li>{@code jwt.enabled}: {@code true} to require a valid bearer token</li>
+ *   <li>{@code jwt.jwks-uri}: where the issuer publishes its signing keys (required)</li>
+ *   <li>{@code jwt.issuer}: the expected {@code iss} claim, unchecked if unset</li>
+ *   <li>{@code jwt.audience}: a value the {@code aud} claim must contain, unchecked if unset</li>
+ *   <li>{@code jwt.algorithms}: accepted signature algorithms, {@code RS256,ES256} by default</li>
+ *   <li>{@code jwt.clock-skew-seconds}: leeway on {@code exp} and {@code nbf}, 30 by default</li>
+ *   <li>{@code jwt.consumer-claim}: the claim identifying the consumer, {@code sub} by default</li>
+ *   <li>{@code jwt.claim-headers}: {@code claim=Header} pairs of claims sent to the upstream,
+ *       {@code sub=X-User-Id} by default</li>
+ * </ul>
+ */
+record JwtConfig(URI jwksUri,
+                 String issuer,
+                 String audience,
+                 Set<JwtAlgorithm> algorithms,
+                 long clockSkewSeconds,
+                 String consumerClaim,
+                 Map<String, String> claimHeaders) {
+
+    static final String PREFIX = "jwt.";
+
+    /**
+     * @return the settings, or {@code null} if the route does not require a token
+     * @throws IllegalArgumentException if a setting is invalid
+     */
+    static JwtConfig fromMetadata(Map<String, String> metadata) {
+        if (metadata == null || !Boolean.parseBoolean(metadata.get(PREFIX + "enabled"))) {
+            return null;
+        }
+
+        String jwks = metadata.get(PREFIX + "jwks-uri");
+        if (jwks == null || jwks.isBlank()) {
+            throw new IllegalArgumentException(PREFIX + "jwks-uri is required");
+        }
+        URI jwksUri = URI.create(jwks.trim());
+        if (!"https".equalsIgnoreCase(jwksUri.getScheme()) && !"http".equalsIgnoreCase(jwksUri.getScheme())) {
+            throw new IllegalArgumentException(PREFIX + "jwks-uri must be an http(s) URL: " + jwks);
+        }
+
+        Set<JwtAlgorithm> algorithms = EnumSet.noneOf(JwtAlgorithm.class);
+        for (String name : metadata.getOrDefault(PREFIX + "algorithms", "RS256,ES256").split(",")) {
+            if (!name.isBlank()) {
+                algorithms.add(JwtAlgorithm.valueOf(name.trim()));
+            }
+        }
+        if (algorithms.isEmpty()) {
+            throw new IllegalArgumentException(PREFIX + "algorithms must not be empty");
+        }
+
+        long clockSkewSeconds = Long.parseLong(metadata.getOrDefault(PREFIX + "clock-skew-seconds", "30"));
+        if (clockSkewSeconds < 0) {
+            throw new IllegalArgumentException(PREFIX + "clock-skew-seconds must not be negative");
+        }
+
+        Map<String, String> claimHeaders = new LinkedHashMap<>();
+        for (String pair : metadata.getOrDefault(PREFIX + "claim-headers", "sub=X-User-Id").split(",")) {
+            if (pair.isBlank()) continue;
+
+            int separator = pair.indexOf('=');
+            if (separator <= 0 || separator == pair.length() - 1) {
+                throw new IllegalArgumentException(PREFIX + "claim-headers entries must be claim=Header: " + pair);
+            }
+            claimHeaders.put(pair.substring(0, separator).trim(), pair.substring(separator + 1).trim());
+        }
+
+        return new JwtConfig(jwksUri,
+                blankToNull(metadata.get(PREFIX + "issuer")),
+                blankToNull(metadata.get(PREFIX + "audience")),
+                Set.copyOf(algorithms),
+                clockSkewSeconds,
+                metadata.getOrDefault(PREFIX + "consumer-claim", "sub").trim(),
+                Map.copyOf(claimHeaders));
+    }
+
+    /**
+     * Checks the time, issuer and audience claims of a token.
+     *
+     * @throws InvalidTokenException if one of them does not hold at {@code nowSeconds}
+     */
+    void validate(Map<String, Object> claims, long nowSeconds) {
+        if (!(claims.get("exp") instanceof Number exp)) {
+            throw new InvalidTokenException("token has no expiry");
+        }
+        if (nowSeconds - clockSkewSeconds >= exp.longValue()) {
+            throw new InvalidTokenException("token expired");
+        }
+        if (claims.get("nbf") instanceof Number notBefore && nowSeconds + clockSkewSeconds < notBefore.longValue()) {
+            throw new InvalidTokenException("token not valid yet");
+        }
+        if (issuer != null && !issuer.equals(claims.get("iss"))) {
+            throw new InvalidTokenException("unexpected issuer");
+        }
+        if (audience != null) {
+            Object aud = claims.get("aud");
+            boolean matches = aud instanceof Collection<?> values ? values.contains(audience) : audience.equals(aud);
+            if (!matches) {
+                throw new InvalidTokenException("unexpected audience");
+            }
+        }
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+}
@@ -0,0 +1,103 @@
+package io.github.dumijdev.belanova.gateway.plugin.auth;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Base64;
+import java.util.Map;
+
+/**
+ * A JWS compact serialization split into its parts, not verified yet.
+ */
+final class SignedJwt {
+
+    private static final TypeReference<Map<String, Object>> JSON_OBJECT = new TypeReference<>() {
+    };
+    private static final Base64.Decoder BASE64URL = Base64.getUrlDecoder();
+
+    private final JwtAlgorithm algorithm;
+    private final String keyId;
+    private final Map<String, Object> claims;
+    private final byte[] signingInput;
+    private final byte[] signature;
+
+    private SignedJwt(JwtAlgorithm algorithm, String keyId, Map<String, Object> claims,
+                      byte[] signingInput, byte[] signature) {
+        this.algorithm = algorithm;
+        this.keyId = keyId;
+        this.claims = claims;
+        this.signingInput = signingInput;
+        this.signature = signature;
+    }
+
+    /**
+     * @throws InvalidTokenException if the token is malformed or uses an algorithm the gateway does not verify
+     */
+    static SignedJwt parse(String token, ObjectMapper objectMapper) {
+        int first = token.indexOf('.');
+        int second = first < 0 ? -1 : token.indexOf('.', first + 1);
+        if (second < 0 || token.indexOf('.', second + 1) >= 0) {
+            throw new InvalidTokenException("malformed token");
+        }
+
+        Map<String, Object> header;
+        Map<String, Object> claims;
+        byte[] signature;
+        try {
+            header = objectMapper.readValue(BASE64URL.decode(token.substring(0, first)), JSON_OBJECT);
+            claims = objectMapper.readValue(BASE64URL.decode(token.substring(first + 1, second)), JSON_OBJECT);
+            signature = BASE64URL.decode(token.substring(second + 1));
+        } catch (IllegalArgumentException | IOException ex) {
+            throw new InvalidTokenException("malformed token");
+        }
+        if (header == null || claims == null) {
+            throw new InvalidTokenException("malformed token");
+        }
+
+        JwtAlgorithm algorithm = header.get("alg") instanceof String name ? JwtAlgorithm.of(name) : null;
+        if (algorithm == null) {
+            throw new InvalidTokenException("unsupported algorithm");
+        }
+        String keyId = header.get("kid") instanceof String kid ? kid : null;
+        return new SignedJwt(algorithm, keyId, claims,
+                token.substring(0, second).getBytes(StandardCharsets.US_ASCII), signature);
+    }
+
+    JwtAlgorithm algorithm() {
+        return algorithm;
+    }
+
+    String keyId() {
+        return keyId;
+    }
+
+    Map<String, Object> claims() {
+        return claims;
+    }
+
+    /**
+     * @throws InvalidTokenException if the signature does not verify with the key
+     */
+    void verify(PublicKey key) {
+        if (!algorithm.accepts(key)) {
+            throw new InvalidTokenException("signing key does not match the algorithm");
+        }
+        boolean valid;
+        try {
+            Signature verifier = Signature.getInstance(algorithm.jcaName());
+            verifier.initVerify(key);
+            verifier.update(signingInput);
+            valid = verifier.verify(signature);
+        } catch (GeneralSecurityException ex) {
+            valid = false;
+        }
+        if (!valid) {
+            throw new InvalidTokenException("invalid signature");
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package io.github.dumijdev.belanova.gateway.plugin.auth;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Claims of tokens whose signature was verified already, so that a client
+ * sending the same token again skips the signature check.
+ * <p>
+ * Entries are keyed by the SHA-256 of the token, never the token itself, and
+ * by the JWKS endpoint it was verified against. An entry lives until its
+ * token expires but at most {@code maxAgeMillis}, which bounds how long a
+ * token signed with a key the issuer since revoked is still accepted. The
+ * time, issuer and audience claims are checked again on every hit, and so is
+ * the signing algorithm, since routes sharing an endpoint may allow different
+ * ones.
+ */
+final class VerifiedTokenCache {
+
+    private static final Base64.Encoder BASE64URL = Base64.getUrlEncoder().withoutPadding();
+
+    private final Cache<String, VerifiedToken> cache;
+
+    VerifiedTokenCache(long maxEntries, long maxAgeMillis) {
+        long maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMillis);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfter(new TokenExpiry(maxAgeNanos))
+                .build();
+    }
+
+    /**
+     * @return the key of a token, derived from its hash
+     */
+    static String key(String token) {
+        try {
+            return BASE64URL.encodeToString(MessageDigest.getInstance("SHA-256")
+                    .digest(token.getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    /**
+     * @return the verified token, or {@code null} if it was not verified against the endpoint
+     */
+    VerifiedToken get(String key, URI jwksUri) {
+        VerifiedToken token = cache.getIfPresent(key);
+        return token != null && token.jwksUri().equals(jwksUri) ? token : null;
+    }
+
+    void put(String key, URI jwksUri, JwtAlgorithm algorithm, Map<String, Object> claims) {
+        if (claims.get("exp") instanceof Number exp) {
+            cache.put(key, new VerifiedToken(jwksUri, algorithm, claims, exp.longValue()));
+        }
+    }
+
+    long size() {
+        cache.cleanUp();
+        return cache.estimatedSize();
+    }
+
+    record VerifiedToken(URI jwksUri, JwtAlgorithm algorithm, Map<String, Object> claims, long expiresAtSeconds) {
+    }
+
+    private record TokenExpiry(long maxAgeNanos) implements Expiry<String, VerifiedToken> {
+
+        @Override
+        public long expireAfterCreate(String key, VerifiedToken token, long currentTime) {
+            long untilExpiry = TimeUnit.SECONDS.toNanos(token.expiresAtSeconds())
+                    - TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+            return Math.max(0, Math.min(maxAgeNanos, untilExpiry));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, VerifiedToken token, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, token, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, VerifiedToken token, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
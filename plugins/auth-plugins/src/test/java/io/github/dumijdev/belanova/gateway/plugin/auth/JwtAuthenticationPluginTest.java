@@ -0,0 +1,302 @@
+package io.github.dumijdev.belanova.gateway.plugin.auth;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.github.dumijdev.belanova.gateway.common.plugin.PluginContext;
+import io.github.dumijdev.belanova.gateway.common.plugin.PluginResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtAuthenticationPluginTest {
+
+    private static final Base64.Encoder BASE64URL = Base64.getUrlEncoder().withoutPadding();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicInteger jwksRequests = new AtomicInteger();
+    private final KeyPair rsaKey = generate("RSA", null);
+    private final KeyPair ecKey = generate("EC", new ECGenParameterSpec("secp256r1"));
+    private volatile String jwks;
+
+    private HttpServer server;
+    private JwtAuthenticationPlugin plugin;
+    private JwtConfig config;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        jwks = jwks(Map.of("rsa-1", rsaKey, "ec-1", ecKey));
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 16);
+        server.createContext("/jwks", exchange -> {
+            jwksRequests.incrementAndGet();
+            byte[] body = jwks.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        plugin = new JwtAuthenticationPlugin(objectMapper, 1_000, 300_000, 300_000, 0, 2_000);
+        config = plugin.configure("r1", Map.of(
+                "jwt.enabled", "true",
+                "jwt.jwks-uri", "http://127.0.0.1:" + server.getAddress().getPort() + "/jwks",
+                "jwt.issuer", "https://issuer.example",
+                "jwt.audience", "gateway",
+                "jwt.claim-headers", "sub=X-User-Id,roles=X-User-Roles,email=X-User-Email"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        plugin.close();
+        server.stop(0);
+    }
+
+    @Test
+    void testVerifiesRs256TokensAndPropagatesClaims() throws Exception {
+        PluginContext context = context(sign("RS256", "rsa-1", rsaKey.getPrivate(), claims(3600)));
+
+        assertEquals(PluginResult.CONTINUE, run(context));
+        assertEquals("alice", context.get(PluginContext.CONSUMER_ID));
+        assertEquals("alice", context.upstreamHeaders().get("X-User-Id"));
+        assertEquals("admin,ops", context.upstreamHeaders().get("X-User-Roles"));
+        // Missing claims still override whatever the client sent
+        assertEquals("", context.upstreamHeaders().get("X-User-Email"));
+    }
+
+    @Test
+    void testVerifiesEs256Tokens() throws Exception {
+        PluginContext context = context(sign("ES256", "ec-1", ecKey.getPrivate(), claims(3600)));
+
+        assertEquals(PluginResult.CONTINUE, run(context));
+        assertEquals("alice", context.get(PluginContext.CONSUMER_ID));
+    }
+
+    @Test
+    void testRejectsInvalidTokens() throws Exception {
+        Map<String, Object> wrongAudience = claims(3600);
+        wrongAudience.put("aud", "someone-else");
+        String valid = sign("RS256", "rsa-1", rsaKey.getPrivate(), claims(3600));
+        int signatureStart = valid.lastIndexOf('.') + 1;
+        String tampered = valid.substring(0, signatureStart)
+                + (valid.charAt(signatureStart) == 'A' ? 'B' : 'A') + valid.substring(signatureStart + 1);
+
+        assertRejected(sign("RS256", "rsa-1", rsaKey.getPrivate(), claims(-120)), "token expired");
+        assertRejected(sign("RS256", "rsa-1", rsaKey.getPrivate(), wrongAudience), "unexpected audience");
+        assertRejected(tampered, "invalid signature");
+        assertRejected(sign("ES256", "rsa-1", ecKey.getPrivate(), claims(3600)), "signing key does not match the algorithm");
+        assertRejected(sign("RS256", "unknown", rsaKey.getPrivate(), claims(3600)), "unknown signing key");
+        assertRejected(unsigned(claims(3600)), "unsupported algorithm");
+    }
+
+    @Test
+    void testChallengesRequestsWithoutToken() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        PluginContext context = new PluginContext();
+        context.start("r1", Map.of(), new MockHttpServletRequest("GET", "/orders"), response);
+        context.bindConfig(config);
+
+        assertEquals(PluginResult.STOP, run(context));
+        assertEquals(401, response.getStatus());
+        assertEquals("Bearer realm=\"belanova\"", response.getHeader("WWW-Authenticate"));
+    }
+
+    @Test
+    void testRemembersVerifiedTokens() throws Exception {
+        String token = sign("RS256", "rsa-1", rsaKey.getPrivate(), claims(3600));
+
+        assertEquals(PluginResult.CONTINUE, run(context(token)));
+        // Revoking the key does not matter to a token verified already
+        jwks = jwks(Map.of());
+        assertEquals(PluginResult.CONTINUE, run(context(token)));
+        assertEquals(1, plugin.verifiedTokens());
+    }
+
+    @Test
+    void testChecksTheAlgorithmOfRememberedTokens() throws Exception {
+        String token = sign("ES256", "ec-1", ecKey.getPrivate(), claims(3600));
+        assertEquals(PluginResult.CONTINUE, run(context(token)));
+
+        // Another route verifying against the same endpoint, but only with RSA
+        config = plugin.configure("r2", Map.of(
+                "jwt.enabled", "true",
+                "jwt.jwks-uri", config.jwksUri().toString(),
+                "jwt.issuer", "https://issuer.example",
+                "jwt.audience", "gateway",
+                "jwt.algorithms", "RS256"));
+
+        assertRejected(token, "unsupported algorithm");
+    }
+
+    @Test
+    void testFetchesTheJwksAgainForAnUnknownKeyId() throws Exception {
+        run(context(sign("RS256", "rsa-1", rsaKey.getPrivate(), claims(3600))));
+        int before = jwksRequests.get();
+        KeyPair rotated = generate("RSA", null);
+        jwks = jwks(Map.of("rsa-2", rotated));
+
+        PluginContext context = context(sign("RS256", "rsa-2", rotated.getPrivate(), claims(3600)));
+
+        assertEquals(PluginResult.CONTINUE, run(context));
+        assertEquals(before + 1, jwksRequests.get());
+    }
+
+    @Test
+    void testDoesNotFetchAnUnavailableJwksOnEveryRequest() throws Exception {
+        AtomicInteger failedRequests = new AtomicInteger();
+        server.createContext("/broken", exchange -> {
+            failedRequests.incrementAndGet();
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+        });
+        try (JwtAuthenticationPlugin throttled = new JwtAuthenticationPlugin(objectMapper, 1_000, 300_000, 300_000,
+                60_000, 2_000)) {
+            config = throttled.configure("r1", Map.of(
+                    "jwt.enabled", "true",
+                    "jwt.jwks-uri", "http://127.0.0.1:" + server.getAddress().getPort() + "/broken"));
+            String token = sign("RS256", "rsa-1", rsaKey.getPrivate(), claims(3600));
+
+            for (int i = 0; i < 5; i++) {
+                assertEquals(PluginResult.STOP, throttled.onPreRoute(context(token)).toCompletableFuture().join());
+            }
+            assertEquals(1, failedRequests.get());
+        }
+    }
+
+    @Test
+    void testIsRequiredByRoutesThatEnableIt() {
+        assertTrue(plugin.requiredBy(Map.of("jwt.enabled", "true", "plugins", "logging")));
+        assertFalse(plugin.requiredBy(Map.of("plugins", "logging")));
+    }
+
+    @Test
+    void testRejectsInvalidSettings() {
+        assertNull(JwtConfig.fromMetadata(Map.of("jwt.jwks-uri", "https://issuer.example/jwks")));
+        assertThrows(IllegalArgumentException.class, () -> JwtConfig.fromMetadata(Map.of("jwt.enabled", "true")));
+        assertThrows(IllegalArgumentException.class, () -> JwtConfig.fromMetadata(Map.of(
+                "jwt.enabled", "true", "jwt.jwks-uri", "https://issuer.example/jwks", "jwt.algorithms", "HS256")));
+    }
+
+    private void assertRejected(String token, String reason) {
+        PluginContext context = context(token);
+        MockHttpServletResponse response = (MockHttpServletResponse) context.response();
+
+        assertEquals(PluginResult.STOP, run(context), reason);
+        assertEquals(401, response.getStatus());
+        assertTrue(response.getHeader("WWW-Authenticate").contains("error_description=\"" + reason + "\""),
+                response.getHeader("WWW-Authenticate"));
+        assertNull(context.get(PluginContext.CONSUMER_ID));
+    }
+
+    private PluginResult run(PluginContext context) {
+        return plugin.onPreRoute(context).toCompletableFuture().join();
+    }
+
+    private PluginContext context(String token) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/orders");
+        request.addHeader("Authorization", "Bearer " + token);
+        PluginContext context = new PluginContext();
+        context.start("r1", Map.of(), request, new MockHttpServletResponse());
+        context.bindConfig(config);
+        return context;
+    }
+
+    private static Map<String, Object> claims(long expiresInSeconds) {
+        long now = System.currentTimeMillis() / 1000;
+        Map<String, Object> claims = new LinkedHashMap<>();
+        claims.put("iss", "https://issuer.example");
+        claims.put("sub", "alice");
+        claims.put("aud", List.of("gateway", "billing"));
+        claims.put("roles", List.of("admin", "ops"));
+        claims.put("iat", now);
+        claims.put("exp", now + expiresInSeconds);
+        return claims;
+    }
+
+    private String sign(String alg, String kid, PrivateKey key, Map<String, Object> claims)
+            throws IOException, GeneralSecurityException {
+        String signingInput = encode(Map.of("alg", alg, "kid", kid, "typ", "JWT")) + "." + encode(claims);
+        Signature signature = Signature.getInstance(alg.startsWith("RS") ? "SHA256withRSA" : "SHA256withECDSAinP1363Format");
+        signature.initSign(key);
+        signature.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+        return signingInput + "." + BASE64URL.encodeToString(signature.sign());
+    }
+
+    private String unsigned(Map<String, Object> claims) throws IOException {
+        return encode(Map.of("alg", "none")) + "." + encode(claims) + ".";
+    }
+
+    private String encode(Map<String, Object> json) throws IOException {
+        return BASE64URL.encodeToString(objectMapper.writeValueAsBytes(json));
+    }
+
+    private String jwks(Map<String, KeyPair> keys) throws IOException {
+        List<Map<String, Object>> jwks = keys.entrySet().stream().map(entry -> {
+            Map<String, Object> jwk = new LinkedHashMap<>();
+            jwk.put("kid", entry.getKey());
+            jwk.put("use", "sig");
+            if (entry.getValue().getPublic() instanceof RSAPublicKey rsa) {
+                jwk.put("kty", "RSA");
+                jwk.put("n", unsigned(rsa.getModulus(), 0));
+                jwk.put("e", unsigned(rsa.getPublicExponent(), 0));
+            } else {
+                ECPublicKey ec = (ECPublicKey) entry.getValue().getPublic();
+                jwk.put("kty", "EC");
+                jwk.put("crv", "P-256");
+                jwk.put("x", unsigned(ec.getW().getAffineX(), 32));
+                jwk.put("y", unsigned(ec.getW().getAffineY(), 32));
+            }
+            return jwk;
+        }).toList();
+        return objectMapper.writeValueAsString(Map.of("keys", jwks));
+    }
+
+    private static String unsigned(BigInteger value, int length) {
+        byte[] bytes = value.toByteArray();
+        if (bytes.length > 1 && bytes[0] == 0) {
+            bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        if (bytes.length < length) {
+            byte[] padded = new byte[length];
+            System.arraycopy(bytes, 0, padded, length - bytes.length, bytes.length);
+            bytes = padded;
+        }
+        return BASE64URL.encodeToString(bytes);
+    }
+
+    private static KeyPair generate(String algorithm, ECGenParameterSpec curve) {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm);
+            if (curve != null) {
+                generator.initialize(curve);
+            } else {
+                generator.initialize(2048);
+            }
+            return generator.generateKeyPair();
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
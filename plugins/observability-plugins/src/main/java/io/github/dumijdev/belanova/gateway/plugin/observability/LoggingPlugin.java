@@ -0,0 +1,66 @@
+package io.github.dumijdev.belanova.gateway.plugin.observability;
+
+import io.github.dumijdev.belanova.gateway.common.plugin.GatewayPlugin;
+import io.github.dumijdev.belanova.gateway.common.plugin.PluginContext;
+import io.github.dumijdev.belanova.gateway.common.plugin.PluginPhase;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs every proxied request once it got a response or failed.
+ */
+@Slf4j
+public class LoggingPlugin implements GatewayPlugin {
+
+    private static final Set<PluginPhase> PHASES = Set.of(PluginPhase.POST_RESPONSE, PluginPhase.ON_ERROR);
+
+    @Override
+    public String getName() {
+        return "logging";
+    }
+
+    @Override
+    public int getOrder() {
+        return 0;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public Set<PluginPhase> phases() {
+        return PHASES;
+    }
+
+    @Override
+    public void onPostResponse(PluginContext context) {
+        if (log.isInfoEnabled()) {
+            HttpServletRequest request = context.request();
+            log.info("{} {} -> {} in {} ms", request.getMethod(), request.getRequestURI(), context.status(),
+                    elapsedMillis(context));
+        }
+    }
+
+    @Override
+    public void onError(PluginContext context) {
+        HttpServletRequest request = context.request();
+        log.warn("{} {} failed after {} ms: {}", request.getMethod(), request.getRequestURI(),
+                elapsedMillis(context), context.error().toString());
+    }
+
+    @Override
+    public Map<String, Object> getConfiguration() {
+        return Collections.emptyMap();
+    }
+
+    private static long elapsedMillis(PluginContext context) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - context.startNanos());
+    }
+}
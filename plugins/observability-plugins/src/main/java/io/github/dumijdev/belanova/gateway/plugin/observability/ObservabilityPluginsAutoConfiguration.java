@@ -0,0 +1,18 @@
+package io.github.dumijdev.belanova.gateway.plugin.observability;
+
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+
+/**
+ * Registers the observability plugins with the gateway.
+ */
+@AutoConfiguration
+public class ObservabilityPluginsAutoConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    public LoggingPlugin loggingPlugin() {
+        return new LoggingPlugin();
+    }
+}